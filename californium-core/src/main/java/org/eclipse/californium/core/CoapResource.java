@@ -23,18 +23,28 @@
  *                                                    (for use by subclasses)
  *    Kai Hudalla (Bosch Software Innovations GmbH) - use Logger's message formatting instead of
  *                                                    explicit String concatenation
+ *    Bosch Software Innovations GmbH - add notification fan-out
+ *    Bosch Software Innovations GmbH - add notification policy
+ *    Bosch Software Innovations GmbH - restore observe numbers
+ *    Bosch Software Innovations GmbH - notify observers when deleting a child by name
  ******************************************************************************/
 package org.eclipse.californium.core;
 
 import java.net.URI;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -42,9 +52,12 @@ import org.eclipse.californium.core.coap.CoAP;
 import org.eclipse.californium.core.coap.CoAP.Code;
 import org.eclipse.californium.core.coap.CoAP.ResponseCode;
 import org.eclipse.californium.core.coap.CoAP.Type;
+import org.eclipse.californium.core.coap.Request;
 import org.eclipse.californium.core.coap.Response;
 import org.eclipse.californium.core.network.Endpoint;
 import org.eclipse.californium.core.network.Exchange;
+import org.eclipse.californium.core.network.serialization.NotificationTemplate;
+import org.eclipse.californium.core.observe.NotificationPolicy;
 import org.eclipse.californium.core.observe.ObserveNotificationOrderer;
 import org.eclipse.californium.core.observe.ObserveRelation;
 import org.eclipse.californium.core.observe.ObserveRelationContainer;
@@ -121,6 +134,16 @@ import org.eclipse.californium.core.server.resources.ResourceObserver;
  * done on the executor. A CoAP observe relation between this resource and a
  * CoAP client is represented by an instance of {@link ObserveRelation}.
  * <p>
+ * Resources with many observers should enable the notification fan-out using
+ * {@link #setNotificationFanOut(boolean)}. The method changed() then processes
+ * the request of a single observer per requested content format only and sends
+ * copies of the resulting representation to all other observers.
+ * <p>
+ * The rate of notifications can be limited by a {@link NotificationPolicy}
+ * set with {@link #setNotificationPolicy(NotificationPolicy)}. Changes within
+ * the policy's minimum interval are then coalesced into a single notification
+ * round carrying the latest state.
+ * <p>
  * In contrast the class {@link ResourceObserver} has nothing to do with CoAP's
  * observe mechanism but is an implementation of the general observe-pattern. A
  * ResourceObserver is invoked whenever the name or path of a resource changes,
@@ -168,6 +191,30 @@ public  class CoapResource implements Resource {
 	
 	/* The notification orderer. */
 	private ObserveNotificationOrderer notificationOrderer;
+
+	/* Indicates whether a representation is shared by all observers. */
+	private volatile boolean notificationFanOut;
+
+	/* The policy for notifying the observers (null for no limitation). */
+	private volatile NotificationPolicy notificationPolicy;
+
+	/* Guards the state of the notification rounds. */
+	private final Object notificationLock = new Object();
+
+	/* The (nano) time the last notification round has been started. */
+	private long lastNotificationRound;
+
+	/* Indicates whether a notification round has been started yet. */
+	private boolean notificationRoundStarted;
+
+	/* Indicates whether a notification round is scheduled. */
+	private boolean notificationRoundPending;
+
+	/* The filter of the scheduled notification round (null for all). */
+	private ObserveRelationFilter pendingNotificationFilter;
+
+	/* The scheduled notification round. */
+	private ScheduledFuture<?> pendingNotificationRound;
 	
 	/**
 	 * Constructs a new resource with the specified name.
@@ -439,8 +486,6 @@ public  class CoapResource implements Resource {
 		if (deleted == child) {
 			child.setParent(null);
 			child.setPath(null);
-			for (ResourceObserver obs : observers)
-				obs.removedChild(child);
 			return true;
 		}
 		return false;
@@ -449,12 +494,19 @@ public  class CoapResource implements Resource {
 	/**
 	 * Removes the child with the specified name and returns it. If no child
 	 * with the specified name is found, the return value is null.
+	 * <p>
+	 * The resource observers are notified about the removed child.
 	 * 
 	 * @param name the name
 	 * @return the deleted resource or null
 	 */
 	public synchronized Resource delete(String name) {
-		return children.remove(name);
+		Resource deleted = children.remove(name);
+		if (deleted != null) {
+			for (ResourceObserver obs : observers)
+				obs.removedChild(deleted);
+		}
+		return deleted;
 	}
 	
 	/**
@@ -669,6 +721,64 @@ public  class CoapResource implements Resource {
 		this.observable = observable;
 	}
 	
+	/**
+	 * Checks whether the notifications of a change are copies of a single
+	 * representation per content format.
+	 *
+	 * @return true if the notification fan-out is enabled
+	 */
+	public boolean isNotificationFanOut() {
+		return notificationFanOut;
+	}
+
+	/**
+	 * Enables the notification fan-out.
+	 * <p>
+	 * By default, {@link #changed()} reprocesses the request of every observer,
+	 * i.e. the handler is invoked once per observer. With fan-out enabled, the
+	 * handler is invoked once per content format (Accept option) requested by
+	 * the observers and must therefore not depend on the particular observer,
+	 * e.g. its address. The options and payload of each representation are
+	 * encoded once and shared by the notifications of all observers.
+	 * <p>
+	 * If the handler does not respond synchronously, the requests of the
+	 * observers are reprocessed as usual.
+	 *
+	 * @param fanOut true to process the request once per content format
+	 */
+	public void setNotificationFanOut(boolean fanOut) {
+		this.notificationFanOut = fanOut;
+	}
+
+	/**
+	 * Gets the notification policy of this resource.
+	 *
+	 * @return the policy, or {@code null}, if the notifications are not limited
+	 */
+	public NotificationPolicy getNotificationPolicy() {
+		return notificationPolicy;
+	}
+
+	/**
+	 * Sets the notification policy of this resource.
+	 * <p>
+	 * If the policy defines a minimum interval, {@link #changed()} starts a
+	 * notification round only if the interval has passed since the last round.
+	 * Otherwise a round is scheduled for the end of the interval, and all
+	 * further changes until then are coalesced into it. Since the round
+	 * reprocesses the observers' requests, they receive the latest state only.
+	 * <p>
+	 * The policy is also applied to the existing observe relations.
+	 *
+	 * @param policy the policy, or {@code null}, to not limit the notifications
+	 */
+	public void setNotificationPolicy(NotificationPolicy policy) {
+		this.notificationPolicy = policy;
+		for (ObserveRelation relation:observeRelations) {
+			relation.setNotificationPolicy(policy);
+		}
+	}
+
 	/**
 	 * Sets the type of the notifications that will be sent.
 	 * If set to null (default) the type matching the request will be used.
@@ -686,6 +796,7 @@ public  class CoapResource implements Resource {
 	 */
 	@Override
 	public void addObserveRelation(ObserveRelation relation) {
+		relation.setNotificationPolicy(notificationPolicy);
 		if (observeRelations.add(relation)) {
 			LOGGER.log(Level.INFO, "Replacing observe relation between {0} and resource {1}", new Object[]{relation.getKey(), getURI()});
 		} else {
@@ -705,6 +816,18 @@ public  class CoapResource implements Resource {
 			obs.removedObserveRelation(relation);
 	}
 	
+	/**
+	 * Advances the observe number of this resource, e.g., after the observe
+	 * relations of this resource have been restored from an
+	 * {@link org.eclipse.californium.core.observe.ObserveRelationStore}. The
+	 * next notification has a larger observe number than the specified one.
+	 * 
+	 * @param observeNumber the observe number of the latest notification
+	 */
+	public void advanceObserveNumber(int observeNumber) {
+		notificationOrderer.advanceTo(observeNumber);
+	}
+
 	/**
 	 * Returns the number of observe relations that this resource has to CoAP
 	 * clients.
@@ -736,6 +859,10 @@ public  class CoapResource implements Resource {
 	 * is done by the executor of this resource or on the executor of its parent or
 	 * transitively ancestor. If no ancestor defines its own executor, the
 	 * thread that has called this method performs the notification.
+	 * <p>
+	 * If the {@link NotificationPolicy} of this resource defines a minimum
+	 * interval, the notification may be deferred and coalesced with further
+	 * changes.
 	 * 
 	 * @param filter filter to select set of relations. 
 	 *               <code>null</code>, if all clients should be notified.
@@ -743,6 +870,124 @@ public  class CoapResource implements Resource {
 	 * @see #changed()
 	 */
 	public void changed(final ObserveRelationFilter filter) {
+		NotificationPolicy policy = notificationPolicy;
+		if (policy != null) {
+			long minInterval = policy.getMinInterval(TimeUnit.NANOSECONDS);
+			if (minInterval > 0) {
+				long delay = 0;
+				synchronized (notificationLock) {
+					long now = System.nanoTime();
+					if (notificationRoundPending) {
+						pendingNotificationFilter = mergeFilters(pendingNotificationFilter, filter);
+						policy.coalesced();
+						return;
+					} else if (notificationRoundStarted && now - lastNotificationRound < minInterval) {
+						notificationRoundPending = true;
+						pendingNotificationFilter = filter;
+						delay = minInterval - (now - lastNotificationRound);
+					} else {
+						notificationRoundStarted = true;
+						lastNotificationRound = now;
+					}
+				}
+				if (delay > 0) {
+					scheduleNotificationRound(delay);
+					return;
+				}
+			}
+		}
+		startNotificationRound(filter);
+	}
+
+	/**
+	 * Schedules the pending notification round.
+	 * <p>
+	 * If no scheduler is available, the round is started immediately.
+	 * 
+	 * @param delay the delay in nanoseconds
+	 */
+	private void scheduleNotificationRound(final long delay) {
+		ScheduledExecutorService scheduler = getNotificationScheduler();
+		if (scheduler == null) {
+			startPendingNotificationRound();
+			return;
+		}
+		LOGGER.log(Level.FINER, "Deferring notifications of resource {0} by {1}ns", new Object[]{getURI(), delay});
+		try {
+			ScheduledFuture<?> round = scheduler.schedule(new Runnable() {
+				public void run() {
+					startPendingNotificationRound();
+				}}, delay, TimeUnit.NANOSECONDS);
+			synchronized (notificationLock) {
+				if (notificationRoundPending) {
+					pendingNotificationRound = round;
+				}
+			}
+		} catch (RejectedExecutionException e) {
+			LOGGER.log(Level.FINE, "Cannot defer notifications of resource {0}, scheduler is shut down", getURI());
+			cancelPendingNotificationRound();
+		}
+	}
+
+	/**
+	 * Starts the scheduled notification round.
+	 */
+	private void startPendingNotificationRound() {
+		ObserveRelationFilter filter;
+		synchronized (notificationLock) {
+			filter = pendingNotificationFilter;
+			pendingNotificationFilter = null;
+			pendingNotificationRound = null;
+			notificationRoundPending = false;
+			lastNotificationRound = System.nanoTime();
+		}
+		startNotificationRound(filter);
+	}
+
+	/**
+	 * Cancels the scheduled notification round of this resource, if any.
+	 * <p>
+	 * Invoked by the {@link CoapServer} when it is stopped or destroyed.
+	 */
+	void cancelPendingNotificationRound() {
+		ScheduledFuture<?> round;
+		synchronized (notificationLock) {
+			round = pendingNotificationRound;
+			pendingNotificationRound = null;
+			pendingNotificationFilter = null;
+			notificationRoundPending = false;
+		}
+		if (round != null) {
+			round.cancel(false);
+		}
+	}
+
+	/**
+	 * Combines the filters of coalesced changes.
+	 * 
+	 * @param first the first filter, <code>null</code> for all relations
+	 * @param second the second filter, <code>null</code> for all relations
+	 * @return filter accepting the relations accepted by either filter,
+	 *         <code>null</code>, if all relations are accepted
+	 */
+	private static ObserveRelationFilter mergeFilters(final ObserveRelationFilter first, final ObserveRelationFilter second) {
+		if (null == first || null == second) {
+			return null;
+		}
+		return new ObserveRelationFilter() {
+			public boolean accept(ObserveRelation relation) {
+				return first.accept(relation) || second.accept(relation);
+			}
+		};
+	}
+
+	/**
+	 * Notifies the observers on the executor of this resource.
+	 * 
+	 * @param filter filter to select set of relations. 
+	 *               <code>null</code>, if all clients should be notified.
+	 */
+	private void startNotificationRound(final ObserveRelationFilter filter) {
 		Executor executor = getExecutor();
 		// use thread from the protocol stage
 		if (executor == null) notifyObserverRelations(filter);
@@ -763,11 +1008,113 @@ public  class CoapResource implements Resource {
 	 */
 	protected void notifyObserverRelations(final ObserveRelationFilter filter) {
 		notificationOrderer.getNextObserveNumber();
+		if (notificationFanOut) {
+			fanOutNotifications(filter);
+			return;
+		}
 		for (ObserveRelation relation:observeRelations) {
 			if (null == filter || filter.accept(relation)) relation.notifyObservers();
 		}
 	}
 
+	/**
+	 * Sends copies of one representation per content format to the observers.
+	 * 
+	 * @param filter filter to select set of relations. 
+	 *               <code>null</code>, if all clients should be notified.
+	 */
+	private void fanOutNotifications(final ObserveRelationFilter filter) {
+		Map<Integer, Representation> representations = new HashMap<Integer, Representation>();
+		for (ObserveRelation relation:observeRelations) {
+			if (null != filter && !filter.accept(relation)) continue;
+			Exchange exchange = relation.getExchange();
+			Integer accept = exchange.getRequest().getOptions().getAccept();
+			Representation representation = representations.get(accept);
+			if (representation == null) {
+				representation = createRepresentation(exchange.getRequest());
+				representations.put(accept, representation);
+			}
+			if (representation.response == null) {
+				// handler did not respond synchronously
+				relation.notifyObservers();
+			} else {
+				Response notification = representation.copy();
+				checkObserveRelation(exchange, notification);
+				exchange.sendResponse(notification);
+			}
+		}
+	}
+
+	/**
+	 * Processes an observer's request without sending the response.
+	 * 
+	 * @param request the request that has established the observe relation
+	 * @return the representation
+	 */
+	private Representation createRepresentation(final Request request) {
+		RepresentationExchange exchange = new RepresentationExchange(request);
+		handleRequest(exchange);
+		Response response = exchange.response;
+		if (response == null) {
+			LOGGER.log(Level.FINE, "Resource {0} did not respond synchronously, notifying observers separately", getURI());
+			return new Representation(null, null);
+		}
+		return new Representation(response, NotificationTemplate.create(response));
+	}
+
+	/**
+	 * A representation shared by the notifications of all observers
+	 * requesting the same content format.
+	 */
+	private static class Representation {
+
+		private final Response response;
+		private final NotificationTemplate template;
+
+		private Representation(final Response response, final NotificationTemplate template) {
+			this.response = response;
+			this.template = template;
+		}
+
+		private Response copy() {
+			Response notification = new Response(response.getCode());
+			notification.setType(response.getType());
+			notification.setOptions(response.getOptions());
+			// the payload is not modified and can be shared
+			notification.setPayload(response.getPayload());
+			notification.setNotificationTemplate(template);
+			return notification;
+		}
+	}
+
+	/**
+	 * An exchange keeping the response of the handler instead of sending it.
+	 */
+	private static class RepresentationExchange extends Exchange {
+
+		private Response response;
+
+		private RepresentationExchange(final Request request) {
+			super(request, Origin.REMOTE);
+			setRequest(request);
+		}
+
+		@Override
+		public void sendAccept() {
+			// the request has been acknowledged before
+		}
+
+		@Override
+		public void sendReject() {
+			// the request has been acknowledged before
+		}
+
+		@Override
+		public void sendResponse(final Response response) {
+			this.response = response;
+		}
+	}
+
 	/* (non-Javadoc)
 	 * @see org.eclipse.californium.core.server.resources.Resource#getChildren()
 	 */
@@ -826,4 +1173,26 @@ public  class CoapResource implements Resource {
 			return Collections.emptyList();
 		else return parent.getEndpoints();
 	}
+
+	/**
+	 * Gets the scheduler for deferred notification rounds.
+	 * <p>
+	 * This is the executor of this resource, if it is a
+	 * {@link ScheduledExecutorService}, or the scheduler of its parent. The
+	 * root resource of a {@link CoapServer} returns the server's executor.
+	 * 
+	 * @return the scheduler, or {@code null}, if neither this resource nor an
+	 *         ancestor provides one. Notification rounds are not deferred
+	 *         then.
+	 */
+	protected ScheduledExecutorService getNotificationScheduler() {
+		ExecutorService executor = getExecutor();
+		if (executor instanceof ScheduledExecutorService) {
+			return (ScheduledExecutorService) executor;
+		} else if (parent instanceof CoapResource) {
+			return ((CoapResource) parent).getNotificationScheduler();
+		} else {
+			return null;
+		}
+	}
 }
@@ -18,6 +18,8 @@
  *    Kai Hudalla - logging
  *    Kai Hudalla (Bosch Software Innovations GmbH) - use Logger's message formatting instead of
  *                                                    explicit String concatenation
+ *    Bosch Software Innovations GmbH - restore observe relations on start
+ *    Bosch Software Innovations GmbH - cancel deferred notification rounds on stop
  ******************************************************************************/
 package org.eclipse.californium.core;
 
@@ -35,6 +37,7 @@ import org.eclipse.californium.core.coap.CoAP.ResponseCode;
 import org.eclipse.californium.core.network.CoapEndpoint;
 import org.eclipse.californium.core.network.Endpoint;
 import org.eclipse.californium.core.network.config.NetworkConfig;
+import org.eclipse.californium.core.observe.ObserveRelationStore;
 import org.eclipse.californium.core.server.MessageDeliverer;
 import org.eclipse.californium.core.server.ServerInterface;
 import org.eclipse.californium.core.server.ServerMessageDeliverer;
@@ -52,6 +55,10 @@ import org.eclipse.californium.elements.util.NamedThreadFactory;
  * A server can be started and stopped. When the server stops the endpoint
  * frees the port it is listening on, but keeps the executors running to resume.
  * <p>
+ * If an {@link ObserveRelationStore} is set, the server restores the observe
+ * relations kept in the store when it is started the first time and resumes
+ * notifying the observers, without them having to re-register.
+ * <p>
  * The following code snippet provides an example of a server with a resource
  * that responds with a <em>"hello world"</em> to any incoming GET request.
  * <pre>
@@ -111,6 +118,12 @@ public class CoapServer implements ServerInterface {
 
 	private boolean running;
 
+	/** The store for the observe relations (can be null). */
+	private ObserveRelationStore observeRelationStore;
+
+	/** Indicates whether the observe relations have been restored. */
+	private boolean observeRelationsRestored;
+
 	/**
 	 * Constructs a default server. The server starts after the method
 	 * {@link #start()} is called. If a server starts and has no specific ports
@@ -222,6 +235,26 @@ public class CoapServer implements ServerInterface {
 		} else {
 			running = true;
 		}
+		if (observeRelationStore != null && !observeRelationsRestored) {
+			if (deliverer instanceof ServerMessageDeliverer) {
+				((ServerMessageDeliverer) deliverer).restoreObserveRelations(observeRelationStore, endpoints);
+			} else {
+				LOGGER.log(Level.WARNING, "Message deliverer {0} cannot restore observe relations", deliverer);
+			}
+			observeRelationsRestored = true;
+		}
+	}
+
+	/**
+	 * Adds the observe relations to the store and releases the store.
+	 */
+	private void snapshotObserveRelations() {
+		if (observeRelationStore != null && observeRelationsRestored) {
+			if (deliverer instanceof ServerMessageDeliverer) {
+				((ServerMessageDeliverer) deliverer).snapshotObserveRelations();
+			}
+			observeRelationStore.close();
+		}
 	}
 
 	/**
@@ -233,13 +266,24 @@ public class CoapServer implements ServerInterface {
 
 		if (running) {
 			LOGGER.info("Stopping server");
+			snapshotObserveRelations();
 			for (Endpoint ep : endpoints) {
 				ep.stop();
 			}
+			cancelPendingNotificationRounds(root);
 			running = false;
 		}
 	}
 
+	private static void cancelPendingNotificationRounds(final Resource resource) {
+		if (resource instanceof CoapResource) {
+			((CoapResource) resource).cancelPendingNotificationRound();
+		}
+		for (Resource child : resource.getChildren()) {
+			cancelPendingNotificationRounds(child);
+		}
+	}
+
 	/**
 	 * Destroys the server, i.e., unbinds from all ports and frees all system resources.
 	 */
@@ -247,6 +291,10 @@ public class CoapServer implements ServerInterface {
 	public synchronized void destroy() {
 
 		LOGGER.info("Destroying server");
+		if (running) {
+			snapshotObserveRelations();
+		}
+		cancelPendingNotificationRounds(root);
 		// prevent new tasks from being submitted
 		executor.shutdown(); // cannot be started again
 		try {
@@ -275,6 +323,22 @@ public class CoapServer implements ServerInterface {
 		}
 	}
 
+	/**
+	 * Sets the store to keep the observe relations of this server in.
+	 * <p>
+	 * The relations kept in the store are restored when the server is started.
+	 * The store is only used by a {@link ServerMessageDeliverer}.
+	 *
+	 * @param store the store, or {@code null}, to not keep the relations.
+	 * @throws IllegalStateException if this server has already been started.
+	 */
+	public synchronized void setObserveRelationStore(final ObserveRelationStore store) {
+		if (running || observeRelationsRestored) {
+			throw new IllegalStateException("observe relation store can not be set on started server");
+		}
+		this.observeRelationStore = store;
+	}
+
 	/**
 	 * Sets the message deliverer.
 	 *
@@ -425,5 +489,11 @@ public class CoapServer implements ServerInterface {
 		public List<Endpoint> getEndpoints() {
 			return CoapServer.this.getEndpoints();
 		}
+
+		@Override
+		protected ScheduledExecutorService getNotificationScheduler() {
+			ScheduledExecutorService scheduler = super.getNotificationScheduler();
+			return scheduler != null ? scheduler : CoapServer.this.executor;
+		}
 	}
 }
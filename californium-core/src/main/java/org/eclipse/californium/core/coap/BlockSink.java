@@ -0,0 +1,55 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Bosch Software Innovations GmbH and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *    Bosch Software Innovations GmbH - initial creation
+ ******************************************************************************/
+package org.eclipse.californium.core.coap;
+
+import java.io.IOException;
+
+/**
+ * A consumer of a request body which is received block by block.
+ * <p>
+ * A sink is used for a single blockwise upload. The blocks are passed to the
+ * sink in order as they arrive, so that the body does not need to be
+ * assembled in memory. Once the last block has been written, the sink is
+ * closed and the request is delivered to the resource without payload.
+ * </p>
+ *
+ * @see org.eclipse.californium.core.server.BlockSinkProvider
+ */
+public interface BlockSink {
+
+	/**
+	 * Consumes the next block of the body.
+	 *
+	 * @param block the block's bytes.
+	 * @throws IOException if the block cannot be consumed. The upload is then
+	 *             aborted.
+	 */
+	void write(byte[] block) throws IOException;
+
+	/**
+	 * Invoked after the last block has been written.
+	 *
+	 * @throws IOException if the body cannot be completed. The upload is then
+	 *             aborted.
+	 */
+	void close() throws IOException;
+
+	/**
+	 * Invoked when the upload is aborted, e.g. because it has timed out, has
+	 * been restarted by the client or a block could not be consumed.
+	 */
+	void abort();
+}
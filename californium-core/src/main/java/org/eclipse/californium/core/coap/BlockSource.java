@@ -0,0 +1,54 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Bosch Software Innovations GmbH and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *    Bosch Software Innovations GmbH - initial creation
+ ******************************************************************************/
+package org.eclipse.californium.core.coap;
+
+import java.io.IOException;
+
+/**
+ * A source of a message body which is read block by block.
+ * <p>
+ * A source is set on a {@link Response} in order to transfer a large body
+ * blockwise without copying it into the response's payload. The blocks are
+ * read on demand, i.e. when the peer requests them, and in any order.
+ * </p>
+ * <p>
+ * A single source may be shared by the responses to many requests and
+ * therefore must be thread safe.
+ * </p>
+ *
+ * @see ByteBufferBlockSource
+ * @see FileChannelBlockSource
+ */
+public interface BlockSource {
+
+	/**
+	 * Gets the size of the body.
+	 *
+	 * @return the number of bytes.
+	 */
+	int size();
+
+	/**
+	 * Reads a part of the body.
+	 *
+	 * @param offset the offset of the first byte to read.
+	 * @param length the number of bytes to read.
+	 * @return the bytes read. The array contains less than the requested
+	 *         number of bytes, if the end of the body has been reached.
+	 * @throws IOException if the body cannot be read.
+	 */
+	byte[] read(int offset, int length) throws IOException;
+}
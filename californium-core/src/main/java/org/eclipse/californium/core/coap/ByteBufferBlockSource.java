@@ -0,0 +1,61 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Bosch Software Innovations GmbH and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *    Bosch Software Innovations GmbH - initial creation
+ ******************************************************************************/
+package org.eclipse.californium.core.coap;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A {@link BlockSource} reading from a byte buffer.
+ * <p>
+ * The body consists of the buffer's remaining bytes at the time the source
+ * is created. The buffer's position and limit are never changed, so the same
+ * (e.g. read-only or memory mapped) buffer can back any number of sources.
+ * </p>
+ */
+public final class ByteBufferBlockSource implements BlockSource {
+
+	private final ByteBuffer buffer;
+
+	/**
+	 * Creates a new source for a buffer.
+	 *
+	 * @param buffer the buffer containing the body.
+	 * @throws NullPointerException if the buffer is {@code null}.
+	 */
+	public ByteBufferBlockSource(final ByteBuffer buffer) {
+		if (buffer == null) {
+			throw new NullPointerException("Buffer must not be null");
+		}
+		this.buffer = buffer.slice();
+	}
+
+	@Override
+	public int size() {
+		return buffer.capacity();
+	}
+
+	@Override
+	public byte[] read(final int offset, final int length) {
+		int from = Math.min(offset, buffer.capacity());
+		int to = Math.min(from + length, buffer.capacity());
+		byte[] block = new byte[to - from];
+		// use a duplicate, the source must be usable by several threads
+		ByteBuffer view = buffer.duplicate();
+		view.position(from);
+		view.get(block);
+		return block;
+	}
+}
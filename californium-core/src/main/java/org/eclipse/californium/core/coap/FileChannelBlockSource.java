@@ -0,0 +1,79 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Bosch Software Innovations GmbH and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *    Bosch Software Innovations GmbH - initial creation
+ ******************************************************************************/
+package org.eclipse.californium.core.coap;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * A {@link BlockSource} reading from a file channel.
+ * <p>
+ * The blocks are read using absolute positions, i.e. the channel's position
+ * is never changed and the same channel can back any number of sources. The
+ * size of the body is determined when the source is created.
+ * </p>
+ * <p>
+ * The channel is not closed by this source.
+ * </p>
+ */
+public final class FileChannelBlockSource implements BlockSource {
+
+	private final FileChannel channel;
+	private final int size;
+
+	/**
+	 * Creates a new source for a file channel.
+	 *
+	 * @param channel the channel to read the body from.
+	 * @throws NullPointerException if the channel is {@code null}.
+	 * @throws IllegalArgumentException if the file is larger than 2GB.
+	 * @throws IOException if the size of the file cannot be determined.
+	 */
+	public FileChannelBlockSource(final FileChannel channel) throws IOException {
+		if (channel == null) {
+			throw new NullPointerException("Channel must not be null");
+		}
+		long fileSize = channel.size();
+		if (fileSize > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("File must not be larger than 2GB");
+		}
+		this.channel = channel;
+		this.size = (int) fileSize;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public byte[] read(final int offset, final int length) throws IOException {
+		int from = Math.min(offset, size);
+		ByteBuffer block = ByteBuffer.allocate(Math.min(length, size - from));
+		long position = from;
+		while (block.hasRemaining()) {
+			int read = channel.read(block, position);
+			if (read < 0) {
+				// file has been truncated
+				return Arrays.copyOf(block.array(), block.position());
+			}
+			position += read;
+		}
+		return block.array();
+	}
+}
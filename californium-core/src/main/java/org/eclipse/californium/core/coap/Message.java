@@ -23,6 +23,7 @@
  *                                                    instead of create it on
  *                                                    every getMessageObservers()
  *    Achim Kraus (Bosch Software Innovations GmbH) - fix openjdk-11 covariant return types
+ *    Bosch Software Innovations GmbH - invalidate serialized bytes on modification
  ******************************************************************************/
 package org.eclipse.californium.core.coap;
 
@@ -33,6 +34,7 @@ import java.nio.CharBuffer;
 import java.nio.charset.CharsetDecoder;
 import java.nio.charset.CoderResult;
 import java.nio.charset.CodingErrorAction;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.CopyOnWriteArrayList;
@@ -129,6 +131,9 @@ public abstract class Message {
 	/** The serialized message as byte array. */
 	private byte[] bytes;
 
+	/** The options' modification count at the time the message has been serialized. */
+	private int serializedOptionsModificationCount;
+
 	/**
 	 * A list of all {@link ObserveManager} that should be notified when an
 	 * event for this message occurs. By default, this field is null
@@ -187,7 +192,10 @@ public abstract class Message {
 	 * @return this Message
 	 */
 	public Message setType(CoAP.Type type) {
-		this.type = type;
+		if (this.type != type) {
+			this.type = type;
+			this.bytes = null;
+		}
 		return this;
 	}
 
@@ -251,7 +259,10 @@ public abstract class Message {
 		if (mid > MAX_MID || mid < NONE) {
 			throw new IllegalArgumentException("The MID must be an unsigned 16-bit number but was " + mid);
 		}
-		this.mid = mid;
+		if (this.mid != mid) {
+			this.mid = mid;
+			this.bytes = null;
+		}
 		return this;
 	}
 
@@ -300,7 +311,10 @@ public abstract class Message {
 		if (token != null && token.length > 8) {
 			throw new IllegalArgumentException("Token length must be between 0 and 8 inclusive");
 		}
-		this.token = token;
+		if (!Arrays.equals(this.token, token)) {
+			this.token = token;
+			this.bytes = null;
+		}
 		return this;
 	}
 
@@ -327,6 +341,7 @@ public abstract class Message {
 	 */
 	public Message setOptions(OptionSet options) {
 		this.options = new OptionSet(options);
+		this.bytes = null;
 		return this;
 	}
 
@@ -406,7 +421,7 @@ public abstract class Message {
 	 */
 	public Message setPayload(String payload) {
 		if (payload == null) {
-			this.payload = null;
+			setPayload((byte[]) null);
 		} else {
 			setPayload(payload.getBytes(CoAP.UTF8_CHARSET));
 		}
@@ -421,7 +436,10 @@ public abstract class Message {
 	 * @return this Message
 	 */
 	public Message setPayload(byte[] payload) {
-		this.payload = payload;
+		if (this.payload != payload) {
+			this.payload = payload;
+			this.bytes = null;
+		}
 		return this;
 	}
 
@@ -619,10 +637,23 @@ public abstract class Message {
 
 	/**
 	 * Gets the serialized message as byte array or null if not serialized yet.
+	 * <p>
+	 * The serialized bytes are discarded when the message's type, MID, token,
+	 * options or payload are changed after the message has been serialized.
+	 * This allows re-transmissions of the message to re-use the bytes
+	 * instead of serializing the message again.
+	 * <p>
+	 * Note that changes made to the payload array or to the lists returned
+	 * by the {@link OptionSet} are not detected.
 	 *
 	 * @return the bytes of the serialized message or null
 	 */
 	public byte[] getBytes() {
+		if (bytes != null && options != null
+				&& options.getModificationCount() != serializedOptionsModificationCount) {
+			// options have been changed since serialization
+			bytes = null;
+		}
 		return bytes;
 	}
 
@@ -634,6 +665,7 @@ public abstract class Message {
 	 */
 	public void setBytes(byte[] bytes) {
 		this.bytes = bytes;
+		this.serializedOptionsModificationCount = options == null ? 0 : options.getModificationCount();
 	}
 
 	/**
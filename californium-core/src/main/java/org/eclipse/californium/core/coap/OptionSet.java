@@ -18,6 +18,8 @@
  *    Kai Hudalla - logging
  *    Achim Kraus (Bosch Software Innovations GmbH) - make getOthers() public.
  *                                                    issue #286
+ *    Bosch Software Innovations GmbH - track modifications
+ *    Bosch Software Innovations GmbH - decode received Uri-Path options lazily
  ******************************************************************************/
 package org.eclipse.californium.core.coap;
 
@@ -50,6 +52,7 @@ public final class OptionSet {
 	private Integer      uri_port; // null if no port is explicitly defined
 	private List<String> location_path_list;
 	private List<String> uri_path_list;
+	private List<byte[]> uri_path_values; // received, not yet decoded
 	private Integer      content_format;
 	private Long         max_age; // (0-4 bytes)
 	private List<String> uri_query_list;
@@ -65,6 +68,17 @@ public final class OptionSet {
 	
 	// Arbitrary options
 	private List<Option> others;
+
+	/*
+	 * The number of modifications made to this set by means of its
+	 * set, add, remove and clear methods.
+	 */
+	private int modificationCount;
+
+	/*
+	 * The number of modifications made to the Observe option.
+	 */
+	private int observeModificationCount;
 	
 	// TODO: When receiving, uri_host/port should be those from the sender 
 	/*
@@ -79,6 +93,7 @@ public final class OptionSet {
 		uri_port            = null; // from sender
 		location_path_list  = null; // new LinkedList<String>();
 		uri_path_list       = null; // new LinkedList<String>();
+		uri_path_values     = null;
 		content_format      = null;
 		max_age             = null;
 		uri_query_list      = null; // new LinkedList<String>();
@@ -96,6 +111,7 @@ public final class OptionSet {
 	}
 
 	public void clear() {
+		modified();
 		if (if_match_list != null)
 			if_match_list.clear();
 		uri_host = null;
@@ -107,6 +123,7 @@ public final class OptionSet {
 			location_path_list.clear();
 		if (uri_path_list != null)
 			uri_path_list.clear();
+		uri_path_values = null;
 		content_format = null;
 		max_age = null;
 		if (uri_query_list != null)
@@ -135,7 +152,11 @@ public final class OptionSet {
 		if_none_match       = origin.if_none_match;
 		uri_port            = origin.uri_port;
 		location_path_list  = copyList(origin.location_path_list);
-		uri_path_list       = copyList(origin.uri_path_list);
+		synchronized (origin) {
+			// keep received Uri-Path options encoded
+			uri_path_list   = copyList(origin.uri_path_list);
+			uri_path_values = origin.uri_path_values == null ? null : new ArrayList<byte[]>(origin.uri_path_values);
+		}
 		content_format      = origin.content_format;
 		max_age             = origin.max_age;
 		uri_query_list      = copyList(origin.uri_query_list);
@@ -218,6 +239,7 @@ public final class OptionSet {
 	 * @return this OptionSet
 	 */
 	public OptionSet addIfMatch(byte[] etag) {
+		modified();
 		if (etag==null)
 			throw new IllegalArgumentException("If-Match option must not be null");
 		if (etag.length > 8)
@@ -233,6 +255,7 @@ public final class OptionSet {
 	 * @return this OptionSet
 	 */
 	public OptionSet removeIfMatch(byte[] etag) {
+		modified();
 		getIfMatch().remove(etag);
 		return this;
 	}
@@ -243,6 +266,7 @@ public final class OptionSet {
 	 * @return this OptionSet
 	 */
 	public OptionSet clearIfMatchs() {
+		modified();
 		getIfMatch().clear();
 		return this;
 	}
@@ -270,6 +294,7 @@ public final class OptionSet {
 	 * @return this OptionSet
 	 */
 	public OptionSet setUriHost(String host) {
+		modified();
 		if (host==null)
 			throw new NullPointerException("URI-Host must not be null");
 		if (host.length() < 1 || 255 < host.length())
@@ -284,6 +309,7 @@ public final class OptionSet {
 	 * @return this OptionSet
 	 */
 	public OptionSet removeUriHost() {
+		modified();
 		this.uri_host = null;
 		return this;
 	}
@@ -334,6 +360,7 @@ public final class OptionSet {
 	 * @return this OptionSet
 	 */
 	public OptionSet addETag(byte[] etag) {
+		modified();
 		if (etag==null)
 			throw new IllegalArgumentException("ETag option must not be null");
 		// TODO: ProxyHttp uses ETags that are larger than 8 bytes (20).
@@ -350,6 +377,7 @@ public final class OptionSet {
 	 * @return this OptionSet
 	 */
 	public OptionSet removeETag(byte[] etag) {
+		modified();
 		getETags().remove(etag);
 		return this;
 	}
@@ -360,6 +388,7 @@ public final class OptionSet {
 	 * @return this OptionSet
 	 */
 	public OptionSet clearETags() {
+		modified();
 		getETags().clear();
 		return this;
 	}
@@ -379,6 +408,7 @@ public final class OptionSet {
 	 * @return this OptionSet
 	 */
 	public OptionSet setIfNoneMatch(boolean present) {
+		modified();
 		if_none_match = present;
 		return this;
 	}
@@ -406,6 +436,7 @@ public final class OptionSet {
 	 * @return this OptionSet
 	 */
 	public OptionSet setUriPort(int port) {
+		modified();
 		if (port < 0 || (1<<16)-1 < port)
 			throw new IllegalArgumentException("URI port option must be between 0 and "+((1<<16)-1)+" (2 bytes) inclusive but was "+port);
 		uri_port = port;
@@ -418,6 +449,7 @@ public final class OptionSet {
 	 * @return this OptionSet
 	 */
 	public OptionSet removeUriPort() {
+		modified();
 		uri_port = null;
 		return this;
 	}
@@ -478,6 +510,7 @@ public final class OptionSet {
 	 * @return this OptionSet
 	 */
 	public OptionSet addLocationPath(String segment) {
+		modified();
 		if (segment == null)
 			throw new IllegalArgumentException("Location-Path option must not be null");
 		if (segment.getBytes(CoAP.UTF8_CHARSET).length > 255)
@@ -492,6 +525,7 @@ public final class OptionSet {
 	 * @return this OptionSet
 	 */
 	public OptionSet clearLocationPath() {
+		modified();
 		getLocationPath().clear();
 		return this;
 	}
@@ -503,6 +537,7 @@ public final class OptionSet {
 	 * @return this OptionSet
 	 */
 	public OptionSet setLocationPath(String path) {
+		modified();
 		final String slash = "/";
 		
 		// remove leading slash
@@ -528,10 +563,38 @@ public final class OptionSet {
 		synchronized (this) {
 			if (uri_path_list == null)
 				uri_path_list = new LinkedList<String>();
+			if (uri_path_values != null) {
+				for (byte[] value : uri_path_values)
+					uri_path_list.add(new String(value, CoAP.UTF8_CHARSET));
+				uri_path_values = null;
+			}
 		}
 		return uri_path_list;
 	}
 
+	/**
+	 * Returns the UTF-8 encoded Uri-Path segments.
+	 * <p>
+	 * The Uri-Path options of a received message are only decoded to strings
+	 * when {@link #getUriPath()} is invoked. Until then, this method returns
+	 * the values as received without any conversion. Afterwards, the segments
+	 * are encoded on each invocation.
+	 * 
+	 * @return the encoded segments. The list and the arrays must not be
+	 *         modified.
+	 */
+	public List<byte[]> getUriPathValues() {
+		synchronized (this) {
+			if (uri_path_values != null)
+				return uri_path_values;
+		}
+		List<String> path = getUriPath();
+		List<byte[]> values = new ArrayList<byte[]>(path.size());
+		for (String segment : path)
+			values.add(segment.getBytes(CoAP.UTF8_CHARSET));
+		return values;
+	}
+
 	/**
 	 * Returns the Uri-Path options as relative URI string.
 	 * To ease splitting, it omits the leading slash.
@@ -560,6 +623,7 @@ public final class OptionSet {
 	 * @return this OptionSet
 	 */
 	public OptionSet setUriPath(String path) {
+		modified();
 		final String slash = "/";
 		
 		// remove leading slash
@@ -583,6 +647,7 @@ public final class OptionSet {
 	 * @return this OptionSet
 	 */
 	public OptionSet addUriPath(String segment) {
+		modified();
 		if (segment == null)
 			throw new IllegalArgumentException("URI path option must not be null");
 		if (segment.getBytes(CoAP.UTF8_CHARSET).length > 255)
@@ -591,12 +656,32 @@ public final class OptionSet {
 		return this;
 	}
 
+	/**
+	 * Adds a received Uri-Path option, which is decoded on demand.
+	 * 
+	 * @param value the UTF-8 encoded path segment.
+	 */
+	private void addUriPathValue(byte[] value) {
+		if (value.length > 255)
+			throw new IllegalArgumentException("Uri-Path option must be smaller or euqal to 255 bytes (UTF-8 encoded)");
+		synchronized (this) {
+			if (uri_path_list != null && !uri_path_list.isEmpty()) {
+				uri_path_list.add(new String(value, CoAP.UTF8_CHARSET));
+			} else {
+				if (uri_path_values == null)
+					uri_path_values = new ArrayList<byte[]>(4);
+				uri_path_values.add(value);
+			}
+		}
+	}
+
 	/**
 	 * Removes all Uri-Path options.
 	 * Returns the current OptionSet object for a fluent API.
 	 * @return this OptionSet
 	 */
 	public OptionSet clearUriPath() {
+		modified();
 		getUriPath().clear();
 		return this;
 	}
@@ -639,6 +724,7 @@ public final class OptionSet {
 	 * @see MediaTypeRegistry
 	 */
 	public OptionSet setContentFormat(int format) {
+		modified();
 		if (format > MediaTypeRegistry.UNDEFINED) content_format = format;
 		else content_format = null;
 		return this;
@@ -650,6 +736,7 @@ public final class OptionSet {
 	 * @return this OptionSet
 	 */
 	public OptionSet removeContentFormat() {
+		modified();
 		content_format = null;
 		return this;
 	}
@@ -679,6 +766,7 @@ public final class OptionSet {
 	 * @return this OptionSet
 	 */
 	public OptionSet setMaxAge(long age) {
+		modified();
 		if (age < 0 || ((1L<<32)-1) < age)
 			throw new IllegalArgumentException("Max-Age option must be between 0 and "+((1L<<32)-1)+" (4 bytes) inclusive");
 		max_age = age;
@@ -691,6 +779,7 @@ public final class OptionSet {
 	 * @return this Optionset
 	 */
 	public OptionSet removeMaxAge() {
+		modified();
 		max_age = null;
 		return this;
 	}
@@ -737,6 +826,7 @@ public final class OptionSet {
 	 * @return this Optionset
 	 */
 	public OptionSet setUriQuery(String query) {
+		modified();
 		while (query.startsWith("?")) query = query.substring(1);
 		
 		clearUriQuery();
@@ -756,6 +846,7 @@ public final class OptionSet {
 	 * @return this OptionSet
 	 */
 	public OptionSet addUriQuery(String argument) {
+		modified();
 		if (argument == null)
 			throw new NullPointerException("Uri-Query option must not be null");
 		if (argument.getBytes(CoAP.UTF8_CHARSET).length > 255)
@@ -771,6 +862,7 @@ public final class OptionSet {
 	 * @return this OptionSet
 	 */
 	public OptionSet removeUriQuery(String argument) {
+		modified();
 		getUriQuery().remove(argument);
 		return this;
 	}
@@ -781,6 +873,7 @@ public final class OptionSet {
 	 * @return this OptionSet
 	 */
 	public OptionSet clearUriQuery() {
+		modified();
 		getUriQuery().clear();
 		return this;
 	}
@@ -820,6 +913,7 @@ public final class OptionSet {
 	 * @see MediaTypeRegistry
 	 */
 	public OptionSet setAccept(int format) {
+		modified();
 		if (format < 0 || format > ((1<<16)-1))
 			throw new IllegalArgumentException("Accept option must be between 0 and "+((1<<16)-1)+" (2 bytes) inclusive");
 		accept = format;
@@ -832,6 +926,7 @@ public final class OptionSet {
 	 * @return this OptionSet
 	 */
 	public OptionSet removeAccept() {
+		modified();
 		accept = null;
 		return this;
 	}
@@ -877,6 +972,7 @@ public final class OptionSet {
 	 * @return this Optionset
 	 */
 	public OptionSet setLocationQuery(String query) {
+		modified();
 		while (query.startsWith("?")) query = query.substring(1);
 		
 		clearLocationQuery();
@@ -896,6 +992,7 @@ public final class OptionSet {
 	 * @return this OptionSet
 	 */
 	public OptionSet addLocationQuery(String argument) {
+		modified();
 		if (argument == null)
 			throw new NullPointerException("Location-Query option must not be null");
 		if (argument.getBytes(CoAP.UTF8_CHARSET).length > 255)
@@ -911,6 +1008,7 @@ public final class OptionSet {
 	 * @return this OptionSet
 	 */
 	public OptionSet removeLocationQuery(String argument) {
+		modified();
 		getLocationQuery().remove(argument);
 		return this;
 	}
@@ -921,6 +1019,7 @@ public final class OptionSet {
 	 * @return this OptionSet
 	 */
 	public OptionSet clearLocationQuery() {
+		modified();
 		getLocationQuery().clear();
 		return this;
 	}
@@ -948,6 +1047,7 @@ public final class OptionSet {
 	 * @return this OptionSet
 	 */
 	public OptionSet setProxyUri(String uri) {
+		modified();
 		if (uri == null)
 			throw new NullPointerException("Proxy-Uri option must not be null");
 		if (uri.getBytes(CoAP.UTF8_CHARSET).length < 1 || 1034 < uri.getBytes(CoAP.UTF8_CHARSET).length)
@@ -962,6 +1062,7 @@ public final class OptionSet {
 	 * @return this OptionSet
 	 */
 	public OptionSet removeProxyUri() {
+		modified();
 		proxy_uri = null;
 		return this;
 	}
@@ -989,6 +1090,7 @@ public final class OptionSet {
 	 * @return this OptionSet
 	 */
 	public OptionSet setProxyScheme(String scheme) {
+		modified();
 		if (scheme == null)
 			throw new NullPointerException("Proxy-Scheme option must not be null");
 		if (scheme.getBytes(CoAP.UTF8_CHARSET).length < 1 || 255 < scheme.getBytes(CoAP.UTF8_CHARSET).length)
@@ -1003,6 +1105,7 @@ public final class OptionSet {
 	 * @return this OptionSet
 	 */
 	public OptionSet removeProxyScheme() {
+		modified();
 		proxy_scheme = null;
 		return this;
 	}
@@ -1032,6 +1135,7 @@ public final class OptionSet {
 	 * @return this OptionSet
 	 */
 	public OptionSet setBlock1(int szx, boolean m, int num) {
+		modified();
 		this.block1 = new BlockOption(szx, m, num);
 		return this;
 	}
@@ -1043,6 +1147,7 @@ public final class OptionSet {
 	 * @return this OptionSet
 	 */
 	public OptionSet setBlock1(byte[] value) {
+		modified();
 		this.block1 = new BlockOption(value);
 		return this;
 	}
@@ -1054,6 +1159,7 @@ public final class OptionSet {
 	 * @return this OptionSet
 	 */
 	public OptionSet setBlock1(BlockOption block) {
+		modified();
 		this.block1 = block;
 		return this;
 	}
@@ -1064,6 +1170,7 @@ public final class OptionSet {
 	 * @return this OptionSet
 	 */
 	public OptionSet removeBlock1() {
+		modified();
 		this.block1 = null;
 		return this;
 	}
@@ -1093,6 +1200,7 @@ public final class OptionSet {
 	 * @return this OptionSet
 	 */
 	public OptionSet setBlock2(int szx, boolean m, int num) {
+		modified();
 		this.block2 = new BlockOption(szx, m, num);
 		return this;
 	}
@@ -1105,6 +1213,7 @@ public final class OptionSet {
 	 * @return this OptionSet
 	 */
 	public OptionSet setBlock2(byte[] value) {
+		modified();
 		this.block2 = new BlockOption(value);
 		return this;
 	}
@@ -1116,6 +1225,7 @@ public final class OptionSet {
 	 * @return this OptionSet
 	 */
 	public OptionSet setBlock2(BlockOption block) {
+		modified();
 		this.block2 = block;
 		return this;
 	}
@@ -1126,6 +1236,7 @@ public final class OptionSet {
 	 * @return this OptionSet
 	 */
 	public OptionSet removeBlock2() {
+		modified();
 		this.block2 = null;
 		return this;
 	}
@@ -1153,6 +1264,7 @@ public final class OptionSet {
 	 * @return this OptionSet
 	 */
 	public OptionSet setSize1(int size) {
+		modified();
 		this.size1 = size;
 		return this;
 	}
@@ -1163,6 +1275,7 @@ public final class OptionSet {
 	 * @return this OptionSet
 	 */
 	public OptionSet removeSize1() {
+		modified();
 		this.size1 = null;
 		return this;
 	}
@@ -1190,6 +1303,7 @@ public final class OptionSet {
 	 * @return this OptionSet
 	 */
 	public OptionSet setSize2(int size) {
+		modified();
 		this.size2 = size;
 		return this;
 	}
@@ -1200,6 +1314,7 @@ public final class OptionSet {
 	 * @return this OptionSet
 	 */
 	public OptionSet removeSize2() {
+		modified();
 		this.size2 = null;
 		return this;
 	}
@@ -1229,6 +1344,8 @@ public final class OptionSet {
 	 * @throws IllegalArgumentException if the given number is &lt; 0 or &gt; 2^24 - 1
 	 */
 	public OptionSet setObserve(final int seqnum) {
+		modified();
+		observeModificationCount++;
 
 		if (!isValidObserveOption(seqnum)) {
 			throw new IllegalArgumentException("Observe option must be between 0 and " + MAX_OBSERVE_NO + " (3 bytes) inclusive");
@@ -1244,6 +1361,8 @@ public final class OptionSet {
 	 * @return this OptionSet
 	 */
 	public OptionSet removeObserve() {
+		modified();
+		observeModificationCount++;
 		observe = null;
 		return this;
 	}
@@ -1311,7 +1430,7 @@ public final class OptionSet {
 			options.add(new Option(OptionNumberRegistry.URI_PORT, getUriPort()));
 		if (location_path_list != null) for (String str:location_path_list)
 			options.add(new Option(OptionNumberRegistry.LOCATION_PATH, str));
-		if (uri_path_list != null) for (String str:uri_path_list)
+		if (uri_path_list != null || uri_path_values != null) for (String str:getUriPath())
 			options.add(new Option(OptionNumberRegistry.URI_PATH, str));
 		if (hasContentFormat())
 			options.add(new Option(OptionNumberRegistry.CONTENT_FORMAT, getContentFormat()));
@@ -1353,6 +1472,7 @@ public final class OptionSet {
 	 * @return this OptionSet
 	 */
 	public OptionSet addOption(Option option) {
+		modified();
 		switch (option.getNumber()) {
 			case OptionNumberRegistry.IF_MATCH:       addIfMatch(option.getValue()); break;
 			case OptionNumberRegistry.URI_HOST:       setUriHost(option.getStringValue()); break;
@@ -1360,7 +1480,7 @@ public final class OptionSet {
 			case OptionNumberRegistry.IF_NONE_MATCH:  setIfNoneMatch(true); break;
 			case OptionNumberRegistry.URI_PORT:       setUriPort(option.getIntegerValue()); break;
 			case OptionNumberRegistry.LOCATION_PATH:  addLocationPath(option.getStringValue()); break;
-			case OptionNumberRegistry.URI_PATH:       addUriPath(option.getStringValue()); break;
+			case OptionNumberRegistry.URI_PATH:       addUriPathValue(option.getValue()); break;
 			case OptionNumberRegistry.CONTENT_FORMAT: setContentFormat(option.getIntegerValue()); break;
 			case OptionNumberRegistry.MAX_AGE:        setMaxAge(option.getLongValue()); break;
 			case OptionNumberRegistry.URI_QUERY:      addUriQuery(option.getStringValue()); break;
@@ -1378,6 +1498,33 @@ public final class OptionSet {
 		return this;
 	}
 	
+	/**
+	 * Gets the number of modifications made to this set.
+	 * <p>
+	 * Note that modifications made by means of the lists returned by
+	 * e.g. {@link #getUriPath()} are not counted.
+	 * 
+	 * @return the number of modifications.
+	 */
+	int getModificationCount() {
+		return modificationCount;
+	}
+
+	/**
+	 * Gets the number of modifications made to this set apart from the
+	 * Observe option.
+	 * 
+	 * @return the number of modifications.
+	 * @see #getModificationCount()
+	 */
+	int getModificationCountExceptObserve() {
+		return modificationCount - observeModificationCount;
+	}
+
+	private void modified() {
+		modificationCount++;
+	}
+
 	@Override
 	public String toString() {
 		StringBuilder sb = new StringBuilder();
@@ -25,6 +25,8 @@
  *                                                    set scheme on setOptions(URI)
  *    Achim Kraus (Bosch Software Innovations GmbH) - remove lazy lock for responses
  *    Achim Kraus (Bosch Software Innovations GmbH) - fix empty uri query in getURI()
+ *    Bosch Software Innovations GmbH - add handler id for observations kept
+ *                                      in an observation store
  ******************************************************************************/
 package org.eclipse.californium.core.coap;
 
@@ -116,6 +118,9 @@ public class Request extends Message {
 	/** the authenticated (remote) sender's identity **/
 	private Principal senderIdentity;
 
+	/** The id of the listener for notifications of an observation kept in a store */
+	private String notificationHandlerId;
+
 	/**
 	 * Creates a request of type {@code CON} for a CoAP code.
 	 * 
@@ -186,6 +191,38 @@ public class Request extends Message {
 		this.multicast = multicast;
 	}
 
+	/**
+	 * Gets the id of the listener for the notifications of an observation
+	 * established by this request.
+	 *
+	 * @return the id, or {@code null}, if the notifications are delivered to
+	 *         this request's message observers.
+	 */
+	public String getNotificationHandlerId() {
+		return notificationHandlerId;
+	}
+
+	/**
+	 * Sets the id of the listener for the notifications of an observation
+	 * established by this request.
+	 * <p>
+	 * If the id is set and the endpoint sending this request has an
+	 * {@link org.eclipse.californium.core.observe.ObservationStore}, the
+	 * observation is added to the store when the first notification arrives.
+	 * This first notification is delivered to this request, all following
+	 * notifications are delivered to the
+	 * {@link org.eclipse.californium.core.observe.NotificationListener}
+	 * registered at the endpoint for the id. The exchange of this request is
+	 * not kept for the observation.
+	 *
+	 * @param notificationHandlerId the id.
+	 * @return this request for command chaining.
+	 */
+	public Request setNotificationHandlerId(final String notificationHandlerId) {
+		this.notificationHandlerId = notificationHandlerId;
+		return this;
+	}
+
 	/**
 	 * {@inheritDoc}
 	 * 
@@ -20,11 +20,14 @@
  *    												  from toString() to
  *                                                    Message.getPayloadTracingString(). 
  *                                                    (for message tracing)
+ *    Bosch Software Innovations GmbH - add block source for streaming bodies
+ *    Bosch Software Innovations GmbH - add notification template
  ******************************************************************************/
 package org.eclipse.californium.core.coap;
 
 import org.eclipse.californium.core.coap.CoAP.ResponseCode;
 import org.eclipse.californium.core.network.Matcher;
+import org.eclipse.californium.core.network.serialization.NotificationTemplate;
 import org.eclipse.californium.core.network.stack.ReliabilityLayer;
 
 /**
@@ -46,6 +49,12 @@ public class Response extends Message {
 
 	private boolean last = true;
 
+	private BlockSource blockSource;
+
+	private volatile NotificationTemplate notificationTemplate;
+
+	private volatile int notificationTemplateModificationCount;
+
 	/**
 	 * Creates a response to the specified request with the specified response
 	 * code. The destination address of the response is the source address of
@@ -116,6 +125,93 @@ public class Response extends Message {
 		this.last = last;
 	}
 
+	/**
+	 * Gets the source of this response's body.
+	 *
+	 * @return the source, or {@code null}, if the body is contained in the
+	 *         payload.
+	 */
+	public BlockSource getBlockSource() {
+		return blockSource;
+	}
+
+	/**
+	 * Sets the source to read this response's body from.
+	 * <p>
+	 * Instead of the payload, the body is read from the source block by block
+	 * when the response is transferred blockwise. The source is shared by all
+	 * blocks, i.e. the body does not need to be copied into the payload of
+	 * this response. This is useful for large bodies which are transferred
+	 * to many peers, e.g. firmware images.
+	 * <p>
+	 * If the body is small enough to be sent in a single message, it is read
+	 * into the payload completely.
+	 *
+	 * @param source the source, or {@code null}, to use the payload.
+	 */
+	public void setBlockSource(BlockSource source) {
+		this.blockSource = source;
+	}
+
+	/**
+	 * Gets the size of this response's body.
+	 *
+	 * @return the size of the block source, if set, or the payload size
+	 *         otherwise.
+	 */
+	public int getBodySize() {
+		return blockSource == null ? getPayloadSize() : blockSource.size();
+	}
+
+	/**
+	 * Gets the template containing this notification's encoded options and
+	 * payload.
+	 *
+	 * @return the template, or {@code null}, if this response is encoded
+	 *         completely. The template is discarded, if the options have
+	 *         been changed (apart from the Observe option) since it has been
+	 *         set.
+	 */
+	public NotificationTemplate getNotificationTemplate() {
+		NotificationTemplate template = notificationTemplate;
+		if (template != null
+				&& getOptions().getModificationCountExceptObserve() != notificationTemplateModificationCount) {
+			// options have been changed since the template has been set
+			notificationTemplate = null;
+			return null;
+		}
+		return template;
+	}
+
+	/**
+	 * Sets the template containing this notification's encoded options and
+	 * payload.
+	 * <p>
+	 * The template is used for serializing this response, if it contains an
+	 * Observe option. It must have been created from a response with the same
+	 * options (apart from the Observe option) and payload. Setting the
+	 * payload or changing the options of this response discards the template.
+	 *
+	 * @param template the template, or {@code null}, to encode this response
+	 *            completely.
+	 */
+	public void setNotificationTemplate(NotificationTemplate template) {
+		this.notificationTemplateModificationCount = getOptions().getModificationCountExceptObserve();
+		this.notificationTemplate = template;
+	}
+
+	@Override
+	public Message setPayload(byte[] payload) {
+		notificationTemplate = null;
+		return super.setPayload(payload);
+	}
+
+	@Override
+	public Message setOptions(OptionSet options) {
+		notificationTemplate = null;
+		return super.setOptions(options);
+	}
+
 	public long getRTT() {
 		return rtt;
 	}
@@ -29,16 +29,32 @@
  *                                                    BaseMatcher final
  *    Achim Kraus (Bosch Software Innovations GmbH) - call Exchange.setComplete() for all
  *                                                    canceled messages
+ *    Bosch Software Innovations GmbH - support NIO channel based UDP connector
+ *                                      and release pooled raw data after parsing
+ *    Bosch Software Innovations GmbH - configure bounded outbound queue of UDP
+ *                                      connectors, cancel requests rejected by
+ *                                      the connector
+ *    Bosch Software Innovations GmbH - configure SO_REUSEPORT socket count
+ *    Bosch Software Innovations GmbH - process batches of received messages
+ *                                      in a single protocol stage task
+ *    Bosch Software Innovations GmbH - use hashed wheel timer, if configured
+ *    Bosch Software Innovations GmbH - process messages on per peer lanes, if configured
+ *    Bosch Software Innovations GmbH - keep client side observations in an
+ *                                      observation store
  ******************************************************************************/
 package org.eclipse.californium.core.network;
 
 import java.io.IOException;
+import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -52,6 +68,7 @@ import org.eclipse.californium.core.coap.Request;
 import org.eclipse.californium.core.coap.Response;
 import org.eclipse.californium.core.network.EndpointManager.ClientMessageDeliverer;
 import org.eclipse.californium.core.network.config.NetworkConfig;
+import org.eclipse.californium.core.network.config.NetworkConfigDefaults;
 import org.eclipse.californium.core.network.interceptors.MessageInterceptor;
 import org.eclipse.californium.core.network.serialization.DataParser;
 import org.eclipse.californium.core.network.serialization.DataSerializer;
@@ -59,21 +76,29 @@ import org.eclipse.californium.core.network.serialization.TcpDataParser;
 import org.eclipse.californium.core.network.serialization.TcpDataSerializer;
 import org.eclipse.californium.core.network.serialization.UdpDataParser;
 import org.eclipse.californium.core.network.serialization.UdpDataSerializer;
+import org.eclipse.californium.core.network.stack.BaseCoapStack;
 import org.eclipse.californium.core.network.stack.BlockwiseLayer;
-import org.eclipse.californium.core.network.stack.CoapStack;
 import org.eclipse.californium.core.network.stack.CoapTcpStack;
 import org.eclipse.californium.core.network.stack.CoapUdpStack;
 import org.eclipse.californium.core.network.stack.ObserveLayer;
 import org.eclipse.californium.core.network.stack.ReliabilityLayer;
+import org.eclipse.californium.core.observe.NotificationListener;
+import org.eclipse.californium.core.observe.Observation;
+import org.eclipse.californium.core.observe.ObservationStore;
 import org.eclipse.californium.core.server.MessageDeliverer;
+import org.eclipse.californium.elements.BatchRawDataChannel;
 import org.eclipse.californium.elements.Connector;
 import org.eclipse.californium.elements.CorrelationContext;
 import org.eclipse.californium.elements.MessageCallback;
+import org.eclipse.californium.elements.MessageErrorCallback;
+import org.eclipse.californium.elements.OutboundMessageQueue.OverflowPolicy;
 import org.eclipse.californium.elements.RawData;
 import org.eclipse.californium.elements.RawDataChannel;
+import org.eclipse.californium.elements.UDPChannelConnector;
 import org.eclipse.californium.elements.UDPConnector;
 import org.eclipse.californium.elements.tcp.TcpConnector;
 import org.eclipse.californium.elements.util.DaemonThreadFactory;
+import org.eclipse.californium.elements.util.HashedWheelTimer;
 
 /**
  * Endpoint encapsulates the stack that executes the CoAP protocol. Endpoint
@@ -138,7 +163,7 @@ public class CoapEndpoint implements Endpoint {
 	private static final Logger LOGGER = Logger.getLogger(CoapEndpoint.class.getCanonicalName());
 	
 	/** The stack of layers that make up the CoAP protocol */
-	private final CoapStack coapstack;
+	private final BaseCoapStack coapstack;
 	
 	/** The connector over which the endpoint connects to the network */
 	private final Connector connector;
@@ -157,6 +182,12 @@ public class CoapEndpoint implements Endpoint {
 
 	/** The executor to run tasks for this endpoint and its layers */
 	private ScheduledExecutorService executor;
+
+	/** The hashed wheel timer for the layers' timeouts, if configured */
+	private HashedWheelTimer timer;
+
+	/** The lanes to process the messages of the peers on, if configured */
+	private final StripedProtocolStage lanes;
 	
 	/** Indicates if the endpoint has been started */
 	private boolean started;
@@ -167,6 +198,9 @@ public class CoapEndpoint implements Endpoint {
 	/** The list of interceptors */
 	private List<MessageInterceptor> interceptors = new CopyOnWriteArrayList<>();
 
+	/** The listeners for notifications of stored observations by handler id */
+	private final ConcurrentHashMap<String, NotificationListener> notificationListeners = new ConcurrentHashMap<>();
+
 	/**
 	 * Creates a new <em>coap</em> endpoint using default configuration.
 	 * <p>
@@ -281,16 +315,63 @@ public class CoapEndpoint implements Endpoint {
 			this.serializer = new UdpDataSerializer();
 			this.parser = new UdpDataParser();
 		}
+
+		int laneCount = config.getInt(NetworkConfig.Keys.PROTOCOL_STAGE_LANES,
+				NetworkConfigDefaults.DEFAULT_PROTOCOL_STAGE_LANES);
+		if (laneCount > 0) {
+			this.lanes = new StripedProtocolStage("CoapEndpoint-Lane-", laneCount);
+			this.coapstack.setTimeoutScheduler(lanes);
+		} else {
+			this.lanes = null;
+		}
 	}
 
 	/**
 	 * Creates a new UDP connector.
+	 * <p>
+	 * The type of connector is determined by the
+	 * {@link org.eclipse.californium.core.network.config.NetworkConfig.Keys#UDP_CONNECTOR_TYPE}
+	 * configuration property.
 	 *
 	 * @param address the address
 	 * @param config the configuration
 	 * @return the connector
+	 * @throws IllegalArgumentException if the configured connector type is not supported.
 	 */
 	private static Connector createUDPConnector(final InetSocketAddress address, final NetworkConfig config) {
+		String type = config.getString(NetworkConfig.Keys.UDP_CONNECTOR_TYPE, NetworkConfigDefaults.DEFAULT_UDP_CONNECTOR_TYPE);
+		switch (type) {
+		case "SOCKET":
+			return createSocketConnector(address, config);
+		case "CHANNEL":
+			return createChannelConnector(address, config);
+		default:
+			throw new IllegalArgumentException("UDP connector type '" + type + "' not supported!");
+		}
+	}
+
+	private static Connector createChannelConnector(final InetSocketAddress address, final NetworkConfig config) {
+		UDPChannelConnector c = new UDPChannelConnector(address);
+
+		c.setReceiverThreadCount(config.getInt(NetworkConfig.Keys.NETWORK_STAGE_RECEIVER_THREAD_COUNT));
+		c.setSenderThreadCount(config.getInt(NetworkConfig.Keys.NETWORK_STAGE_SENDER_THREAD_COUNT));
+
+		c.setReceiveBufferSize(config.getInt(NetworkConfig.Keys.UDP_CONNECTOR_RECEIVE_BUFFER));
+		c.setSendBufferSize(config.getInt(NetworkConfig.Keys.UDP_CONNECTOR_SEND_BUFFER));
+		c.setReceiverPacketSize(config.getInt(NetworkConfig.Keys.UDP_CONNECTOR_DATAGRAM_SIZE));
+		c.setBufferPoolSize(config.getInt(NetworkConfig.Keys.UDP_CONNECTOR_BUFFER_POOL_SIZE,
+				NetworkConfigDefaults.DEFAULT_UDP_CONNECTOR_BUFFER_POOL_SIZE));
+		c.setSocketCount(config.getInt(NetworkConfig.Keys.UDP_CONNECTOR_SOCKET_COUNT,
+				NetworkConfigDefaults.DEFAULT_UDP_CONNECTOR_SOCKET_COUNT));
+		c.setBatchSize(config.getInt(NetworkConfig.Keys.UDP_CONNECTOR_BATCH_SIZE,
+				NetworkConfigDefaults.DEFAULT_UDP_CONNECTOR_BATCH_SIZE));
+		c.setOutboundQueue(config.getInt(NetworkConfig.Keys.UDP_CONNECTOR_OUT_CAPACITY, Integer.MAX_VALUE),
+				getOutboundOverflowPolicy(config));
+
+		return c;
+	}
+
+	private static Connector createSocketConnector(final InetSocketAddress address, final NetworkConfig config) {
 		UDPConnector c = new UDPConnector(address);
 
 		c.setReceiverThreadCount(config.getInt(NetworkConfig.Keys.NETWORK_STAGE_RECEIVER_THREAD_COUNT));
@@ -299,10 +380,24 @@ public class CoapEndpoint implements Endpoint {
 		c.setReceiveBufferSize(config.getInt(NetworkConfig.Keys.UDP_CONNECTOR_RECEIVE_BUFFER));
 		c.setSendBufferSize(config.getInt(NetworkConfig.Keys.UDP_CONNECTOR_SEND_BUFFER));
 		c.setReceiverPacketSize(config.getInt(NetworkConfig.Keys.UDP_CONNECTOR_DATAGRAM_SIZE));
+		c.setOutboundQueue(config.getInt(NetworkConfig.Keys.UDP_CONNECTOR_OUT_CAPACITY, Integer.MAX_VALUE),
+				getOutboundOverflowPolicy(config));
+		c.setBatchSize(config.getInt(NetworkConfig.Keys.UDP_CONNECTOR_BATCH_SIZE,
+				NetworkConfigDefaults.DEFAULT_UDP_CONNECTOR_BATCH_SIZE));
 
 		return c;
 	}
 
+	private static OverflowPolicy getOutboundOverflowPolicy(final NetworkConfig config) {
+		String policy = config.getString(NetworkConfig.Keys.UDP_CONNECTOR_OUT_OVERFLOW_POLICY,
+				NetworkConfigDefaults.DEFAULT_UDP_CONNECTOR_OUT_OVERFLOW_POLICY);
+		try {
+			return OverflowPolicy.valueOf(policy);
+		} catch (IllegalArgumentException e) {
+			throw new IllegalArgumentException("Outbound overflow policy '" + policy + "' not supported!");
+		}
+	}
+
 	@Override
 	public synchronized void start() throws IOException {
 		if (started) {
@@ -395,6 +490,12 @@ public class CoapEndpoint implements Endpoint {
 		}
 		connector.destroy();
 		coapstack.destroy();
+		if (timer != null) {
+			timer.shutdown();
+		}
+		if (lanes != null) {
+			lanes.shutdown();
+		}
 		for (EndpointObserver obs : observers) {
 			obs.destroyed(this);
 		}
@@ -415,6 +516,20 @@ public class CoapEndpoint implements Endpoint {
 		// TODO: don't we need to stop and shut down the previous executor?
 		this.executor = executor;
 		this.coapstack.setExecutor(executor);
+		long tick = config.getLong(NetworkConfig.Keys.HASHED_WHEEL_TIMER_TICK,
+				NetworkConfigDefaults.DEFAULT_HASHED_WHEEL_TIMER_TICK);
+		if (lanes != null) {
+			// timeouts are processed on the lane of their peer
+			this.coapstack.setTimeoutScheduler(lanes);
+		} else if (tick > 0 && executor != null) {
+			// expired timeouts are processed by the executor, like scheduled tasks
+			if (timer != null) {
+				timer.shutdown();
+			}
+			timer = new HashedWheelTimer("CoapEndpoint-Timer#", tick, TimeUnit.MILLISECONDS,
+					HashedWheelTimer.DEFAULT_TICKS_PER_WHEEL, executor);
+			this.coapstack.setTimeoutScheduler(timer);
+		}
 	}
 
 	@Override
@@ -442,10 +557,76 @@ public class CoapEndpoint implements Endpoint {
 		return Collections.unmodifiableList(interceptors);
 	}
 
+	/**
+	 * Sets the store for the observations established by requests sent via
+	 * this endpoint.
+	 * <p>
+	 * Only observations established by requests having a notification handler
+	 * id are kept in the store. Their notifications are delivered to the
+	 * notification listener registered for the handler id.
+	 *
+	 * @param store the store, or {@code null}, to keep all observations in
+	 *            their exchanges.
+	 * @throws UnsupportedOperationException if this endpoint does not use UDP.
+	 * @see Request#setNotificationHandlerId(String)
+	 * @see #addNotificationListener(String, NotificationListener)
+	 */
+	public void setObservationStore(final ObservationStore store) {
+		if (!(matcher instanceof UdpMatcher)) {
+			throw new UnsupportedOperationException("Observation store is only supported for UDP");
+		}
+		((UdpMatcher) matcher).setObservationStore(store, new NotificationListener() {
+
+			@Override
+			public void onNotification(final Observation observation, final Response response) {
+				NotificationListener listener = notificationListeners.get(observation.getHandlerId());
+				if (listener == null) {
+					LOGGER.log(Level.FINE, "No notification listener registered for {0}", observation);
+				} else {
+					listener.onNotification(observation, response);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Registers a listener for the notifications of stored observations.
+	 *
+	 * @param handlerId the notification handler id of the observations.
+	 * @param listener the listener. A listener already registered for the id
+	 *            is replaced.
+	 */
+	public void addNotificationListener(final String handlerId, final NotificationListener listener) {
+		notificationListeners.put(handlerId, listener);
+	}
+
+	/**
+	 * Removes the listener for the notifications of stored observations.
+	 *
+	 * @param handlerId the notification handler id of the observations.
+	 */
+	public void removeNotificationListener(final String handlerId) {
+		notificationListeners.remove(handlerId);
+	}
+
+	/**
+	 * Cancels a stored observation.
+	 * <p>
+	 * The observation is removed from the observation store, further
+	 * notifications are rejected.
+	 *
+	 * @param observation the observation.
+	 * @return {@code true}, if the observation has been removed from the store.
+	 */
+	public boolean cancelObservation(final Observation observation) {
+		return matcher instanceof UdpMatcher
+				&& ((UdpMatcher) matcher).cancelObservation(observation.getKey()) != null;
+	}
+
 	@Override
 	public void sendRequest(final Request request) {
 		// always use endpoint executor
-		runInProtocolStage(new Runnable() {
+		runInProtocolStage(request.getDestination(), request.getDestinationPort(), new Runnable() {
 			@Override
 			public void run() {
 				coapstack.sendRequest(request);
@@ -455,9 +636,10 @@ public class CoapEndpoint implements Endpoint {
 
 	@Override
 	public void sendResponse(final Exchange exchange, final Response response) {
-		if (exchange.hasCustomExecutor()) {
+		if (exchange.hasCustomExecutor() || lanes != null) {
 			// handle sending by protocol stage instead of business logic stage
-			runInProtocolStage(new Runnable() {
+			Request request = exchange.getRequest();
+			runInProtocolStage(request.getSource(), request.getSourcePort(), new Runnable() {
 				@Override
 				public void run() {
 					coapstack.sendResponse(exchange, response);
@@ -471,9 +653,20 @@ public class CoapEndpoint implements Endpoint {
 
 	@Override
 	public void sendEmptyMessage(final Exchange exchange, final EmptyMessage message) {
-		// send empty messages right away in the same thread to ensure execution order
-		// of CoapExchange.accept() / .reject() and similar cases.
-		coapstack.sendEmptyMessage(exchange, message);
+		if (lanes != null && message.getDestination() != null) {
+			// the peer's lane ensures the execution order of
+			// CoapExchange.accept() / .reject() and similar cases.
+			runInProtocolStage(message.getDestination(), message.getDestinationPort(), new Runnable() {
+				@Override
+				public void run() {
+					coapstack.sendEmptyMessage(exchange, message);
+				}
+			});
+		} else {
+			// send empty messages right away in the same thread to ensure execution order
+			// of CoapExchange.accept() / .reject() and similar cases.
+			coapstack.sendEmptyMessage(exchange, message);
+		}
 	}
 
 	/**
@@ -545,12 +738,20 @@ public class CoapEndpoint implements Endpoint {
 
 			} else {
 				// create callback for setting correlation context
-				MessageCallback callback = new MessageCallback() {
+				MessageCallback callback = new MessageErrorCallback() {
 
 					@Override
 					public void onContextEstablished(final CorrelationContext context) {
 						exchange.setCorrelationContext(context);
 					}
+
+					@Override
+					public void onError(final Throwable error) {
+						LOGGER.log(Level.FINE, "Connector rejected request to {0}:{1}, reason: {2}",
+								new Object[]{request.getDestination(), request.getDestinationPort(), error.getMessage()});
+						// completes the exchange by means of the ExchangeCleanupLayer
+						request.cancel();
+					}
 				};
 				RawData message = serializer.serializeRequest(request, callback);
 				connector.send(message);
@@ -624,24 +825,95 @@ public class CoapEndpoint implements Endpoint {
 	 * process the message. The task consists of invoking the matcher to look
 	 * for an associated exchange and then forwards the message with the
 	 * exchange to the stack of layers.
+	 * <p>
+	 * Connectors receiving messages in batches hand over all messages of a
+	 * batch at once, these are then processed by a single task.
 	 */
-	private class InboxImpl implements RawDataChannel {
+	private class InboxImpl implements BatchRawDataChannel {
 
 		@Override
 		public void receiveData(final RawData raw) {
-			if (raw.getAddress() == null) {
-				throw new IllegalArgumentException("received message that does not have a source address");
-			} else if (raw.getPort() == 0) {
-				throw new IllegalArgumentException("received message that does not have a source port");
-			} else {
+			try {
+				assertMessageHasSourceAddress(raw);
 
 				// Create a new task to process this message
-				runInProtocolStage(new Runnable() {
+				runInProtocolStage(raw.getAddress(), raw.getPort(), new Runnable() {
 					@Override
 					public void run() {
 						receiveMessage(raw);
 					}
 				});
+			} catch (RuntimeException e) {
+				// the message will not be processed
+				raw.release();
+				throw e;
+			}
+		}
+
+		@Override
+		public void receiveBatch(final List<RawData> batch) {
+			Iterator<RawData> iterator = batch.iterator();
+			while (iterator.hasNext()) {
+				RawData raw = iterator.next();
+				if (raw.getAddress() == null || raw.getPort() == 0) {
+					LOGGER.log(Level.FINE, "Discarding received message without source address");
+					raw.release();
+					iterator.remove();
+				}
+			}
+
+			if (lanes != null) {
+				// the messages of a batch may belong to different lanes
+				for (int index = 0; index < batch.size(); index++) {
+					final RawData raw = batch.get(index);
+					try {
+						runInProtocolStage(raw.getAddress(), raw.getPort(), new Runnable() {
+							@Override
+							public void run() {
+								receiveMessage(raw);
+							}
+						});
+					} catch (RuntimeException e) {
+						// the message and the following ones will not be processed
+						release(batch.subList(index, batch.size()));
+						throw e;
+					}
+				}
+				return;
+			}
+
+			// Create a single task to process all messages of the batch
+			try {
+				runInProtocolStage(new Runnable() {
+					@Override
+					public void run() {
+						for (RawData raw : batch) {
+							try {
+								receiveMessage(raw);
+							} catch (final RuntimeException e) {
+								LOGGER.log(Level.SEVERE, String.format("Exception in protocol stage thread: %s", e.getMessage()), e);
+							}
+						}
+					}
+				});
+			} catch (RuntimeException e) {
+				// the messages will not be processed
+				release(batch);
+				throw e;
+			}
+		}
+
+		private void release(final List<RawData> messages) {
+			for (RawData raw : messages) {
+				raw.release();
+			}
+		}
+
+		private void assertMessageHasSourceAddress(final RawData raw) {
+			if (raw.getAddress() == null) {
+				throw new IllegalArgumentException("received message that does not have a source address");
+			} else if (raw.getPort() == 0) {
+				throw new IllegalArgumentException("received message that does not have a source port");
 			}
 		}
 
@@ -656,7 +928,13 @@ public class CoapEndpoint implements Endpoint {
 			Message msg = null;
 
 			try {
-				msg = parser.parseMessage(raw);
+				try {
+					msg = parser.parseMessage(raw);
+				} finally {
+					// the parsed message does not refer to the raw bytes,
+					// so a pooled buffer can be re-used right away
+					raw.release();
+				}
 				msg.setSource(raw.getAddress());
 				msg.setSourcePort(raw.getPort());
 
@@ -797,7 +1075,29 @@ public class CoapEndpoint implements Endpoint {
 	 * @param task the task
 	 */
 	private void runInProtocolStage(final Runnable task) {
-		executor.execute(new Runnable() {
+		executor.execute(wrap(task));
+	}
+
+	/**
+	 * Execute the specified task for a peer on the protocol stage.
+	 * <p>
+	 * If the endpoint is configured to use lanes, the task is executed on the
+	 * peer's lane, otherwise on the endpoint's executor.
+	 *
+	 * @param address the peer's IP address
+	 * @param port the peer's port
+	 * @param task the task
+	 */
+	private void runInProtocolStage(final InetAddress address, final int port, final Runnable task) {
+		if (lanes == null || address == null) {
+			runInProtocolStage(task);
+		} else {
+			lanes.execute(address, port, wrap(task));
+		}
+	}
+
+	private static Runnable wrap(final Runnable task) {
+		return new Runnable() {
 			@Override
 			public void run() {
 				try {
@@ -806,6 +1106,6 @@ public class CoapEndpoint implements Endpoint {
 					LOGGER.log(Level.SEVERE, String.format("Exception in protocol stage thread: %s", t.getMessage()), t);
 				}
 			}
-		});
+		};
 	}
 }
@@ -25,6 +25,11 @@
  *    Achim Kraus (Bosch Software Innovations GmbH) - don't pass CorrelationContext to
  *                                                    ExchangeObserver.
  *                                                    issue #311
+ *    Bosch Software Innovations GmbH - pack KeyMID and KeyToken into primitives
+ *    Bosch Software Innovations GmbH - add peer hash to keys
+ *    Bosch Software Innovations GmbH - release blockwise buffers
+ *    Bosch Software Innovations GmbH - add getter for exchange observer
+ *    Bosch Software Innovations GmbH - record completion time
  ******************************************************************************/
 package org.eclipse.californium.core.network;
 
@@ -105,6 +110,9 @@ public class Exchange {
 	/** The timestamp when this exchange has been created */
 	private final long timestamp;
 
+	/** The timestamp when this exchange has been completed */
+	private volatile long completionTimestamp;
+
 	/**
 	 * The actual request that caused this exchange. Layers below the
 	 * {@link BlockwiseLayer} should only work with the {@link #currentRequest}
@@ -305,11 +313,17 @@ public class Exchange {
 
 	/**
 	 * Sets the blockwise transfer status of the request.
+	 * <p>
+	 * The buffer of a previously set status is released.
 	 * 
 	 * @param requestBlockStatus the blockwise transfer status
 	 */
 	public void setRequestBlockStatus(BlockwiseStatus requestBlockStatus) {
+		BlockwiseStatus previous = this.requestBlockStatus;
 		this.requestBlockStatus = requestBlockStatus;
+		if (previous != null && previous != requestBlockStatus) {
+			previous.releaseBuffer();
+		}
 	}
 
 	/**
@@ -366,11 +380,17 @@ public class Exchange {
 
 	/**
 	 * Sets the blockwise transfer status of the response.
+	 * <p>
+	 * The buffer of a previously set status is released.
 	 * 
 	 * @param responseBlockStatus the blockwise transfer status
 	 */
 	public void setResponseBlockStatus(BlockwiseStatus responseBlockStatus) {
+		BlockwiseStatus previous = this.responseBlockStatus;
 		this.responseBlockStatus = responseBlockStatus;
+		if (previous != null && previous != responseBlockStatus) {
+			previous.releaseBuffer();
+		}
 	}
 
 	/**
@@ -475,6 +495,16 @@ public class Exchange {
 		this.observer = observer;
 	}
 
+	/**
+	 * Gets the observer to be invoked when this exchange completes.
+	 * 
+	 * @return the observer or {@code null} if none is registered.
+	 * @see #setObserver(ExchangeObserver)
+	 */
+	public ExchangeObserver getObserver() {
+		return observer;
+	}
+
 	/**
 	 * Checks whether this exchange has an observer registered.
 	 * 
@@ -508,13 +538,26 @@ public class Exchange {
 	 * rejecting a response, or when sending the (last) response.
 	 */
 	public void setComplete() {
+		this.completionTimestamp = System.currentTimeMillis();
 		this.complete = true;
+		releaseBlockBuffers();
 		ExchangeObserver obs = this.observer;
 		if (obs != null) {
 			obs.completed(this);
 		}
 	}
 
+	private void releaseBlockBuffers() {
+		BlockwiseStatus status = requestBlockStatus;
+		if (status != null) {
+			status.releaseBuffer();
+		}
+		status = responseBlockStatus;
+		if (status != null) {
+			status.releaseBuffer();
+		}
+	}
+
 	/**
 	 * This method is only needed when the same {@link Exchange} instance uses
 	 * different tokens during its lifetime, e.g., when using a different token
@@ -533,6 +576,17 @@ public class Exchange {
 		return timestamp;
 	}
 
+	/**
+	 * Gets the time when this exchange has been marked as <em>completed</em>.
+	 * 
+	 * @return the time in milliseconds since the epoch or {@code 0}, if the
+	 *         exchange has not been completed yet.
+	 * @see #setComplete()
+	 */
+	public long getCompletionTimestamp() {
+		return completionTimestamp;
+	}
+
 	/**
 	 * Returns the CoAP observe relation that this exchange has established.
 	 * 
@@ -606,13 +660,26 @@ public class Exchange {
 	 * <p>
 	 * This class is used by the matcher to correlate messages by MID and
 	 * endpoint address.
+	 * <p>
+	 * Keys scoped to an IPv4 endpoint are packed into a single {@code long}
+	 * value so that no arrays need to be hashed or compared.
 	 */
 	public static final class KeyMID {
 
 		private static final int MAX_PORT_NO = (1 << 16) - 1;
-		private final int MID;
+		private static final int MAX_MID = (1 << 16) - 1;
+		/**
+		 * The IPv4 address, port and MID packed into a single value:
+		 * <pre>
+		 * | IPv4 address (32 bits) | port (16 bits) | MID (16 bits) |
+		 * </pre>
+		 * For other addresses only port and MID are packed.
+		 */
+		private final long packed;
+		/**
+		 * The address if it is not an IPv4 address, {@code null} otherwise.
+		 */
 		private final byte[] address;
-		private final int port;
 		private final int hash;
 
 		/**
@@ -626,34 +693,67 @@ public class Exchange {
 		 * 
 		 */
 		private KeyMID(final int mid, final byte[] address, final int port) {
-			if (mid < 0 || mid > 1 << 16) {
+			if (mid < 0 || mid > MAX_MID) {
 				throw new IllegalArgumentException("MID must be a 16 bit unsigned int: " + mid);
 			} else if (address == null) {
 				throw new NullPointerException("address must not be null");
 			} else if (port < 0 || port > MAX_PORT_NO) {
 				throw new IllegalArgumentException("Port must be a 16 bit unsigned int");
 			} else {
-				this.MID = mid;
-				this.address = address;
-				this.port = port;
-				this.hash = createHashCode();
+				long endpoint = (long) port << 16 | mid;
+				if (address.length == 4) {
+					this.packed = (toInt(address) & 0xFFFFFFFFL) << 32 | endpoint;
+					this.address = null;
+					this.hash = hash(packed);
+				} else {
+					this.packed = endpoint;
+					this.address = address;
+					this.hash = 31 * hash(packed) + Arrays.hashCode(address);
+				}
 			}
 		}
 
+		/**
+		 * Checks whether this key is represented by a single {@code long} value.
+		 * <p>
+		 * This is the case for all keys scoped to an IPv4 endpoint. Such keys
+		 * can be stored in maps using primitive {@code long} keys.
+		 * 
+		 * @return {@code true} if {@link #getPackedValue()} uniquely identifies this key.
+		 */
+		public boolean isPacked() {
+			return address == null;
+		}
+
+		/**
+		 * Gets the primitive representation of this key.
+		 * 
+		 * @return the IPv4 address, port and MID packed into a {@code long}.
+		 *         If this key is not {@linkplain #isPacked() packed}, the
+		 *         value contains the port and MID only.
+		 */
+		public long getPackedValue() {
+			return packed;
+		}
+
+		/**
+		 * Gets the hash code of the remote endpoint this key is scoped to.
+		 * <p>
+		 * All keys scoped to the same endpoint have the same peer hash,
+		 * regardless of their type.
+		 * 
+		 * @return the hash code of the endpoint's address and port.
+		 */
+		public int getPeerHash() {
+			int port = (int) (packed >>> 16) & MAX_PORT_NO;
+			return address == null ? peerHash((int) (packed >>> 32), port) : peerHash(address, port);
+		}
+
 		@Override
 		public int hashCode() {
 			return hash;
 		}
 
-		private int createHashCode() {
-			final int prime = 31;
-			int result = 1;
-			result = prime * result + MID;
-			result = prime * result + Arrays.hashCode(address);
-			result = prime * result + port;
-			return result;
-		}
-
 		@Override
 		public boolean equals(Object obj) {
 			if (this == obj)
@@ -663,19 +763,14 @@ public class Exchange {
 			if (getClass() != obj.getClass())
 				return false;
 			KeyMID other = (KeyMID) obj;
-			if (MID != other.MID)
-				return false;
-			if (!Arrays.equals(address, other.address))
-				return false;
-			if (port != other.port)
-				return false;
-			return true;
+			return packed == other.packed && Arrays.equals(address, other.address);
 		}
 
 		@Override
 		public String toString() {
-			return new StringBuilder("KeyMID[").append(MID).append(", ").append(Utils.toHexString(address)).append(":")
-					.append(port).append("]").toString();
+			byte[] addr = address == null ? toBytes((int) (packed >>> 32)) : address;
+			return new StringBuilder("KeyMID[").append(packed & MAX_MID).append(", ").append(Utils.toHexString(addr))
+					.append(":").append((packed >>> 16) & MAX_PORT_NO).append("]").toString();
 		}
 
 		/**
@@ -706,13 +801,34 @@ public class Exchange {
 	 * <p>
 	 * This class is used by the matcher to correlate messages by their token
 	 * and endpoint address.
+	 * <p>
+	 * Tokens of up to 8 bytes and IPv4 endpoints are packed into primitive
+	 * values so that no arrays need to be copied, hashed or compared.
 	 */
 	public static final class KeyToken {
 
 		private static final int MAX_PORT_NO = (1 << 16) - 1;
-		private final byte[] token;
+		private static final int MAX_PACKED_TOKEN_LENGTH = 8;
+		/**
+		 * The token bytes packed in network byte order.
+		 */
+		private final long token;
+		/**
+		 * The token length, IPv4 address and port packed into a single value:
+		 * <pre>
+		 * | unused (12 bits) | token length (4 bits) | IPv4 address (32 bits) | port (16 bits) |
+		 * </pre>
+		 * For other addresses the address bits are 0.
+		 */
+		private final long endpoint;
+		/**
+		 * The address if it is not an IPv4 address, {@code null} otherwise.
+		 */
 		private final byte[] address;
-		private final int port;
+		/**
+		 * The token if it is longer than 8 bytes, {@code null} otherwise.
+		 */
+		private final byte[] longToken;
 		private final int hash;
 
 		private KeyToken(byte[] token, byte[] address, int port) {
@@ -723,9 +839,26 @@ public class Exchange {
 			} else if (port < 0 || port > MAX_PORT_NO) {
 				throw new IllegalArgumentException("port must be a 16 bit unsigned int");
 			}
-			this.token = Arrays.copyOf(token, token.length);
-			this.address = address;
-			this.port = port;
+			long packedEndpoint = port;
+			if (address.length == 4) {
+				packedEndpoint |= (toInt(address) & 0xFFFFFFFFL) << 16;
+				this.address = null;
+			} else {
+				this.address = address;
+			}
+			if (token.length <= MAX_PACKED_TOKEN_LENGTH) {
+				long packedToken = 0;
+				for (int i = 0; i < token.length; i++) {
+					packedToken = packedToken << 8 | (token[i] & 0xFF);
+				}
+				this.token = packedToken;
+				this.longToken = null;
+				packedEndpoint |= (long) token.length << 48;
+			} else {
+				this.token = 0;
+				this.longToken = Arrays.copyOf(token, token.length);
+			}
+			this.endpoint = packedEndpoint;
 			this.hash = createHash();
 		}
 
@@ -769,17 +902,22 @@ public class Exchange {
 
 		private int createHash() {
 			final int prime = 31;
-			int result = 1;
-			result = prime * result + port;
-			result = prime * result + Arrays.hashCode(address);
-			result = prime * result + Arrays.hashCode(token);
+			int result = hash(endpoint);
+			result = prime * result + hash(token);
+			if (address != null) {
+				result = prime * result + Arrays.hashCode(address);
+			}
+			if (longToken != null) {
+				result = prime * result + Arrays.hashCode(longToken);
+			}
 			return result;
 		}
 
 		@Override
 		public String toString() {
-			return new StringBuilder("KeyToken[").append(Utils.toHexString(token)).append(", ")
-					.append(Utils.toHexString(address)).append(":").append(port).append("]").toString();
+			byte[] addr = address == null ? toBytes((int) (endpoint >>> 16)) : address;
+			return new StringBuilder("KeyToken[").append(Utils.toHexString(getToken())).append(", ")
+					.append(Utils.toHexString(addr)).append(":").append(endpoint & MAX_PORT_NO).append("]").toString();
 		}
 
 		@Override
@@ -796,20 +934,56 @@ public class Exchange {
 			if (getClass() != obj.getClass())
 				return false;
 			KeyToken other = (KeyToken) obj;
-			if (!Arrays.equals(address, other.address))
-				return false;
-			if (port != other.port)
-				return false;
-			if (!Arrays.equals(token, other.token))
-				return false;
-			return true;
+			return token == other.token && endpoint == other.endpoint && Arrays.equals(address, other.address)
+					&& Arrays.equals(longToken, other.longToken);
+		}
+
+		/**
+		 * Gets the hash code of the remote endpoint this key is scoped to.
+		 * <p>
+		 * All keys scoped to the same endpoint have the same peer hash,
+		 * regardless of their type.
+		 * 
+		 * @return the hash code of the endpoint's address and port.
+		 */
+		public int getPeerHash() {
+			int port = (int) endpoint & MAX_PORT_NO;
+			return address == null ? peerHash((int) (endpoint >>> 16), port) : peerHash(address, port);
 		}
 
 		public byte[] getToken() {
-			return Arrays.copyOf(token, token.length);
+			if (longToken != null) {
+				return Arrays.copyOf(longToken, longToken.length);
+			}
+			int length = (int) (endpoint >>> 48) & 0x0F;
+			byte[] bytes = new byte[length];
+			for (int i = 0; i < length; i++) {
+				bytes[i] = (byte) (token >>> (8 * (length - 1 - i)));
+			}
+			return bytes;
 		}
 	}
 
+	private static int toInt(final byte[] address) {
+		return (address[0] & 0xFF) << 24 | (address[1] & 0xFF) << 16 | (address[2] & 0xFF) << 8 | (address[3] & 0xFF);
+	}
+
+	private static byte[] toBytes(final int address) {
+		return new byte[] { (byte) (address >>> 24), (byte) (address >>> 16), (byte) (address >>> 8), (byte) address };
+	}
+
+	private static int hash(final long value) {
+		return (int) (value ^ (value >>> 32));
+	}
+
+	private static int peerHash(final int address, final int port) {
+		return 31 * address + port;
+	}
+
+	private static int peerHash(final byte[] address, final int port) {
+		return peerHash(address.length == 4 ? toInt(address) : Arrays.hashCode(address), port);
+	}
+
 	/**
 	 * A key based on a CoAP message's target URI that is scoped to an endpoint.
 	 * <p>
@@ -853,6 +1027,18 @@ public class Exchange {
 			return hash;
 		}
 
+		/**
+		 * Gets the hash code of the remote endpoint this key is scoped to.
+		 * <p>
+		 * All keys scoped to the same endpoint have the same peer hash,
+		 * regardless of their type.
+		 * 
+		 * @return the hash code of the endpoint's address and port.
+		 */
+		public int getPeerHash() {
+			return peerHash(address, port);
+		}
+
 		@Override
 		public boolean equals(Object o) {
 			if (!(o instanceof KeyUri))
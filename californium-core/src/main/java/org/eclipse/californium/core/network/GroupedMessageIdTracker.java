@@ -15,10 +15,14 @@
  *                                 (derived from MessageIdTracker)
  *    Achim Kraus (Bosch Software Innovations GmbH) - introduce MessageIdTracker
  *                                                    interface
+ *    Bosch Software Innovations GmbH - use compare-and-set instead of
+ *                                      synchronization
  ******************************************************************************/
 package org.eclipse.californium.core.network;
 
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 import org.eclipse.californium.core.coap.Message;
 import org.eclipse.californium.core.network.config.NetworkConfig;
@@ -38,6 +42,10 @@ import org.eclipse.californium.core.network.config.NetworkConfig;
  * last used MID of the group. This reduces the amount of memory but may take a
  * little longer to use the first MIDs of a group because they freed with the
  * lease of the last MID of the group.
+ * <p>
+ * The tracker is thread safe without using locks. The current MID is advanced
+ * by means of compare-and-set so that concurrent callers never block each
+ * other.
  */
 public class GroupedMessageIdTracker implements MessageIdTracker {
 
@@ -61,11 +69,11 @@ public class GroupedMessageIdTracker implements MessageIdTracker {
 	 * 
 	 * @see System#nanoTime()
 	 */
-	private final long midLease[];
+	private final AtomicLongArray midLease;
 	/**
 	 * Current MID.
 	 */
-	private int currentMID;
+	private final AtomicInteger currentMID;
 
 	/**
 	 * Creates a new MID group based tracker.
@@ -86,9 +94,9 @@ public class GroupedMessageIdTracker implements MessageIdTracker {
 	public GroupedMessageIdTracker(int initialMid, NetworkConfig config) {
 		exchangeLifetimeNanos = TimeUnit.MILLISECONDS.toNanos(config.getLong(NetworkConfig.Keys.EXCHANGE_LIFETIME));
 		numberOfGroups = config.getInt(NetworkConfig.Keys.MID_TRACKER_GROUPS);
-		currentMID = initialMid;
+		currentMID = new AtomicInteger(initialMid);
 		sizeOfGroups = (TOTAL_NO_OF_MIDS + numberOfGroups - 1) / numberOfGroups;
-		midLease = new long[numberOfGroups];
+		midLease = new AtomicLongArray(numberOfGroups);
 	}
 
 	/**
@@ -99,18 +107,40 @@ public class GroupedMessageIdTracker implements MessageIdTracker {
 	 */
 	public int getNextMessageId() {
 		final long now = System.nanoTime();
-		synchronized (this) {
+		while (true) {
+			int current = currentMID.get();
 			// mask mid to the 16 low bits
-			int mid = currentMID & 0x0000FFFF;
+			int mid = current & 0x0000FFFF;
 			int index = mid / sizeOfGroups;
 			int nextIndex = (index + 1) % numberOfGroups;
-			if (midLease[nextIndex] < now) {
-				midLease[index] = now + exchangeLifetimeNanos;
-				++currentMID;
+			if (midLease.get(nextIndex) >= now) {
+				if (currentMID.get() == current) {
+					return Message.NONE;
+				}
+				// another thread has advanced into the next group and
+				// leased it, retry with the current MID
+				continue;
+			}
+			if (currentMID.compareAndSet(current, current + 1)) {
+				extendLease(index, now + exchangeLifetimeNanos);
 				return mid;
 			}
+			// another thread has taken the MID, retry with the next one
+		}
+	}
+
+	/**
+	 * Sets the end of lease of a group, unless a concurrent caller has
+	 * already set a later one.
+	 * 
+	 * @param index index of the group
+	 * @param lease end of lease in nanoseconds
+	 */
+	private void extendLease(final int index, final long lease) {
+		long current = midLease.get(index);
+		while (current < lease && !midLease.compareAndSet(index, current, lease)) {
+			current = midLease.get(index);
 		}
-		return Message.NONE;
 	}
 
 	/**
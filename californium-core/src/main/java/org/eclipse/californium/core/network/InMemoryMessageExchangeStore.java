@@ -24,6 +24,8 @@
  *                                                    integrate clear() into stop()
  *    Achim Kraus (Bosch Software Innovations GmbH) - remove setContext().
  *                                                    issue #311
+ *    Bosch Software Innovations GmbH - select default token provider by
+ *                                      configuration
  ******************************************************************************/
 package org.eclipse.californium.core.network;
 
@@ -43,6 +45,7 @@ import org.eclipse.californium.core.network.Exchange.KeyMID;
 import org.eclipse.californium.core.network.Exchange.KeyToken;
 import org.eclipse.californium.core.network.Exchange.KeyUri;
 import org.eclipse.californium.core.network.config.NetworkConfig;
+import org.eclipse.californium.core.network.config.NetworkConfigDefaults;
 import org.eclipse.californium.core.network.deduplication.Deduplicator;
 import org.eclipse.californium.core.network.deduplication.DeduplicatorFactory;
 import org.eclipse.californium.elements.util.DaemonThreadFactory;
@@ -74,8 +77,8 @@ public class InMemoryMessageExchangeStore implements MessageExchangeStore {
 	 * 
 	 */
 	public InMemoryMessageExchangeStore(final NetworkConfig config) {
-		this(config, new InMemoryRandomTokenProvider(config));
-		LOGGER.log(Level.CONFIG, "using default TokenProvider {0}", InMemoryRandomTokenProvider.class.getName());
+		this(config, createTokenProvider(config));
+		LOGGER.log(Level.CONFIG, "using default TokenProvider {0}", tokenProvider.getClass().getName());
 	}
 
 	/**
@@ -97,6 +100,30 @@ public class InMemoryMessageExchangeStore implements MessageExchangeStore {
 		this.config = config;
 	}
 
+	/**
+	 * Creates the token provider selected by the
+	 * {@link org.eclipse.californium.core.network.config.NetworkConfig.Keys#TOKEN_PROVIDER}
+	 * configuration value.
+	 * 
+	 * @param config the configuration to use.
+	 * @return the token provider.
+	 * @throws NullPointerException if config is {@code null}.
+	 * @throws IllegalArgumentException if the configured token provider is not supported.
+	 */
+	static TokenProvider createTokenProvider(final NetworkConfig config) {
+		if (config == null) {
+			throw new NullPointerException("Configuration must not be null");
+		}
+		String mode = config.getString(NetworkConfig.Keys.TOKEN_PROVIDER, NetworkConfigDefaults.DEFAULT_TOKEN_PROVIDER);
+		if ("SEQUENCE".equals(mode)) {
+			return new SequenceTokenProvider(config);
+		} else if ("RANDOM".equals(mode)) {
+			return new InMemoryRandomTokenProvider(config);
+		} else {
+			throw new IllegalArgumentException("Unsupported token provider: " + mode);
+		}
+	}
+
 	private void startStatusLogging() {
 
 		final Level healthStatusLevel = Level.parse(config.getString(NetworkConfig.Keys.HEALTH_STATUS_PRINT_LEVEL, Level.FINEST.getName()));
@@ -19,6 +19,8 @@
  *                                                    interface and rename old
  *                                                    MessageIdTracker to
  *                                                    MapBasedMessageIdTracker.
+ *    Bosch Software Innovations GmbH - stripe trackers by peer address
+ *                                      instead of using a global lock
  ******************************************************************************/
 package org.eclipse.californium.core.network;
 
@@ -34,6 +36,13 @@ import org.eclipse.californium.elements.util.LeastRecentlyUsedCache;
  * <p>
  * This provider maintains an instance of {@link MessageIdTracker} for each
  * endpoint identified by IP address and port.
+ * <p>
+ * The trackers are distributed over several stripes by the hash of the peer's
+ * address. Each stripe is an LRU cache of its own, guarded by its own lock, so
+ * that threads sending messages to different peers rarely contend with each
+ * other. The trackers themselves are lock-free. The maximum number of active
+ * peers is divided evenly among the stripes, stale trackers are therefore
+ * evicted per stripe.
  */
 public class InMemoryMessageIdProvider implements MessageIdProvider {
 
@@ -41,7 +50,17 @@ public class InMemoryMessageIdProvider implements MessageIdProvider {
 		NULL, GROUPED, MAPBASED
 	}
 
-	private final LeastRecentlyUsedCache<InetSocketAddress, MessageIdTracker> trackers;
+	/**
+	 * Maximum number of stripes. Must be a power of two.
+	 */
+	private static final int MAX_STRIPES = 64;
+	/**
+	 * Minimum number of peers per stripe. Small capacities are not striped
+	 * in order to keep the exact limit of active peers.
+	 */
+	private static final int MIN_PEERS_PER_STRIPE = 1024;
+
+	private final LeastRecentlyUsedCache<InetSocketAddress, MessageIdTracker>[] trackers;
 	private final TrackerMode mode;
 	private final Random random;
 	private final NetworkConfig config;
@@ -95,9 +114,22 @@ public class InMemoryMessageIdProvider implements MessageIdProvider {
 		} else {
 			random = null;
 		}
+		int maxPeers = config.getInt(NetworkConfig.Keys.MAX_ACTIVE_PEERS, 150000);
 		// 10 minutes
-		trackers = new LeastRecentlyUsedCache<>(config.getInt(NetworkConfig.Keys.MAX_ACTIVE_PEERS, 150000),
-				config.getLong(NetworkConfig.Keys.MAX_PEER_INACTIVITY_PERIOD, 10 * 60));
+		long threshold = config.getLong(NetworkConfig.Keys.MAX_PEER_INACTIVITY_PERIOD, 10 * 60);
+		int stripes = Integer.highestOneBit(Math.max(1, Math.min(MAX_STRIPES, maxPeers / MIN_PEERS_PER_STRIPE)));
+		int peersPerStripe = (maxPeers + stripes - 1) / stripes;
+		trackers = newStripes(stripes, peersPerStripe, threshold);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static LeastRecentlyUsedCache<InetSocketAddress, MessageIdTracker>[] newStripes(final int stripes,
+			final int capacity, final long threshold) {
+		LeastRecentlyUsedCache<InetSocketAddress, MessageIdTracker>[] result = new LeastRecentlyUsedCache[stripes];
+		for (int i = 0; i < stripes; i++) {
+			result[i] = new LeastRecentlyUsedCache<>(capacity, threshold);
+		}
+		return result;
 	}
 
 	@Override
@@ -112,9 +144,19 @@ public class InMemoryMessageIdProvider implements MessageIdProvider {
 		}
 	}
 
-	private synchronized MessageIdTracker getTracker(final InetSocketAddress destination) {
-		MessageIdTracker tracker = trackers.get(destination);
-		if (tracker == null && 0 < trackers.remainingCapacity()) {
+	private MessageIdTracker getTracker(final InetSocketAddress destination) {
+		int hash = destination.hashCode();
+		LeastRecentlyUsedCache<InetSocketAddress, MessageIdTracker> stripe = trackers[(hash ^ (hash >>> 16))
+				& (trackers.length - 1)];
+		synchronized (stripe) {
+			return getTracker(stripe, destination);
+		}
+	}
+
+	private MessageIdTracker getTracker(final LeastRecentlyUsedCache<InetSocketAddress, MessageIdTracker> stripe,
+			final InetSocketAddress destination) {
+		MessageIdTracker tracker = stripe.get(destination);
+		if (tracker == null && 0 < stripe.remainingCapacity()) {
 			// create new tracker for destination lazily
 			int mid = null == random ? 0 : random.nextInt(MessageIdTracker.TOTAL_NO_OF_MIDS);
 			switch (mode) {
@@ -129,7 +171,7 @@ public class InMemoryMessageIdProvider implements MessageIdProvider {
 				tracker = new GroupedMessageIdTracker(mid, config);
 				break;
 			}
-			trackers.put(destination, tracker);
+			stripe.put(destination, tracker);
 		}
 		return tracker;
 	}
@@ -19,12 +19,14 @@
  *                                                    to MapBasedMessageIdTracker.
  *                                                    introduce MessageIdTracker
  *                                                    interface.
+ *    Bosch Software Innovations GmbH - use compare-and-set on an array of
+ *                                      leases instead of a synchronized map
  ******************************************************************************/
 package org.eclipse.californium.core.network;
 
-import java.util.HashMap;
-import java.util.Map;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 import org.eclipse.californium.core.coap.Message;
 import org.eclipse.californium.core.network.config.NetworkConfig;
@@ -39,12 +41,20 @@ import org.eclipse.californium.core.network.config.NetworkConfig;
  * The same Message ID MUST NOT be reused (in communicating with the
    same endpoint) within the EXCHANGE_LIFETIME (Section 4.8.2).
  * </pre>
+ * 
+ * The end of lease of each MID is kept in an array indexed by MID. A MID is
+ * taken by means of compare-and-set on its lease so that the tracker is
+ * thread safe without using locks.
  */
 public class MapBasedMessageIdTracker implements MessageIdTracker {
 
-	private final Map<Integer, Long> messageIds;
-	private final long exchangeLifetimeNanos; // milliseconds
-	private int counter;
+	/**
+	 * End of lease per MID in nanoseconds, {@code 0} if the MID has not been
+	 * used yet.
+	 */
+	private final AtomicLongArray messageIds;
+	private final long exchangeLifetimeNanos;
+	private final AtomicInteger counter;
 
 	/**
 	 * Creates a new tracker based on configuration values.
@@ -61,8 +71,8 @@ public class MapBasedMessageIdTracker implements MessageIdTracker {
 	 */
 	public MapBasedMessageIdTracker(int initialMid, NetworkConfig config) {
 		exchangeLifetimeNanos = TimeUnit.MILLISECONDS.toNanos(config.getLong(NetworkConfig.Keys.EXCHANGE_LIFETIME));
-		counter = initialMid;
-		messageIds = new HashMap<>(TOTAL_NO_OF_MIDS);
+		counter = new AtomicInteger(initialMid);
+		messageIds = new AtomicLongArray(TOTAL_NO_OF_MIDS);
 	}
 
 	/**
@@ -72,24 +82,19 @@ public class MapBasedMessageIdTracker implements MessageIdTracker {
 	 *         use currently.
 	 */
 	public int getNextMessageId() {
-		int result = Message.NONE;
-		boolean wrapped = false;
 		long now = System.nanoTime();
-		synchronized (messageIds) {
+		for (int attempt = 0; attempt < TOTAL_NO_OF_MIDS; attempt++) {
 			// mask mid to the 16 low bits
-			int startIdx = counter & 0x0000FFFF;
-			while (result < 0 && !wrapped) {
-				// mask mid to the 16 low bits
-				int idx = counter++ & 0x0000FFFF;
-				Long earliestUsage = messageIds.get(idx);
-				if (earliestUsage == null || now >= earliestUsage) {
-					// message Id can be safely re-used
-					result = idx;
-					messageIds.put(idx, now + exchangeLifetimeNanos);
+			int idx = counter.getAndIncrement() & 0x0000FFFF;
+			long earliestUsage = messageIds.get(idx);
+			if (earliestUsage == 0 || now >= earliestUsage) {
+				// message Id can be safely re-used, unless another thread
+				// has taken it in the meantime
+				if (messageIds.compareAndSet(idx, earliestUsage, now + exchangeLifetimeNanos)) {
+					return idx;
 				}
-				wrapped = (counter & 0x0000FFFF) == startIdx;
 			}
 		}
-		return result;
+		return Message.NONE;
 	}
 }
@@ -0,0 +1,170 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Bosch Software Innovations GmbH and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *    Bosch Software Innovations GmbH - initial creation
+ *    Bosch Software Innovations GmbH - skip tokens still in use
+ *******************************************************************************/
+package org.eclipse.californium.core.network;
+
+import java.security.SecureRandom;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.eclipse.californium.core.coap.Message;
+import org.eclipse.californium.core.network.Exchange.KeyToken;
+import org.eclipse.californium.core.network.config.NetworkConfig;
+
+/**
+ * {@link TokenProvider} that derives tokens from a sequence number.
+ * <p>
+ * Each token is created by scrambling the next value of a counter with a
+ * random secret chosen when the provider is created. The scrambling is a
+ * bijection on the configured token length, i.e. the provider does not
+ * create the same token again before the counter wraps around. For tokens of
+ * 8 bytes this will practically never happen, for shorter tokens after 2 to
+ * the power of the number of token bits requests.
+ * <p>
+ * For tokens of 8 bytes this provider neither keeps track of the tokens in
+ * use nor needs to retry on collisions, so that creating a token only
+ * requires an atomic increment, and {@link #isTokenInUse(KeyToken)} always
+ * returns {@code false}. Shorter tokens may wrap around while a token is
+ * still in use, e.g. by a long-lived observation. Such tokens are therefore
+ * tracked like by the {@link InMemoryRandomTokenProvider}, and tokens still
+ * in use are skipped. The tokens are not predictable without knowing the
+ * secret, however, they are not created by a cryptographically strong random
+ * generator. Tokens that have been set explicitly by an application are not
+ * tracked.
+ * <p>
+ * This implementation is thread-safe.
+ */
+public class SequenceTokenProvider implements TokenProvider {
+
+	private static final Logger LOGGER = Logger.getLogger(SequenceTokenProvider.class.getName());
+	private static final int MAX_TOKEN_LENGTH = 8; // bytes
+
+	private final AtomicLong sequence;
+	private final int tokenSizeLimit;
+	private final long mask;
+	private final int shift;
+	private final long secret;
+	private final long multiplier1;
+	private final long multiplier2;
+	/**
+	 * The tokens in use, {@code null} for tokens of 8 bytes.
+	 */
+	private final Set<KeyToken> usedTokens;
+
+	/**
+	 * Creates a new {@link SequenceTokenProvider}.
+	 *
+	 * @param networkConfig used to obtain the configured token size
+	 */
+	public SequenceTokenProvider(final NetworkConfig networkConfig) {
+
+		if (networkConfig == null) {
+			throw new NullPointerException("NetworkConfig must not be null");
+		}
+		SecureRandom rng = new SecureRandom();
+		int limit = networkConfig.getInt(NetworkConfig.Keys.TOKEN_SIZE_LIMIT, MAX_TOKEN_LENGTH);
+		this.tokenSizeLimit = Math.max(1, Math.min(MAX_TOKEN_LENGTH, limit));
+		int bits = tokenSizeLimit * Byte.SIZE;
+		this.mask = bits == Long.SIZE ? -1L : (1L << bits) - 1;
+		this.shift = bits / 2;
+		this.secret = rng.nextLong();
+		// odd multipliers are invertible modulo any power of two
+		this.multiplier1 = rng.nextLong() | 1L;
+		this.multiplier2 = rng.nextLong() | 1L;
+		this.sequence = new AtomicLong(rng.nextLong());
+		if (tokenSizeLimit < MAX_TOKEN_LENGTH) {
+			this.usedTokens = Collections.newSetFromMap(new ConcurrentHashMap<KeyToken, Boolean>());
+		} else {
+			this.usedTokens = null;
+		}
+		LOGGER.log(Level.CONFIG, "using sequence based tokens of {0} bytes in length", this.tokenSizeLimit);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @throws IllegalStateException if all tokens are in use.
+	 */
+	@Override
+	public KeyToken getUnusedToken(final Message message) {
+		byte[] address = message.getDestination().getAddress();
+		KeyToken result = createToken(address, message.getDestinationPort());
+		if (usedTokens != null) {
+			long attempts = 0;
+			while (!usedTokens.add(result)) {
+				if (++attempts > mask) {
+					throw new IllegalStateException("No unused token left for " + message.getDestination());
+				}
+				result = createToken(address, message.getDestinationPort());
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Releases the given token to be used again.
+	 * <p>
+	 * Does nothing for tokens of 8 bytes, they are not tracked.
+	 */
+	@Override
+	public void releaseToken(final KeyToken keyToken) {
+		if (usedTokens != null) {
+			usedTokens.remove(keyToken);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Always returns {@code false} for tokens of 8 bytes, they are not tracked.
+	 */
+	@Override
+	public boolean isTokenInUse(final KeyToken keyToken) {
+		return usedTokens != null && usedTokens.contains(keyToken);
+	}
+
+	private KeyToken createToken(final byte[] address, final int port) {
+		long value = scramble(sequence.getAndIncrement());
+		byte[] token = new byte[tokenSizeLimit];
+		for (int i = tokenSizeLimit - 1; i >= 0; i--) {
+			token[i] = (byte) value;
+			value >>>= Byte.SIZE;
+		}
+		return KeyToken.fromValues(token, address, port);
+	}
+
+	/**
+	 * Maps a sequence number to a token value.
+	 * <p>
+	 * All steps are bijective on the masked bits, so that distinct sequence
+	 * numbers (modulo the token size) always result in distinct values.
+	 *
+	 * @param value the sequence number
+	 * @return the token value
+	 */
+	private long scramble(final long value) {
+		long x = (value ^ secret) & mask;
+		x = (x * multiplier1) & mask;
+		x ^= x >>> shift;
+		x = (x * multiplier2) & mask;
+		x ^= x >>> shift;
+		return x;
+	}
+}
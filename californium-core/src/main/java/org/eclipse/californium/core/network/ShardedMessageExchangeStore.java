@@ -0,0 +1,701 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Bosch Software Innovations GmbH and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *    Bosch Software Innovations GmbH - initial creation
+ *    Bosch Software Innovations GmbH - expire by completion time, expire
+ *                                      incomplete exchanges, release tokens
+ ******************************************************************************/
+package org.eclipse.californium.core.network;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.eclipse.californium.core.coap.Message;
+import org.eclipse.californium.core.coap.Request;
+import org.eclipse.californium.core.network.Exchange.KeyMID;
+import org.eclipse.californium.core.network.Exchange.KeyToken;
+import org.eclipse.californium.core.network.Exchange.KeyUri;
+import org.eclipse.californium.core.network.config.NetworkConfig;
+import org.eclipse.californium.core.network.deduplication.Deduplicator;
+import org.eclipse.californium.core.network.deduplication.DeduplicatorFactory;
+import org.eclipse.californium.elements.util.DaemonThreadFactory;
+
+/**
+ * A {@code MessageExchangeStore} that manages all exchanges in local memory
+ * distributed over several shards.
+ * <p>
+ * Exchanges are assigned to a shard by the hash of the peer's address, i.e.
+ * all exchanges with the same peer are kept in the same shard. Each shard
+ * owns its maps of exchanges by MID, by token and of ongoing blockwise
+ * transfers as well as counters for the registered, removed and expired
+ * exchanges. Threads working on exchanges with different peers therefore
+ * rarely update the same maps or counters.
+ * </p>
+ * <p>
+ * Exchanges are normally removed by the matcher when they complete. A shard
+ * additionally expires exchanges which have completed more than
+ * EXCHANGE_LIFETIME ago but are still registered, and exchanges which have
+ * not completed within EXCHANGE_LIFETIME after they have been created. The
+ * latter excludes observations, which may last much longer. Such exchanges
+ * have leaked and are counted separately, so that leaks can be detected by
+ * means of {@link #getStatistics()} without parsing log output. The tokens
+ * of expired exchanges are released.
+ * </p>
+ * <p>
+ * Duplicate detection, message IDs and tokens are shared by all shards.
+ * </p>
+ */
+public class ShardedMessageExchangeStore implements MessageExchangeStore {
+
+	private static final Logger LOGGER = Logger.getLogger(ShardedMessageExchangeStore.class.getName());
+
+	private final Shard[] shards;
+	private final NetworkConfig config;
+	private final TokenProvider tokenProvider;
+	private final long exchangeLifetime;
+	private final long expiryInterval;
+	private boolean running = false;
+	private volatile Deduplicator deduplicator;
+	private volatile MessageIdProvider messageIdProvider;
+	private ScheduledFuture<?> statusLogger;
+	private ScheduledFuture<?> expiry;
+	private ScheduledExecutorService scheduler;
+
+	/**
+	 * Creates a new store for configuration values.
+	 * <p>
+	 * The store uses four shards per available processor and the token
+	 * provider selected by the
+	 * {@link org.eclipse.californium.core.network.config.NetworkConfig.Keys#TOKEN_PROVIDER}
+	 * configuration value.
+	 *
+	 * @param config the configuration to use.
+	 * @throws IllegalArgumentException if the configured token provider is not supported.
+	 */
+	public ShardedMessageExchangeStore(final NetworkConfig config) {
+		this(config, InMemoryMessageExchangeStore.createTokenProvider(config),
+				4 * Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Creates a new store for configuration values.
+	 * <p>
+	 * The following configuration values are used:
+	 * <ul>
+	 * <li>{@link org.eclipse.californium.core.network.config.NetworkConfig.Keys#EXCHANGE_LIFETIME}
+	 * - a completed exchange is expired, if it is still registered this
+	 * number of milliseconds after it has been completed. An exchange, which
+	 * is not an observation, is expired, if it has not been completed this
+	 * number of milliseconds after it has been created.</li>
+	 * <li>{@link org.eclipse.californium.core.network.config.NetworkConfig.Keys#MARK_AND_SWEEP_INTERVAL}
+	 * - the interval at which the shards are checked for expired exchanges
+	 * in milliseconds.</li>
+	 * </ul>
+	 *
+	 * @param config the configuration to use.
+	 * @param tokenProvider the TokenProvider which provides CoAP tokens that
+	 *            are guaranteed to be not in use.
+	 * @param shards the minimum number of shards. The number is rounded up to
+	 *            the next power of two.
+	 * @throws NullPointerException if config or token provider is
+	 *             {@code null}.
+	 * @throws IllegalArgumentException if the number of shards is &lt; 1.
+	 */
+	public ShardedMessageExchangeStore(final NetworkConfig config, final TokenProvider tokenProvider,
+			final int shards) {
+		if (config == null) {
+			throw new NullPointerException("Configuration must not be null");
+		}
+		if (tokenProvider == null) {
+			throw new NullPointerException("TokenProvider must not be null");
+		}
+		if (shards < 1) {
+			throw new IllegalArgumentException("Number of shards must be at least 1");
+		}
+		this.config = config;
+		this.tokenProvider = tokenProvider;
+		this.exchangeLifetime = config.getLong(NetworkConfig.Keys.EXCHANGE_LIFETIME);
+		this.expiryInterval = config.getLong(NetworkConfig.Keys.MARK_AND_SWEEP_INTERVAL);
+		int size = Integer.highestOneBit(shards);
+		if (size < shards) {
+			size <<= 1;
+		}
+		this.shards = new Shard[size];
+		for (int i = 0; i < size; i++) {
+			this.shards[i] = new Shard();
+		}
+	}
+
+	/**
+	 * Sets the object to use for detecting duplicate incoming messages.
+	 *
+	 * @param deduplicator the deduplicator.
+	 * @throws NullPointerException if deduplicator is {@code null}.
+	 * @throws IllegalStateException if this store is already running.
+	 */
+	public synchronized void setDeduplicator(final Deduplicator deduplicator) {
+		if (running) {
+			throw new IllegalStateException("Cannot set Deduplicator when store is already started");
+		} else if (deduplicator == null) {
+			throw new NullPointerException("Deduplicator must not be null");
+		} else {
+			this.deduplicator = deduplicator;
+		}
+	}
+
+	/**
+	 * Sets the provider to use for creating message IDs for outbound messages.
+	 *
+	 * @param provider the provider.
+	 * @throws NullPointerException if provider is {@code null}.
+	 * @throws IllegalStateException if this store is already running.
+	 */
+	public synchronized void setMessageIdProvider(final MessageIdProvider provider) {
+		if (running) {
+			throw new IllegalStateException("Cannot set messageIdProvider when store is already started");
+		} else if (provider == null) {
+			throw new NullPointerException("Message ID Provider must not be null");
+		} else {
+			this.messageIdProvider = provider;
+		}
+	}
+
+	/**
+	 * Gets the number of shards.
+	 *
+	 * @return the number of shards.
+	 */
+	public int getShardCount() {
+		return shards.length;
+	}
+
+	/**
+	 * Gets the statistics of all shards combined.
+	 *
+	 * @return the statistics.
+	 */
+	public Statistics getStatistics() {
+		Statistics total = new Statistics();
+		for (Shard shard : shards) {
+			total.add(shard);
+		}
+		return total;
+	}
+
+	/**
+	 * Gets the statistics of each shard.
+	 *
+	 * @return the statistics, one entry per shard.
+	 */
+	public List<Statistics> getShardStatistics() {
+		List<Statistics> result = new ArrayList<>(shards.length);
+		for (Shard shard : shards) {
+			Statistics statistics = new Statistics();
+			statistics.add(shard);
+			result.add(statistics);
+		}
+		return Collections.unmodifiableList(result);
+	}
+
+	private Shard getShard(final int peerHash) {
+		return shards[(peerHash ^ (peerHash >>> 16)) & (shards.length - 1)];
+	}
+
+	private void startStatusLogging() {
+
+		final Level healthStatusLevel = Level.parse(config.getString(NetworkConfig.Keys.HEALTH_STATUS_PRINT_LEVEL, Level.FINEST.getName()));
+		final int healthStatusInterval = config.getInt(NetworkConfig.Keys.HEALTH_STATUS_INTERVAL, 60); // seconds
+		if (LOGGER.isLoggable(healthStatusLevel)) {
+			statusLogger = scheduler.scheduleAtFixedRate(new Runnable() {
+
+				@Override
+				public void run() {
+					LOGGER.log(healthStatusLevel, "MessageExchangeStore contents: {0}", getStatistics());
+				}
+			}, healthStatusInterval, healthStatusInterval, TimeUnit.SECONDS);
+		}
+	}
+
+	private void startExpiry() {
+		expiry = scheduler.scheduleWithFixedDelay(new Runnable() {
+
+			@Override
+			public void run() {
+				try {
+					expire();
+				} catch (Throwable t) {
+					LOGGER.log(Level.WARNING, "Exception while expiring exchanges", t);
+				}
+			}
+		}, expiryInterval, expiryInterval, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Removes all exchanges, which have been completed more than
+	 * EXCHANGE_LIFETIME ago or have not been completed within
+	 * EXCHANGE_LIFETIME, from all shards.
+	 */
+	void expire() {
+		long oldestAllowed = System.currentTimeMillis() - exchangeLifetime;
+		for (Shard shard : shards) {
+			int expired = shard.expire(oldestAllowed, tokenProvider);
+			if (expired > 0) {
+				LOGGER.log(Level.WARNING, "expired {0} leaked exchanges", expired);
+			}
+		}
+	}
+
+	@Override
+	public boolean isEmpty() {
+		for (Shard shard : shards) {
+			if (!shard.isEmpty()) {
+				return false;
+			}
+		}
+		return deduplicator.isEmpty();
+	}
+
+	@Override
+	public int assignMessageId(final Message message) {
+		int mid = message.getMID();
+		if (Message.NONE == mid) {
+			InetSocketAddress dest = new InetSocketAddress(message.getDestination(), message.getDestinationPort());
+			mid = messageIdProvider.getNextMessageId(dest);
+			if (Message.NONE == mid) {
+				LOGGER.log(Level.WARNING, "Cannot send message to {0}, all MIDs are in use", dest);
+			} else {
+				message.setMID(mid);
+			}
+		}
+		return mid;
+	}
+
+	private int registerWithMessageId(final Exchange exchange, final Message message) {
+
+		int mid = message.getMID();
+		if (Message.NONE == mid) {
+			mid = assignMessageId(message);
+			if (Message.NONE != mid) {
+				KeyMID key = KeyMID.fromOutboundMessage(message);
+				if (getShard(key.getPeerHash()).putIfAbsent(key, exchange) != null) {
+					LOGGER.log(Level.WARNING,
+							"newly generated MID [{0}] already in use, overwriting already registered exchange", mid);
+				}
+			}
+		} else {
+			KeyMID key = KeyMID.fromOutboundMessage(message);
+			Exchange existingExchange = getShard(key.getPeerHash()).putIfAbsent(key, exchange);
+			if (existingExchange != null) {
+				if (existingExchange != exchange) {
+					throw new IllegalArgumentException(String
+							.format("message ID [%d] already in use, cannot register exchange", message.getMID()));
+				} else if (exchange.getFailedTransmissionCount() == 0) {
+					throw new IllegalArgumentException(String.format(
+							"message with already registered ID [%d] is not a re-transmission, cannot register exchange",
+							message.getMID()));
+				}
+			}
+		}
+		return mid;
+	}
+
+	private void registerWithToken(final Exchange exchange) {
+		Request request = exchange.getCurrentRequest();
+		KeyToken idByToken;
+		if (request.getToken() == null) {
+			idByToken = tokenProvider.getUnusedToken(request);
+			request.setToken(idByToken.getToken());
+		} else {
+			idByToken = KeyToken.fromOutboundMessage(request);
+			// ongoing requests may reuse token
+			if (!(exchange.getFailedTransmissionCount() > 0 || request.getOptions().hasBlock1()
+					|| request.getOptions().hasBlock2() || request.getOptions().hasObserve())
+					&& tokenProvider.isTokenInUse(idByToken)) {
+				LOGGER.log(Level.WARNING, "Manual token overrides existing open request: {0}", idByToken);
+			}
+		}
+		getShard(idByToken.getPeerHash()).put(idByToken, exchange);
+	}
+
+	@Override
+	public boolean registerOutboundRequest(final Exchange exchange) {
+
+		if (exchange == null) {
+			throw new NullPointerException("exchange must not be null");
+		} else if (exchange.getCurrentRequest() == null) {
+			throw new IllegalArgumentException("exchange does not contain a request");
+		} else {
+			int mid = registerWithMessageId(exchange, exchange.getCurrentRequest());
+			if (Message.NONE != mid) {
+				registerWithToken(exchange);
+				return true;
+			} else {
+				return false;
+			}
+		}
+	}
+
+	@Override
+	public boolean registerOutboundRequestWithTokenOnly(final Exchange exchange) {
+		if (exchange == null) {
+			throw new NullPointerException("exchange must not be null");
+		} else if (exchange.getCurrentRequest() == null) {
+			throw new IllegalArgumentException("exchange does not contain a request");
+		} else {
+			registerWithToken(exchange);
+			return true;
+		}
+	}
+
+	@Override
+	public boolean registerOutboundResponse(final Exchange exchange) {
+		if (exchange == null) {
+			throw new NullPointerException("exchange must not be null");
+		} else if (exchange.getCurrentResponse() == null) {
+			throw new IllegalArgumentException("exchange does not contain a response");
+		} else {
+			return registerWithMessageId(exchange, exchange.getCurrentResponse()) > Message.NONE;
+		}
+	}
+
+	@Override
+	public Exchange registerBlockwiseExchange(final KeyUri requestUri, final Exchange exchange) {
+		return getShard(requestUri.getPeerHash()).put(requestUri, exchange);
+	}
+
+	@Override
+	public void remove(final KeyToken token, final Exchange exchange) {
+		if (getShard(token.getPeerHash()).remove(token, exchange)) {
+			LOGGER.log(Level.FINE, "removing exchange for token {0}", new Object[] { token });
+		}
+	}
+
+	@Override
+	public Exchange remove(final KeyMID messageId, final Exchange exchange) {
+		Exchange removedExchange = getShard(messageId.getPeerHash()).remove(messageId, exchange);
+		if (null != removedExchange) {
+			LOGGER.log(Level.FINE, "removing exchange for MID {0}", new Object[] { messageId });
+		}
+		return removedExchange;
+	}
+
+	@Override
+	public void remove(final KeyUri requestUri, final Exchange exchange) {
+		if (getShard(requestUri.getPeerHash()).remove(requestUri, exchange)) {
+			LOGGER.log(Level.FINE, "removing transfer for URI {0}", requestUri);
+		}
+	}
+
+	@Override
+	public Exchange get(final KeyToken token) {
+		if (token == null) {
+			return null;
+		} else {
+			return getShard(token.getPeerHash()).exchangesByToken.get(token);
+		}
+	}
+
+	@Override
+	public Exchange get(final KeyMID messageId) {
+		if (messageId == null) {
+			return null;
+		} else {
+			return getShard(messageId.getPeerHash()).exchangesByMID.get(messageId);
+		}
+	}
+
+	@Override
+	public Exchange get(final KeyUri requestUri) {
+		if (requestUri == null) {
+			return null;
+		} else {
+			return getShard(requestUri.getPeerHash()).ongoingExchanges.get(requestUri);
+		}
+	}
+
+	@Override
+	public synchronized void start() {
+		if (!running) {
+			scheduler = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("MessageExchangeStore"));
+			startStatusLogging();
+			startExpiry();
+			if (deduplicator == null) {
+				DeduplicatorFactory factory = DeduplicatorFactory.getDeduplicatorFactory();
+				this.deduplicator = factory.createDeduplicator(config);
+			}
+			this.deduplicator.start();
+			if (messageIdProvider == null) {
+				LOGGER.log(Level.CONFIG, "no MessageIdProvider set, using default {0}", InMemoryMessageIdProvider.class.getName());
+				messageIdProvider = new InMemoryMessageIdProvider(config);
+			}
+			running = true;
+		}
+	}
+
+	/**
+	 * Stops this store and purges all registered exchanges.
+	 */
+	@Override
+	public synchronized void stop() {
+		if (running) {
+			if (statusLogger != null) {
+				statusLogger.cancel(false);
+			}
+			expiry.cancel(false);
+			scheduler.shutdown();
+			deduplicator.stop();
+			for (Shard shard : shards) {
+				shard.clear();
+			}
+			running = false;
+		}
+	}
+
+	@Override
+	public Exchange findPrevious(final KeyMID messageId, final Exchange exchange) {
+		return deduplicator.findPrevious(messageId, exchange);
+	}
+
+	@Override
+	public Exchange find(final KeyMID messageId) {
+		return deduplicator.find(messageId);
+	}
+
+	@Override
+	public void releaseToken(final KeyToken keyToken) {
+		tokenProvider.releaseToken(keyToken);
+	}
+
+	/**
+	 * The exchanges of a subset of peers.
+	 */
+	private static final class Shard {
+
+		private final ConcurrentMap<KeyMID, Exchange> exchangesByMID = new ConcurrentHashMap<>();
+		private final ConcurrentMap<KeyToken, Exchange> exchangesByToken = new ConcurrentHashMap<>();
+		private final ConcurrentMap<KeyUri, Exchange> ongoingExchanges = new ConcurrentHashMap<>();
+		private final AtomicLong registered = new AtomicLong();
+		private final AtomicLong removed = new AtomicLong();
+		private final AtomicLong expired = new AtomicLong();
+
+		private Exchange putIfAbsent(final KeyMID key, final Exchange exchange) {
+			Exchange previous = exchangesByMID.putIfAbsent(key, exchange);
+			if (previous == null) {
+				registered.incrementAndGet();
+			}
+			return previous;
+		}
+
+		private void put(final KeyToken key, final Exchange exchange) {
+			replaced(exchangesByToken.put(key, exchange), exchange);
+		}
+
+		private Exchange put(final KeyUri key, final Exchange exchange) {
+			return replaced(ongoingExchanges.put(key, exchange), exchange);
+		}
+
+		private Exchange replaced(final Exchange previous, final Exchange exchange) {
+			if (previous != exchange) {
+				registered.incrementAndGet();
+				if (previous != null) {
+					removed.incrementAndGet();
+				}
+			}
+			return previous;
+		}
+
+		private Exchange remove(final KeyMID key, final Exchange exchange) {
+			Exchange removedExchange;
+			if (null == exchange) {
+				removedExchange = exchangesByMID.remove(key);
+			} else if (exchangesByMID.remove(key, exchange)) {
+				removedExchange = exchange;
+			} else {
+				removedExchange = null;
+			}
+			if (null != removedExchange) {
+				removed.incrementAndGet();
+			}
+			return removedExchange;
+		}
+
+		private boolean remove(final KeyToken key, final Exchange exchange) {
+			return count(exchangesByToken.remove(key, exchange));
+		}
+
+		private boolean remove(final KeyUri key, final Exchange exchange) {
+			return count(ongoingExchanges.remove(key, exchange));
+		}
+
+		private boolean count(final boolean removedExchange) {
+			if (removedExchange) {
+				removed.incrementAndGet();
+			}
+			return removedExchange;
+		}
+
+		private int expire(final long oldestAllowed, final TokenProvider tokenProvider) {
+			int count = expire(exchangesByMID, oldestAllowed, null)
+					+ expire(exchangesByToken, oldestAllowed, tokenProvider)
+					+ expire(ongoingExchanges, oldestAllowed, null);
+			if (count > 0) {
+				expired.addAndGet(count);
+			}
+			return count;
+		}
+
+		private static <K> int expire(final ConcurrentMap<K, Exchange> exchanges, final long oldestAllowed,
+				final TokenProvider tokenProvider) {
+			int count = 0;
+			for (Map.Entry<K, Exchange> entry : exchanges.entrySet()) {
+				Exchange exchange = entry.getValue();
+				if (isExpired(exchange, oldestAllowed) && exchanges.remove(entry.getKey(), exchange)) {
+					LOGGER.log(Level.FINE, "expired leaked exchange {0}", entry.getKey());
+					if (tokenProvider != null) {
+						tokenProvider.releaseToken((KeyToken) entry.getKey());
+					}
+					count++;
+				}
+			}
+			return count;
+		}
+
+		private static boolean isExpired(final Exchange exchange, final long oldestAllowed) {
+			if (exchange.isComplete()) {
+				return exchange.getCompletionTimestamp() < oldestAllowed;
+			} else if (exchange.getTimestamp() >= oldestAllowed) {
+				return false;
+			}
+			// observations are not bound to the EXCHANGE_LIFETIME
+			return exchange.getRelation() == null && !isObserve(exchange.getRequest())
+					&& !isObserve(exchange.getCurrentRequest());
+		}
+
+		private static boolean isObserve(final Request request) {
+			return request != null && request.isObserve();
+		}
+
+		private boolean isEmpty() {
+			return exchangesByMID.isEmpty() && exchangesByToken.isEmpty() && ongoingExchanges.isEmpty();
+		}
+
+		private void clear() {
+			exchangesByMID.clear();
+			exchangesByToken.clear();
+			ongoingExchanges.clear();
+		}
+	}
+
+	/**
+	 * A snapshot of the number of exchanges managed by one or more shards.
+	 * <p>
+	 * The registered, removed and expired counts are accumulated since the
+	 * store has been created.
+	 */
+	public static final class Statistics {
+
+		private int exchangesByMid;
+		private int exchangesByToken;
+		private int blockwiseExchanges;
+		private long registered;
+		private long removed;
+		private long expired;
+
+		private Statistics() {
+		}
+
+		private void add(final Shard shard) {
+			exchangesByMid += shard.exchangesByMID.size();
+			exchangesByToken += shard.exchangesByToken.size();
+			blockwiseExchanges += shard.ongoingExchanges.size();
+			registered += shard.registered.get();
+			removed += shard.removed.get();
+			expired += shard.expired.get();
+		}
+
+		/**
+		 * Gets the number of exchanges currently registered by MID.
+		 *
+		 * @return the number of exchanges.
+		 */
+		public int getExchangesByMid() {
+			return exchangesByMid;
+		}
+
+		/**
+		 * Gets the number of exchanges currently registered by token.
+		 *
+		 * @return the number of exchanges.
+		 */
+		public int getExchangesByToken() {
+			return exchangesByToken;
+		}
+
+		/**
+		 * Gets the number of ongoing blockwise transfers.
+		 *
+		 * @return the number of exchanges.
+		 */
+		public int getBlockwiseExchanges() {
+			return blockwiseExchanges;
+		}
+
+		/**
+		 * Gets the number of registrations by MID, token or URI.
+		 *
+		 * @return the number of registrations.
+		 */
+		public long getRegistered() {
+			return registered;
+		}
+
+		/**
+		 * Gets the number of registrations removed by the matcher.
+		 *
+		 * @return the number of removed registrations.
+		 */
+		public long getRemoved() {
+			return removed;
+		}
+
+		/**
+		 * Gets the number of registrations of leaked exchanges removed by
+		 * expiry.
+		 *
+		 * @return the number of expired registrations.
+		 */
+		public long getExpired() {
+			return expired;
+		}
+
+		@Override
+		public String toString() {
+			return new StringBuilder().append(exchangesByMid).append(" exchanges by MID, ").append(exchangesByToken)
+					.append(" exchanges by token, ").append(blockwiseExchanges)
+					.append(" ongoing blockwise exchanges, ").append(registered).append(" registered, ")
+					.append(removed).append(" removed, ").append(expired).append(" expired").toString();
+		}
+	}
+}
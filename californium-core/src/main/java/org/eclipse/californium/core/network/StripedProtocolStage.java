@@ -0,0 +1,190 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Bosch Software Innovations GmbH and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *    Bosch Software Innovations GmbH - initial creation
+ *    Bosch Software Innovations GmbH - schedule tasks on the lane of a peer
+ *******************************************************************************/
+package org.eclipse.californium.core.network;
+
+import java.net.InetAddress;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.californium.elements.util.DaemonThreadFactory;
+import org.eclipse.californium.elements.util.TimeoutScheduler;
+
+/**
+ * A protocol stage executing the tasks of each peer on a dedicated lane.
+ * <p>
+ * The stage consists of a fixed number of lanes, each backed by a single
+ * threaded scheduled executor. Peers are assigned to a lane by the hash of
+ * their address and port, i.e. all tasks for the same peer are executed
+ * consecutively and in the order they have been submitted. Exchanges with the
+ * same peer therefore never compete for the locks in the protocol layers.
+ * </p>
+ * <p>
+ * As a {@link TimeoutScheduler} the stage schedules timeouts on the lane of
+ * the calling thread, so that e.g. retransmissions scheduled while processing
+ * a message are executed on the same lane as the message. Timeouts scheduled
+ * by other threads are distributed over all lanes, tasks of a particular peer
+ * are therefore scheduled by
+ * {@link #schedule(InetAddress, int, Runnable, long, TimeUnit)}.
+ * </p>
+ */
+public final class StripedProtocolStage implements TimeoutScheduler {
+
+	private final ScheduledExecutorService[] lanes;
+	private final ThreadLocal<ScheduledExecutorService> currentLane = new ThreadLocal<>();
+
+	/**
+	 * Creates a new stage.
+	 * <p>
+	 * The lanes' threads are created on demand.
+	 *
+	 * @param name the prefix of the names of the lanes' threads.
+	 * @param lanes the minimum number of lanes. The number is rounded up to
+	 *            the next power of two.
+	 * @throws IllegalArgumentException if the number of lanes is &lt; 1.
+	 */
+	public StripedProtocolStage(final String name, final int lanes) {
+		if (lanes < 1) {
+			throw new IllegalArgumentException("Number of lanes must be at least 1");
+		}
+		int size = Integer.highestOneBit(lanes);
+		if (size < lanes) {
+			size <<= 1;
+		}
+		this.lanes = new ScheduledExecutorService[size];
+		for (int i = 0; i < size; i++) {
+			this.lanes[i] = newLane(name + i + "#");
+		}
+	}
+
+	private ScheduledExecutorService newLane(final String name) {
+		final ThreadFactory factory = new DaemonThreadFactory(name);
+		final ScheduledExecutorService[] lane = new ScheduledExecutorService[1];
+		lane[0] = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+			@Override
+			public Thread newThread(final Runnable runnable) {
+				return factory.newThread(new Runnable() {
+
+					@Override
+					public void run() {
+						currentLane.set(lane[0]);
+						runnable.run();
+					}
+				});
+			}
+		});
+		return lane[0];
+	}
+
+	/**
+	 * Gets the number of lanes.
+	 *
+	 * @return the number of lanes.
+	 */
+	public int getLaneCount() {
+		return lanes.length;
+	}
+
+	/**
+	 * Executes a task on the lane of a peer.
+	 * <p>
+	 * If the calling thread already is the peer's lane, the task is executed
+	 * right away.
+	 *
+	 * @param address the peer's IP address.
+	 * @param port the peer's port.
+	 * @param task the task to execute.
+	 */
+	public void execute(final InetAddress address, final int port, final Runnable task) {
+		ScheduledExecutorService lane = getLane(address, port);
+		if (currentLane.get() == lane) {
+			task.run();
+		} else {
+			lane.execute(task);
+		}
+	}
+
+	/**
+	 * Schedules a task on the lane of a peer.
+	 * <p>
+	 * In contrast to {@link #execute(InetAddress, int, Runnable)}, the task is
+	 * never executed by the calling thread, not even with a delay of
+	 * {@code 0}. Tasks with the same delay are executed in the order they
+	 * have been submitted to the lane.
+	 *
+	 * @param address the peer's IP address.
+	 * @param port the peer's port.
+	 * @param task the task to schedule.
+	 * @param delay the time from now to delay execution.
+	 * @param unit the time unit of the delay.
+	 * @return a future that can be used to cancel the task.
+	 * @throws RejectedExecutionException if the stage has been shut down.
+	 */
+	public ScheduledFuture<?> schedule(final InetAddress address, final int port, final Runnable task,
+			final long delay, final TimeUnit unit) {
+		return getLane(address, port).schedule(task, delay, unit);
+	}
+
+	private ScheduledExecutorService getLane(final InetAddress address, final int port) {
+		return getLane(31 * address.hashCode() + port);
+	}
+
+	private ScheduledExecutorService getLane(final int hash) {
+		return lanes[(hash ^ (hash >>> 16)) & (lanes.length - 1)];
+	}
+
+	@Override
+	public ScheduledFuture<?> schedule(final Runnable task, final long delay, final TimeUnit unit) {
+		ScheduledExecutorService lane = currentLane.get();
+		if (lane == null) {
+			lane = getLane(System.identityHashCode(task));
+		}
+		return lane.schedule(task, delay, unit);
+	}
+
+	/**
+	 * Checks, if the stage has been shut down.
+	 *
+	 * @return {@code true}, if any of the lanes has been shut down,
+	 *         {@code false}, if all lanes still accept tasks.
+	 */
+	@Override
+	public boolean isShutdown() {
+		for (ScheduledExecutorService lane : lanes) {
+			if (lane.isShutdown()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Shuts down all lanes.
+	 * <p>
+	 * Tasks which have not been executed yet are discarded.
+	 */
+	@Override
+	public void shutdown() {
+		for (ScheduledExecutorService lane : lanes) {
+			lane.shutdownNow();
+		}
+	}
+}
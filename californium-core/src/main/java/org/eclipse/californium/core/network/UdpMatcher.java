@@ -33,6 +33,8 @@
  *                                                 Proactive observe cancellation may cause
  *                                                 errors, if they cancel not completely 
  *                                                 created notifies (before the MID is assigned).
+ * Bosch Software Innovations GmbH - match notifications to observations kept
+ *                                   in an observation store
  ******************************************************************************/
 package org.eclipse.californium.core.network;
 
@@ -42,6 +44,7 @@ import java.util.logging.Logger;
 
 import org.eclipse.californium.core.coap.CoAP.Type;
 import org.eclipse.californium.core.coap.EmptyMessage;
+import org.eclipse.californium.core.coap.MessageObserverAdapter;
 import org.eclipse.californium.core.coap.Request;
 import org.eclipse.californium.core.coap.Response;
 import org.eclipse.californium.core.network.Exchange.KeyMID;
@@ -49,6 +52,9 @@ import org.eclipse.californium.core.network.Exchange.KeyToken;
 import org.eclipse.californium.core.network.Exchange.KeyUri;
 import org.eclipse.californium.core.network.Exchange.Origin;
 import org.eclipse.californium.core.network.config.NetworkConfig;
+import org.eclipse.californium.core.observe.NotificationListener;
+import org.eclipse.californium.core.observe.Observation;
+import org.eclipse.californium.core.observe.ObservationStore;
 import org.eclipse.californium.core.observe.ObserveRelation;
 import org.eclipse.californium.elements.CorrelationContext;
 import org.eclipse.californium.elements.DtlsCorrelationContext;
@@ -63,6 +69,8 @@ public final class UdpMatcher extends BaseMatcher {
 	private final ExchangeObserver exchangeObserver = new ExchangeObserverImpl();
 	// TODO: Multicast Exchanges: should not be removed from deduplicator
 	private final boolean useStrictResponseMatching;
+	private volatile ObservationStore observationStore;
+	private volatile NotificationListener notificationListener;
 
 	/**
 	 * Creates a new matcher for running CoAP over UDP.
@@ -81,6 +89,42 @@ public final class UdpMatcher extends BaseMatcher {
 		}
 	}
 
+	/**
+	 * Sets the store for observations that are matched without an exchange.
+	 * <p>
+	 * The observation established by a request with a notification handler id
+	 * is added to the store when the first notification arrives. From then on,
+	 * the notifications are matched by means of the store and delivered to the
+	 * listener.
+	 *
+	 * @param store the store, or {@code null}, to keep all observations in
+	 *            their exchanges.
+	 * @param listener the listener for the notifications.
+	 * @see Request#setNotificationHandlerId(String)
+	 */
+	public void setObservationStore(final ObservationStore store, final NotificationListener listener) {
+		this.notificationListener = listener;
+		this.observationStore = store;
+	}
+
+	/**
+	 * Removes an observation from the observation store.
+	 * <p>
+	 * The observation's token is released and further notifications are
+	 * rejected.
+	 *
+	 * @param key the key of the observation.
+	 * @return the removed observation, or {@code null}, if there is none.
+	 */
+	public Observation cancelObservation(final KeyToken key) {
+		ObservationStore store = observationStore;
+		Observation observation = store == null ? null : store.remove(key);
+		if (observation != null) {
+			exchangeStore.releaseToken(key);
+		}
+		return observation;
+	}
+
 	@Override
 	public void sendRequest(final Exchange exchange, final Request request) {
 
@@ -204,9 +248,10 @@ public final class UdpMatcher extends BaseMatcher {
 		if (!request.getOptions().hasBlock1() && !request.getOptions().hasBlock2()) {
 
 			Exchange exchange = new Exchange(request, Origin.REMOTE);
+			// register the observer first, the deduplicator may chain it
+			exchange.setObserver(exchangeObserver);
 			Exchange previous = exchangeStore.findPrevious(idByMID, exchange);
 			if (previous == null) {
-				exchange.setObserver(exchangeObserver);
 				return exchange;
 
 			} else {
@@ -250,11 +295,11 @@ public final class UdpMatcher extends BaseMatcher {
 				 */
 
 				Exchange exchange = new Exchange(request, Origin.REMOTE);
+				exchange.setObserver(exchangeObserver);
 				Exchange previous = exchangeStore.findPrevious(idByMID, exchange);
 				if (previous == null) {
 					LOGGER.log(Level.FINER, "New ongoing request, storing {0} for {1}",
 							new Object[] { idByUri, request });
-					exchange.setObserver(exchangeObserver);
 					exchangeStore.registerBlockwiseExchange(idByUri, exchange);
 					return exchange;
 				} else {
@@ -283,6 +328,13 @@ public final class UdpMatcher extends BaseMatcher {
 
 		if (exchange == null) {
 			// There is no exchange with the given token.
+			ObservationStore store = observationStore;
+			if (store != null && response.getType() != Type.ACK) {
+				Observation observation = store.get(idByToken);
+				if (observation != null) {
+					return receiveNotification(store, observation, idByToken, idByMID, response, responseContext);
+				}
+			}
 			if (response.getType() != Type.ACK) {
 				// only act upon separate (non piggy-backed) responses
 				Exchange prev = exchangeStore.find(idByMID);
@@ -297,7 +349,7 @@ public final class UdpMatcher extends BaseMatcher {
 			}
 			// ignore response
 			return null;
-		} else if (isResponseRelatedToRequest(exchange, responseContext)) {
+		} else if (isResponseRelatedToRequest(exchange.getCorrelationContext(), responseContext)) {
 
 			if (response.getType() == Type.ACK && exchange.getCurrentRequest().getMID() != response.getMID()) {
 				// The token matches but not the MID.
@@ -329,6 +381,9 @@ public final class UdpMatcher extends BaseMatcher {
 				if (exchangeStore.remove(idByMID, exchange) != null) {
 					LOGGER.log(Level.FINE, "Closed open request [{0}]", idByMID);
 				}
+				if (response.getOptions().hasObserve()) {
+					storeObservation(exchange, idByToken, response);
+				}
 			}
 
 			return exchange;
@@ -340,23 +395,93 @@ public final class UdpMatcher extends BaseMatcher {
 		}
 	}
 
-	private boolean isResponseRelatedToRequest(final Exchange exchange, final CorrelationContext responseContext) {
-		if (exchange.getCorrelationContext() == null) {
+	/**
+	 * Moves the observation established by an exchange to the observation
+	 * store, if the exchange's request has a notification handler id.
+	 * <p>
+	 * The exchange is no longer registered for the token, the token however
+	 * stays reserved until the observation is removed from the store.
+	 */
+	private void storeObservation(final Exchange exchange, final KeyToken idByToken, final Response response) {
+		ObservationStore store = observationStore;
+		Request request = exchange.getRequest();
+		if (store != null && request != null && request == exchange.getCurrentRequest()
+				&& request.getNotificationHandlerId() != null) {
+			Observation observation = new Observation(request, exchange.getCorrelationContext(),
+					request.getNotificationHandlerId(), response.getOptions().getObserve());
+			store.add(observation);
+			exchangeStore.remove(idByToken, exchange);
+			LOGGER.log(Level.FINE, "Added {0} to observation store", observation);
+		}
+	}
+
+	/**
+	 * Matches a notification to an observation kept in the observation store.
+	 * <p>
+	 * The exchange returned is created from the observation's request. It is
+	 * only used for processing the notification, i.e., for acknowledging it
+	 * and for delivering it to the notification listener. Reordered
+	 * notifications are marked as duplicates, so that they are acknowledged
+	 * but not delivered. Notifications not received in the correlation
+	 * context of the observation's request are ignored.
+	 */
+	private Exchange receiveNotification(final ObservationStore store, final Observation observation,
+			final KeyToken idByToken, final KeyMID idByMID, final Response response,
+			final CorrelationContext responseContext) {
+
+		if (!isResponseRelatedToRequest(observation.getCorrelationContext(), responseContext)) {
+			LOGGER.log(Level.INFO,
+					"Ignoring potentially forged notification for token {0} with non-matching correlation context",
+					idByToken);
+			return null;
+		}
+
+		Exchange exchange = new Exchange(observation.createRequest(), Origin.LOCAL);
+		exchange.setRequest(exchange.getCurrentRequest());
+		Exchange previous = exchangeStore.findPrevious(idByMID, exchange);
+		if (previous != null) {
+			LOGGER.log(Level.FINER, "Received duplicate notification for stored observation: {0}", response);
+			response.setDuplicate(true);
+			return previous;
+		}
+
+		if (!response.getOptions().hasObserve()) {
+			// the server has ended the observation
+			if (store.remove(idByToken) != null) {
+				exchangeStore.releaseToken(idByToken);
+				LOGGER.log(Level.FINE, "Removed {0} from observation store", observation);
+			}
+		} else if (!observation.updateObserveNumber(response.getOptions().getObserve())) {
+			LOGGER.log(Level.FINER, "Discarding reordered notification for stored observation: {0}", response);
+			response.setDuplicate(true);
+			return exchange;
+		}
+
+		NotificationListener listener = notificationListener;
+		if (listener != null) {
+			exchange.getRequest().addMessageObserver(new NotificationDispatcher(observation, listener));
+		}
+		return exchange;
+	}
+
+	private boolean isResponseRelatedToRequest(final CorrelationContext requestContext,
+			final CorrelationContext responseContext) {
+		if (requestContext == null) {
 			// no correlation information available for request, thus any
 			// additional correlation information available in the response is ignored
 			return true;
-		} else if (exchange.getCorrelationContext().get(DtlsCorrelationContext.KEY_SESSION_ID) != null) {
+		} else if (requestContext.get(DtlsCorrelationContext.KEY_SESSION_ID) != null) {
 			// original request has been sent via a DTLS protected transport
 			// check if the response has been received in the same DTLS session
 			if (useStrictResponseMatching) {
-				return isResponseStrictlyRelatedToDtlsRequest(exchange.getCorrelationContext(), responseContext);
+				return isResponseStrictlyRelatedToDtlsRequest(requestContext, responseContext);
 			} else {
-				return isResponseRelatedToDtlsRequest(exchange.getCorrelationContext(), responseContext);
+				return isResponseRelatedToDtlsRequest(requestContext, responseContext);
 			}
 		} else {
 			// compare message context used for sending original request to context
 			// the response has been received in
-			return exchange.getCorrelationContext().equals(responseContext);
+			return requestContext.equals(responseContext);
 		}
 	}
 
@@ -419,6 +544,22 @@ public final class UdpMatcher extends BaseMatcher {
 		}
 	}
 
+	private static class NotificationDispatcher extends MessageObserverAdapter {
+
+		private final Observation observation;
+		private final NotificationListener listener;
+
+		NotificationDispatcher(final Observation observation, final NotificationListener listener) {
+			this.observation = observation;
+			this.listener = listener;
+		}
+
+		@Override
+		public void onResponse(final Response response) {
+			listener.onNotification(observation, response);
+		}
+	}
+
 	private class ExchangeObserverImpl implements ExchangeObserver {
 
 		@Override
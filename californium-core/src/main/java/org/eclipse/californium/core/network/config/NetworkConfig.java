@@ -21,6 +21,17 @@
  *    Achim Kraus (Bosch Software Innovations GmbH) - add InputStream support for environments
  *                                                    without file access.
  *    Achim Kraus (Bosch Software Innovations GmbH) - add new keys for MID tracker
+ *    Bosch Software Innovations GmbH - add keys for selecting the UDP connector type
+ *                                      and its outbound overflow policy
+ *    Bosch Software Innovations GmbH - add key for SO_REUSEPORT socket count
+ *    Bosch Software Innovations GmbH - add key for UDP connector batch size
+ *    Bosch Software Innovations GmbH - add compact deduplicator
+ *    Bosch Software Innovations GmbH - add timing wheel deduplicator
+ *    Bosch Software Innovations GmbH - add key for token provider
+ *    Bosch Software Innovations GmbH - add key for hashed wheel timer tick
+ *    Bosch Software Innovations GmbH - add key for striped protocol stage
+ *    Bosch Software Innovations GmbH - add key for shared block2 cache
+ *    Bosch Software Innovations GmbH - add key for blockwise memory budget
  ******************************************************************************/
 package org.eclipse.californium.core.network.config;
 
@@ -105,6 +116,16 @@ public final class NetworkConfig {
 		public static final String MID_TRACKER = "MID_TACKER";
 		public static final String MID_TRACKER_GROUPS = "MID_TRACKER_GROUPS";
 		public static final String TOKEN_SIZE_LIMIT = "TOKEN_SIZE_LIMIT";
+		/**
+		 * The token provider used by the default message exchange store.
+		 * <p>
+		 * Supported values are {@code RANDOM} and {@code SEQUENCE}. The
+		 * default value is {@link NetworkConfigDefaults#DEFAULT_TOKEN_PROVIDER}.
+		 * 
+		 * @see org.eclipse.californium.core.network.InMemoryRandomTokenProvider
+		 * @see org.eclipse.californium.core.network.SequenceTokenProvider
+		 */
+		public static final String TOKEN_PROVIDER = "TOKEN_PROVIDER";
 
 		/**
 		 * The block size (number of bytes) to use when doing a blockwise
@@ -152,6 +173,29 @@ public final class NetworkConfig {
 		 * {@link NetworkConfigDefaults#DEFAULT_BLOCKWISE_STATUS_LIFETIME}.
 		 */
 		public static final String BLOCKWISE_STATUS_LIFETIME = "BLOCKWISE_STATUS_LIFETIME";
+		/**
+		 * The maximum number of bytes of response bodies the blockwise layer
+		 * keeps pre-sliced into blocks in order to serve the blocks of popular
+		 * resources to many clients without invoking the resource again.
+		 * <p>
+		 * Only responses to GET requests containing an ETag are cached. The
+		 * default value of this property is
+		 * {@link NetworkConfigDefaults#DEFAULT_BLOCKWISE_CACHE_SIZE}.
+		 * <p>
+		 * A value of {@code 0} turns off the cache.
+		 */
+		public static final String BLOCKWISE_CACHE_SIZE = "BLOCKWISE_CACHE_SIZE";
+		/**
+		 * The maximum number of bytes of all buffers an endpoint uses for
+		 * assembling the bodies of inbound blockwise transfers.
+		 * <p>
+		 * Uploads exceeding the budget are rejected with 5.03 (Service
+		 * Unavailable), downloads are canceled. The default value of this
+		 * property is {@link NetworkConfigDefaults#DEFAULT_BLOCKWISE_MEMORY_BUDGET}.
+		 * <p>
+		 * A value of {@code 0} doesn't limit the number of bytes.
+		 */
+		public static final String BLOCKWISE_MEMORY_BUDGET = "BLOCKWISE_MEMORY_BUDGET";
 
 		public static final String NOTIFICATION_CHECK_INTERVAL_TIME = "NOTIFICATION_CHECK_INTERVAL";
 		public static final String NOTIFICATION_CHECK_INTERVAL_COUNT = "NOTIFICATION_CHECK_INTERVAL_COUNT";
@@ -161,13 +205,88 @@ public final class NetworkConfig {
 		public static final String CONGESTION_CONTROL_ALGORITHM = "CONGESTION_CONTROL_ALGORITHM";
 
 		public static final String PROTOCOL_STAGE_THREAD_COUNT = "PROTOCOL_STAGE_THREAD_COUNT";
+		/**
+		 * The number of single threaded lanes the protocol stage uses for
+		 * processing the messages of the peers.
+		 * <p>
+		 * If set to a value &gt; 0, all messages exchanged with the same peer
+		 * are processed on the same lane in the order they are received or
+		 * sent. The default value is
+		 * {@link NetworkConfigDefaults#DEFAULT_PROTOCOL_STAGE_LANES}, which
+		 * processes all messages on the endpoint's executor.
+		 */
+		public static final String PROTOCOL_STAGE_LANES = "PROTOCOL_STAGE_LANES";
 		public static final String NETWORK_STAGE_RECEIVER_THREAD_COUNT = "NETWORK_STAGE_RECEIVER_THREAD_COUNT";
 		public static final String NETWORK_STAGE_SENDER_THREAD_COUNT = "NETWORK_STAGE_SENDER_THREAD_COUNT";
 
 		public static final String UDP_CONNECTOR_DATAGRAM_SIZE = "UDP_CONNECTOR_DATAGRAM_SIZE";
 		public static final String UDP_CONNECTOR_RECEIVE_BUFFER = "UDP_CONNECTOR_RECEIVE_BUFFER";
 		public static final String UDP_CONNECTOR_SEND_BUFFER = "UDP_CONNECTOR_SEND_BUFFER";
+		/**
+		 * The maximum number of messages waiting to be sent by a UDP connector.
+		 * <p>
+		 * The default value of this property is {@code Integer.MAX_VALUE}
+		 * (unbounded).
+		 */
 		public static final String UDP_CONNECTOR_OUT_CAPACITY = "UDP_CONNECTOR_OUT_CAPACITY";
+		/**
+		 * The policy applied by a UDP connector when its outbound queue is
+		 * full (see {@link #UDP_CONNECTOR_OUT_CAPACITY}).
+		 * <p>
+		 * Supported values are {@code BLOCK}, {@code DROP_NEWEST},
+		 * {@code DROP_OLDEST} and {@code REJECT}.
+		 * <p>
+		 * The default value of this property is
+		 * {@link NetworkConfigDefaults#DEFAULT_UDP_CONNECTOR_OUT_OVERFLOW_POLICY}.
+		 */
+		public static final String UDP_CONNECTOR_OUT_OVERFLOW_POLICY = "UDP_CONNECTOR_OUT_OVERFLOW_POLICY";
+		/**
+		 * The implementation of the UDP connector to use for plain CoAP
+		 * endpoints.
+		 * <p>
+		 * Supported values are {@code SOCKET} (for the {@code UDPConnector}
+		 * based on a {@code DatagramSocket}) and {@code CHANNEL} (for the
+		 * {@code UDPChannelConnector} based on a NIO {@code DatagramChannel}
+		 * receiving into pooled direct buffers).
+		 * <p>
+		 * The default value of this property is
+		 * {@link NetworkConfigDefaults#DEFAULT_UDP_CONNECTOR_TYPE}.
+		 */
+		public static final String UDP_CONNECTOR_TYPE = "UDP_CONNECTOR_TYPE";
+		/**
+		 * The number of direct buffers pooled for receiving datagrams, if the
+		 * {@code CHANNEL} connector type is used.
+		 * <p>
+		 * The default value of this property is
+		 * {@link NetworkConfigDefaults#DEFAULT_UDP_CONNECTOR_BUFFER_POOL_SIZE}.
+		 */
+		public static final String UDP_CONNECTOR_BUFFER_POOL_SIZE = "UDP_CONNECTOR_BUFFER_POOL_SIZE";
+		/**
+		 * The number of sockets bound to the same port by means of
+		 * {@code SO_REUSEPORT}, if the {@code CHANNEL} connector type is used.
+		 * <p>
+		 * Each socket is served by
+		 * {@link #NETWORK_STAGE_RECEIVER_THREAD_COUNT} receiver threads, the
+		 * kernel distributes the incoming flows among the sockets.
+		 * <p>
+		 * The default value of this property is
+		 * {@link NetworkConfigDefaults#DEFAULT_UDP_CONNECTOR_SOCKET_COUNT}.
+		 */
+		public static final String UDP_CONNECTOR_SOCKET_COUNT = "UDP_CONNECTOR_SOCKET_COUNT";
+		/**
+		 * The maximum number of datagrams a UDP connector's network stage
+		 * thread processes on each wake-up.
+		 * <p>
+		 * Sender threads take up to this number of queued messages at once.
+		 * Receiver threads of the {@code CHANNEL} connector type read all
+		 * datagrams ready (up to this number) and hand them over to the
+		 * endpoint at once, which processes them in a single protocol stage
+		 * task.
+		 * <p>
+		 * The default value of this property is
+		 * {@link NetworkConfigDefaults#DEFAULT_UDP_CONNECTOR_BATCH_SIZE}.
+		 */
+		public static final String UDP_CONNECTOR_BATCH_SIZE = "UDP_CONNECTOR_BATCH_SIZE";
 
 		public static final String DEDUPLICATOR = "DEDUPLICATOR";
 		public static final String DEDUPLICATOR_MARK_AND_SWEEP = "DEDUPLICATOR_MARK_AND_SWEEP";
@@ -179,6 +298,39 @@ public final class NetworkConfig {
 		public static final String DEDUPLICATOR_CROP_ROTATION = "DEDUPLICATOR_CROP_ROTATION";
 		public static final String CROP_ROTATION_PERIOD = "CROP_ROTATION_PERIOD";
 		public static final String NO_DEDUPLICATOR = "NO_DEDUPLICATOR";
+		/**
+		 * A mark-and-sweep deduplicator that only keeps the serialized response
+		 * of completed exchanges.
+		 * 
+		 * @see org.eclipse.californium.core.network.deduplication.CompactDeduplicator
+		 */
+		public static final String DEDUPLICATOR_COMPACT = "DEDUPLICATOR_COMPACT";
+		/**
+		 * A deduplicator expiring entries by means of a hashed timing wheel.
+		 * 
+		 * @see org.eclipse.californium.core.network.deduplication.TimingWheelDeduplicator
+		 */
+		public static final String DEDUPLICATOR_TIMING_WHEEL = "DEDUPLICATOR_TIMING_WHEEL";
+		/**
+		 * The duration of a tick of the timing wheel deduplicator (in
+		 * MILLISECONDS).
+		 * <p>
+		 * The default value is
+		 * {@link NetworkConfigDefaults#DEFAULT_TIMING_WHEEL_TICK}.
+		 */
+		public static final String TIMING_WHEEL_TICK = "TIMING_WHEEL_TICK";
+		/**
+		 * The duration of a tick of the timer used for the protocol layers'
+		 * timeouts, e.g. retransmissions and blockwise clean-up (in
+		 * MILLISECONDS).
+		 * <p>
+		 * If set to a value &gt; 0, the timeouts are scheduled on a hashed
+		 * wheel timer with this precision instead of the endpoint's executor.
+		 * The default value is
+		 * {@link NetworkConfigDefaults#DEFAULT_HASHED_WHEEL_TIMER_TICK}, which
+		 * uses the endpoint's executor.
+		 */
+		public static final String HASHED_WHEEL_TIMER_TICK = "HASHED_WHEEL_TIMER_TICK";
 		public static final String USE_STRICT_RESPONSE_MATCHING = "USE_STRICT_RESPONSE_MATCHING";
 
 		public static final String HTTP_PORT = "HTTP_PORT";
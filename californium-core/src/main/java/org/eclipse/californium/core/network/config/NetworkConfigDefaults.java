@@ -21,11 +21,22 @@
  *                                                    DEFAULT_MID_TRACKER,
  *                                                    DEFAULT_MID_TRACKER_GROUPS, and
  *                                                    DEFAULT_EXCHANGE_LIFETIME
+ *    Bosch Software Innovations GmbH - add defaults for UDP connector type
+ *                                      and outbound overflow policy
+ *    Bosch Software Innovations GmbH - add default for SO_REUSEPORT socket count
+ *    Bosch Software Innovations GmbH - add default for UDP connector batch size
+ *    Bosch Software Innovations GmbH - add default for timing wheel tick
+ *    Bosch Software Innovations GmbH - add default for token provider
+ *    Bosch Software Innovations GmbH - add default for hashed wheel timer tick
+ *    Bosch Software Innovations GmbH - add default for striped protocol stage
+ *    Bosch Software Innovations GmbH - add default for shared block2 cache
+ *    Bosch Software Innovations GmbH - add default for blockwise memory budget
  ******************************************************************************/
 package org.eclipse.californium.core.network.config;
 
 import org.eclipse.californium.core.coap.CoAP;
 import org.eclipse.californium.core.network.GroupedMessageIdTracker;
+import org.eclipse.californium.elements.UDPChannelConnector;
 import org.eclipse.californium.elements.UDPConnector;
 
 /**
@@ -57,6 +68,22 @@ public class NetworkConfigDefaults {
 	 */
 	public static final int DEFAULT_BLOCKWISE_STATUS_LIFETIME = 30 * 1000; // 30 secs
 
+	/**
+	 * The default maximum number of bytes of response bodies cached by the
+	 * blockwise layer.
+	 * <p>
+	 * The default value is 0, which turns off the cache.
+	 */
+	public static final int DEFAULT_BLOCKWISE_CACHE_SIZE = 0; // bytes
+
+	/**
+	 * The default maximum number of bytes of all buffers used for assembling
+	 * inbound blockwise transfers.
+	 * <p>
+	 * The default value is 0, which doesn't limit the number of bytes.
+	 */
+	public static final long DEFAULT_BLOCKWISE_MEMORY_BUDGET = 0L; // bytes
+
 	/**
 	 * The default MID tracker.
 	 * 
@@ -73,6 +100,15 @@ public class NetworkConfigDefaults {
 	 */
 	public static final int DEFAULT_MID_TRACKER_GROUPS = 16;
 
+	/**
+	 * The default token provider.
+	 * 
+	 * Supported values are {@code RANDOM} or {@code SEQUENCE}.
+	 * <p>
+	 * The default value is {@code RANDOM}.
+	 */
+	public static final String DEFAULT_TOKEN_PROVIDER = "RANDOM";
+
 	/**
 	 * The default exchange lifetime in milliseconds.
 	 * <p>
@@ -80,6 +116,74 @@ public class NetworkConfigDefaults {
 	 */
 	public static final long DEFAULT_EXCHANGE_LIFETIME = 247 * 1000;
 
+	/**
+	 * The default UDP connector type.
+	 * 
+	 * Supported values are {@code SOCKET} or {@code CHANNEL}.
+	 * <p>
+	 * The default value is {@code SOCKET}.
+	 */
+	public static final String DEFAULT_UDP_CONNECTOR_TYPE = "SOCKET";
+
+	/**
+	 * The default number of pooled receive buffers of the {@code CHANNEL}
+	 * UDP connector.
+	 * <p>
+	 * The default value is 256.
+	 */
+	public static final int DEFAULT_UDP_CONNECTOR_BUFFER_POOL_SIZE = UDPChannelConnector.DEFAULT_BUFFER_POOL_SIZE;
+
+	/**
+	 * The default number of sockets the {@code CHANNEL} UDP connector binds to
+	 * the same port.
+	 * <p>
+	 * The default value is 1.
+	 */
+	public static final int DEFAULT_UDP_CONNECTOR_SOCKET_COUNT = 1;
+
+	/**
+	 * The default number of datagrams processed by a UDP connector's network
+	 * stage thread on each wake-up.
+	 * <p>
+	 * The default value is 1, i.e. batching is disabled.
+	 */
+	public static final int DEFAULT_UDP_CONNECTOR_BATCH_SIZE = 1;
+
+	/**
+	 * The default duration of a tick of the timing wheel deduplicator in
+	 * milliseconds.
+	 * <p>
+	 * The default value is 1000.
+	 */
+	public static final long DEFAULT_TIMING_WHEEL_TICK = 1000L;
+
+	/**
+	 * The default duration of a tick of the protocol layers' timer in
+	 * milliseconds.
+	 * <p>
+	 * The default value is 0, which schedules the timeouts on the endpoint's
+	 * executor.
+	 */
+	public static final long DEFAULT_HASHED_WHEEL_TIMER_TICK = 0L;
+
+	/**
+	 * The default number of lanes of the protocol stage.
+	 * <p>
+	 * The default value is 0, which processes all messages on the endpoint's
+	 * executor.
+	 */
+	public static final int DEFAULT_PROTOCOL_STAGE_LANES = 0;
+
+	/**
+	 * The default policy of UDP connectors when the outbound queue is full.
+	 * 
+	 * Supported values are {@code BLOCK}, {@code DROP_NEWEST},
+	 * {@code DROP_OLDEST}, or {@code REJECT}.
+	 * <p>
+	 * The default value is {@code BLOCK}.
+	 */
+	public static final String DEFAULT_UDP_CONNECTOR_OUT_OVERFLOW_POLICY = "BLOCK";
+
 	/*
 	 * Accept other message versions than 1
 	 * Refuse unknown options
@@ -113,11 +217,14 @@ public class NetworkConfigDefaults {
 		config.setString(NetworkConfig.Keys.MID_TRACKER, DEFAULT_MID_TRACKER);
 		config.setInt(NetworkConfig.Keys.MID_TRACKER_GROUPS, DEFAULT_MID_TRACKER_GROUPS);
 		config.setInt(NetworkConfig.Keys.TOKEN_SIZE_LIMIT, 8);
+		config.setString(NetworkConfig.Keys.TOKEN_PROVIDER, DEFAULT_TOKEN_PROVIDER);
 
 		config.setInt(NetworkConfig.Keys.PREFERRED_BLOCK_SIZE, 512);
 		config.setInt(NetworkConfig.Keys.MAX_MESSAGE_SIZE, 1024);
 		config.setInt(NetworkConfig.Keys.MAX_RESOURCE_BODY_SIZE, DEFAULT_MAX_RESOURCE_BODY_SIZE);
 		config.setInt(NetworkConfig.Keys.BLOCKWISE_STATUS_LIFETIME, DEFAULT_BLOCKWISE_STATUS_LIFETIME); // ms
+		config.setInt(NetworkConfig.Keys.BLOCKWISE_CACHE_SIZE, DEFAULT_BLOCKWISE_CACHE_SIZE); // bytes
+		config.setLong(NetworkConfig.Keys.BLOCKWISE_MEMORY_BUDGET, DEFAULT_BLOCKWISE_MEMORY_BUDGET); // bytes
 
 		config.setLong(NetworkConfig.Keys.NOTIFICATION_CHECK_INTERVAL_TIME, 24 * 60 * 60 * 1000); // ms
 		config.setInt(NetworkConfig.Keys.NOTIFICATION_CHECK_INTERVAL_COUNT, 100);
@@ -127,6 +234,7 @@ public class NetworkConfigDefaults {
 		config.setString(NetworkConfig.Keys.CONGESTION_CONTROL_ALGORITHM, "Cocoa"); // see org.eclipse.californium.core.network.stack.congestioncontrol
 
 		config.setInt(NetworkConfig.Keys.PROTOCOL_STAGE_THREAD_COUNT, CORES);
+		config.setInt(NetworkConfig.Keys.PROTOCOL_STAGE_LANES, DEFAULT_PROTOCOL_STAGE_LANES);
 		config.setInt(NetworkConfig.Keys.NETWORK_STAGE_RECEIVER_THREAD_COUNT, WINDOWS ? CORES : 1);
 		config.setInt(NetworkConfig.Keys.NETWORK_STAGE_SENDER_THREAD_COUNT, WINDOWS ? CORES : 1);
 
@@ -134,10 +242,17 @@ public class NetworkConfigDefaults {
 		config.setInt(NetworkConfig.Keys.UDP_CONNECTOR_RECEIVE_BUFFER, UDPConnector.UNDEFINED);
 		config.setInt(NetworkConfig.Keys.UDP_CONNECTOR_SEND_BUFFER, UDPConnector.UNDEFINED);
 		config.setInt(NetworkConfig.Keys.UDP_CONNECTOR_OUT_CAPACITY, Integer.MAX_VALUE); // unbounded
+		config.setString(NetworkConfig.Keys.UDP_CONNECTOR_OUT_OVERFLOW_POLICY, DEFAULT_UDP_CONNECTOR_OUT_OVERFLOW_POLICY);
+		config.setString(NetworkConfig.Keys.UDP_CONNECTOR_TYPE, DEFAULT_UDP_CONNECTOR_TYPE);
+		config.setInt(NetworkConfig.Keys.UDP_CONNECTOR_BUFFER_POOL_SIZE, DEFAULT_UDP_CONNECTOR_BUFFER_POOL_SIZE);
+		config.setInt(NetworkConfig.Keys.UDP_CONNECTOR_SOCKET_COUNT, DEFAULT_UDP_CONNECTOR_SOCKET_COUNT);
+		config.setInt(NetworkConfig.Keys.UDP_CONNECTOR_BATCH_SIZE, DEFAULT_UDP_CONNECTOR_BATCH_SIZE);
 
 		config.setString(NetworkConfig.Keys.DEDUPLICATOR, NetworkConfig.Keys.DEDUPLICATOR_MARK_AND_SWEEP);
 		config.setLong(NetworkConfig.Keys.MARK_AND_SWEEP_INTERVAL, 10 * 1000); // 10 secs
 		config.setInt(NetworkConfig.Keys.CROP_ROTATION_PERIOD, 2000);
+		config.setLong(NetworkConfig.Keys.TIMING_WHEEL_TICK, DEFAULT_TIMING_WHEEL_TICK);
+		config.setLong(NetworkConfig.Keys.HASHED_WHEEL_TIMER_TICK, DEFAULT_HASHED_WHEEL_TIMER_TICK);
 		config.setBoolean(NetworkConfig.Keys.USE_STRICT_RESPONSE_MATCHING, false);
 
 		config.setInt(NetworkConfig.Keys.HTTP_PORT, 8080);
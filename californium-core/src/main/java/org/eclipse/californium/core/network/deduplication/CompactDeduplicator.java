@@ -0,0 +1,466 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Bosch Software Innovations GmbH and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *    Bosch Software Innovations GmbH - initial creation
+ *    Bosch Software Innovations GmbH - use packed keys and compact exchanges
+ *                                      as soon as they complete
+ ******************************************************************************/
+package org.eclipse.californium.core.network.deduplication;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.eclipse.californium.core.coap.CoAP.Type;
+import org.eclipse.californium.core.coap.Message;
+import org.eclipse.californium.core.coap.Request;
+import org.eclipse.californium.core.coap.Response;
+import org.eclipse.californium.core.network.Exchange;
+import org.eclipse.californium.core.network.Exchange.KeyMID;
+import org.eclipse.californium.core.network.Exchange.Origin;
+import org.eclipse.californium.core.network.ExchangeObserver;
+import org.eclipse.californium.core.network.config.NetworkConfig;
+import org.eclipse.californium.core.network.serialization.UdpDataParser;
+import org.eclipse.californium.core.network.serialization.UdpDataSerializer;
+import org.eclipse.californium.elements.util.DaemonThreadFactory;
+
+/**
+ * A deduplicator that keeps only the information required for answering
+ * duplicates of completed exchanges.
+ * <p>
+ * Like the {@link SweepDeduplicator}, this deduplicator stores incoming
+ * messages in a map and periodically removes entries that have been received
+ * more than EXCHANGE_LIFETIME milliseconds ago. Messages received from IPv4
+ * endpoints are keyed by the {@linkplain KeyMID#getPackedValue() packed}
+ * value of their {@link KeyMID}, only other messages are keyed by the
+ * {@link KeyMID} itself.
+ * </p>
+ * <p>
+ * As soon as an exchange of remote origin completes, its entry is replaced by
+ * a compact entry that only holds the serialized piggy-backed or NON response
+ * or whether the request has been acknowledged or rejected. The completed
+ * exchange and the request, response, options and payloads it refers to can
+ * then be reclaimed by the garbage collector. The sweep run compacts the
+ * entries of exchanges that could not be compacted on completion.
+ * </p>
+ * <p>
+ * A duplicate of a request that has been compacted is answered by means of a
+ * new exchange whose current response is re-created from the serialized
+ * bytes, so that the reliability layer sends the very same bytes again.
+ * </p>
+ * <p>
+ * Exchanges that are still in progress, exchanges of local origin and
+ * exchanges which have been answered with a separate CON response are not
+ * compacted.
+ * </p>
+ */
+public final class CompactDeduplicator implements Deduplicator {
+
+	private static final Logger LOGGER = Logger.getLogger(CompactDeduplicator.class.getName());
+
+	/** The incoming messages received from IPv4 endpoints. */
+	private final ConcurrentMap<Long, Entry> packedMessages = new ConcurrentHashMap<>();
+	/** The incoming messages received from other endpoints. */
+	private final ConcurrentMap<KeyMID, Entry> incomingMessages = new ConcurrentHashMap<>();
+	private final UdpDataParser parser = new UdpDataParser();
+	private final UdpDataSerializer serializer = new UdpDataSerializer();
+	private final long sweepInterval;
+	private final long exchangeLifetime;
+	private boolean running = false;
+	private ScheduledExecutorService scheduler;
+	private ScheduledFuture<?> future;
+
+	/**
+	 * Creates a new deduplicator from configuration values.
+	 * <p>
+	 * The following configuration values are used:
+	 * <ul>
+	 * <li>{@link org.eclipse.californium.core.network.config.NetworkConfig.Keys#EXCHANGE_LIFETIME} -
+	 * an entry is removed from this deduplicator if it has been received more than this number
+	 * of milliseconds ago</li>
+	 * <li>{@link org.eclipse.californium.core.network.config.NetworkConfig.Keys#MARK_AND_SWEEP_INTERVAL} -
+	 * the interval at which to compact completed exchanges and remove expired entries in milliseconds</li>
+	 * </ul>
+	 *
+	 * @param config the configuration to use.
+	 */
+	public CompactDeduplicator(final NetworkConfig config) {
+		this.exchangeLifetime = config.getLong(NetworkConfig.Keys.EXCHANGE_LIFETIME);
+		this.sweepInterval = config.getLong(NetworkConfig.Keys.MARK_AND_SWEEP_INTERVAL);
+	}
+
+	@Override
+	public synchronized void start() {
+		if (!running) {
+			if (scheduler == null || scheduler.isShutdown()) {
+				scheduler = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("Deduplicator"));
+			}
+			schedule();
+			running = true;
+		}
+	}
+
+	@Override
+	public synchronized void stop() {
+		if (running) {
+			if (future != null) {
+				future.cancel(false);
+			}
+			scheduler.shutdown();
+			clear();
+			running = false;
+		}
+	}
+
+	/**
+	 * If the message with the specified {@link KeyMID} has already arrived
+	 * before, this method returns the corresponding exchange. If the exchange
+	 * has already been compacted, a new exchange for replaying the original
+	 * outcome is returned. If this KeyMID has not yet arrived, this method
+	 * returns null, indicating that the message with the KeyMID is not a
+	 * duplicate. In this case, the exchange is added to the deduplicator and
+	 * will be compacted as soon as it completes.
+	 */
+	@Override
+	public Exchange findPrevious(final KeyMID key, final Exchange exchange) {
+		Entry entry = new Entry(exchange);
+		Entry previous = putIfAbsent(key, entry);
+		if (previous == null) {
+			if (!exchange.isOfLocalOrigin()) {
+				compactOnCompletion(key, entry, exchange);
+			}
+			return null;
+		} else {
+			return previous.getExchange(exchange.getCurrentRequest(), parser);
+		}
+	}
+
+	@Override
+	public Exchange find(final KeyMID key) {
+		Entry entry = get(key);
+		if (entry == null) {
+			return null;
+		} else {
+			// responses are matched against exchanges of local origin
+			// which are never compacted
+			return entry.exchange;
+		}
+	}
+
+	@Override
+	public void clear() {
+		packedMessages.clear();
+		incomingMessages.clear();
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return packedMessages.isEmpty() && incomingMessages.isEmpty();
+	}
+
+	/**
+	 * Gets the number of entries that have been compacted.
+	 *
+	 * @return the number of entries.
+	 */
+	int getCompactedCount() {
+		int count = 0;
+		for (Entry entry : packedMessages.values()) {
+			if (entry.exchange == null) {
+				count++;
+			}
+		}
+		for (Entry entry : incomingMessages.values()) {
+			if (entry.exchange == null) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Iterates through all entries, removes expired ones and compacts
+	 * completed exchanges.
+	 */
+	void sweep() {
+		final long start = System.currentTimeMillis();
+		final long oldestAllowed = start - exchangeLifetime;
+		int compacted = 0;
+
+		// Notice that ConcurrentHashMap guarantees the correctness for this iteration.
+		for (Map.Entry<Long, Entry> mapEntry : packedMessages.entrySet()) {
+			compacted += sweep(packedMessages, mapEntry.getKey(), mapEntry.getValue(), oldestAllowed);
+		}
+		for (Map.Entry<KeyMID, Entry> mapEntry : incomingMessages.entrySet()) {
+			compacted += sweep(incomingMessages, mapEntry.getKey(), mapEntry.getValue(), oldestAllowed);
+		}
+		LOGGER.log(Level.FINE, "Sweep run took {0}ms, compacted {1} exchanges",
+				new Object[] { System.currentTimeMillis() - start, compacted });
+	}
+
+	private <K> int sweep(final ConcurrentMap<K, Entry> map, final K key, final Entry entry, final long oldestAllowed) {
+		if (entry.timestamp < oldestAllowed) {
+			LOGGER.log(Level.FINER, "Mark-And-Sweep removes {0}", key);
+			map.remove(key, entry);
+		} else {
+			Entry compact = entry.compact(serializer);
+			if (compact != entry && map.replace(key, entry, compact)) {
+				return 1;
+			}
+		}
+		return 0;
+	}
+
+	private Entry putIfAbsent(final KeyMID key, final Entry entry) {
+		if (key.isPacked()) {
+			return packedMessages.putIfAbsent(key.getPackedValue(), entry);
+		} else {
+			return incomingMessages.putIfAbsent(key, entry);
+		}
+	}
+
+	private Entry get(final KeyMID key) {
+		if (key.isPacked()) {
+			return packedMessages.get(key.getPackedValue());
+		} else {
+			return incomingMessages.get(key);
+		}
+	}
+
+	private boolean replace(final KeyMID key, final Entry entry, final Entry compact) {
+		if (key.isPacked()) {
+			return packedMessages.replace(key.getPackedValue(), entry, compact);
+		} else {
+			return incomingMessages.replace(key, entry, compact);
+		}
+	}
+
+	/**
+	 * Registers the entry with the exchange so that it is compacted
+	 * when the exchange completes.
+	 * <p>
+	 * An exchange of a blockwise transfer is registered for the MIDs of all
+	 * its block requests, the observer is therefore chained only once.
+	 */
+	private void compactOnCompletion(final KeyMID key, final Entry entry, final Exchange exchange) {
+		synchronized (exchange) {
+			ExchangeObserver observer = exchange.getObserver();
+			if (observer instanceof CompactingObserver && ((CompactingObserver) observer).owner() == this) {
+				((CompactingObserver) observer).add(key, entry);
+			} else {
+				CompactingObserver compacting = new CompactingObserver(observer);
+				compacting.add(key, entry);
+				exchange.setObserver(compacting);
+			}
+		}
+	}
+
+	private void schedule() {
+		if (!scheduler.isShutdown()) {
+			future = scheduler.schedule(new Runnable() {
+
+				@Override
+				public void run() {
+					try {
+						LOGGER.log(Level.FINEST, "Start Mark-And-Sweep with {0} entries",
+								packedMessages.size() + incomingMessages.size());
+						sweep();
+					} catch (Throwable t) {
+						LOGGER.log(Level.WARNING, "Exception in Mark-and-Sweep algorithm", t);
+					} finally {
+						try {
+							schedule();
+						} catch (Throwable t) {
+							LOGGER.log(Level.WARNING, "Exception while scheduling Mark-and-Sweep algorithm", t);
+						}
+					}
+				}
+			}, sweepInterval, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	private static Response parseResponse(final UdpDataParser parser, final byte[] bytes, final Request request) {
+		Message message = parser.parseMessage(bytes);
+		if (message instanceof Response) {
+			Response response = (Response) message;
+			response.setDestination(request.getSource());
+			response.setDestinationPort(request.getSourcePort());
+			response.setBytes(bytes);
+			return response;
+		} else {
+			return null;
+		}
+	}
+
+	/**
+	 * An exchange observer replacing the entries of an exchange by their
+	 * compact representation when the exchange completes.
+	 * <p>
+	 * The observer previously registered with the exchange is invoked first.
+	 */
+	private final class CompactingObserver implements ExchangeObserver {
+
+		private final ExchangeObserver delegate;
+		private final List<KeyMID> keys = new ArrayList<>(1);
+		private final List<Entry> entries = new ArrayList<>(1);
+
+		private CompactingObserver(final ExchangeObserver delegate) {
+			this.delegate = delegate;
+		}
+
+		private CompactDeduplicator owner() {
+			return CompactDeduplicator.this;
+		}
+
+		private synchronized void add(final KeyMID key, final Entry entry) {
+			keys.add(key);
+			entries.add(entry);
+		}
+
+		@Override
+		public void completed(final Exchange exchange) {
+			try {
+				if (delegate != null) {
+					delegate.completed(exchange);
+				}
+			} finally {
+				if (exchange.isComplete()) {
+					compact();
+				}
+			}
+		}
+
+		private synchronized void compact() {
+			for (int index = 0; index < keys.size(); index++) {
+				Entry entry = entries.get(index);
+				Entry compact = entry.compact(serializer);
+				if (compact != entry) {
+					replace(keys.get(index), entry, compact);
+				}
+			}
+			keys.clear();
+			entries.clear();
+		}
+	}
+
+	/**
+	 * An entry referring either to an exchange or to the compacted
+	 * outcome of a completed exchange.
+	 */
+	private static final class Entry {
+
+		private static final byte NO_REPLY = 0;
+		private static final byte RESPONSE = 1;
+		private static final byte ACKNOWLEDGED = 2;
+		private static final byte REJECTED = 3;
+
+		private final long timestamp;
+		private final Exchange exchange;
+		private final byte outcome;
+		private final byte[] response;
+
+		private Entry(final Exchange exchange) {
+			this.timestamp = exchange.getTimestamp();
+			this.exchange = exchange;
+			this.outcome = NO_REPLY;
+			this.response = null;
+		}
+
+		private Entry(final long timestamp, final byte outcome, final byte[] response) {
+			this.timestamp = timestamp;
+			this.exchange = null;
+			this.outcome = outcome;
+			this.response = response;
+		}
+
+		/**
+		 * Creates a compact representation of this entry's exchange.
+		 * <p>
+		 * The exchange may complete before its piggy-backed or NON response
+		 * has been serialized. The response is then serialized by means of
+		 * the given serializer and the bytes are kept with the response, so
+		 * that they are not serialized again when the response is sent.
+		 *
+		 * @param serializer the serializer for responses not serialized yet.
+		 * @return the compact entry or this entry if the exchange cannot
+		 *         be compacted (yet).
+		 */
+		private Entry compact(final UdpDataSerializer serializer) {
+			if (exchange == null || exchange.isOfLocalOrigin() || !exchange.isComplete()) {
+				return this;
+			}
+			Response current = exchange.getCurrentResponse();
+			Request request = exchange.getCurrentRequest();
+			if (current != null) {
+				if (current.getType() == Type.CON || current.getType() == Type.RST) {
+					// separate CON responses must be tracked by the stack
+					return this;
+				} else if (current.isCanceled() || !current.hasMID()) {
+					return new Entry(timestamp, NO_REPLY, null);
+				}
+				byte[] bytes = current.getBytes();
+				if (bytes == null) {
+					bytes = serializer.serializeResponse(current).getBytes();
+				}
+				return new Entry(timestamp, RESPONSE, bytes);
+			} else if (request.isAcknowledged()) {
+				return new Entry(timestamp, ACKNOWLEDGED, null);
+			} else if (request.isRejected()) {
+				return new Entry(timestamp, REJECTED, null);
+			} else {
+				return new Entry(timestamp, NO_REPLY, null);
+			}
+		}
+
+		/**
+		 * Gets the exchange to process a duplicate request with.
+		 *
+		 * @param duplicate the duplicate request.
+		 * @param parser the parser for re-creating a compacted response.
+		 * @return the original exchange or a new exchange replaying the
+		 *         compacted outcome.
+		 */
+		private Exchange getExchange(final Request duplicate, final UdpDataParser parser) {
+			if (exchange != null) {
+				return exchange;
+			}
+			Exchange replay = new Exchange(duplicate, Origin.REMOTE);
+			switch (outcome) {
+			case RESPONSE:
+				Response reply = parseResponse(parser, response, duplicate);
+				if (reply != null) {
+					replay.setResponse(reply);
+					replay.setCurrentResponse(reply);
+				}
+				break;
+			case ACKNOWLEDGED:
+				duplicate.setAcknowledged(true);
+				break;
+			case REJECTED:
+				duplicate.setRejected(true);
+				break;
+			default:
+				// the original request has neither been answered nor acknowledged
+			}
+			return replay;
+		}
+	}
+}
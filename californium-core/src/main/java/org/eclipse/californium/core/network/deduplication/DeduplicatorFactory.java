@@ -16,6 +16,8 @@
  *    Dominique Im Obersteg - parsers and initial implementation
  *    Daniel Pauli - parsers and initial implementation
  *    Kai Hudalla - logging
+ *    Bosch Software Innovations GmbH - add compact deduplicator
+ *    Bosch Software Innovations GmbH - add timing wheel deduplicator
  ******************************************************************************/
 package org.eclipse.californium.core.network.deduplication;
 
@@ -74,6 +76,10 @@ public class DeduplicatorFactory {
 			return new SweepDeduplicator(config);
 		case NetworkConfig.Keys.DEDUPLICATOR_CROP_ROTATION:
 			return new CropRotation(config);
+		case NetworkConfig.Keys.DEDUPLICATOR_COMPACT:
+			return new CompactDeduplicator(config);
+		case NetworkConfig.Keys.DEDUPLICATOR_TIMING_WHEEL:
+			return new TimingWheelDeduplicator(config);
 		case NetworkConfig.Keys.NO_DEDUPLICATOR:
 			return new NoDeduplicator();
 		default:
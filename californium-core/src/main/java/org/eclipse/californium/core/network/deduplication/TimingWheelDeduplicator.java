@@ -0,0 +1,196 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Bosch Software Innovations GmbH and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *    Bosch Software Innovations GmbH - initial creation
+ ******************************************************************************/
+package org.eclipse.californium.core.network.deduplication;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.eclipse.californium.core.network.Exchange;
+import org.eclipse.californium.core.network.Exchange.KeyMID;
+import org.eclipse.californium.core.network.config.NetworkConfig;
+import org.eclipse.californium.core.network.config.NetworkConfigDefaults;
+import org.eclipse.californium.elements.util.DaemonThreadFactory;
+
+/**
+ * A deduplicator that expires incoming messages by means of a hashed timing
+ * wheel.
+ * <p>
+ * The wheel consists of one bucket per tick of the EXCHANGE_LIFETIME. When a
+ * message is added to the deduplicator, its key is also added to the bucket
+ * that is processed after one EXCHANGE_LIFETIME has passed. On each tick, only
+ * the entries of the current bucket are removed, i.e. in contrast to the
+ * {@link SweepDeduplicator} the deduplicator never scans all of its entries.
+ * The time required for expiring entries therefore only depends on the
+ * number of messages received during one tick.
+ * </p>
+ * <p>
+ * Entries are kept for at least EXCHANGE_LIFETIME and at most
+ * EXCHANGE_LIFETIME plus one tick.
+ * </p>
+ */
+public final class TimingWheelDeduplicator implements Deduplicator {
+
+	private static final Logger LOGGER = Logger.getLogger(TimingWheelDeduplicator.class.getName());
+
+	/** The hash map with all incoming messages. */
+	private final ConcurrentMap<KeyMID, Exchange> incomingMessages = new ConcurrentHashMap<>();
+	private final Queue<Expiry>[] wheel;
+	private final long tickDuration;
+	private volatile int currentTick;
+	private boolean running = false;
+	private ScheduledExecutorService scheduler;
+	private ScheduledFuture<?> future;
+
+	/**
+	 * Creates a new deduplicator from configuration values.
+	 * <p>
+	 * The following configuration values are used:
+	 * <ul>
+	 * <li>{@link org.eclipse.californium.core.network.config.NetworkConfig.Keys#EXCHANGE_LIFETIME} -
+	 * the minimum time an entry is kept in milliseconds</li>
+	 * <li>{@link org.eclipse.californium.core.network.config.NetworkConfig.Keys#TIMING_WHEEL_TICK} -
+	 * the duration of a tick of the timing wheel in milliseconds</li>
+	 * </ul>
+	 *
+	 * @param config the configuration to use.
+	 */
+	@SuppressWarnings("unchecked")
+	public TimingWheelDeduplicator(final NetworkConfig config) {
+		long exchangeLifetime = config.getLong(NetworkConfig.Keys.EXCHANGE_LIFETIME);
+		this.tickDuration = Math.max(1,
+				config.getLong(NetworkConfig.Keys.TIMING_WHEEL_TICK, NetworkConfigDefaults.DEFAULT_TIMING_WHEEL_TICK));
+		int ticksPerLifetime = (int) Math.max(1, (exchangeLifetime + tickDuration - 1) / tickDuration);
+		// new entries are added to the bucket preceding the current one, which
+		// is reached after all other buckets. Two additional buckets therefore
+		// ensure that an entry added right before the next tick is kept for
+		// a whole lifetime.
+		this.wheel = new Queue[ticksPerLifetime + 2];
+		for (int i = 0; i < wheel.length; i++) {
+			wheel[i] = new ConcurrentLinkedQueue<Expiry>();
+		}
+	}
+
+	@Override
+	public synchronized void start() {
+		if (!running) {
+			if (scheduler == null || scheduler.isShutdown()) {
+				scheduler = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("Deduplicator"));
+			}
+			future = scheduler.scheduleAtFixedRate(new Runnable() {
+
+				@Override
+				public void run() {
+					try {
+						tick();
+					} catch (Throwable t) {
+						LOGGER.log(Level.WARNING, "Exception while expiring deduplicator entries", t);
+					}
+				}
+			}, tickDuration, tickDuration, TimeUnit.MILLISECONDS);
+			running = true;
+		}
+	}
+
+	@Override
+	public synchronized void stop() {
+		if (running) {
+			if (future != null) {
+				future.cancel(false);
+			}
+			scheduler.shutdown();
+			clear();
+			running = false;
+		}
+	}
+
+	/**
+	 * If the message with the specified {@link KeyMID} has already arrived
+	 * before, this method returns the corresponding exchange. If this
+	 * KeyMID has not yet arrived, this method returns null, indicating that
+	 * the message with the KeyMID is not a duplicate. In this case, the
+	 * exchange is added to the deduplicator.
+	 */
+	@Override
+	public Exchange findPrevious(final KeyMID key, final Exchange exchange) {
+		Exchange previous = incomingMessages.putIfAbsent(key, exchange);
+		if (previous == null) {
+			// the bucket preceding the current one is processed last
+			int bucket = (currentTick + wheel.length - 1) % wheel.length;
+			wheel[bucket].add(new Expiry(key, exchange));
+		}
+		return previous;
+	}
+
+	@Override
+	public Exchange find(final KeyMID key) {
+		return incomingMessages.get(key);
+	}
+
+	@Override
+	public void clear() {
+		incomingMessages.clear();
+		for (Queue<Expiry> bucket : wheel) {
+			bucket.clear();
+		}
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return incomingMessages.isEmpty();
+	}
+
+	/**
+	 * Advances the wheel by one tick and removes all entries of the
+	 * bucket reached.
+	 */
+	void tick() {
+		int tick = (currentTick + 1) % wheel.length;
+		currentTick = tick;
+		Queue<Expiry> bucket = wheel[tick];
+		int removed = 0;
+		Expiry expiry;
+		while ((expiry = bucket.poll()) != null) {
+			if (incomingMessages.remove(expiry.key, expiry.exchange)) {
+				removed++;
+			}
+		}
+		if (removed > 0) {
+			LOGGER.log(Level.FINER, "Timing wheel removed {0} entries", removed);
+		}
+	}
+
+	/**
+	 * An entry to remove when its bucket is reached.
+	 */
+	private static final class Expiry {
+
+		private final KeyMID key;
+		private final Exchange exchange;
+
+		private Expiry(final KeyMID key, final Exchange exchange) {
+			this.key = key;
+			this.exchange = exchange;
+		}
+	}
+}
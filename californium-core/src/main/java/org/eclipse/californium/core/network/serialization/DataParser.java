@@ -20,9 +20,13 @@
  * Joe Magerramov (Amazon Web Services) - CoAP over TCP support.
  * Achim Kraus (Bosch Software Innovations GmbH) - add CoAP detail information 
  *                                                 to MessageFormatException
+ * Bosch Software Innovations GmbH - parse directly from a byte range,
+ *                                   keep deprecated parseHeader(DatagramReader)
  ******************************************************************************/
 package org.eclipse.californium.core.network.serialization;
 
+import java.nio.ByteBuffer;
+
 import org.eclipse.californium.core.coap.*;
 import org.eclipse.californium.elements.RawData;
 import org.eclipse.californium.elements.util.DatagramReader;
@@ -31,11 +35,22 @@ import static org.eclipse.californium.core.coap.CoAP.MessageFormat.PAYLOAD_MARKE
 
 /**
  * A base class for parsing CoAP messages from a byte array.
+ * <p>
+ * The parser reads the encoded message directly from the given byte range by
+ * means of index arithmetic, i.e. the message's bytes are not copied before
+ * being parsed. Bytes are only copied once into the token, option values and
+ * payload of the resulting message.
+ * <p>
+ * Reading beyond the end of the byte range while parsing the message header
+ * yields zero bytes.
  */
 public abstract class DataParser {
 
 	/**
 	 * Parses a byte array into a CoAP Message.
+	 * <p>
+	 * The raw data's bytes are read in place, even if they are backed by
+	 * a (pooled) buffer.
 	 * 
 	 * @param raw contains the byte array to parse.
 	 * @return the message.
@@ -43,7 +58,7 @@ public abstract class DataParser {
 	 */
 	public final Message parseMessage(final RawData raw) {
 
-		return parseMessage(raw.getBytes());
+		return parseMessage(raw.getByteBuffer());
 	}
 
 	/**
@@ -55,16 +70,45 @@ public abstract class DataParser {
 	 */
 	public final Message parseMessage(final byte[] msg) {
 
+		return parseMessage(msg, 0, msg.length);
+	}
+
+	/**
+	 * Parses a range of a byte array into a CoAP Message.
+	 * 
+	 * @param msg the byte array containing the message.
+	 * @param offset the index of the message's first byte.
+	 * @param length the number of bytes of the message.
+	 * @return the message.
+	 * @throws MessageFormatException if the range cannot be parsed into a message.
+	 * @throws IndexOutOfBoundsException if the range exceeds the array.
+	 */
+	public final Message parseMessage(final byte[] msg, final int offset, final int length) {
+
+		return parseMessage(ByteBuffer.wrap(msg, offset, length));
+	}
+
+	/**
+	 * Parses the remaining bytes of a buffer into a CoAP Message.
+	 * <p>
+	 * The buffer's position and limit are not changed.
+	 * 
+	 * @param msg the buffer containing the message between its position and limit.
+	 * @return the message.
+	 * @throws MessageFormatException if the bytes cannot be parsed into a message.
+	 */
+	public final Message parseMessage(final ByteBuffer msg) {
+
 		String message = "illegal message code";
-		DatagramReader reader = new DatagramReader(msg);
-		MessageHeader header = parseHeader(reader);
+		ByteBuffer buffer = msg.duplicate();
+		MessageHeader header = parseHeader(buffer);
 		try {
 			if (CoAP.isRequest(header.getCode())) {
-				return parseMessage(reader, header, new Request(CoAP.Code.valueOf(header.getCode())));
+				return parseMessage(buffer, header, new Request(CoAP.Code.valueOf(header.getCode())));
 			} else if (CoAP.isResponse(header.getCode())) {
-				return parseMessage(reader, header, new Response(CoAP.ResponseCode.valueOf(header.getCode())));
+				return parseMessage(buffer, header, new Response(CoAP.ResponseCode.valueOf(header.getCode())));
 			} else if (CoAP.isEmptyMessage(header.getCode())) {
-				return parseMessage(reader, header, new EmptyMessage(header.getType()));
+				return parseMessage(buffer, header, new EmptyMessage(header.getType()));
 			}
 		} catch (MessageFormatException e) {
 			/** use message to add CoAP message specific information */
@@ -73,7 +117,7 @@ public abstract class DataParser {
 		throw new CoAPMessageFormatException(message, header.getMID(), header.getCode(), CoAP.Type.CON == header.getType());
 	}
 
-	private static Message parseMessage(final DatagramReader source, final MessageHeader header, final Message target) {
+	private static Message parseMessage(final ByteBuffer source, final MessageHeader header, final Message target) {
 		target.setMID(header.getMID());
 		target.setType(header.getType());
 		target.setToken(header.getToken());
@@ -90,20 +134,48 @@ public abstract class DataParser {
 	 * @throws MessageFormatException if the array cannot be parsed into a message header.
 	 */
 	public final MessageHeader parseHeader(RawData raw) {
-		DatagramReader reader = new DatagramReader(raw.getBytes());
-		return parseHeader(reader);
+		return parseHeader(raw.getByteBuffer());
 	}
 
 	/**
 	 * Parses a byte array into a CoAP message header.
 	 * <p>
 	 * Subclasses need to override this method according to the concrete type of message
-	 * encoding to support.
+	 * encoding to support. Implementations should use the <em>read</em> methods of this
+	 * class which yield zero bytes when reading beyond the buffer's limit.
+	 * 
+	 * <p>
+	 * The default implementation copies the remaining bytes and delegates to the
+	 * deprecated {@link #parseHeader(DatagramReader)}, so that subclasses which only
+	 * override that method keep working.
+	 * 
+	 * @param buffer the buffer to read the header from, starting at its position.
+	 *               When this method returns, the buffer's position must point to the
+	 *               first byte following the header.
+	 * @return the message header the array has been parsed into.
+	 */
+	protected MessageHeader parseHeader(ByteBuffer buffer) {
+		byte[] bytes = new byte[buffer.remaining()];
+		buffer.duplicate().get(bytes);
+		DatagramReader reader = new DatagramReader(bytes);
+		MessageHeader header = parseHeader(reader);
+		buffer.position(buffer.position() + bytes.length - reader.bitsLeft() / Byte.SIZE);
+		return header;
+	}
+
+	/**
+	 * Parses a byte array into a CoAP message header.
 	 * 
 	 * @param reader for reading the byte array to parse.
 	 * @return the message header the array has been parsed into.
+	 * @throws UnsupportedOperationException if not overridden.
+	 * @deprecated Override {@link #parseHeader(ByteBuffer)} instead, which reads the
+	 *             header in place.
 	 */
-	protected abstract MessageHeader parseHeader(DatagramReader reader);
+	@Deprecated
+	protected MessageHeader parseHeader(DatagramReader reader) {
+		throw new UnsupportedOperationException("Parser must override parseHeader(ByteBuffer)");
+	}
 
 	/**
 	 * Asserts that the length of the token as read from the encoded message complies
@@ -120,25 +192,80 @@ public abstract class DataParser {
 		}
 	}
 
-	private static void parseOptionsAndPayload(DatagramReader reader, Message message) {
+	/**
+	 * Reads the next byte from a buffer.
+	 * 
+	 * @param buffer the buffer to read from.
+	 * @return the byte's unsigned value or 0 if no bytes are left in the buffer.
+	 */
+	protected static final int readUnsignedByte(final ByteBuffer buffer) {
+		if (buffer.hasRemaining()) {
+			return buffer.get() & 0xFF;
+		} else {
+			return 0;
+		}
+	}
+
+	/**
+	 * Reads the next two bytes from a buffer as an unsigned value in network byte order.
+	 * 
+	 * @param buffer the buffer to read from.
+	 * @return the value. Missing bytes are considered to be 0.
+	 */
+	protected static final int readUnsignedShort(final ByteBuffer buffer) {
+		if (buffer.remaining() >= 2) {
+			return buffer.getShort() & 0xFFFF;
+		} else {
+			return readUnsignedByte(buffer) << 8 | readUnsignedByte(buffer);
+		}
+	}
+
+	/**
+	 * Reads a number of bytes from a buffer.
+	 * 
+	 * @param buffer the buffer to read from.
+	 * @param count the number of bytes to read.
+	 * @return the bytes. If fewer bytes are left in the buffer, the
+	 *         missing bytes are set to 0.
+	 */
+	protected static final byte[] readBytes(final ByteBuffer buffer, final int count) {
+		byte[] bytes = new byte[count];
+		buffer.get(bytes, 0, Math.min(count, buffer.remaining()));
+		return bytes;
+	}
+
+	/**
+	 * Skips a number of bytes of a buffer.
+	 * 
+	 * @param buffer the buffer.
+	 * @param count the number of bytes to skip. If fewer bytes are left
+	 *              in the buffer, the buffer's position is set to its limit.
+	 */
+	protected static final void skipBytes(final ByteBuffer buffer, final int count) {
+		buffer.position(buffer.position() + Math.min(count, buffer.remaining()));
+	}
+
+	private static void parseOptionsAndPayload(ByteBuffer buffer, Message message) {
 		int currentOptionNumber = 0;
 		byte nextByte = 0;
 
-		while (reader.bytesAvailable()) {
-			nextByte = reader.readNextByte();
+		while (buffer.hasRemaining()) {
+			nextByte = buffer.get();
 			if (nextByte != PAYLOAD_MARKER) {
 				// the first 4 bits of the byte represent the option delta
 				int optionDeltaNibble = (0xF0 & nextByte) >> 4;
-				currentOptionNumber = calculateNextOptionNumber(reader, currentOptionNumber, optionDeltaNibble, message);
+				currentOptionNumber = calculateNextOptionNumber(buffer, currentOptionNumber, optionDeltaNibble, message);
 
 				// the second 4 bits represent the option length
 				int optionLengthNibble = 0x0F & nextByte;
-				int optionLength = determineValueFromNibble(reader, optionLengthNibble, message);
+				int optionLength = determineValueFromNibble(buffer, optionLengthNibble, message);
 
 				// read option
-				if (reader.bytesAvailable(optionLength)) {
+				if (buffer.remaining() >= optionLength) {
 					Option option = new Option(currentOptionNumber);
-					option.setValue(reader.readBytes(optionLength));
+					byte[] value = new byte[optionLength];
+					buffer.get(value);
+					option.setValue(value);
 
 					// add option to message
 					message.getOptions().addOption(option);
@@ -154,13 +281,15 @@ public abstract class DataParser {
 
 		if (nextByte == PAYLOAD_MARKER) {
 			// the presence of a marker followed by a zero-length payload must be processed as a message format error
-			if (!reader.bytesAvailable()) {
+			if (!buffer.hasRemaining()) {
 				throw new CoAPMessageFormatException(
 						"Found payload marker (0xFF) but message contains no payload",
 						message.getMID(), message.getRawCode(), message.isConfirmable());
 			} else {
 				// get payload
-				message.setPayload(reader.readBytesLeft());
+				byte[] payload = new byte[buffer.remaining()];
+				buffer.get(payload);
+				message.setPayload(payload);
 			}
 		} else {
 			message.setPayload((String) null);
@@ -177,20 +306,20 @@ public abstract class DataParser {
 	 * @throws MessageFormatException if the option number cannot be determined due to a message format error.
 	 */
 	private static int calculateNextOptionNumber(
-			final DatagramReader reader,
+			final ByteBuffer buffer,
 			final int currentOptionNumber,
 			final int delta,
 			final Message message) {
-		return currentOptionNumber + determineValueFromNibble(reader, delta, message);
+		return currentOptionNumber + determineValueFromNibble(buffer, delta, message);
 	}
 
-	private static int determineValueFromNibble(final DatagramReader reader, final int delta, final Message message) {
+	private static int determineValueFromNibble(final ByteBuffer buffer, final int delta, final Message message) {
 		if (delta <= 12) {
 			return delta;
 		} else if (delta == 13) {
-			return reader.read(8) + 13;
+			return readUnsignedByte(buffer) + 13;
 		} else if (delta == 14) {
-			return reader.read(16) + 269;
+			return readUnsignedShort(buffer) + 269;
 		} else {
 			throw new CoAPMessageFormatException(
 					"Message contains illegal option delta/length: " + delta,
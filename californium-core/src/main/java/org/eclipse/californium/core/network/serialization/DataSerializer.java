@@ -18,6 +18,9 @@
  * Kai Hudalla - logging
  * Bosch Software Innovations GmbH - turn into utility class with static methods only
  * Joe Magerramov (Amazon Web Services) - CoAP over TCP support.
+ * Bosch Software Innovations GmbH - serialize into thread local MessageWriter,
+ *                                   keep deprecated serializeHeader(DatagramWriter, ...)
+ * Bosch Software Innovations GmbH - serialize notifications from shared templates
  ******************************************************************************/
 package org.eclipse.californium.core.network.serialization;
 
@@ -33,9 +36,32 @@ import static org.eclipse.californium.core.coap.CoAP.MessageFormat.*;
 
 /**
  * Serializes messages into wire format.
+ * <p>
+ * Messages are encoded into a re-usable, thread local {@link MessageWriter}
+ * so that the only array allocated per message is the right-sized array
+ * holding the encoded message.
  */
 public abstract class DataSerializer {
 
+	/**
+	 * The initial size of the thread local buffers used for encoding messages.
+	 */
+	private static final int INITIAL_BUFFER_SIZE = 1536;
+	/**
+	 * The maximum size of a thread local buffer to keep for encoding subsequent messages.
+	 * Larger buffers, e.g. grown for encoding a message with a large payload, are
+	 * discarded after use.
+	 */
+	private static final int MAX_RETAINED_BUFFER_SIZE = 64 * 1024;
+
+	private static final ThreadLocal<MessageWriter> WRITER = new ThreadLocal<MessageWriter>() {
+
+		@Override
+		protected MessageWriter initialValue() {
+			return new MessageWriter(INITIAL_BUFFER_SIZE);
+		}
+	};
+
 	/**
 	 * Serializes a request and caches the result on the request object to skip future serializations.
 	 * <p>
@@ -89,15 +115,7 @@ public abstract class DataSerializer {
 	 */
 	public final byte[] getByteArray(final Request request) {
 
-		DatagramWriter writer = new DatagramWriter();
-		byte[] body = serializeOptionsAndPayload(request);
-
-		MessageHeader header = new MessageHeader(CoAP.VERSION, request.getType(), request.getToken(),
-				request.getRawCode(), request.getMID(), body.length);
-		serializeHeader(writer, header);
-		writer.writeBytes(body);
-
-		return writer.toByteArray();
+		return serialize(request, request.getRawCode());
 	}
 
 	/**
@@ -108,15 +126,7 @@ public abstract class DataSerializer {
 	 */
 	public final RawData serializeResponse(final Response response) {
 		if (response.getBytes() == null) {
-			DatagramWriter writer = new DatagramWriter();
-			byte[] body = serializeOptionsAndPayload(response);
-
-			MessageHeader header = new MessageHeader(CoAP.VERSION, response.getType(), response.getToken(),
-					response.getCode().value, response.getMID(), body.length);
-			serializeHeader(writer, header);
-			writer.writeBytes(body);
-
-			byte[] bytes = writer.toByteArray();
+			byte[] bytes = serialize(response, response.getCode().value);
 			response.setBytes(bytes);
 		}
 		return new RawData(response.getBytes(), response.getDestination(), response.getDestinationPort());
@@ -130,56 +140,168 @@ public abstract class DataSerializer {
 	 */
 	public final RawData serializeEmptyMessage(final EmptyMessage emptyMessage) {
 		if (emptyMessage.getBytes() == null) {
-			DatagramWriter writer = new DatagramWriter();
-			byte[] body = serializeOptionsAndPayload(emptyMessage);
-
-			MessageHeader header = new MessageHeader(CoAP.VERSION, emptyMessage.getType(), emptyMessage.getToken(), 0,
-					emptyMessage.getMID(), body.length);
-			serializeHeader(writer, header);
-			writer.writeBytes(body);
-
-			byte[] bytes = writer.toByteArray();
+			byte[] bytes = serialize(emptyMessage, 0);
 			emptyMessage.setBytes(bytes);
 		}
 		return new RawData(emptyMessage.getBytes(), emptyMessage.getDestination(), emptyMessage.getDestinationPort());
 	}
 
+	/**
+	 * Serializes a message's <em>header</em> values to the wire format.
+	 * <p>
+	 * The default implementation delegates to the deprecated
+	 * {@link #serializeHeader(DatagramWriter, MessageHeader)}, so that subclasses
+	 * which only override that method keep working.
+	 * 
+	 * @param writer The writer to serialize the values to.
+	 * @param header The header values.
+	 */
+	protected void serializeHeader(MessageWriter writer, MessageHeader header) {
+		DatagramWriter headerWriter = new DatagramWriter();
+		serializeHeader(headerWriter, header);
+		writer.writeBytes(headerWriter.toByteArray());
+	}
+
 	/**
 	 * Serializes a message's <em>header</em> values to the wire format.
 	 * 
 	 * @param writer The writer to serialize the values to.
 	 * @param header The header values.
+	 * @throws UnsupportedOperationException if not overridden.
+	 * @deprecated Override {@link #serializeHeader(MessageWriter, MessageHeader)}
+	 *             instead, which writes to a re-used buffer.
+	 */
+	@Deprecated
+	protected void serializeHeader(DatagramWriter writer, MessageHeader header) {
+		throw new UnsupportedOperationException("Serializer must override serializeHeader(MessageWriter, MessageHeader)");
+	}
+
+	private byte[] serialize(final Message message, final int code) {
+
+		if (message instanceof Response) {
+			NotificationTemplate template = ((Response) message).getNotificationTemplate();
+			if (template != null && message.getOptions().hasObserve()) {
+				return serialize(message, code, template);
+			}
+		}
+
+		List<Option> options = message.getOptions().asSortedList(); // already sorted
+		byte[] payload = message.getPayload();
+		int bodyLength = getOptionsAndPayloadLength(options, payload);
+		MessageHeader header = new MessageHeader(CoAP.VERSION, message.getType(), message.getToken(),
+				code, message.getMID(), bodyLength);
+
+		MessageWriter writer = WRITER.get();
+		try {
+			serializeHeader(writer, header);
+			serializeOptionsAndPayload(writer, options, 0, payload);
+			return writer.toByteArray();
+		} finally {
+			if (writer.capacity() > MAX_RETAINED_BUFFER_SIZE) {
+				WRITER.remove();
+			} else {
+				writer.reset();
+			}
+		}
+	}
+
+	/**
+	 * Serializes a notification using the encoded options and payload of a
+	 * template.
+	 * <p>
+	 * Only the header, the token and the Observe option are encoded.
+	 * 
+	 * @param message The notification.
+	 * @param code The notification's code.
+	 * @param template The template containing the other options and the payload.
+	 * @return The encoded notification.
 	 */
-	protected abstract void serializeHeader(DatagramWriter writer, MessageHeader header);
+	private byte[] serialize(final Message message, final int code, final NotificationTemplate template) {
+
+		Option observe = new Option(OptionNumberRegistry.OBSERVE, message.getOptions().getObserve());
+		byte[] head = template.getHead();
+		byte[] tail = template.getTail();
+		// the observe option's delta (<= 6) and length (<= 3) fit into the option header byte
+		int bodyLength = head.length + 1 + observe.getLength() + tail.length;
+		MessageHeader header = new MessageHeader(CoAP.VERSION, message.getType(), message.getToken(),
+				code, message.getMID(), bodyLength);
+
+		MessageWriter writer = WRITER.get();
+		try {
+			serializeHeader(writer, header);
+			writer.writeBytes(head);
+			writer.writeByte((OptionNumberRegistry.OBSERVE - template.getLastHeadOptionNumber()) << OPTION_LENGTH_BITS
+					| observe.getLength());
+			writer.writeBytes(observe.getValue());
+			writer.writeBytes(tail);
+			return writer.toByteArray();
+		} finally {
+			if (writer.capacity() > MAX_RETAINED_BUFFER_SIZE) {
+				WRITER.remove();
+			} else {
+				writer.reset();
+			}
+		}
+	}
 
-	private static byte[] serializeOptionsAndPayload(final Message message) {
-		DatagramWriter writer = new DatagramWriter();
-		List<Option> options = message.getOptions().asSortedList(); // already
-		// sorted
+	private static int getOptionsAndPayloadLength(final List<Option> options, final byte[] payload) {
+		int length = 0;
 		int lastOptionNumber = 0;
 		for (Option option : options) {
-			// write 4-bit option delta
+			int optionLength = option.getLength();
+			// option header byte, extended delta and length fields and value
+			length += 1 + getExtendedFieldLength(getOptionNibble(option.getNumber() - lastOptionNumber))
+					+ getExtendedFieldLength(getOptionNibble(optionLength)) + optionLength;
+			lastOptionNumber = option.getNumber();
+		}
+		if (payload != null && payload.length > 0) {
+			length += 1 + payload.length;
+		}
+		return length;
+	}
+
+	private static int getExtendedFieldLength(final int optionNibble) {
+		if (optionNibble == 13) {
+			return 1;
+		} else if (optionNibble == 14) {
+			return 2;
+		} else {
+			return 0;
+		}
+	}
+
+	/**
+	 * Serializes options and payload.
+	 * 
+	 * @param writer The writer to serialize to.
+	 * @param options The sorted options.
+	 * @param previousOptionNumber The number of the option preceding the first option,
+	 *            i.e. the number the first option's delta is relative to.
+	 * @param payload The payload, or {@code null}.
+	 */
+	static void serializeOptionsAndPayload(final MessageWriter writer, final List<Option> options,
+			final int previousOptionNumber, final byte[] payload) {
+		int lastOptionNumber = previousOptionNumber;
+		for (Option option : options) {
+			// write 4-bit option delta and 4-bit option length
 			int optionDelta = option.getNumber() - lastOptionNumber;
 			int optionDeltaNibble = getOptionNibble(optionDelta);
-			writer.write(optionDeltaNibble, OPTION_DELTA_BITS);
-
-			// write 4-bit option length
 			int optionLength = option.getLength();
 			int optionLengthNibble = getOptionNibble(optionLength);
-			writer.write(optionLengthNibble, OPTION_LENGTH_BITS);
+			writer.writeByte(optionDeltaNibble << OPTION_LENGTH_BITS | optionLengthNibble);
 
 			// write extended option delta field (0 - 2 bytes)
 			if (optionDeltaNibble == 13) {
-				writer.write(optionDelta - 13, Byte.SIZE);
+				writer.writeByte(optionDelta - 13);
 			} else if (optionDeltaNibble == 14) {
-				writer.write(optionDelta - 269, 2 * Byte.SIZE);
+				writer.writeShort(optionDelta - 269);
 			}
 
 			// write extended option length field (0 - 2 bytes)
 			if (optionLengthNibble == 13) {
-				writer.write(optionLength - 13, Byte.SIZE);
+				writer.writeByte(optionLength - 13);
 			} else if (optionLengthNibble == 14) {
-				writer.write(optionLength - 269, 2 * Byte.SIZE);
+				writer.writeShort(optionLength - 269);
 			}
 
 			// write option value
@@ -189,15 +311,13 @@ public abstract class DataSerializer {
 			lastOptionNumber = option.getNumber();
 		}
 
-		byte[] payload = message.getPayload();
 		if (payload != null && payload.length > 0) {
 			// if payload is present and of non-zero length, it is prefixed by
 			// an one-byte Payload Marker (0xFF) which indicates the end of
 			// options and the start of the payload
-			writer.writeByte(PAYLOAD_MARKER);
+			writer.writeByte(PAYLOAD_MARKER & 0xFF);
 			writer.writeBytes(payload);
 		}
-		return writer.toByteArray();
 	}
 
 	/**
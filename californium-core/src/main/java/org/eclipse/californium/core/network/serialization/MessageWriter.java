@@ -0,0 +1,149 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Bosch Software Innovations GmbH and others.
+ * <p>
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ * <p>
+ * The Eclipse Public License is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ * http://www.eclipse.org/org/documents/edl-v10.html.
+ * <p>
+ * Contributors:
+ * Bosch Software Innovations GmbH - initial creation
+ ******************************************************************************/
+package org.eclipse.californium.core.network.serialization;
+
+import java.util.Arrays;
+
+/**
+ * A writer for encoding messages into a re-usable byte array.
+ * <p>
+ * In contrast to {@code DatagramWriter} this writer works on byte level
+ * only and writes directly into its backing array which is only re-allocated
+ * if it is too small to hold the message. The encoded message is copied
+ * exactly once into a right-sized array by means of {@link #toByteArray()}.
+ * The writer can then be {@linkplain #reset() reset} and used for encoding the
+ * next message.
+ * <p>
+ * Instances are not thread safe.
+ */
+public final class MessageWriter {
+
+	private byte[] buffer;
+	private int position;
+
+	/**
+	 * Creates a new writer.
+	 *
+	 * @param initialCapacity the initial size of the backing array.
+	 * @throws IllegalArgumentException if the capacity is &lt; 1.
+	 */
+	public MessageWriter(final int initialCapacity) {
+		if (initialCapacity < 1) {
+			throw new IllegalArgumentException("Capacity must be at least 1");
+		}
+		this.buffer = new byte[initialCapacity];
+	}
+
+	/**
+	 * Writes a single byte.
+	 *
+	 * @param data the byte's value. Only the lowest 8 bits are written.
+	 * @throws IllegalArgumentException if the value does not fit into 8 bits.
+	 */
+	public void writeByte(final int data) {
+		assertFitsInto(data, Byte.SIZE);
+		ensureCapacity(1);
+		buffer[position++] = (byte) data;
+	}
+
+	/**
+	 * Writes a 16 bit value in network byte order.
+	 *
+	 * @param data the value. Only the lowest 16 bits are written.
+	 * @throws IllegalArgumentException if the value does not fit into 16 bits.
+	 */
+	public void writeShort(final int data) {
+		assertFitsInto(data, 2 * Byte.SIZE);
+		ensureCapacity(2);
+		buffer[position++] = (byte) (data >> 8);
+		buffer[position++] = (byte) data;
+	}
+
+	/**
+	 * Writes a 32 bit value in network byte order.
+	 *
+	 * @param data the value.
+	 */
+	public void writeInt(final int data) {
+		ensureCapacity(4);
+		buffer[position++] = (byte) (data >> 24);
+		buffer[position++] = (byte) (data >> 16);
+		buffer[position++] = (byte) (data >> 8);
+		buffer[position++] = (byte) data;
+	}
+
+	/**
+	 * Writes a sequence of bytes.
+	 *
+	 * @param bytes the bytes to write. If {@code null}, nothing is written.
+	 */
+	public void writeBytes(final byte[] bytes) {
+		if (bytes != null) {
+			ensureCapacity(bytes.length);
+			System.arraycopy(bytes, 0, buffer, position, bytes.length);
+			position += bytes.length;
+		}
+	}
+
+	/**
+	 * Gets the number of bytes written since the last reset.
+	 *
+	 * @return the number of bytes.
+	 */
+	public int size() {
+		return position;
+	}
+
+	/**
+	 * Gets the current size of the backing array.
+	 *
+	 * @return the capacity in bytes.
+	 */
+	public int capacity() {
+		return buffer.length;
+	}
+
+	/**
+	 * Gets a copy of the bytes written since the last reset.
+	 *
+	 * @return the bytes.
+	 */
+	public byte[] toByteArray() {
+		return Arrays.copyOf(buffer, position);
+	}
+
+	/**
+	 * Discards all bytes written so far.
+	 * <p>
+	 * The backing array is retained for writing the next message.
+	 */
+	public void reset() {
+		position = 0;
+	}
+
+	private void ensureCapacity(final int length) {
+		int required = position + length;
+		if (required > buffer.length) {
+			buffer = Arrays.copyOf(buffer, Math.max(required, buffer.length << 1));
+		}
+	}
+
+	private static void assertFitsInto(final int data, final int numBits) {
+		if (data >= (1 << numBits)) {
+			throw new IllegalArgumentException(String.format("Truncating value %d to %d-bit integer", data, numBits));
+		}
+	}
+}
@@ -0,0 +1,113 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Bosch Software Innovations GmbH and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *    Bosch Software Innovations GmbH - initial creation
+ ******************************************************************************/
+package org.eclipse.californium.core.network.serialization;
+
+import java.util.List;
+
+import org.eclipse.californium.core.coap.Option;
+import org.eclipse.californium.core.coap.OptionNumberRegistry;
+import org.eclipse.californium.core.coap.Response;
+
+/**
+ * The encoded options and payload of a notification sent to many observers.
+ * <p>
+ * The notifications sent to the observers of a resource for the same change
+ * only differ in their header, token and Observe option. A template contains
+ * the options preceding and following the Observe option and the payload
+ * encoded once, so that a {@link DataSerializer} only needs to encode the
+ * header, the token and the Observe option of each notification.
+ * </p>
+ * <p>
+ * A template is immutable and may be shared by any number of notifications.
+ * It is only valid as long as the notification's options (apart from the
+ * Observe option) and payload are unchanged.
+ * </p>
+ *
+ * @see Response#setNotificationTemplate(NotificationTemplate)
+ */
+public final class NotificationTemplate {
+
+	private static final int INITIAL_BUFFER_SIZE = 256;
+
+	private final byte[] head;
+	private final byte[] tail;
+	private final int lastHeadOptionNumber;
+
+	private NotificationTemplate(final byte[] head, final byte[] tail, final int lastHeadOptionNumber) {
+		this.head = head;
+		this.tail = tail;
+		this.lastHeadOptionNumber = lastHeadOptionNumber;
+	}
+
+	/**
+	 * Creates a template for a representation.
+	 *
+	 * @param representation the response containing the options and the
+	 *            payload to send to the observers. An Observe option contained
+	 *            in the response is ignored.
+	 * @return the template.
+	 */
+	public static NotificationTemplate create(final Response representation) {
+		List<Option> options = representation.getOptions().asSortedList();
+		int observeIndex = 0;
+		while (observeIndex < options.size() && options.get(observeIndex).getNumber() < OptionNumberRegistry.OBSERVE) {
+			observeIndex++;
+		}
+		int tailIndex = observeIndex;
+		if (tailIndex < options.size() && options.get(tailIndex).getNumber() == OptionNumberRegistry.OBSERVE) {
+			tailIndex++;
+		}
+		int lastHeadOptionNumber = observeIndex == 0 ? 0 : options.get(observeIndex - 1).getNumber();
+
+		MessageWriter writer = new MessageWriter(INITIAL_BUFFER_SIZE);
+		DataSerializer.serializeOptionsAndPayload(writer, options.subList(0, observeIndex), 0, null);
+		byte[] head = writer.toByteArray();
+		writer.reset();
+		DataSerializer.serializeOptionsAndPayload(writer, options.subList(tailIndex, options.size()),
+				OptionNumberRegistry.OBSERVE, representation.getPayload());
+		byte[] tail = writer.toByteArray();
+		return new NotificationTemplate(head, tail, lastHeadOptionNumber);
+	}
+
+	/**
+	 * Gets the encoded options preceding the Observe option.
+	 *
+	 * @return the encoded options. The array must not be modified.
+	 */
+	byte[] getHead() {
+		return head;
+	}
+
+	/**
+	 * Gets the encoded options following the Observe option and the payload.
+	 * <p>
+	 * The delta of the first option is relative to the Observe option.
+	 *
+	 * @return the encoded options and payload. The array must not be modified.
+	 */
+	byte[] getTail() {
+		return tail;
+	}
+
+	/**
+	 * Gets the number of the last option preceding the Observe option.
+	 *
+	 * @return the option number, or {@code 0}, if there is no such option.
+	 */
+	int getLastHeadOptionNumber() {
+		return lastHeadOptionNumber;
+	}
+}
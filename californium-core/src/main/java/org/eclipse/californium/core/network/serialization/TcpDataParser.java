@@ -19,15 +19,15 @@
  * Bosch Software Innovations GmbH - introduce dedicated MessageFormatException
  * Joe Magerramov (Amazon Web Services) - CoAP over TCP support.
  * Achim Kraus (Bosch Software Innovations GmbH) - use Message.NONE as mid
+ * Bosch Software Innovations GmbH - parse header directly from a byte range
  ******************************************************************************/
 package org.eclipse.californium.core.network.serialization;
 
+import java.nio.ByteBuffer;
+
 import org.eclipse.californium.core.coap.CoAP;
 import org.eclipse.californium.core.coap.Message;
 import org.eclipse.californium.elements.tcp.DatagramFramer;
-import org.eclipse.californium.elements.util.DatagramReader;
-
-import static org.eclipse.californium.core.coap.CoAP.MessageFormat.*;
 
 /**
  * A parser for messages encoded following the encoding defined by the
@@ -36,14 +36,16 @@ import static org.eclipse.californium.core.coap.CoAP.MessageFormat.*;
 public final class TcpDataParser extends DataParser {
 
 	@Override
-	public MessageHeader parseHeader(final DatagramReader reader) {
+	public MessageHeader parseHeader(final ByteBuffer buffer) {
 
-		int len = reader.read(LENGTH_NIBBLE_BITS);
-		int tokenLength = reader.read(TOKEN_LENGTH_BITS);
+		// Len (4 bits) | TKL (4 bits)
+		int first = readUnsignedByte(buffer);
+		int len = first >> 4;
+		int tokenLength = first & 0x0F;
 		assertValidTokenLength(tokenLength);
-		reader.readBytes(DatagramFramer.getLengthFieldSize(len));
-		int code = reader.read(CODE_BITS);
-		byte token[] = reader.readBytes(tokenLength);
+		skipBytes(buffer, DatagramFramer.getLengthFieldSize(len));
+		int code = readUnsignedByte(buffer);
+		byte token[] = readBytes(buffer, tokenLength);
 
 		// No MID/Type/VERSION in TCP message. Use defaults.
 		return new MessageHeader(CoAP.VERSION, CoAP.Type.CON, token, code, Message.NONE, 0);
@@ -18,39 +18,35 @@
  * Kai Hudalla - logging
  * Bosch Software Innovations GmbH - turn into utility class with static methods only
  * Joe Magerramov (Amazon Web Services) - CoAP over TCP support.
+ * Bosch Software Innovations GmbH - serialize header using MessageWriter
  ******************************************************************************/
 package org.eclipse.californium.core.network.serialization;
 
 import static org.eclipse.californium.core.coap.CoAP.MessageFormat.*;
 
-import org.eclipse.californium.elements.util.DatagramWriter;
-
 /**
  * The DataSerialized serializes outgoing messages to byte arrays based on CoAP TCP/TLS spec:
  * <a href="https://tools.ietf.org/html/draft-ietf-core-coap-tcp-tls"/>
  */
 public final class TcpDataSerializer extends DataSerializer {
 
-	@Override protected void serializeHeader(final DatagramWriter writer, final MessageHeader header) {
+	@Override protected void serializeHeader(final MessageWriter writer, final MessageHeader header) {
 		// Variable length encoding per: https://tools.ietf.org/html/draft-ietf-core-coap-tcp-tls-02
+		int tokenLength = header.getToken().length;
 		if (header.getBodyLength() < 13) {
-			writer.write(header.getBodyLength(), LENGTH_NIBBLE_BITS);
-			writer.write(header.getToken().length, TOKEN_LENGTH_BITS);
+			writer.writeByte(header.getBodyLength() << TOKEN_LENGTH_BITS | tokenLength);
 		} else if (header.getBodyLength() < (1 << 8) + 13) {
-			writer.write(13, LENGTH_NIBBLE_BITS);
-			writer.write(header.getToken().length, TOKEN_LENGTH_BITS);
-			writer.write(header.getBodyLength() - 13, Byte.SIZE);
+			writer.writeByte(13 << TOKEN_LENGTH_BITS | tokenLength);
+			writer.writeByte(header.getBodyLength() - 13);
 		} else if (header.getBodyLength() < (1 << 16) + 269) {
-			writer.write(14, LENGTH_NIBBLE_BITS);
-			writer.write(header.getToken().length, TOKEN_LENGTH_BITS);
-			writer.write(header.getBodyLength() - 269, 2 * Byte.SIZE);
+			writer.writeByte(14 << TOKEN_LENGTH_BITS | tokenLength);
+			writer.writeShort(header.getBodyLength() - 269);
 		} else {
-			writer.write(15, LENGTH_NIBBLE_BITS);
-			writer.write(header.getToken().length, TOKEN_LENGTH_BITS);
-			writer.write(header.getBodyLength() - 65805, 4 * Byte.SIZE);
+			writer.writeByte(15 << TOKEN_LENGTH_BITS | tokenLength);
+			writer.writeInt(header.getBodyLength() - 65805);
 		}
 
-		writer.write(header.getCode(), CODE_BITS);
+		writer.writeByte(header.getCode());
 		writer.writeBytes(header.getToken());
 	}
 }
@@ -18,14 +18,14 @@
  * Kai Hudalla - logging
  * Bosch Software Innovations GmbH - introduce dedicated MessageFormatException
  * Joe Magerramov (Amazon Web Services) - CoAP over TCP support.
+ * Bosch Software Innovations GmbH - parse header directly from a byte range
  ******************************************************************************/
 package org.eclipse.californium.core.network.serialization;
 
+import java.nio.ByteBuffer;
+
 import org.eclipse.californium.core.coap.CoAP;
 import org.eclipse.californium.core.coap.MessageFormatException;
-import org.eclipse.californium.elements.util.DatagramReader;
-
-import static org.eclipse.californium.core.coap.CoAP.MessageFormat.*;
 
 /**
  * A parser for messages encoded following the standard CoAP encoding.
@@ -33,15 +33,17 @@ import static org.eclipse.californium.core.coap.CoAP.MessageFormat.*;
 public final class UdpDataParser extends DataParser {
 
 	@Override
-	protected MessageHeader parseHeader(final DatagramReader reader) {
-		int version = reader.read(VERSION_BITS);
+	protected MessageHeader parseHeader(final ByteBuffer buffer) {
+		// Ver (2 bits) | T (2 bits) | TKL (4 bits)
+		int first = readUnsignedByte(buffer);
+		int version = first >> 6;
 		assertCorrectVersion(version);
-		int type = reader.read(TYPE_BITS);
-		int tokenLength = reader.read(TOKEN_LENGTH_BITS);
+		int type = (first >> 4) & 0x03;
+		int tokenLength = first & 0x0F;
 		assertValidTokenLength(tokenLength);
-		int code = reader.read(CODE_BITS);
-		int mid = reader.read(MESSAGE_ID_BITS);
-		byte token[] = reader.readBytes(tokenLength);
+		int code = readUnsignedByte(buffer);
+		int mid = readUnsignedShort(buffer);
+		byte token[] = readBytes(buffer, tokenLength);
 
 		return new MessageHeader(version, CoAP.Type.valueOf(type), token, code, mid, 0);
 	}
@@ -18,24 +18,23 @@
  * Kai Hudalla - logging
  * Bosch Software Innovations GmbH - turn into utility class with static methods only
  * Joe Magerramov (Amazon Web Services) - CoAP over TCP support.
+ * Bosch Software Innovations GmbH - serialize header using MessageWriter
  ******************************************************************************/
 package org.eclipse.californium.core.network.serialization;
 
 import static org.eclipse.californium.core.coap.CoAP.MessageFormat.*;
 
-import org.eclipse.californium.elements.util.DatagramWriter;
-
 /**
  * The DataSerialized serializes outgoing messages to byte arrays.
  */
 public final class UdpDataSerializer extends DataSerializer {
 
-	@Override protected void serializeHeader(final DatagramWriter writer, final MessageHeader header) {
-		writer.write(VERSION, VERSION_BITS);
-		writer.write(header.getType().value, TYPE_BITS);
-		writer.write(header.getToken().length, TOKEN_LENGTH_BITS);
-		writer.write(header.getCode(), CODE_BITS);
-		writer.write(header.getMID(), MESSAGE_ID_BITS);
+	@Override protected void serializeHeader(final MessageWriter writer, final MessageHeader header) {
+		// Ver (2 bits) | T (2 bits) | TKL (4 bits)
+		writer.writeByte(VERSION << (TYPE_BITS + TOKEN_LENGTH_BITS) | header.getType().value << TOKEN_LENGTH_BITS
+				| header.getToken().length);
+		writer.writeByte(header.getCode());
+		writer.writeShort(header.getMID() & 0xFFFF);
 		writer.writeBytes(header.getToken());
 	}
 }
@@ -18,10 +18,14 @@
  *    Kai Hudalla - logging
  *    Kai Hudalla (Bosch Software Innovations GmbH) - use Logger's message formatting instead of
  *                                                    explicit String concatenation
+ *    Bosch Software Innovations GmbH - add timeout scheduler
+ *    Bosch Software Innovations GmbH - execute tasks on the lane of a peer
  ******************************************************************************/
 package org.eclipse.californium.core.network.stack;
 
+import java.net.InetAddress;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -31,6 +35,9 @@ import org.eclipse.californium.core.coap.Request;
 import org.eclipse.californium.core.coap.Response;
 import org.eclipse.californium.core.coap.CoAP.Type;
 import org.eclipse.californium.core.network.Exchange;
+import org.eclipse.californium.core.network.StripedProtocolStage;
+import org.eclipse.californium.elements.util.ExecutorTimeoutScheduler;
+import org.eclipse.californium.elements.util.TimeoutScheduler;
 
 
 /**
@@ -60,6 +67,9 @@ public abstract class AbstractLayer implements Layer {
 	/** The executor. */
 	protected ScheduledExecutorService executor;
 
+	/** The scheduler for timeouts, e.g. retransmissions. */
+	protected TimeoutScheduler timer;
+
 	@Override
 	public void sendRequest(final Exchange exchange, final Request request) {
 		lowerLayer.sendRequest(exchange, request);
@@ -130,9 +140,51 @@ public abstract class AbstractLayer implements Layer {
 		return upperLayer;
 	}
 
+	/**
+	 * Sets the executor.
+	 * <p>
+	 * Also sets the scheduler for timeouts to one using the executor.
+	 * 
+	 * @param executor the executor.
+	 * @see #setTimeoutScheduler(TimeoutScheduler)
+	 */
 	@Override
 	public final void setExecutor(final ScheduledExecutorService executor) {
 		this.executor = executor;
+		this.timer = executor == null ? null : new ExecutorTimeoutScheduler(executor);
+	}
+
+	/**
+	 * Sets the scheduler to use for timeouts.
+	 * <p>
+	 * Must be called after {@link #setExecutor(ScheduledExecutorService)}.
+	 * 
+	 * @param timer the scheduler.
+	 */
+	public final void setTimeoutScheduler(final TimeoutScheduler timer) {
+		this.timer = timer;
+	}
+
+	/**
+	 * Executes a task for a peer.
+	 * <p>
+	 * If the timeout scheduler is a {@link StripedProtocolStage}, the task is
+	 * queued on the peer's lane so that it is executed in order with the
+	 * peer's other tasks. Otherwise the task is handed to the executor. The
+	 * task is never executed by the calling thread.
+	 * 
+	 * @param address the peer's IP address. If {@code null}, the task is
+	 *            handed to the executor.
+	 * @param port the peer's port.
+	 * @param task the task to execute.
+	 */
+	protected final void execute(final InetAddress address, final int port, final Runnable task) {
+		TimeoutScheduler scheduler = timer;
+		if (address != null && scheduler instanceof StripedProtocolStage) {
+			((StripedProtocolStage) scheduler).schedule(address, port, task, 0, TimeUnit.MILLISECONDS);
+		} else {
+			executor.execute(task);
+		}
 	}
 
 	/**
@@ -20,6 +20,8 @@
  *                                                 explicit String concatenation
  * Joe Magerramov (Amazon Web Services) - CoAP over TCP support.
  * Achim Kraus (Bosch Software Innovations GmbH) - derived from UDP and TCP CoAP stack
+ * Bosch Software Innovations GmbH - add timeout scheduler
+ * Bosch Software Innovations GmbH - pass block sink provider to blockwise layer
  ******************************************************************************/
 package org.eclipse.californium.core.network.stack;
 
@@ -34,7 +36,9 @@ import org.eclipse.californium.core.network.Exchange;
 import org.eclipse.californium.core.network.Exchange.Origin;
 import org.eclipse.californium.core.network.Outbox;
 import org.eclipse.californium.core.network.stack.Layer.TopDownBuilder;
+import org.eclipse.californium.core.server.BlockSinkProvider;
 import org.eclipse.californium.core.server.MessageDeliverer;
+import org.eclipse.californium.elements.util.TimeoutScheduler;
 
 /**
  * The BaseCoapStack passes the messages through the layers configured in the
@@ -116,9 +120,31 @@ public abstract class BaseCoapStack implements CoapStack {
 		}
 	}
 
+	/**
+	 * Sets the scheduler for the layers' timeouts.
+	 * <p>
+	 * Must be called after {@link #setExecutor(ScheduledExecutorService)},
+	 * which resets the layers' timeout schedulers to the executor.
+	 * 
+	 * @param timer the scheduler.
+	 */
+	public final void setTimeoutScheduler(final TimeoutScheduler timer) {
+		for (Layer layer : layers) {
+			if (layer instanceof AbstractLayer) {
+				((AbstractLayer) layer).setTimeoutScheduler(timer);
+			}
+		}
+	}
+
 	@Override
 	public final void setDeliverer(final MessageDeliverer deliverer) {
 		this.deliverer = deliverer;
+		BlockSinkProvider provider = deliverer instanceof BlockSinkProvider ? (BlockSinkProvider) deliverer : null;
+		for (Layer layer : layers) {
+			if (layer instanceof BlockwiseLayer) {
+				((BlockwiseLayer) layer).setBlockSinkProvider(provider);
+			}
+		}
 	}
 
 	@Override
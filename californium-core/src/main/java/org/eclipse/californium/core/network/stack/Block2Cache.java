@@ -0,0 +1,369 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Bosch Software Innovations GmbH and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *    Bosch Software Innovations GmbH - initial creation
+ ******************************************************************************/
+package org.eclipse.californium.core.network.stack;
+
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.californium.core.coap.CoAP.Code;
+import org.eclipse.californium.core.coap.CoAP.ResponseCode;
+import org.eclipse.californium.core.coap.OptionSet;
+import org.eclipse.californium.core.coap.Request;
+import org.eclipse.californium.core.coap.Response;
+
+/**
+ * A cache of response bodies sliced into Block2 payloads.
+ * <p>
+ * Many clients fetching the same large resource blockwise each request all
+ * blocks of the body. Without the cache, the resource is invoked for every
+ * block and every block is copied from the complete body. The cache keeps the
+ * blocks of a body as immutable arrays shared by all responses, so that the
+ * blocks following the first one can be served without invoking the resource.
+ * </p>
+ * <p>
+ * Entries are kept per URI, requested content format (Accept option), block
+ * size and ETag. Only successful responses to GET requests containing exactly
+ * one ETag are cached. The ETag is included in every block, so a client
+ * detects a body that has changed during its transfer. Since the first block
+ * is always fetched from the resource, the body with the resource's most
+ * recent ETag becomes the current one for requests without ETag right away.
+ * Requests containing ETags are answered with the body of one of these ETags,
+ * so that a client can finish the transfer of a body, which has changed in
+ * the meantime.
+ * </p>
+ * <p>
+ * The resource is only invoked for the first block, so it can only authorize
+ * the peers fetching the first block. A cached body is therefore only served
+ * to peers which have fetched its first block from the resource within the
+ * lifetime of the entry.
+ * </p>
+ * <p>
+ * The cache is bounded by the number of bytes of the cached bodies. The least
+ * recently used entries are evicted first. Entries expire if the first block
+ * of the body has not been fetched for the configured lifetime.
+ * </p>
+ */
+final class Block2Cache {
+
+	private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+	/** The ETags of the most recently cached bodies, keyed without ETag */
+	private final Map<Key, byte[]> currentETags = new HashMap<>();
+	private final int capacity;
+	private final long lifetimeNanos;
+	private int size;
+
+	/**
+	 * Creates a new cache.
+	 *
+	 * @param capacity the maximum number of bytes of all cached bodies.
+	 * @param lifetime the number of milliseconds after which an entry expires,
+	 *            if the first block of the body has not been fetched again.
+	 * @throws IllegalArgumentException if capacity or lifetime is &lt; 1.
+	 */
+	Block2Cache(final int capacity, final long lifetime) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("Capacity must be at least 1 byte");
+		}
+		if (lifetime < 1) {
+			throw new IllegalArgumentException("Lifetime must be at least 1 ms");
+		}
+		this.capacity = capacity;
+		this.lifetimeNanos = TimeUnit.MILLISECONDS.toNanos(lifetime);
+	}
+
+	/**
+	 * Checks, if a response can be cached.
+	 *
+	 * @param request the request.
+	 * @param response the response to the request.
+	 * @return {@code true}, if the response is a successful, non-notification
+	 *         response with a single ETag and a payload to a GET request.
+	 */
+	static boolean isCacheable(final Request request, final Response response) {
+		return request != null && request.getCode() == Code.GET && ResponseCode.isSuccess(response.getCode())
+				&& !response.getOptions().hasObserve() && response.getOptions().getETagCount() == 1
+				&& response.getBlockSource() == null && response.getPayloadSize() > 0;
+	}
+
+	/**
+	 * Gets the cached body for a request.
+	 *
+	 * @param request the request for a block of the body. If the request
+	 *            contains ETags, the cached body's ETag must be one of them.
+	 *            Otherwise the body with the most recent ETag is returned.
+	 * @param szx the block size.
+	 * @return the cached body, or {@code null}, if no body is cached for the
+	 *         request or the requesting peer has not fetched the first block
+	 *         of the body.
+	 */
+	synchronized Entry get(final Request request, final int szx) {
+		long now = System.nanoTime();
+		InetSocketAddress peer = getPeer(request);
+		List<byte[]> etags = request.getOptions().getETags();
+		if (etags.isEmpty()) {
+			byte[] etag = currentETags.get(new Key(request, szx, null));
+			return etag == null ? null : get(new Key(request, szx, etag), peer, now);
+		}
+		for (byte[] etag : etags) {
+			Entry entry = get(new Key(request, szx, etag), peer, now);
+			if (entry != null) {
+				return entry;
+			}
+		}
+		return null;
+	}
+
+	private Entry get(final Key key, final InetSocketAddress peer, final long now) {
+		Entry entry = entries.get(key);
+		if (entry == null) {
+			return null;
+		} else if (entry.isExpired(now)) {
+			remove(key);
+			return null;
+		} else if (!entry.isAuthorized(peer, now)) {
+			return null;
+		} else {
+			return entry;
+		}
+	}
+
+	/**
+	 * Gets the cached body for a response, adding it if necessary.
+	 * <p>
+	 * If a body with the response's ETag is cached already, the cached entry
+	 * is returned and its lifetime is refreshed. Otherwise the response's body
+	 * is sliced into blocks and becomes the current body. Bodies exceeding the
+	 * capacity of the cache are not added. In both cases the requesting peer
+	 * is authorized to fetch the following blocks from the cache.
+	 *
+	 * @param request the request for the first block.
+	 * @param response the cacheable response to the request.
+	 * @param szx the block size.
+	 * @return the cached body, or {@code null}, if the body has not been
+	 *         added to the cache.
+	 * @see #isCacheable(Request, Response)
+	 */
+	synchronized Entry put(final Request request, final Response response, final int szx) {
+		long now = System.nanoTime();
+		byte[] etag = response.getOptions().getETags().get(0);
+		Key key = new Key(request, szx, etag);
+		Entry entry = entries.get(key);
+		if (entry != null && entry.bodySize != response.getPayloadSize()) {
+			// same ETag, but another body
+			remove(key);
+			entry = null;
+		}
+		if (entry == null) {
+			if (response.getPayloadSize() > capacity) {
+				return null;
+			}
+			entry = new Entry(response, etag, szx);
+			entries.put(key, entry);
+			size += entry.bodySize;
+		}
+		entry.expires = now + lifetimeNanos;
+		entry.authorize(getPeer(request), entry.expires, now);
+		currentETags.put(new Key(request, szx, null), etag);
+		evict(now);
+		return entries.containsKey(key) ? entry : null;
+	}
+
+	private static InetSocketAddress getPeer(final Request request) {
+		return new InetSocketAddress(request.getSource(), request.getSourcePort());
+	}
+
+	/**
+	 * Gets the number of bytes of all cached bodies.
+	 *
+	 * @return the number of bytes.
+	 */
+	synchronized int size() {
+		return size;
+	}
+
+	private void remove(final Key key) {
+		Entry entry = entries.remove(key);
+		if (entry != null) {
+			removed(key, entry);
+		}
+	}
+
+	private void removed(final Key key, final Entry entry) {
+		size -= entry.bodySize;
+		Key current = key.withoutETag();
+		if (Arrays.equals(currentETags.get(current), entry.etag)) {
+			currentETags.remove(current);
+		}
+	}
+
+	private void evict(final long now) {
+		Iterator<Map.Entry<Key, Entry>> iterator = entries.entrySet().iterator();
+		while (iterator.hasNext()) {
+			Map.Entry<Key, Entry> mapping = iterator.next();
+			Entry entry = mapping.getValue();
+			if (size > capacity || entry.isExpired(now)) {
+				iterator.remove();
+				removed(mapping.getKey(), entry);
+			} else {
+				break;
+			}
+		}
+	}
+
+	/**
+	 * A body sliced into blocks.
+	 */
+	static final class Entry {
+
+		private final ResponseCode code;
+		private final OptionSet options;
+		private final byte[] etag;
+		private final byte[][] blocks;
+		private final int bodySize;
+		private final int szx;
+		/** The peers allowed to fetch blocks, oldest authorization first */
+		private final LinkedHashMap<InetSocketAddress, Long> peers = new LinkedHashMap<>();
+		private long expires;
+
+		private Entry(final Response response, final byte[] etag, final int szx) {
+			this.code = response.getCode();
+			this.options = new OptionSet(response.getOptions());
+			this.options.removeBlock2();
+			this.options.removeSize2();
+			this.etag = etag;
+			this.szx = szx;
+
+			byte[] body = response.getPayload();
+			int blockSize = BlockwiseLayer.getSizeForSzx(szx);
+			this.bodySize = body.length;
+			this.blocks = new byte[(bodySize + blockSize - 1) / blockSize][];
+			for (int num = 0; num < blocks.length; num++) {
+				int from = num * blockSize;
+				blocks[num] = Arrays.copyOfRange(body, from, Math.min(from + blockSize, bodySize));
+			}
+		}
+
+		private boolean isExpired(final long now) {
+			return now - expires > 0;
+		}
+
+		private void authorize(final InetSocketAddress peer, final long expires, final long now) {
+			// re-insert to keep the peers ordered by authorization
+			peers.remove(peer);
+			peers.put(peer, expires);
+			Iterator<Long> iterator = peers.values().iterator();
+			while (iterator.hasNext() && now - iterator.next() > 0) {
+				iterator.remove();
+			}
+		}
+
+		private boolean isAuthorized(final InetSocketAddress peer, final long now) {
+			Long peerExpires = peers.get(peer);
+			return peerExpires != null && now - peerExpires <= 0;
+		}
+
+		/**
+		 * Gets the number of blocks of the body.
+		 *
+		 * @return the number of blocks.
+		 */
+		int getBlockCount() {
+			return blocks.length;
+		}
+
+		/**
+		 * Creates a response containing a block of the body.
+		 * <p>
+		 * The response shares the block's payload with all other responses
+		 * created for the same block. It contains the Block2 and Size2 options.
+		 *
+		 * @param num the number of the block.
+		 * @return the response. If the number exceeds the number of blocks, the
+		 *         response has no payload.
+		 */
+		Response createBlock(final int num) {
+			Response block = new Response(code);
+			block.setOptions(new OptionSet(options));
+			boolean m = num < blocks.length - 1;
+			block.getOptions().setBlock2(szx, m, num);
+			block.getOptions().setSize2(bodySize);
+			if (num < blocks.length) {
+				block.setPayload(blocks[num]);
+			}
+			return block;
+		}
+	}
+
+	private static final class Key {
+
+		private final String host;
+		private final String path;
+		private final String query;
+		private final int accept;
+		private final int szx;
+		private final byte[] etag;
+		private final int hash;
+
+		private Key(final Request request, final int szx, final byte[] etag) {
+			this(request.getOptions().getUriHost(), request.getOptions().getUriPathString(),
+					request.getOptions().getUriQueryString(), request.getOptions().getAccept(), szx, etag);
+		}
+
+		private Key(final String host, final String path, final String query, final int accept, final int szx,
+				final byte[] etag) {
+			this.host = host;
+			this.path = path;
+			this.query = query;
+			this.accept = accept;
+			this.szx = szx;
+			this.etag = etag;
+			int result = host == null ? 0 : host.hashCode();
+			result = 31 * result + path.hashCode();
+			result = 31 * result + query.hashCode();
+			result = 31 * result + accept;
+			result = 31 * result + szx;
+			this.hash = 31 * result + Arrays.hashCode(etag);
+		}
+
+		private Key withoutETag() {
+			return new Key(host, path, query, accept, szx, null);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			if (this == obj) {
+				return true;
+			} else if (!(obj instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) obj;
+			return hash == other.hash && accept == other.accept && szx == other.szx && path.equals(other.path)
+					&& query.equals(other.query) && (host == null ? other.host == null : host.equals(other.host))
+					&& Arrays.equals(etag, other.etag);
+		}
+	}
+}
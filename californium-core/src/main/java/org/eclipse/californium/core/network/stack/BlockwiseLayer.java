@@ -21,9 +21,17 @@
  *    Achim Kraus (Bosch Software Innovations GmbH) - check, if exchange is already
  *                                                    completed before report timeout.
  *                                                    Issue #103
+ *    Bosch Software Innovations GmbH - schedule clean-up by timeout scheduler
+ *    Bosch Software Innovations GmbH - stream bodies from block sources and to
+ *                                      block sinks
+ *    Bosch Software Innovations GmbH - serve blocks of popular bodies from
+ *                                      a shared cache
+ *    Bosch Software Innovations GmbH - reserve buffers from a memory budget
+ *    Bosch Software Innovations GmbH - discard notification templates of blocks
  ******************************************************************************/
 package org.eclipse.californium.core.network.stack;
 
+import java.io.IOException;
 import java.util.Arrays;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
@@ -31,6 +39,8 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.eclipse.californium.core.coap.BlockOption;
+import org.eclipse.californium.core.coap.BlockSink;
+import org.eclipse.californium.core.coap.BlockSource;
 import org.eclipse.californium.core.coap.CoAP.Code;
 import org.eclipse.californium.core.coap.CoAP.ResponseCode;
 import org.eclipse.californium.core.coap.CoAP.Type;
@@ -42,6 +52,8 @@ import org.eclipse.californium.core.coap.Request;
 import org.eclipse.californium.core.coap.Response;
 import org.eclipse.californium.core.network.Exchange;
 import org.eclipse.californium.core.network.config.NetworkConfig;
+import org.eclipse.californium.core.network.config.NetworkConfigDefaults;
+import org.eclipse.californium.core.server.BlockSinkProvider;
 
 /**
  * Provides transparent handling of blockwise transfer of a large <em>resource body</em>.
@@ -54,6 +66,21 @@ import org.eclipse.californium.core.network.config.NetworkConfig;
  * a resource body then a blockwise transfer for retrieving the individual blocks of the resource
  * body is started. Once all blocks are retrieved, they are assembled into a single {@code Response}
  * object containing the full body which is then delivered to the application layer.
+ * <p>
+ * Outbound responses with a {@link BlockSource} are transferred blockwise by reading the
+ * requested blocks from the source, i.e. the body is never copied completely. Inbound
+ * blockwise uploads are written block by block to a {@link BlockSink}, if the
+ * {@link BlockSinkProvider} provides one for the request.
+ * <p>
+ * If {@link org.eclipse.californium.core.network.config.NetworkConfig.Keys#BLOCKWISE_CACHE_SIZE}
+ * is set, the bodies of cacheable responses are sliced into blocks once and kept in a
+ * {@link Block2Cache} shared by all peers. Requests for further blocks of such a body
+ * are then answered from the cache without invoking the resource again, provided the
+ * requesting peer has fetched the first block from the resource.
+ * <p>
+ * The buffers for assembling inbound bodies are reserved from a {@link BlockwiseMemoryBudget}.
+ * Uploads are rejected with 5.03 (Service Unavailable), and downloads are canceled, while the
+ * budget is exhausted.
  * 
  */
 public class BlockwiseLayer extends AbstractLayer {
@@ -100,6 +127,9 @@ public class BlockwiseLayer extends AbstractLayer {
 	private int preferredBlockSize;
 	private int blockTimeout;
 	private int maxResourceBodySize;
+	private final Block2Cache block2Cache;
+	private final BlockwiseMemoryBudget memoryBudget;
+	private volatile BlockSinkProvider blockSinkProvider;
 
 	/**
 	 * Creates a new blockwise layer for a configuration.
@@ -128,6 +158,15 @@ public class BlockwiseLayer extends AbstractLayer {
 	 * The maximum amount of time (in milliseconds) allowed between transfers of individual blocks before
 	 * the blockwise transfer state is discarded.
 	 * If not set, a default value of 30 seconds is used.</li>
+	 * 
+	 * <li>{@link org.eclipse.californium.core.network.config.NetworkConfig.Keys#BLOCKWISE_CACHE_SIZE} -
+	 * The maximum number of bytes of response bodies kept sliced into blocks for serving them to
+	 * many peers. Cached bodies expire after BLOCKWISE_STATUS_LIFETIME.
+	 * If not set, no bodies are cached.</li>
+	 * 
+	 * <li>{@link org.eclipse.californium.core.network.config.NetworkConfig.Keys#BLOCKWISE_MEMORY_BUDGET} -
+	 * The maximum number of bytes of all buffers used for assembling inbound bodies.
+	 * If not set, the number of bytes is not limited.</li>
 	 * </ul>
 
 	 * @param config The configuration values to use.
@@ -138,10 +177,39 @@ public class BlockwiseLayer extends AbstractLayer {
 		preferredBlockSize = config.getInt(NetworkConfig.Keys.PREFERRED_BLOCK_SIZE, 512);
 		blockTimeout = config.getInt(NetworkConfig.Keys.BLOCKWISE_STATUS_LIFETIME);
 		maxResourceBodySize = config.getInt(NetworkConfig.Keys.MAX_RESOURCE_BODY_SIZE, 2048);
+		memoryBudget = new BlockwiseMemoryBudget(config.getLong(NetworkConfig.Keys.BLOCKWISE_MEMORY_BUDGET, 0));
+		int cacheSize = config.getInt(NetworkConfig.Keys.BLOCKWISE_CACHE_SIZE, 0);
+		if (cacheSize > 0) {
+			int lifetime = blockTimeout > 0 ? blockTimeout : NetworkConfigDefaults.DEFAULT_BLOCKWISE_STATUS_LIFETIME;
+			block2Cache = new Block2Cache(cacheSize, lifetime);
+		} else {
+			block2Cache = null;
+		}
 
 		LOGGER.log(Level.CONFIG,
-			"BlockwiseLayer uses MAX_MESSAGE_SIZE={0}, PREFERRED_BLOCK_SIZE={1}, BLOCKWISE_STATUS_LIFETIME={2} and MAX_RESOURCE_BODY_SIZE={3}",
-			new Object[]{maxMessageSize, preferredBlockSize, blockTimeout, maxResourceBodySize});
+			"BlockwiseLayer uses MAX_MESSAGE_SIZE={0}, PREFERRED_BLOCK_SIZE={1}, BLOCKWISE_STATUS_LIFETIME={2}, MAX_RESOURCE_BODY_SIZE={3}, BLOCKWISE_CACHE_SIZE={4} and BLOCKWISE_MEMORY_BUDGET={5}",
+			new Object[]{maxMessageSize, preferredBlockSize, blockTimeout, maxResourceBodySize, cacheSize, memoryBudget.getCapacity()});
+	}
+
+	/**
+	 * Sets the provider of sinks for inbound blockwise uploads.
+	 * 
+	 * @param provider The provider, or {@code null}, to assemble all uploads
+	 *            in the request's payload.
+	 */
+	public void setBlockSinkProvider(final BlockSinkProvider provider) {
+		this.blockSinkProvider = provider;
+	}
+
+	/**
+	 * Gets the budget the buffers for assembling inbound bodies are reserved
+	 * from.
+	 * 
+	 * @return The budget providing the number of active transfers and bytes
+	 *         held.
+	 */
+	public BlockwiseMemoryBudget getMemoryBudget() {
+		return memoryBudget;
 	}
 
 	@Override
@@ -215,9 +283,15 @@ public class BlockwiseLayer extends AbstractLayer {
 			status.setCurrentNum(block2.getNum());
 			status.setCurrentSzx(block2.getSzx());
 
-			Response block = getNextResponseBlock(response, status);
+			Response block;
+			try {
+				block = getNextResponseBlock(exchange, response, status);
+			} catch (IOException e) {
+				sendBlockSourceError(exchange, e);
+				return;
+			}
 			// indicate overall body size to peer
-			block.getOptions().setSize2(response.getPayloadSize());
+			block.getOptions().setSize2(response.getBodySize());
 			if (status.isComplete()) {
 				// clean up blockwise status
 				LOGGER.log(Level.FINE, "peer has requested last block of blockwise transfer: {0}", status);
@@ -230,6 +304,9 @@ public class BlockwiseLayer extends AbstractLayer {
 			exchange.setCurrentResponse(block);
 			lower().sendResponse(exchange, block);
 
+		} else if (block2Cache != null && sendCachedBlock(exchange, request)) {
+			LOGGER.log(Level.FINE, "peer has requested cached block {0}", request.getOptions().getBlock2());
+
 		} else {
 			earlyBlock2Negotiation(exchange, request);
 
@@ -238,10 +315,53 @@ public class BlockwiseLayer extends AbstractLayer {
 		}
 	}
 
+	/**
+	 * Sends a block of a cached body, if the request is for one of the blocks
+	 * following the first one.
+	 * 
+	 * @param exchange The exchange of the request.
+	 * @param request The request.
+	 * @return {@code true}, if the block has been sent, {@code false}, if the
+	 *         request needs to be delivered to the resource.
+	 */
+	private boolean sendCachedBlock(final Exchange exchange, final Request request) {
+		BlockOption block2 = request.getOptions().getBlock2();
+		if (block2 == null || block2.getNum() == 0 || request.getCode() != Code.GET
+				|| request.getOptions().hasObserve()) {
+			return false;
+		}
+		Block2Cache.Entry body = block2Cache.get(request, block2.getSzx());
+		if (body == null) {
+			return false;
+		}
+		Response block = body.createBlock(block2.getNum());
+		block.setDestination(request.getSource());
+		block.setDestinationPort(request.getSourcePort());
+
+		exchange.setRequest(request);
+		exchange.setResponse(block);
+		exchange.setCurrentResponse(block);
+		lower().sendResponse(exchange, block);
+		return true;
+	}
+
 	private void handleInboundBlockwiseUpload(final BlockOption block1, final Exchange exchange, final Request request) {
 
-		if (requestExceedsMaxBodySize(request)) {
+		BlockwiseStatus sinkStatus = exchange.getRequestBlockStatus();
+		if (block1.getNum() == 0) {
+			// (re-)start of an upload
+			if (sinkStatus != null) {
+				sinkStatus.abortSink();
+			}
+			sinkStatus = startBlockSink(exchange, request);
+		}
 
+		if ((sinkStatus == null || sinkStatus.getSink() == null) && requestExceedsMaxBodySize(request)) {
+
+			if (sinkStatus != null) {
+				sinkStatus.abortSink();
+				exchange.setRequestBlockStatus(null);
+			}
 			Response error = Response.createResponse(request, ResponseCode.REQUEST_ENTITY_TOO_LARGE);
 			error.setPayload(String.format("body too large, can process %d bytes max", maxResourceBodySize));
 			error.getOptions().setSize1(maxResourceBodySize);
@@ -251,7 +371,7 @@ public class BlockwiseLayer extends AbstractLayer {
 
 			BlockwiseStatus status = findRequestBlockStatus(exchange, request);
 
-			if (block1.getNum() == 0 && status.getCurrentNum() > 0) {
+			if (status != null && block1.getNum() == 0 && status.getCurrentNum() > 0) {
 				// reset the blockwise transfer
 				LOGGER.finer("Block1 num is 0, the client has restarted the blockwise transfer. Reset status.");
 				// reset current status
@@ -260,11 +380,18 @@ public class BlockwiseLayer extends AbstractLayer {
 				status = findRequestBlockStatus(exchange, request);
 			}
 
+			if (status == null) {
+				sendMemoryBudgetExhausted(exchange, request);
+				return;
+			}
+
 			if (block1.getNum() == status.getCurrentNum()) {
 
 				if (status.hasContentFormat(request.getOptions().getContentFormat())) {
 
-					status.addBlock(request.getPayload());
+					if (!addBlock(exchange, request, block1, status)) {
+						return;
+					}
 					status.setCurrentNum(status.getCurrentNum() + 1);
 					if ( block1.isM() ) {
 						LOGGER.finest("There are more blocks to come. Acknowledge this block.");
@@ -297,13 +424,7 @@ public class BlockwiseLayer extends AbstractLayer {
 					}
 
 				} else {
-					Response error = Response.createResponse(request, ResponseCode.REQUEST_ENTITY_INCOMPLETE);
-					error.getOptions().setBlock1(block1.getSzx(), block1.isM(), block1.getNum());
-					error.setPayload("unexpected Content-Format");
-
-					exchange.setCurrentResponse(error);
-					lower().sendResponse(exchange, error);
-					return;
+					sendRequestEntityIncomplete(exchange, request, block1, status, "unexpected Content-Format");
 				}
 
 			} else {
@@ -311,12 +432,7 @@ public class BlockwiseLayer extends AbstractLayer {
 				LOGGER.log(Level.WARNING,
 						"Wrong block number. Expected {0} but received {1}. Respond with 4.08 (Request Entity Incomplete)",
 						new Object[]{status.getCurrentNum(), block1.getNum()});
-				Response error = Response.createResponse(request, ResponseCode.REQUEST_ENTITY_INCOMPLETE);
-				error.getOptions().setBlock1(block1.getSzx(), block1.isM(), block1.getNum());
-				error.setPayload("Wrong block number");
-				exchange.setCurrentResponse(error);
-
-				lower().sendResponse(exchange, error);
+				sendRequestEntityIncomplete(exchange, request, block1, status, "Wrong block number");
 			}
 		}
 	}
@@ -333,8 +449,14 @@ public class BlockwiseLayer extends AbstractLayer {
 		if (requiresBlockwise(exchange, response)) {
 
 			BlockwiseStatus status = findResponseBlockStatus(exchange, response);
-			int bodySize = response.getPayloadSize();
-			Response block = getNextResponseBlock(response, status);
+			int bodySize = response.getBodySize();
+			Response block;
+			try {
+				block = getNextResponseBlock(exchange, response, status);
+			} catch (IOException e) {
+				sendBlockSourceError(exchange, e);
+				return;
+			}
 			// indicate overall body size to peer
 			block.getOptions().setSize2(bodySize);
 
@@ -354,6 +476,16 @@ public class BlockwiseLayer extends AbstractLayer {
 			lower().sendResponse(exchange, block);
 
 		} else {
+			BlockSource source = response.getBlockSource();
+			if (source != null) {
+				// small enough to be sent in a single message
+				try {
+					response.setPayload(source.read(0, source.size()));
+				} catch (IOException e) {
+					sendBlockSourceError(exchange, e);
+					return;
+				}
+			}
 			if (block1 != null) {
 				response.getOptions().setBlock1(block1);
 			}
@@ -509,6 +641,11 @@ public class BlockwiseLayer extends AbstractLayer {
 		}
 
 		BlockwiseStatus responseStatus = findResponseBlockStatus(exchange, response);
+		if (responseStatus == null) {
+			LOGGER.log(Level.WARNING, "blockwise memory budget [{0}] exhausted, aborting request", memoryBudget.getCapacity());
+			exchange.getRequest().cancel();
+			return;
+		}
 
 		// a new notification might arrive during a blockwise transfer
 		if (response.isNotification() && block2.getNum() == 0 && responseStatus.getCurrentNum() != 0) {
@@ -520,6 +657,11 @@ public class BlockwiseLayer extends AbstractLayer {
 				exchange.setResponseBlockStatus(null);
 				// and create new status for fresher notification
 				responseStatus = findResponseBlockStatus(exchange, response);
+				if (responseStatus == null) {
+					LOGGER.log(Level.WARNING, "blockwise memory budget [{0}] exhausted, aborting request", memoryBudget.getCapacity());
+					exchange.getRequest().cancel();
+					return;
+				}
 			} else {
 				LOGGER.log(Level.FINE, "discarding old notification received during ongoing blockwise transfer: {0}", response);
 				return;
@@ -669,7 +811,10 @@ public class BlockwiseLayer extends AbstractLayer {
 					// use size indication for allocating buffer
 					bufferSize = request.getOptions().getSize1();
 				}
-				status = new BlockwiseStatus(bufferSize, request.getOptions().getContentFormat());
+				status = newBufferStatus(bufferSize, request.getOptions().getContentFormat());
+				if (status == null) {
+					return null;
+				}
 			}
 			status.setFirst(request);
 			status.setCurrentSzx(computeSZX(preferredBlockSize));
@@ -699,7 +844,10 @@ public class BlockwiseLayer extends AbstractLayer {
 					// use size indication for allocating buffer
 					bufferSize = response.getOptions().getSize2();
 				}
-				status = new BlockwiseStatus(bufferSize, response.getOptions().getContentFormat());
+				status = newBufferStatus(bufferSize, response.getOptions().getContentFormat());
+				if (status == null) {
+					return null;
+				}
 			} else {
 				// we are sending out a large body in response to a request from a peer
 				// we do not need to buffer and assemble anything
@@ -717,6 +865,150 @@ public class BlockwiseLayer extends AbstractLayer {
 		return status;
 	}
 
+	/**
+	 * Creates a status with a buffer reserved from the memory budget.
+	 * 
+	 * @param bufferSize The size of the buffer.
+	 * @param contentFormat The Content-Format of the body.
+	 * @return The status, or {@code null}, if the budget is exhausted.
+	 */
+	private BlockwiseStatus newBufferStatus(final int bufferSize, final int contentFormat) {
+		if (!memoryBudget.reserve(bufferSize)) {
+			LOGGER.log(Level.FINE, "cannot reserve buffer of {0} bytes, {1} of {2} bytes held by {3} transfers",
+					new Object[]{bufferSize, memoryBudget.getReservedBytes(), memoryBudget.getCapacity(),
+							memoryBudget.getActiveTransfers()});
+			return null;
+		}
+		return new BlockwiseStatus(bufferSize, contentFormat, memoryBudget);
+	}
+
+	/**
+	 * Rejects an upload, if no buffer can be reserved for it.
+	 * <p>
+	 * Responds with 4.13 (Request Entity Too Large), if the buffer exceeds
+	 * the budget's capacity, or 5.03 (Service Unavailable) with a Max-Age of
+	 * the blockwise status lifetime, after which abandoned transfers have
+	 * released their buffers.
+	 * 
+	 * @param exchange The exchange of the upload.
+	 * @param request The request containing the block.
+	 */
+	private void sendMemoryBudgetExhausted(final Exchange exchange, final Request request) {
+		Response error;
+		int bufferSize = request.getOptions().hasSize1() ? request.getOptions().getSize1() : maxResourceBodySize;
+		if (memoryBudget.exceedsCapacity(bufferSize)) {
+			error = Response.createResponse(request, ResponseCode.REQUEST_ENTITY_TOO_LARGE);
+			error.getOptions().setSize1((int) memoryBudget.getCapacity());
+			error.setPayload(String.format("body too large, can process %d bytes max", memoryBudget.getCapacity()));
+		} else {
+			error = Response.createResponse(request, ResponseCode.SERVICE_UNAVAILABLE);
+			error.getOptions().setMaxAge(Math.max(1, TimeUnit.MILLISECONDS.toSeconds(blockTimeout)));
+			error.setPayload("too many concurrent blockwise transfers");
+		}
+		exchange.setCurrentResponse(error);
+		lower().sendResponse(exchange, error);
+	}
+
+	/**
+	 * Creates a status for writing an upload to a sink, if the block sink
+	 * provider provides one for the request.
+	 * 
+	 * @param exchange The exchange of the upload.
+	 * @param request The request containing the first block.
+	 * @return The status, or {@code null}, if no sink is provided.
+	 */
+	private BlockwiseStatus startBlockSink(final Exchange exchange, final Request request) {
+		BlockSinkProvider provider = blockSinkProvider;
+		BlockSink sink = provider == null ? null : provider.getBlockSink(request);
+		if (sink == null) {
+			return null;
+		}
+		BlockwiseStatus status = new BlockwiseStatus(sink, request.getOptions().getContentFormat());
+		status.setFirst(request);
+		status.setCurrentSzx(computeSZX(preferredBlockSize));
+		exchange.setRequestBlockStatus(status);
+		LOGGER.log(Level.FINER, "Writing upload to block sink. Create and set new Block1 status: {0}", status);
+		return status;
+	}
+
+	/**
+	 * Adds the payload of an inbound block to the status' buffer or writes it
+	 * to the status' sink.
+	 * <p>
+	 * If the block cannot be written to the sink, the upload is aborted and
+	 * an error response is sent to the peer.
+	 * 
+	 * @param exchange The exchange of the upload.
+	 * @param request The request containing the block.
+	 * @param block1 The block1 option of the request.
+	 * @param status The status of the upload.
+	 * @return {@code true} if the block has been added or written.
+	 */
+	private boolean addBlock(final Exchange exchange, final Request request, final BlockOption block1,
+			final BlockwiseStatus status) {
+		BlockSink sink = status.getSink();
+		if (sink == null) {
+			status.addBlock(request.getPayload());
+			return true;
+		}
+		try {
+			sink.write(request.getPayload());
+			if (!block1.isM()) {
+				status.closeSink();
+			}
+			return true;
+		} catch (IOException e) {
+			LOGGER.log(Level.WARNING, "Cannot write block to sink, aborting upload", e);
+			status.abortSink();
+			exchange.setRequestBlockStatus(null);
+			Response error = Response.createResponse(request, ResponseCode.INTERNAL_SERVER_ERROR);
+			error.getOptions().setBlock1(block1.getSzx(), block1.isM(), block1.getNum());
+			exchange.setCurrentResponse(error);
+			lower().sendResponse(exchange, error);
+			return false;
+		}
+	}
+
+	/**
+	 * Aborts a blockwise transfer of a request by responding with 4.08
+	 * (Request Entity Incomplete).
+	 * <p>
+	 * The sink of the upload, if any, is aborted and the status is discarded,
+	 * so that the client has to restart the transfer with the first block.
+	 * 
+	 * @param exchange The exchange of the transfer.
+	 * @param request The request containing the unexpected block.
+	 * @param block1 The block option of the request.
+	 * @param status The status of the transfer.
+	 * @param reason The diagnostic payload of the response.
+	 */
+	private void sendRequestEntityIncomplete(final Exchange exchange, final Request request, final BlockOption block1,
+			final BlockwiseStatus status, final String reason) {
+		status.abortSink();
+		exchange.setRequestBlockStatus(null);
+		Response error = Response.createResponse(request, ResponseCode.REQUEST_ENTITY_INCOMPLETE);
+		error.getOptions().setBlock1(block1.getSzx(), block1.isM(), block1.getNum());
+		error.setPayload(reason);
+		exchange.setCurrentResponse(error);
+		lower().sendResponse(exchange, error);
+	}
+
+	/**
+	 * Aborts a blockwise transfer of a response because a block could not be
+	 * read from the response's block source.
+	 * 
+	 * @param exchange The exchange of the transfer.
+	 * @param cause The error reading the block.
+	 */
+	private void sendBlockSourceError(final Exchange exchange, final IOException cause) {
+		LOGGER.log(Level.WARNING, "Cannot read block from source, aborting transfer", cause);
+		exchange.setResponseBlockStatus(null);
+		exchange.setBlockCleanupHandle(null);
+		Response error = Response.createResponse(exchange.getRequest(), ResponseCode.INTERNAL_SERVER_ERROR);
+		exchange.setCurrentResponse(error);
+		lower().sendResponse(exchange, error);
+	}
+
 	private static Request getNextRequestBlock(final Request request, final BlockwiseStatus status) {
 		int num = status.getCurrentNum();
 		int szx = status.getCurrentSzx();
@@ -746,7 +1038,29 @@ public class BlockwiseLayer extends AbstractLayer {
 		return block;
 	}
 
-	private static Response getNextResponseBlock(final Response response, final BlockwiseStatus status) {
+	private Response getNextResponseBlock(final Exchange exchange, final Response response,
+			final BlockwiseStatus status) throws IOException {
+
+		Request request = exchange.getRequest();
+		if (block2Cache != null && Block2Cache.isCacheable(request, response)) {
+			Block2Cache.Entry body = block2Cache.put(request, response, status.getCurrentSzx());
+			if (body != null) {
+				Response block = body.createBlock(status.getCurrentNum());
+				block.setDestination(response.getDestination());
+				block.setDestinationPort(response.getDestinationPort());
+				block.addMessageObserver(new TimeoutForwarder(response));
+				// the following blocks are served from the cache, so this
+				// exchange doesn't need to keep the response
+				status.setComplete(true);
+				return block;
+			}
+			// body exceeds the cache, keep the response for the following blocks
+		}
+		return getNextResponseBlock(response, status);
+	}
+
+	private static Response getNextResponseBlock(final Response response, final BlockwiseStatus status)
+			throws IOException {
 
 		Response block;
 		int szx = status.getCurrentSzx();
@@ -755,6 +1069,8 @@ public class BlockwiseLayer extends AbstractLayer {
 		if (response.getOptions().hasObserve()) {
 			// a blockwise notification transmits the first block only
 			block = response;
+			// the block's options and payload differ from the template
+			block.setNotificationTemplate(null);
 		} else {
 			block = new Response(response.getCode());
 			block.setDestination(response.getDestination());
@@ -764,19 +1080,26 @@ public class BlockwiseLayer extends AbstractLayer {
 			block.addMessageObserver(new TimeoutForwarder(response));
 		}
 
-		int payloadsize = response.getPayloadSize();
+		BlockSource source = response.getBlockSource();
+		int payloadsize = response.getBodySize();
 		int currentSize = 1 << (4 + szx);
 		int from = num * currentSize;
 
 		if (0 < payloadsize && from < payloadsize) {
-			int to = Math.min((num + 1) * currentSize, response.getPayloadSize());
+			int to = Math.min((num + 1) * currentSize, payloadsize);
 			int length = to - from;
-			byte[] blockPayload = new byte[length];
-			boolean m = (to < response.getPayloadSize());
+			byte[] blockPayload;
+			if (source != null) {
+				// read only the requested block
+				blockPayload = source.read(from, length);
+			} else {
+				blockPayload = new byte[length];
+				System.arraycopy(response.getPayload(), from, blockPayload, 0, length);
+			}
+			boolean m = (to < payloadsize);
 			block.getOptions().setBlock2(szx, m, num);
 
 			// crop payload -- do after calculation of m in case block==response
-			System.arraycopy(response.getPayload(), from, blockPayload, 0, length);
 			block.setPayload(blockPayload);
 
 			// do not complete notifications
@@ -815,10 +1138,10 @@ public class BlockwiseLayer extends AbstractLayer {
 	}
 
 	private boolean requiresBlockwise(final Exchange exchange, final Response response) {
-		boolean blockwiseRequired = response.getPayloadSize() > maxMessageSize || exchange.getResponseBlockStatus() != null;
+		boolean blockwiseRequired = response.getBodySize() > maxMessageSize || exchange.getResponseBlockStatus() != null;
 		if (blockwiseRequired) {
 			LOGGER.log(Level.FINE, "response body [{0}/{1}] requires blockwise transfer",
-					new Object[]{response.getPayloadSize(), maxMessageSize});
+					new Object[]{response.getBodySize(), maxMessageSize});
 		}
 		return blockwiseRequired;
 	}
@@ -874,14 +1197,14 @@ public class BlockwiseLayer extends AbstractLayer {
 	protected void prepareBlockCleanup(final Exchange exchange) {
 
 		// prevent RejectedExecutionException
-		if (executor.isShutdown()) {
+		if (timer.isShutdown()) {
 			LOGGER.info("Endpoint is being destroyed: skipping block clean-up");
 			return;
 		}
 
 		BlockCleanupTask task = new BlockCleanupTask(exchange);
 
-		ScheduledFuture<?> f = executor.schedule(task , blockTimeout, TimeUnit.MILLISECONDS);
+		ScheduledFuture<?> f = timer.schedule(task , blockTimeout, TimeUnit.MILLISECONDS);
 		exchange.setBlockCleanupHandle(f);
 	}
 
@@ -896,6 +1219,10 @@ public class BlockwiseLayer extends AbstractLayer {
 		@Override
 		public void run() {
 			if (!exchange.isComplete()) {
+				BlockwiseStatus status = exchange.getRequestBlockStatus();
+				if (status != null) {
+					status.abortSink();
+				}
 				if (exchange.getRequest() == null) {
 					LOGGER.log(Level.INFO, "Block1 transfer timed out: {0}", exchange.getCurrentRequest());
 				} else {
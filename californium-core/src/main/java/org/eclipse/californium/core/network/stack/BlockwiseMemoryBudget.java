@@ -0,0 +1,122 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Bosch Software Innovations GmbH and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *    Bosch Software Innovations GmbH - initial creation
+ ******************************************************************************/
+package org.eclipse.californium.core.network.stack;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The budget of bytes available for buffering the bodies of blockwise
+ * transfers.
+ * <p>
+ * The buffers used for assembling the bodies of inbound blockwise transfers are
+ * allocated when the first block arrives and are kept until the transfer has
+ * completed or has timed out. Each buffer is reserved from the budget of the
+ * endpoint's blockwise layer, so that a large number of concurrent (or
+ * abandoned) transfers cannot exhaust the heap. If a buffer cannot be
+ * reserved, the transfer is rejected.
+ * </p>
+ * <p>
+ * The budget also keeps track of the number of transfers holding a buffer and
+ * the number of bytes held, regardless of whether it is limited or not.
+ * </p>
+ */
+public final class BlockwiseMemoryBudget {
+
+	private final long capacity;
+	private final AtomicLong reserved = new AtomicLong();
+	private final AtomicInteger transfers = new AtomicInteger();
+
+	/**
+	 * Creates a new budget.
+	 *
+	 * @param capacity the maximum number of bytes of all buffers. A value &lt;=
+	 *            0 doesn't limit the number of bytes.
+	 */
+	public BlockwiseMemoryBudget(final long capacity) {
+		this.capacity = capacity;
+	}
+
+	/**
+	 * Gets the maximum number of bytes of all buffers.
+	 *
+	 * @return the number of bytes, or {@code 0}, if not limited.
+	 */
+	public long getCapacity() {
+		return capacity > 0 ? capacity : 0;
+	}
+
+	/**
+	 * Checks, if a buffer can never be reserved from this budget.
+	 *
+	 * @param size the size of the buffer.
+	 * @return {@code true}, if the buffer is larger than the budget's capacity.
+	 */
+	public boolean exceedsCapacity(final int size) {
+		return capacity > 0 && size > capacity;
+	}
+
+	/**
+	 * Reserves a buffer for a transfer.
+	 *
+	 * @param size the size of the buffer.
+	 * @return {@code true}, if the buffer has been reserved, {@code false}, if
+	 *         the budget is exhausted.
+	 */
+	boolean reserve(final int size) {
+		if (capacity > 0) {
+			long current;
+			do {
+				current = reserved.get();
+				if (current + size > capacity) {
+					return false;
+				}
+			} while (!reserved.compareAndSet(current, current + size));
+		} else {
+			reserved.addAndGet(size);
+		}
+		transfers.incrementAndGet();
+		return true;
+	}
+
+	/**
+	 * Releases a buffer reserved by {@link #reserve(int)}.
+	 *
+	 * @param size the size of the buffer.
+	 */
+	void release(final int size) {
+		reserved.addAndGet(-size);
+		transfers.decrementAndGet();
+	}
+
+	/**
+	 * Gets the number of bytes held by the buffers of ongoing transfers.
+	 *
+	 * @return the number of bytes.
+	 */
+	public long getReservedBytes() {
+		return reserved.get();
+	}
+
+	/**
+	 * Gets the number of ongoing transfers holding a buffer.
+	 *
+	 * @return the number of transfers.
+	 */
+	public int getActiveTransfers() {
+		return transfers.get();
+	}
+}
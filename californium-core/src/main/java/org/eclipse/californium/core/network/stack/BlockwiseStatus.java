@@ -16,12 +16,17 @@
  *    Dominique Im Obersteg - parsers and initial implementation
  *    Daniel Pauli - parsers and initial implementation
  *    Kai Hudalla - logging
+ *    Bosch Software Innovations GmbH - add block sink for streaming uploads
+ *    Bosch Software Innovations GmbH - reserve buffers from memory budget
  ******************************************************************************/
 package org.eclipse.californium.core.network.stack;
 
+import java.io.IOException;
 import java.nio.Buffer;
 import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicReference;
 
+import org.eclipse.californium.core.coap.BlockSink;
 import org.eclipse.californium.core.coap.Message;
 
 /**
@@ -65,6 +70,12 @@ public class BlockwiseStatus {
 
 	private ByteBuffer buf;
 
+	/** The sink to write the blocks to instead of the buffer */
+	private final AtomicReference<BlockSink> sink = new AtomicReference<>();
+
+	/** The budget the buffer has been reserved from, until released */
+	private final AtomicReference<BlockwiseMemoryBudget> budget = new AtomicReference<>();
+
 	/**
 	 * Instantiates a new blockwise status.
 	 * 
@@ -76,6 +87,31 @@ public class BlockwiseStatus {
 		this.contentFormat = contentFormat;
 	}
 
+	/**
+	 * Instantiates a new blockwise status with a buffer reserved from a budget.
+	 * 
+	 * @param maxSize The maximum size of the body to be buffered. The buffer
+	 *            must have been reserved from the budget.
+	 * @param contentFormat The Content-Format of the body.
+	 * @param budget The budget to release the buffer to.
+	 * @see #releaseBuffer()
+	 */
+	public BlockwiseStatus(final int maxSize, final int contentFormat, final BlockwiseMemoryBudget budget) {
+		this(maxSize, contentFormat);
+		this.budget.set(budget);
+	}
+
+	/**
+	 * Instantiates a new blockwise status writing the blocks to a sink.
+	 * 
+	 * @param sink The sink to write the blocks to.
+	 * @param contentFormat The Content-Format of the body.
+	 */
+	public BlockwiseStatus(final BlockSink sink, final int contentFormat) {
+		this.sink.set(sink);
+		this.contentFormat = contentFormat;
+	}
+
 	/**
 	 * Instantiates a new blockwise status.
 	 *
@@ -190,6 +226,60 @@ public class BlockwiseStatus {
 		return result;
 	}
 
+	/**
+	 * Gets the sink the blocks are written to.
+	 *
+	 * @return The sink, or {@code null}, if the blocks are added to the buffer.
+	 */
+	public BlockSink getSink() {
+		return sink.get();
+	}
+
+	/**
+	 * Closes the sink, if any.
+	 * <p>
+	 * The sink is released, i.e. it is neither closed nor aborted again.
+	 * 
+	 * @throws IOException if the sink cannot be closed. The sink is aborted
+	 *             in this case.
+	 */
+	public void closeSink() throws IOException {
+		BlockSink current = sink.getAndSet(null);
+		if (current != null) {
+			try {
+				current.close();
+			} catch (IOException e) {
+				current.abort();
+				throw e;
+			}
+		}
+	}
+
+	/**
+	 * Aborts writing to the sink, if any.
+	 * <p>
+	 * The sink is released, i.e. it is neither closed nor aborted again.
+	 */
+	public void abortSink() {
+		BlockSink current = sink.getAndSet(null);
+		if (current != null) {
+			current.abort();
+		}
+	}
+
+	/**
+	 * Releases the buffer to the budget it has been reserved from, if any.
+	 * <p>
+	 * Invoked when the exchange discards this status or completes. The buffer
+	 * is released only once.
+	 */
+	public void releaseBuffer() {
+		BlockwiseMemoryBudget current = budget.getAndSet(null);
+		if (current != null) {
+			current.release(buf.capacity());
+		}
+	}
+
 	/**
 	 * Gets the number of blocks that have been added to the buffer.
 	 *
@@ -205,9 +295,13 @@ public class BlockwiseStatus {
 	 * The buffer will be cleared as part of this method, thus this method should
 	 * only be invoked once there are no more blocks to add.
 	 * 
-	 * @return The bytes contained in the buffer.
+	 * @return The bytes contained in the buffer. The array is empty, if the
+	 *         blocks have been written to a sink.
 	 */
 	public byte[] getBody() {
+		if (buf == null) {
+			return new byte[0];
+		}
 		((Buffer)buf).flip();
 		byte[] body = new byte[buf.remaining()];
 		((Buffer)buf.get(body)).clear();
@@ -16,6 +16,8 @@
  *    Achim Kraus (Bosch Software Innovations GmbH) - change lower()/upper() back to super
  *                                                    to ensure, that ReliabilityLayer
  *                                                    is processed.
+ *    Bosch Software Innovations GmbH - schedule retransmissions, NON buckets and
+ *                                      sweep checks by timeout scheduler
  ******************************************************************************/
  
 package org.eclipse.californium.core.network.stack;
@@ -147,7 +149,7 @@ public abstract class CongestionControlLayer extends ReliabilityLayer {
 				// Check if NONs are already processed, if not, start bucket
 				// Thread
 				if (!getRemoteEndpoint(exchange).getProcessingNON()) {
-					executor.schedule(new BucketThread(
+					timer.schedule(new BucketThread(
 							getRemoteEndpoint(exchange)), 0,
 							TimeUnit.MILLISECONDS);
 				}
@@ -173,7 +175,7 @@ public abstract class CongestionControlLayer extends ReliabilityLayer {
 
 			// The exchange needs to be deleted after at least 255 s TODO:
 			// should this value be calculated dynamically
-			executor.schedule(new SweepCheckTask(getRemoteEndpoint(exchange),
+			timer.schedule(new SweepCheckTask(getRemoteEndpoint(exchange),
 					exchange), MAX_REMOTE_TRANSACTION_DURATION,
 					TimeUnit.MILLISECONDS);
 			return true;
@@ -352,7 +354,7 @@ public abstract class CongestionControlLayer extends ReliabilityLayer {
 		exchange.setCurrentTimeout(timeout);
 		//expectedmaxduration = calculateMaxTransactionDuration(exchange); //FIXME what was this for?
 		//System.out.println("Sending MSG (timeout;timestamp:" + timeout + ";" + System.currentTimeMillis() + ")");
-		ScheduledFuture<?> f = executor.schedule(task , timeout, TimeUnit.MILLISECONDS);
+		ScheduledFuture<?> f = timer.schedule(task , timeout, TimeUnit.MILLISECONDS);
 		exchange.setRetransmissionHandle(f);	
 	}
 
@@ -433,7 +435,7 @@ public abstract class CongestionControlLayer extends ReliabilityLayer {
 					}
 				}
 				// schedule next transmission of a NON based on the RTO value (rate = 1/RTO)
-				executor.schedule(
+				timer.schedule(
 						new BucketThread(getRemoteEndpoint(exchange)),
 						getRemoteEndpoint(exchange).getRTO(),
 						TimeUnit.MILLISECONDS);
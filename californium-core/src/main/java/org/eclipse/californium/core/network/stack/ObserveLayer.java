@@ -25,11 +25,13 @@
  *    Achim Kraus (Bosch Software Innovations GmbH) - fix copy & paste error
  *                                                    replace "response" with "next" in
  *                                                    onAcknowledgement()
+ *    Bosch Software Innovations GmbH - send next notification on the peer's lane
  ******************************************************************************/
 package org.eclipse.californium.core.network.stack;
 
 import org.eclipse.californium.core.coap.EmptyMessage;
 import org.eclipse.californium.core.coap.MessageObserverAdapter;
+import org.eclipse.californium.core.coap.Request;
 import org.eclipse.californium.core.coap.Response;
 
 import java.util.logging.Level;
@@ -207,7 +209,8 @@ public class ObserveLayer extends AbstractLayer {
 					}
 					// Create a new task for sending next response so that we
 					// can leave the sync-block
-					executor.execute(new Runnable() {
+					Request request = exchange.getRequest();
+					execute(request.getSource(), request.getSourcePort(), new Runnable() {
 
 						public void run() {
 							ObserveLayer.super.sendResponse(exchange, next);
@@ -236,7 +239,8 @@ public class ObserveLayer extends AbstractLayer {
 					relation.setNextControlNotification(null);
 					// Create a new task for sending next response so that we
 					// can leave the sync-block
-					executor.execute(new Runnable() {
+					Request request = exchange.getRequest();
+					execute(request.getSource(), request.getSourcePort(), new Runnable() {
 
 						public void run() {
 							ObserveLayer.super.sendResponse(exchange, next);
@@ -21,6 +21,7 @@
  *    Achim Kraus (Bosch Software Innovations GmbH) - use final for fields and adjust
  *                                                    thread safe random usage
  *    Achim Kraus (Bosch Software Innovations GmbH) - use synchronized to access exchange.
+ *    Bosch Software Innovations GmbH - schedule retransmissions by timeout scheduler
  ******************************************************************************/
 package org.eclipse.californium.core.network.stack;
 
@@ -153,7 +154,7 @@ public class ReliabilityLayer extends AbstractLayer {
 	protected void prepareRetransmission(final Exchange exchange, final RetransmissionTask task) {
 
 		// prevent RejectedExecutionException
-		if (executor.isShutdown()) {
+		if (timer.isShutdown()) {
 			LOGGER.info("Endpoint is being destroyed: skipping retransmission");
 			return;
 		}
@@ -171,7 +172,7 @@ public class ReliabilityLayer extends AbstractLayer {
 			}
 			exchange.setCurrentTimeout(timeout);
 			exchange.setRetransmissionHandle(null); // cancel before reschedule
-			ScheduledFuture<?> f = executor.schedule(task, timeout, TimeUnit.MILLISECONDS);
+			ScheduledFuture<?> f = timer.schedule(task, timeout, TimeUnit.MILLISECONDS);
 			exchange.setRetransmissionHandle(f);
 		}
 	}
@@ -0,0 +1,270 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Bosch Software Innovations GmbH and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *    Bosch Software Innovations GmbH - initial creation
+ ******************************************************************************/
+package org.eclipse.californium.core.observe;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.eclipse.californium.core.coap.CoAP.Type;
+import org.eclipse.californium.core.coap.Option;
+import org.eclipse.californium.core.network.Exchange.KeyToken;
+
+/**
+ * An {@link ObserveRelationStore} appending the added and removed relations to
+ * a local file.
+ * <p>
+ * Each change is appended to the file and flushed immediately, so that the
+ * relations survive a crash of the server. A record that has been written
+ * partially is ignored. When the relations are restored, the file is
+ * compacted to the relations that have not been removed.
+ * <p>
+ * The file is not synced to the storage device.
+ */
+public class FileObserveRelationStore implements ObserveRelationStore {
+
+	private static final Logger LOGGER = Logger.getLogger(FileObserveRelationStore.class.getCanonicalName());
+
+	private static final int VERSION = 2;
+	private static final byte ADD = 1;
+	private static final byte REMOVE = 2;
+
+	private final File file;
+	private DataOutputStream out;
+
+	/**
+	 * Creates a new store.
+	 *
+	 * @param file the file to append the relations to. The file is created
+	 *            if it does not exist.
+	 * @throws NullPointerException if the file is {@code null}.
+	 */
+	public FileObserveRelationStore(final File file) {
+		if (file == null) {
+			throw new NullPointerException("file must not be null");
+		}
+		this.file = file;
+	}
+
+	@Override
+	public synchronized void add(final ObserveRelationRecord record) {
+		try {
+			DataOutputStream out = getOutputStream();
+			write(out, record);
+			out.flush();
+		} catch (IOException e) {
+			LOGGER.log(Level.WARNING, "Cannot store observe relation {0}: {1}",
+					new Object[] { record, e.getMessage() });
+			close();
+		}
+	}
+
+	@Override
+	public synchronized void remove(final InetSocketAddress peer, final byte[] token) {
+		try {
+			DataOutputStream out = getOutputStream();
+			out.writeByte(REMOVE);
+			writeKey(out, peer, token);
+			out.flush();
+		} catch (IOException e) {
+			LOGGER.log(Level.WARNING, "Cannot remove observe relation of {0}: {1}",
+					new Object[] { peer, e.getMessage() });
+			close();
+		}
+	}
+
+	@Override
+	public synchronized List<ObserveRelationRecord> restore() {
+		close();
+		Map<KeyToken, ObserveRelationRecord> records = new LinkedHashMap<KeyToken, ObserveRelationRecord>();
+		if (file.exists()) {
+			try {
+				read(records);
+			} catch (IOException e) {
+				LOGGER.log(Level.WARNING, "Cannot read observe relations from {0}: {1}",
+						new Object[] { file, e.getMessage() });
+			}
+		}
+		List<ObserveRelationRecord> result = new ArrayList<ObserveRelationRecord>(records.values());
+		compact(result);
+		LOGGER.log(Level.INFO, "Restored {0} observe relations from {1}", new Object[] { result.size(), file });
+		return result;
+	}
+
+	@Override
+	public synchronized void close() {
+		if (out != null) {
+			try {
+				out.close();
+			} catch (IOException e) {
+				LOGGER.log(Level.FINE, "Cannot close {0}: {1}",
+						new Object[] { file, e.getMessage() });
+			}
+			out = null;
+		}
+	}
+
+	private DataOutputStream getOutputStream() throws IOException {
+		if (out == null) {
+			boolean exists = file.exists() && file.length() > 0;
+			out = open(file, true);
+			if (!exists) {
+				out.writeByte(VERSION);
+			}
+		}
+		return out;
+	}
+
+	private void read(final Map<KeyToken, ObserveRelationRecord> records) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		try {
+			int version = in.readUnsignedByte();
+			if (version != VERSION) {
+				LOGGER.log(Level.WARNING, "Ignoring observe relations of unknown version {0} in {1}",
+						new Object[] { version, file });
+				return;
+			}
+			while (true) {
+				int kind = in.read();
+				if (kind < 0) {
+					break;
+				}
+				InetSocketAddress peer = readAddress(in);
+				byte[] token = readBytes(in);
+				KeyToken key = KeyToken.fromValues(token, peer.getAddress().getAddress(), peer.getPort());
+				if (kind == ADD) {
+					InetSocketAddress localAddress = readAddress(in);
+					Type type = Type.valueOf(in.readUnsignedByte());
+					int observeNumber = in.readInt();
+					int count = in.readUnsignedShort();
+					List<Option> options = new ArrayList<Option>(count);
+					for (int index = 0; index < count; index++) {
+						int number = in.readUnsignedShort();
+						byte[] value = new byte[in.readUnsignedShort()];
+						in.readFully(value);
+						options.add(new Option(number, value));
+					}
+					records.remove(key);
+					records.put(key, new ObserveRelationRecord(peer, localAddress, type, token, options, observeNumber));
+				} else if (kind == REMOVE) {
+					records.remove(key);
+				} else {
+					LOGGER.log(Level.WARNING, "Ignoring corrupt observe relations in {0}", file);
+					break;
+				}
+			}
+		} catch (EOFException e) {
+			LOGGER.log(Level.FINE, "Ignoring partially written observe relation in {0}", file);
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Replaces the file with a file containing the records only.
+	 */
+	private void compact(final List<ObserveRelationRecord> records) {
+		File compacted = new File(file.getPath() + ".tmp");
+		try {
+			DataOutputStream out = open(compacted, false);
+			try {
+				out.writeByte(VERSION);
+				for (ObserveRelationRecord record : records) {
+					write(out, record);
+				}
+			} finally {
+				out.close();
+			}
+			Files.move(compacted.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		} catch (IOException e) {
+			LOGGER.log(Level.WARNING, "Cannot compact observe relations in {0}: {1}",
+					new Object[] { file, e.getMessage() });
+		}
+	}
+
+	private static void write(final DataOutputStream out, final ObserveRelationRecord record) throws IOException {
+		out.writeByte(ADD);
+		writeKey(out, record.getPeer(), record.getToken());
+		writeAddress(out, record.getLocalAddress());
+		out.writeByte(record.getType().value);
+		out.writeInt(record.getObserveNumber());
+		List<Option> options = record.getOptions();
+		out.writeShort(options.size());
+		for (Option option : options) {
+			byte[] value = option.getValue();
+			out.writeShort(option.getNumber());
+			out.writeShort(value.length);
+			out.write(value);
+		}
+	}
+
+	private static DataOutputStream open(final File file, final boolean append) throws FileNotFoundException {
+		return new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, append)));
+	}
+
+	private static void writeKey(final DataOutputStream out, final InetSocketAddress peer, final byte[] token)
+			throws IOException {
+		writeAddress(out, peer);
+		out.writeByte(token.length);
+		out.write(token);
+	}
+
+	/**
+	 * Writes an address. An unknown address is written as empty address.
+	 */
+	private static void writeAddress(final DataOutputStream out, final InetSocketAddress address)
+			throws IOException {
+		if (address == null) {
+			out.writeByte(0);
+		} else {
+			byte[] bytes = address.getAddress().getAddress();
+			out.writeByte(bytes.length);
+			out.write(bytes);
+			out.writeShort(address.getPort());
+		}
+	}
+
+	private static InetSocketAddress readAddress(final DataInputStream in) throws IOException {
+		byte[] bytes = readBytes(in);
+		if (bytes.length == 0) {
+			return null;
+		}
+		return new InetSocketAddress(InetAddress.getByAddress(bytes), in.readUnsignedShort());
+	}
+
+	private static byte[] readBytes(final DataInputStream in) throws IOException {
+		byte[] bytes = new byte[in.readUnsignedByte()];
+		in.readFully(bytes);
+		return bytes;
+	}
+}
@@ -0,0 +1,48 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Bosch Software Innovations GmbH and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *    Bosch Software Innovations GmbH - initial creation
+ ******************************************************************************/
+package org.eclipse.californium.core.observe;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.eclipse.californium.core.network.Exchange.KeyToken;
+
+/**
+ * An {@link ObservationStore} keeping the observations in memory.
+ */
+public class InMemoryObservationStore implements ObservationStore {
+
+	private final ConcurrentHashMap<KeyToken, Observation> observations = new ConcurrentHashMap<KeyToken, Observation>();
+
+	@Override
+	public void add(final Observation observation) {
+		observations.put(observation.getKey(), observation);
+	}
+
+	@Override
+	public Observation get(final KeyToken key) {
+		return observations.get(key);
+	}
+
+	@Override
+	public Observation remove(final KeyToken key) {
+		return observations.remove(key);
+	}
+
+	@Override
+	public int size() {
+		return observations.size();
+	}
+}
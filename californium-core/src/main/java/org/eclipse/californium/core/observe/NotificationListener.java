@@ -0,0 +1,42 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Bosch Software Innovations GmbH and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *    Bosch Software Innovations GmbH - initial creation
+ ******************************************************************************/
+package org.eclipse.californium.core.observe;
+
+import org.eclipse.californium.core.coap.Response;
+
+/**
+ * A listener for the notifications of observations kept in an
+ * {@link ObservationStore}.
+ * <p>
+ * A listener is registered at an endpoint under the handler id of the
+ * observations it is interested in.
+ *
+ * @see org.eclipse.californium.core.network.CoapEndpoint#addNotificationListener(String, NotificationListener)
+ */
+public interface NotificationListener {
+
+	/**
+	 * Invoked when a notification for an observation has been received.
+	 * <p>
+	 * If the notification has no Observe option, e.g., because the server has
+	 * canceled the observation, the observation has been removed from the
+	 * store.
+	 *
+	 * @param observation the observation.
+	 * @param response the notification.
+	 */
+	void onNotification(Observation observation, Response response);
+}
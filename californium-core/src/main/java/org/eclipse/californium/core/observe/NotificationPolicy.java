@@ -0,0 +1,165 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Bosch Software Innovations GmbH and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *    Bosch Software Innovations GmbH - initial creation
+ ******************************************************************************/
+package org.eclipse.californium.core.observe;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The policy a resource applies to notifying its observers.
+ * <p>
+ * The policy limits the rate of notification rounds of a resource. Changes
+ * occurring within the minimum interval after a round are coalesced into a
+ * single round, which is started once the interval has passed. Since that
+ * round processes the observers' requests again, the observers are notified
+ * about the latest state only.
+ * </p>
+ * <p>
+ * The policy also determines how often a notification is sent as CON to each
+ * observer in order to check whether the observer is still interested. If
+ * not set, the values of
+ * {@link org.eclipse.californium.core.network.config.NetworkConfig.Keys#NOTIFICATION_CHECK_INTERVAL_COUNT}
+ * and
+ * {@link org.eclipse.californium.core.network.config.NetworkConfig.Keys#NOTIFICATION_CHECK_INTERVAL_TIME}
+ * are used.
+ * </p>
+ * <p>
+ * A policy keeps track of the number of coalesced changes and the number of
+ * rejected notifications and must therefore not be shared by several
+ * resources.
+ * </p>
+ */
+public final class NotificationPolicy {
+
+	private final long minInterval;
+	private final int conCount;
+	private final long conInterval;
+	private final AtomicLong coalesced = new AtomicLong();
+	private final AtomicLong rejected = new AtomicLong();
+
+	/**
+	 * Creates a policy limiting the rate of notification rounds.
+	 *
+	 * @param minInterval the minimum number of milliseconds between two
+	 *            notification rounds. {@code 0} starts a round on every change.
+	 * @throws IllegalArgumentException if the interval is negative.
+	 */
+	public NotificationPolicy(final long minInterval) {
+		this(minInterval, 0, 0);
+	}
+
+	/**
+	 * Creates a policy limiting the rate of notification rounds and pacing the
+	 * CON notifications.
+	 *
+	 * @param minInterval the minimum number of milliseconds between two
+	 *            notification rounds. {@code 0} starts a round on every change.
+	 * @param conCount the number of notifications sent to an observer after
+	 *            which a notification is sent as CON. {@code 0} uses the
+	 *            configured value.
+	 * @param conInterval the number of milliseconds after which a
+	 *            notification is sent as CON to an observer. {@code 0} uses
+	 *            the configured value.
+	 * @throws IllegalArgumentException if any of the values is negative.
+	 */
+	public NotificationPolicy(final long minInterval, final int conCount, final long conInterval) {
+		if (minInterval < 0) {
+			throw new IllegalArgumentException("Minimum interval must not be negative");
+		}
+		if (conCount < 0) {
+			throw new IllegalArgumentException("CON count must not be negative");
+		}
+		if (conInterval < 0) {
+			throw new IllegalArgumentException("CON interval must not be negative");
+		}
+		this.minInterval = minInterval;
+		this.conCount = conCount;
+		this.conInterval = conInterval;
+	}
+
+	/**
+	 * Gets the minimum interval between two notification rounds.
+	 *
+	 * @param unit the unit to return the interval in.
+	 * @return the interval.
+	 */
+	public long getMinInterval(final TimeUnit unit) {
+		return unit.convert(minInterval, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Gets the number of notifications after which a notification is sent as
+	 * CON.
+	 *
+	 * @return the number of notifications, or {@code 0}, if the configured
+	 *         value is used.
+	 */
+	public int getConCount() {
+		return conCount;
+	}
+
+	/**
+	 * Gets the number of milliseconds after which a notification is sent as
+	 * CON.
+	 *
+	 * @return the number of milliseconds, or {@code 0}, if the configured
+	 *         value is used.
+	 */
+	public long getConInterval() {
+		return conInterval;
+	}
+
+	/**
+	 * Gets the number of changes that have been coalesced into a pending
+	 * notification round.
+	 *
+	 * @return the number of changes.
+	 */
+	public long getCoalescedCount() {
+		return coalesced.get();
+	}
+
+	/**
+	 * Gets the number of notifications that have been discarded, because a
+	 * newer notification has superseded them before they could be sent to the
+	 * observer.
+	 *
+	 * @return the number of notifications.
+	 */
+	public long getRejectedCount() {
+		return rejected.get();
+	}
+
+	/**
+	 * Counts a change coalesced into a pending notification round.
+	 */
+	public void coalesced() {
+		coalesced.incrementAndGet();
+	}
+
+	/**
+	 * Counts a notification superseded by a newer one.
+	 */
+	public void rejected() {
+		rejected.incrementAndGet();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("NotificationPolicy[minInterval=%dms, conCount=%d, conInterval=%dms]", minInterval,
+				conCount, conInterval);
+	}
+}
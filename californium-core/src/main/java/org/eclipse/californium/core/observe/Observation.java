@@ -0,0 +1,357 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Bosch Software Innovations GmbH and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *    Bosch Software Innovations GmbH - initial creation
+ ******************************************************************************/
+package org.eclipse.californium.core.observe;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+import java.util.Map;
+
+import org.eclipse.californium.core.Utils;
+import org.eclipse.californium.core.coap.Message;
+import org.eclipse.californium.core.coap.Request;
+import org.eclipse.californium.core.network.Exchange.KeyToken;
+import org.eclipse.californium.core.network.serialization.UdpDataParser;
+import org.eclipse.californium.core.network.serialization.UdpDataSerializer;
+import org.eclipse.californium.elements.CorrelationContext;
+import org.eclipse.californium.elements.MapBasedCorrelationContext;
+
+/**
+ * A client side observation of a resource kept in an
+ * {@link ObservationStore}.
+ * <p>
+ * An observation only holds what is needed to match the notifications and to
+ * re-create the request that has established it: the encoded request, the
+ * address of the observed endpoint, the correlation context the request has
+ * been sent in, the id of the
+ * {@link NotificationListener} to deliver the notifications to and the observe
+ * number of the latest notification. In particular, it does not hold on to the
+ * exchange of the request.
+ * <p>
+ * An observation can be converted to and from a byte array, e.g., to persist
+ * it.
+ */
+public final class Observation {
+
+	private static final int VERSION = 2;
+
+	/** The time after which any notification is considered newer */
+	private static final long REORDER_TIMEOUT = 128000;
+
+	private final byte[] request;
+	private final byte[] token;
+	private final byte[] address;
+	private final int port;
+	private final String handlerId;
+	private final CorrelationContext correlationContext;
+	private final int hash;
+
+	/* the request parsed from the encoded request, created lazily */
+	private volatile Request template;
+
+	/* guarded by this */
+	private int observeNumber;
+	private long timestamp;
+
+	/**
+	 * Creates an observation for a request sent without correlation context.
+	 *
+	 * @param request the request that has established the observation. The
+	 *            request's token and destination must be set.
+	 * @param handlerId the id of the listener for the notifications.
+	 * @param observeNumber the observe number of the first notification.
+	 * @throws NullPointerException if the handler id or the request's token or
+	 *             destination is {@code null}.
+	 */
+	public Observation(final Request request, final String handlerId, final int observeNumber) {
+		this(request, null, handlerId, observeNumber);
+	}
+
+	/**
+	 * Creates an observation for a request.
+	 *
+	 * @param request the request that has established the observation. The
+	 *            request's token and destination must be set.
+	 * @param correlationContext the context the request has been sent in, or
+	 *            {@code null}, if not available.
+	 * @param handlerId the id of the listener for the notifications.
+	 * @param observeNumber the observe number of the first notification.
+	 * @throws NullPointerException if the handler id or the request's token or
+	 *             destination is {@code null}.
+	 */
+	public Observation(final Request request, final CorrelationContext correlationContext, final String handlerId,
+			final int observeNumber) {
+		this(encode(request), request.getToken(), request.getDestination().getAddress(),
+				request.getDestinationPort(), correlationContext, handlerId, observeNumber,
+				System.currentTimeMillis());
+	}
+
+	private Observation(final byte[] request, final byte[] token, final byte[] address, final int port,
+			final CorrelationContext correlationContext, final String handlerId, final int observeNumber,
+			final long timestamp) {
+		if (token == null) {
+			throw new NullPointerException("token must not be null");
+		} else if (handlerId == null) {
+			throw new NullPointerException("handler id must not be null");
+		}
+		this.request = request;
+		this.token = token;
+		this.address = address;
+		this.port = port;
+		this.correlationContext = correlationContext;
+		this.handlerId = handlerId;
+		this.observeNumber = observeNumber;
+		this.timestamp = timestamp;
+		this.hash = getKey().hashCode();
+	}
+
+	/**
+	 * Gets the key to look up the observation by the token and source of a
+	 * notification.
+	 *
+	 * @return the key.
+	 */
+	public KeyToken getKey() {
+		return KeyToken.fromValues(token, address, port);
+	}
+
+	/**
+	 * Gets the token of the request that has established the observation.
+	 *
+	 * @return a copy of the token.
+	 */
+	public byte[] getToken() {
+		return Arrays.copyOf(token, token.length);
+	}
+
+	/**
+	 * Gets the address of the observed endpoint.
+	 *
+	 * @return the address.
+	 */
+	public InetSocketAddress getPeer() {
+		try {
+			return new InetSocketAddress(InetAddress.getByAddress(address), port);
+		} catch (UnknownHostException e) {
+			// not thrown for addresses of valid length
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Gets the correlation context the request has been sent in.
+	 *
+	 * @return the context, or {@code null}, if not available.
+	 */
+	public CorrelationContext getCorrelationContext() {
+		return correlationContext;
+	}
+
+	/**
+	 * Gets the id of the listener for the notifications.
+	 *
+	 * @return the id.
+	 */
+	public String getHandlerId() {
+		return handlerId;
+	}
+
+	/**
+	 * Gets the observe number of the latest notification.
+	 *
+	 * @return the observe number.
+	 */
+	public synchronized int getObserveNumber() {
+		return observeNumber;
+	}
+
+	/**
+	 * Updates the observe number, if a notification is newer than the latest
+	 * one.
+	 * <p>
+	 * The notification is considered newer as defined by RFC 7641, section 3.4.
+	 *
+	 * @param number the observe number of the notification.
+	 * @return {@code true}, if the notification is newer, {@code false}, if it
+	 *         has been reordered and should be discarded.
+	 */
+	public synchronized boolean updateObserveNumber(final int number) {
+		long now = System.currentTimeMillis();
+		if (observeNumber < number && number - observeNumber < 1 << 23
+				|| observeNumber > number && observeNumber - number > 1 << 23
+				|| now > timestamp + REORDER_TIMEOUT) {
+			observeNumber = number;
+			timestamp = now;
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Re-creates the request that has established the observation.
+	 * <p>
+	 * The request has the message ID, token and options of the original
+	 * request. The encoded request is only parsed for the first request
+	 * created, the following requests are copied from the parsed one.
+	 *
+	 * @return the request.
+	 */
+	public Request createRequest() {
+		Request template = getTemplate();
+		Request request = new Request(template.getCode(), template.getType());
+		request.setMID(template.getMID());
+		request.setToken(template.getToken());
+		request.setOptions(template.getOptions());
+		// the payload is not modified and can be shared
+		request.setPayload(template.getPayload());
+		request.setDestination(template.getDestination());
+		request.setDestinationPort(port);
+		request.setNotificationHandlerId(handlerId);
+		return request;
+	}
+
+	private Request getTemplate() {
+		Request template = this.template;
+		if (template == null) {
+			Message message = new UdpDataParser().parseMessage(request);
+			message.setDestination(getPeer().getAddress());
+			// decode the options, so that the template is not modified
+			// when the requests are copied from it
+			message.getOptions().getUriPath();
+			template = (Request) message;
+			this.template = template;
+		}
+		return template;
+	}
+
+	private static byte[] encode(final Request request) {
+		byte[] bytes = request.getBytes();
+		if (bytes == null) {
+			bytes = new UdpDataSerializer().getByteArray(request);
+		}
+		return bytes;
+	}
+
+	/**
+	 * Encodes this observation.
+	 *
+	 * @return the encoded observation.
+	 * @see #fromByteArray(byte[])
+	 */
+	public byte[] toByteArray() {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(request.length + address.length + 32);
+		DataOutputStream out = new DataOutputStream(bytes);
+		try {
+			synchronized (this) {
+				out.writeByte(VERSION);
+				out.writeShort(request.length);
+				out.write(request);
+				out.writeByte(token.length);
+				out.write(token);
+				out.writeByte(address.length);
+				out.write(address);
+				out.writeShort(port);
+				out.writeUTF(handlerId);
+				out.writeInt(observeNumber);
+				out.writeLong(timestamp);
+			}
+			out.writeBoolean(correlationContext != null);
+			if (correlationContext != null) {
+				out.writeShort(correlationContext.entrySet().size());
+				for (Map.Entry<String, String> entry : correlationContext.entrySet()) {
+					out.writeUTF(entry.getKey());
+					out.writeUTF(entry.getValue());
+				}
+			}
+		} catch (IOException e) {
+			// not thrown by ByteArrayOutputStream
+			throw new IllegalStateException(e);
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Decodes an observation.
+	 *
+	 * @param bytes the encoded observation.
+	 * @return the observation.
+	 * @throws IllegalArgumentException if the bytes do not contain an encoded
+	 *             observation.
+	 * @see #toByteArray()
+	 */
+	public static Observation fromByteArray(final byte[] bytes) {
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+		try {
+			int version = in.readUnsignedByte();
+			if (version != VERSION) {
+				throw new IllegalArgumentException("unknown version " + version);
+			}
+			byte[] request = readBytes(in, in.readUnsignedShort());
+			byte[] token = readBytes(in, in.readUnsignedByte());
+			byte[] address = readBytes(in, in.readUnsignedByte());
+			int port = in.readUnsignedShort();
+			String handlerId = in.readUTF();
+			int observeNumber = in.readInt();
+			long timestamp = in.readLong();
+			MapBasedCorrelationContext correlationContext = null;
+			if (in.readBoolean()) {
+				correlationContext = new MapBasedCorrelationContext();
+				for (int count = in.readUnsignedShort(); count > 0; count--) {
+					correlationContext.put(in.readUTF(), in.readUTF());
+				}
+			}
+			return new Observation(request, token, address, port, correlationContext, handlerId, observeNumber,
+					timestamp);
+		} catch (IOException e) {
+			throw new IllegalArgumentException("bytes do not contain an observation", e);
+		}
+	}
+
+	private static byte[] readBytes(final DataInputStream in, final int length) throws IOException {
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return bytes;
+	}
+
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+
+	@Override
+	public boolean equals(final Object obj) {
+		if (this == obj) {
+			return true;
+		} else if (!(obj instanceof Observation)) {
+			return false;
+		}
+		Observation other = (Observation) obj;
+		return port == other.port && Arrays.equals(token, other.token) && Arrays.equals(address, other.address)
+				&& handlerId.equals(other.handlerId) && Arrays.equals(request, other.request);
+	}
+
+	@Override
+	public String toString() {
+		return String.format("Observation[%s, token=%s, handler=%s]", getPeer(), Utils.toHexString(token),
+				handlerId);
+	}
+}
@@ -0,0 +1,67 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Bosch Software Innovations GmbH and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *    Bosch Software Innovations GmbH - initial creation
+ ******************************************************************************/
+package org.eclipse.californium.core.observe;
+
+import org.eclipse.californium.core.network.Exchange.KeyToken;
+
+/**
+ * A store for the observations a client has established.
+ * <p>
+ * The store is used by an endpoint to match notifications to observations
+ * once the exchange of the request establishing an observation has been
+ * released. Observations are only looked up by their key, so that
+ * implementations may partition the observations among several nodes or
+ * persist them.
+ * <p>
+ * Implementations must be thread-safe.
+ *
+ * @see InMemoryObservationStore
+ * @see org.eclipse.californium.core.network.CoapEndpoint#setObservationStore(ObservationStore)
+ */
+public interface ObservationStore {
+
+	/**
+	 * Adds an observation.
+	 * <p>
+	 * An observation with the same key is replaced.
+	 *
+	 * @param observation the observation.
+	 */
+	void add(Observation observation);
+
+	/**
+	 * Gets an observation.
+	 *
+	 * @param key the token and address of the observed endpoint.
+	 * @return the observation, or {@code null}, if there is none.
+	 */
+	Observation get(KeyToken key);
+
+	/**
+	 * Removes an observation.
+	 *
+	 * @param key the token and address of the observed endpoint.
+	 * @return the removed observation, or {@code null}, if there was none.
+	 */
+	Observation remove(KeyToken key);
+
+	/**
+	 * Gets the number of observations in this store.
+	 *
+	 * @return the number of observations.
+	 */
+	int size();
+}
@@ -16,6 +16,8 @@
  *    Dominique Im Obersteg - parsers and initial implementation
  *    Daniel Pauli - parsers and initial implementation
  *    Kai Hudalla - logging
+ *    Bosch Software Innovations GmbH - add cancelAll for peer
+ *    Bosch Software Innovations GmbH - keep relations in an observe relation store
  ******************************************************************************/
 package org.eclipse.californium.core.observe;
 
@@ -32,12 +34,19 @@ import java.util.concurrent.ConcurrentHashMap;
  * Notice that each server has its own ObserveManager. If a server binds to
  * multiple endpoints, the ObserveManager keeps the observe relations for all of
  * them.
+ * <p>
+ * If an {@link ObserveRelationStore} is set, the ObserveManager adds the
+ * relations to the store once they are established and removes them once they
+ * are canceled.
  */
 //TODO: find a better name... how about ObserveObserver -.-
 public class ObserveManager {
 
 	/** The mapping from endpoint addresses to ObservingEndpoints */
 	private final ConcurrentHashMap<InetSocketAddress, ObservingEndpoint> endpoints;
+
+	/** The store keeping the relations, null if not stored */
+	private volatile ObserveRelationStore store;
 	
 	/**
 	 * Constructs a new ObserveManager for this server.
@@ -78,7 +87,7 @@ public class ObserveManager {
 	 * @return the ObservingEndpoint
 	 */
 	private ObservingEndpoint createObservingEndpoint(InetSocketAddress address) {
-		ObservingEndpoint ep = new ObservingEndpoint(address);
+		ObservingEndpoint ep = new ObservingEndpoint(address, this);
 		
 		// Make sure, there is exactly one ep with the specified address (atomic creation)
 		ObservingEndpoint previous = endpoints.putIfAbsent(address, ep);
@@ -89,6 +98,14 @@ public class ObserveManager {
 		}
 	}
 
+	/**
+	 * Gets the observe relation established by a request from the specified
+	 * endpoint address with the specified token.
+	 * 
+	 * @param source the address
+	 * @param token the token of the request
+	 * @return the relation or null if none exists
+	 */
 	public ObserveRelation getRelation(InetSocketAddress source, byte[] token) {
 		ObservingEndpoint remote = getObservingEndpoint(source);
 		if (remote!=null) {
@@ -97,5 +114,61 @@ public class ObserveManager {
 			return null;
 		}
 	}
+
+	/**
+	 * Sets the store to keep the relations in.
+	 * <p>
+	 * Relations established before are not added to the store.
+	 * 
+	 * @param store the store, or null, to not keep the relations
+	 */
+	public void setObserveRelationStore(ObserveRelationStore store) {
+		this.store = store;
+	}
+
+	/**
+	 * Adds all established relations along with the observe numbers of their
+	 * latest notifications to the store.
+	 */
+	public void snapshot() {
+		ObserveRelationStore store = this.store;
+		if (store != null) {
+			for (ObservingEndpoint endpoint : endpoints.values()) {
+				for (ObserveRelation relation : endpoint.getObserveRelations()) {
+					if (relation.isEstablished()) {
+						store.add(ObserveRelationRecord.fromRelation(relation));
+					}
+				}
+			}
+		}
+	}
+
+	void relationEstablished(ObserveRelation relation) {
+		ObserveRelationStore store = this.store;
+		if (store != null) {
+			store.add(ObserveRelationRecord.fromRelation(relation));
+		}
+	}
+
+	void relationRemoved(ObserveRelation relation) {
+		ObserveRelationStore store = this.store;
+		if (store != null) {
+			byte[] token = relation.getExchange().getRequest().getToken();
+			store.remove(relation.getSource(), token == null ? new byte[0] : token);
+		}
+	}
+
+	/**
+	 * Cancels all observe relations the endpoint with the specified address
+	 * has established with this server.
+	 * 
+	 * @param address the address
+	 */
+	public void cancelAll(InetSocketAddress address) {
+		ObservingEndpoint remote = getObservingEndpoint(address);
+		if (remote != null) {
+			remote.cancelAll();
+		}
+	}
 	
 }
@@ -16,6 +16,7 @@
  *    Dominique Im Obersteg - parsers and initial implementation
  *    Daniel Pauli - parsers and initial implementation
  *    Kai Hudalla - logging
+ *    Bosch Software Innovations GmbH - advance number of restored relations
  ******************************************************************************/
 package org.eclipse.californium.core.observe;
 
@@ -59,6 +60,24 @@ public class ObserveNotificationOrderer {
 		return next;
 	}
 	
+	/**
+	 * Advances the current notification number. The number is not changed,
+	 * if it is already newer than the specified one according to the
+	 * 24-bit serial number arithmetic of RFC 7641, section 3.4.
+	 * 
+	 * @param current the new current notification number
+	 */
+	public void advanceTo(int current) {
+		current &= (1<<24) - 1;
+		int previous;
+		do {
+			previous = number.get();
+			if (!isNewer(previous, current)) {
+				return;
+			}
+		} while (!number.compareAndSet(previous, current));
+	}
+
 	/**
 	 * Returns the current notification number.
 	 * @return the current notification number
@@ -103,9 +122,7 @@ public class ObserveNotificationOrderer {
 		long T2 = System.currentTimeMillis();
 		int V1 = getCurrent();
 		int V2 = response.getOptions().getObserve();
-		if (V1 < V2 && V2 - V1 < 1<<23
-				|| V1 > V2 && V1 - V2 > 1<<23
-				|| T2 > T1 + 128000) {
+		if (isNewer(V1, V2) || T2 > T1 + 128000) {
 
 			setTimestamp(T2);
 			number.set(V2);
@@ -114,4 +131,17 @@ public class ObserveNotificationOrderer {
 			return false;
 		}
 	}
+
+	/**
+	 * Checks, if an observe number is newer than another one according to
+	 * RFC 7641, section 3.4.
+	 * 
+	 * @param V1 the current observe number
+	 * @param V2 the other observe number
+	 * @return {@code true}, if V2 is newer than V1
+	 */
+	private static boolean isNewer(int V1, int V2) {
+		return V1 < V2 && V2 - V1 < 1<<23
+				|| V1 > V2 && V1 - V2 > 1<<23;
+	}
 }
@@ -18,6 +18,9 @@
  *    Kai Hudalla - logging
  *    Kai Hudalla (Bosch Software Innovations GmbH) - use Logger's message formatting instead of
  *                                                    explicit String concatenation
+ *    Bosch Software Innovations GmbH - add notification policy
+ *    Bosch Software Innovations GmbH - add packed key for indexing
+ *    Bosch Software Innovations GmbH - report established relations
  ******************************************************************************/
 package org.eclipse.californium.core.observe;
 
@@ -29,6 +32,7 @@ import java.util.logging.Logger;
 
 import org.eclipse.californium.core.coap.Response;
 import org.eclipse.californium.core.network.Exchange;
+import org.eclipse.californium.core.network.Exchange.KeyToken;
 import org.eclipse.californium.core.network.config.NetworkConfig;
 import org.eclipse.californium.core.server.resources.Resource;
 
@@ -58,6 +62,12 @@ public class ObserveRelation {
 	
 	private String key = null;
 
+	/** The key of the relation within the observe registry */
+	private final KeyToken keyToken;
+
+	/** The policy of the resource, null to use the configured values */
+	private volatile NotificationPolicy policy;
+
 	/*
 	 * This value is false at first and must be set to true by the resource if
 	 * it accepts the observe relation (the response code must be successful).
@@ -91,6 +101,10 @@ public class ObserveRelation {
 		this.established = false;
 		
 		this.key = getSource().toString() + "#" + exchange.getRequest().getTokenString();
+		byte[] token = exchange.getRequest().getToken();
+		InetSocketAddress source = getSource();
+		this.keyToken = KeyToken.fromValues(token == null ? new byte[0] : token,
+				source.getAddress().getAddress(), source.getPort());
 	}
 	
 	/**
@@ -107,7 +121,11 @@ public class ObserveRelation {
 	 * @param established true if the relation has been established
 	 */
 	public void setEstablished(boolean established) {
+		boolean changed = this.established != established;
 		this.established = established;
+		if (changed && established) {
+			endpoint.relationEstablished(this);
+		}
 	}
 	
 	/**
@@ -167,10 +185,38 @@ public class ObserveRelation {
 		return endpoint.getAddress();
 	}
 
+	/**
+	 * Sets the notification policy of the observed resource.
+	 * <p>
+	 * The policy determines how often a notification is sent as CON and
+	 * counts the notifications superseded by newer ones.
+	 *
+	 * @param policy the policy, or {@code null}, to use the configured values
+	 */
+	public void setNotificationPolicy(NotificationPolicy policy) {
+		this.policy = policy;
+	}
+
+	/**
+	 * Gets the notification policy of the observed resource.
+	 *
+	 * @return the policy, or {@code null}, if the configured values are used
+	 */
+	public NotificationPolicy getNotificationPolicy() {
+		return policy;
+	}
+
 	public boolean check() {
+		long checkIntervalTime = CHECK_INTERVAL_TIME;
+		int checkIntervalCount = CHECK_INTERVAL_COUNT;
+		NotificationPolicy policy = this.policy;
+		if (policy != null) {
+			if (policy.getConInterval() > 0) checkIntervalTime = policy.getConInterval();
+			if (policy.getConCount() > 0) checkIntervalCount = policy.getConCount();
+		}
 		boolean check = false;
-		check |= this.interestCheckTimer + CHECK_INTERVAL_TIME < System.currentTimeMillis();
-		check |= (++interestCheckCounter >= CHECK_INTERVAL_COUNT);
+		check |= this.interestCheckTimer + checkIntervalTime < System.currentTimeMillis();
+		check |= (++interestCheckCounter >= checkIntervalCount);
 		if (check) {
 			this.interestCheckTimer = System.currentTimeMillis();
 			this.interestCheckCounter = 0;
@@ -191,6 +237,11 @@ public class ObserveRelation {
 	}
 
 	public void setNextControlNotification(Response nextControlNotification) {
+		NotificationPolicy policy = this.policy;
+		if (policy != null && this.nextControlNotification != null && nextControlNotification != null) {
+			// a postponed notification is superseded by a fresher one
+			policy.rejected();
+		}
 		this.nextControlNotification = nextControlNotification;
 	}
 	
@@ -205,4 +256,15 @@ public class ObserveRelation {
 	public String getKey() {
 		return this.key;
 	}
+
+	/**
+	 * Gets the key of this relation, which consists of the observing
+	 * endpoint's address and the token of the request that has established
+	 * the relation.
+	 *
+	 * @return the key
+	 */
+	public KeyToken getKeyToken() {
+		return keyToken;
+	}
 }
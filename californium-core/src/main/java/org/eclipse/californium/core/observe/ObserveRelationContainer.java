@@ -22,12 +22,15 @@
  *                                                    the key was not exchanged previously and 
  *                                                    therefore the current mapping targets to
  *                                                    a different, newer relation. 
+ *    Bosch Software Innovations GmbH - key relations by packed token and address
  ******************************************************************************/
 package org.eclipse.californium.core.observe;
 
 import java.util.Iterator;
 import java.util.concurrent.ConcurrentHashMap;
 
+import org.eclipse.californium.core.network.Exchange.KeyToken;
+
 /**
  * This is a container for {@link ObserveRelation}s that resources use to hold
  * their observe relations. When a resource changes it will notify all relations
@@ -37,13 +40,13 @@ import java.util.concurrent.ConcurrentHashMap;
 public class ObserveRelationContainer implements Iterable<ObserveRelation> {
 	
 	/** The set of observe relations */
-	private ConcurrentHashMap<String, ObserveRelation> observeRelations;
+	private ConcurrentHashMap<KeyToken, ObserveRelation> observeRelations;
 	
 	/**
 	 * Constructs a container for observe relations.
 	 */
 	public ObserveRelationContainer() {
-		this.observeRelations = new ConcurrentHashMap<String, ObserveRelation>();
+		this.observeRelations = new ConcurrentHashMap<KeyToken, ObserveRelation>();
 	}
 	
 	/**
@@ -56,7 +59,7 @@ public class ObserveRelationContainer implements Iterable<ObserveRelation> {
 	public boolean add(ObserveRelation relation) {
 		if (relation == null)
 			throw new NullPointerException();
-		ObserveRelation previous = observeRelations.put(relation.getKey(), relation);
+		ObserveRelation previous = observeRelations.put(relation.getKeyToken(), relation);
 		if (null != previous) {
 			previous.cancel();
 			return true;
@@ -73,7 +76,7 @@ public class ObserveRelationContainer implements Iterable<ObserveRelation> {
 	public boolean remove(ObserveRelation relation) {
 		if (relation == null)
 			throw new NullPointerException();
-		return observeRelations.remove(relation.getKey(), relation);
+		return observeRelations.remove(relation.getKeyToken(), relation);
 	}
 	
 	/**
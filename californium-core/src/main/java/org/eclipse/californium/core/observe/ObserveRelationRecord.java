@@ -0,0 +1,180 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Bosch Software Innovations GmbH and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *    Bosch Software Innovations GmbH - initial creation
+ ******************************************************************************/
+package org.eclipse.californium.core.observe;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.eclipse.californium.core.Utils;
+import org.eclipse.californium.core.coap.CoAP.Code;
+import org.eclipse.californium.core.coap.CoAP.Type;
+import org.eclipse.californium.core.coap.Option;
+import org.eclipse.californium.core.coap.Request;
+import org.eclipse.californium.core.coap.Response;
+import org.eclipse.californium.core.network.Endpoint;
+import org.eclipse.californium.core.network.Exchange;
+
+/**
+ * The state of an observe relation kept in an {@link ObserveRelationStore}.
+ * <p>
+ * A record contains the address of the observing endpoint, the address of
+ * the local endpoint that has received the request, the request's type, token and
+ * options and the observe number of the latest notification sent to the
+ * observer.
+ */
+public final class ObserveRelationRecord {
+
+	private final InetSocketAddress peer;
+	private final InetSocketAddress localAddress;
+	private final Type type;
+	private final byte[] token;
+	private final List<Option> options;
+	private final int observeNumber;
+
+	/**
+	 * Creates a new record.
+	 *
+	 * @param peer the address of the observing endpoint.
+	 * @param localAddress the address of the endpoint that has received the
+	 *            request, or {@code null}, if unknown.
+	 * @param type the type of the request.
+	 * @param token the token of the request.
+	 * @param options the options of the request.
+	 * @param observeNumber the observe number of the latest notification.
+	 * @throws NullPointerException if any of peer, type, token or options is
+	 *             {@code null}.
+	 */
+	public ObserveRelationRecord(final InetSocketAddress peer, final InetSocketAddress localAddress, final Type type,
+			final byte[] token, final List<Option> options, final int observeNumber) {
+		if (peer == null) {
+			throw new NullPointerException("peer must not be null");
+		} else if (type == null) {
+			throw new NullPointerException("type must not be null");
+		} else if (token == null) {
+			throw new NullPointerException("token must not be null");
+		} else if (options == null) {
+			throw new NullPointerException("options must not be null");
+		}
+		this.peer = peer;
+		this.localAddress = localAddress;
+		this.type = type;
+		this.token = Arrays.copyOf(token, token.length);
+		this.options = Collections.unmodifiableList(new ArrayList<Option>(options));
+		this.observeNumber = observeNumber;
+	}
+
+	/**
+	 * Creates a record for a relation.
+	 *
+	 * @param relation the relation.
+	 * @return the record.
+	 */
+	public static ObserveRelationRecord fromRelation(final ObserveRelation relation) {
+		Exchange exchange = relation.getExchange();
+		Request request = exchange.getRequest();
+		Endpoint endpoint = exchange.getEndpoint();
+		InetSocketAddress localAddress = endpoint == null ? null : endpoint.getAddress();
+		int observeNumber = 0;
+		Response response = exchange.getResponse();
+		if (response != null && response.getOptions().hasObserve()) {
+			observeNumber = response.getOptions().getObserve();
+		}
+		byte[] token = request.getToken();
+		return new ObserveRelationRecord(relation.getSource(), localAddress, request.getType(),
+				token == null ? new byte[0] : token, request.getOptions().asSortedList(), observeNumber);
+	}
+
+	/**
+	 * Creates the request that has established the relation.
+	 *
+	 * @return the request.
+	 */
+	public Request createRequest() {
+		Request request = new Request(Code.GET, type);
+		request.setToken(getToken());
+		request.setSource(peer.getAddress());
+		request.setSourcePort(peer.getPort());
+		for (Option option : options) {
+			request.getOptions().addOption(new Option(option.getNumber(), option.getValue()));
+		}
+		// the request has already been acknowledged before the restart
+		request.setAcknowledged(true);
+		return request;
+	}
+
+	/**
+	 * Gets the address of the observing endpoint.
+	 *
+	 * @return the address.
+	 */
+	public InetSocketAddress getPeer() {
+		return peer;
+	}
+
+	/**
+	 * Gets the address of the endpoint that has received the request.
+	 *
+	 * @return the address, or {@code null}, if unknown.
+	 */
+	public InetSocketAddress getLocalAddress() {
+		return localAddress;
+	}
+
+	/**
+	 * Gets the type of the request.
+	 *
+	 * @return the type.
+	 */
+	public Type getType() {
+		return type;
+	}
+
+	/**
+	 * Gets the token of the request.
+	 *
+	 * @return a copy of the token.
+	 */
+	public byte[] getToken() {
+		return Arrays.copyOf(token, token.length);
+	}
+
+	/**
+	 * Gets the options of the request.
+	 *
+	 * @return the options. The list is unmodifiable.
+	 */
+	public List<Option> getOptions() {
+		return options;
+	}
+
+	/**
+	 * Gets the observe number of the latest notification.
+	 *
+	 * @return the observe number.
+	 */
+	public int getObserveNumber() {
+		return observeNumber;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("ObserveRelationRecord[%s, token=%s, observe=%d]", peer,
+				Utils.toHexString(token), observeNumber);
+	}
+}
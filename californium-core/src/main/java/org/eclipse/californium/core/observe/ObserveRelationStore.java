@@ -0,0 +1,69 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Bosch Software Innovations GmbH and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *    Bosch Software Innovations GmbH - initial creation
+ ******************************************************************************/
+package org.eclipse.californium.core.observe;
+
+import java.net.InetSocketAddress;
+import java.util.List;
+
+/**
+ * A store for the observe relations of a server.
+ * <p>
+ * The store allows a server to resume sending notifications to its observers
+ * after a restart, without the observers having to re-register. A
+ * {@link org.eclipse.californium.core.CoapServer} adds a relation to its store
+ * once it is established and removes it once it is canceled. When the server
+ * is stopped, it adds all relations again along with the observe numbers of
+ * their latest notifications.
+ * <p>
+ * Implementations must be thread-safe.
+ *
+ * @see FileObserveRelationStore
+ */
+public interface ObserveRelationStore {
+
+	/**
+	 * Adds a relation.
+	 * <p>
+	 * A relation previously added for the same peer and token is replaced.
+	 *
+	 * @param record the relation.
+	 */
+	void add(ObserveRelationRecord record);
+
+	/**
+	 * Removes a relation.
+	 *
+	 * @param peer the address of the observing endpoint.
+	 * @param token the token of the request that has established the relation.
+	 */
+	void remove(InetSocketAddress peer, byte[] token);
+
+	/**
+	 * Gets the relations that have been added and not been removed.
+	 * <p>
+	 * This method is invoked once before any relation is added or removed.
+	 *
+	 * @return the relations.
+	 */
+	List<ObserveRelationRecord> restore();
+
+	/**
+	 * Releases the resources held by this store.
+	 * <p>
+	 * Relations may be added and removed afterwards again.
+	 */
+	void close();
+}
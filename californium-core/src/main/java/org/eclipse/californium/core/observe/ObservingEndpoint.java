@@ -16,13 +16,17 @@
  *    Dominique Im Obersteg - parsers and initial implementation
  *    Daniel Pauli - parsers and initial implementation
  *    Kai Hudalla - logging
+ *    Bosch Software Innovations GmbH - index relations by token
+ *    Bosch Software Innovations GmbH - report relations to the observe manager
+ *    Bosch Software Innovations GmbH - cancel relations replaced by a newer one
  ******************************************************************************/
 package org.eclipse.californium.core.observe;
 
 import java.net.InetSocketAddress;
-import java.util.Arrays;
-import java.util.List;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.eclipse.californium.core.network.Exchange.KeyToken;
 
 /**
  * This class represents an observing endpoint. It holds all observe relations
@@ -35,32 +39,60 @@ public class ObservingEndpoint {
 	/** The endpoint's address */
 	private final InetSocketAddress address;
 
-	/** The list of relations the endpoint has established with this server */
-	private final List<ObserveRelation> relations;
+	/** The relations the endpoint has established with this server by token */
+	private final ConcurrentHashMap<KeyToken, ObserveRelation> relations;
+
+	/** The manager of this endpoint, null if not managed */
+	private final ObserveManager manager;
 	
 	/**
 	 * Constructs a new ObservingEndpoint.
 	 * @param address the endpoint's address
 	 */
 	public ObservingEndpoint(InetSocketAddress address) {
+		this(address, null);
+	}
+
+	/**
+	 * Constructs a new ObservingEndpoint reporting its relations to a manager.
+	 * @param address the endpoint's address
+	 * @param manager the manager
+	 */
+	ObservingEndpoint(InetSocketAddress address, ObserveManager manager) {
 		this.address = address;
-		this.relations = new CopyOnWriteArrayList<ObserveRelation>();
+		this.relations = new ConcurrentHashMap<KeyToken, ObserveRelation>();
+		this.manager = manager;
 	}
 	
 	/**
 	 * Adds the specified observe relation.
+	 * <p>
+	 * An older relation with the same token is canceled, even if it has been
+	 * established with another resource. Otherwise it would still receive
+	 * notifications but could no longer be reached by {@link #cancelAll()}.
 	 * @param relation the relation
 	 */
 	public void addObserveRelation(ObserveRelation relation) {
-		relations.add(relation);
+		ObserveRelation previous = relations.put(relation.getKeyToken(), relation);
+		if (previous != null && previous != relation) {
+			previous.cancel();
+			if (manager != null) {
+				manager.relationRemoved(previous);
+			}
+		}
 	}
 	
 	/**
 	 * Removes the specified observe relations.
+	 * <p>
+	 * A newer relation that has replaced the relation for the same token is
+	 * not removed.
 	 * @param relation the relation
 	 */
 	public void removeObserveRelation(ObserveRelation relation) {
-		relations.remove(relation);
+		if (relations.remove(relation.getKeyToken(), relation) && manager != null) {
+			manager.relationRemoved(relation);
+		}
 	}
 	
 	/**
@@ -68,7 +100,7 @@ public class ObservingEndpoint {
 	 * resources from this server.
 	 */
 	public void cancelAll() {
-		for (ObserveRelation relation:relations)
+		for (ObserveRelation relation:relations.values())
 			relation.cancel();
 	}
 
@@ -80,12 +112,42 @@ public class ObservingEndpoint {
 		return address;
 	}
 
+	/**
+	 * Gets the observe relation established by a request with the specified
+	 * token.
+	 * @param token the token of the request
+	 * @return the relation or null if none exists
+	 */
 	public ObserveRelation getObserveRelation(byte[] token) {
-		for (ObserveRelation relation:relations) {
-			if (Arrays.equals(relation.getExchange().getRequest().getToken(), token)) {
-				return relation;
-			}
+		if (token == null) {
+			return null;
 		}
-		return null;
+		return relations.get(KeyToken.fromValues(token, address.getAddress().getAddress(), address.getPort()));
+	}
+
+	/**
+	 * Reports an established relation to the manager.
+	 * @param relation the relation
+	 */
+	void relationEstablished(ObserveRelation relation) {
+		if (manager != null) {
+			manager.relationEstablished(relation);
+		}
+	}
+
+	/**
+	 * Returns the observe relations of this endpoint.
+	 * @return the relations
+	 */
+	Collection<ObserveRelation> getObserveRelations() {
+		return relations.values();
+	}
+
+	/**
+	 * Returns the number of observe relations of this endpoint.
+	 * @return the number of relations
+	 */
+	public int getObserveRelationCount() {
+		return relations.size();
 	}
 }
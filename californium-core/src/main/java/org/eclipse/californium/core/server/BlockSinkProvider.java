@@ -0,0 +1,45 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Bosch Software Innovations GmbH and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *    Bosch Software Innovations GmbH - initial creation
+ ******************************************************************************/
+package org.eclipse.californium.core.server;
+
+import org.eclipse.californium.core.coap.BlockSink;
+import org.eclipse.californium.core.coap.Request;
+
+/**
+ * A provider of sinks for blockwise uploads.
+ * <p>
+ * Resources implement this interface in order to consume the body of a
+ * blockwise POST or PUT request block by block instead of receiving it
+ * assembled in the request's payload. The {@link ServerMessageDeliverer}
+ * passes the request for the first block on to the targeted resource.
+ * </p>
+ */
+public interface BlockSinkProvider {
+
+	/**
+	 * Gets a sink for a blockwise upload.
+	 * <p>
+	 * Invoked by the protocol stage when the first block of an upload has
+	 * been received. The method should therefore not block.
+	 *
+	 * @param firstBlock the request containing the first block. The
+	 *            request's options contain the Size1 option, if the client
+	 *            has indicated the size of the body.
+	 * @return the sink to write the blocks to, or {@code null}, if the body
+	 *         should be assembled in the request's payload.
+	 */
+	BlockSink getBlockSink(Request firstBlock);
+}
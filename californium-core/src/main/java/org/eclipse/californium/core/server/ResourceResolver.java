@@ -0,0 +1,366 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Bosch Software Innovations GmbH and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *    Bosch Software Innovations GmbH - initial creation
+ ******************************************************************************/
+package org.eclipse.californium.core.server;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.eclipse.californium.core.coap.CoAP;
+import org.eclipse.californium.core.observe.ObserveRelation;
+import org.eclipse.californium.core.server.resources.Resource;
+import org.eclipse.californium.core.server.resources.ResourceObserver;
+
+/**
+ * Resolves the Uri-Path of requests to the resources of a resource tree.
+ * <p>
+ * The resource tree is compiled into a trie of immutable nodes keyed by the
+ * UTF-8 encoded names of the resources, so that the Uri-Path options of a
+ * request can be matched as received, without decoding them to strings. The
+ * resolver registers itself as {@link ResourceObserver} at all resources of
+ * the tree. On the first lookup after a child has been added, removed or
+ * renamed, only the nodes of the changed resources and of their ancestors are
+ * compiled again, the nodes of all other resources are reused.
+ * </p>
+ * <p>
+ * If enabled, the trie additionally supports
+ * <ul>
+ * <li>parameterized resources named <code>{param}</code>, matching any single
+ * segment, and</li>
+ * <li>wildcard resources named <code>*</code>, matching any number of
+ * remaining segments.</li>
+ * </ul>
+ * Literal matches take precedence over parameterized matches, which take
+ * precedence over wildcard matches. A resource handling such a request can
+ * get the actual segments from the request's Uri-Path. If not enabled, these
+ * names are matched literally.
+ * </p>
+ * <p>
+ * Segments not matching any child resource are resolved by means of
+ * {@link Resource#getChild(String)}, so that resources providing their
+ * children on demand keep working.
+ * </p>
+ */
+final class ResourceResolver {
+
+	private static final String WILDCARD = "*";
+
+	private final Resource root;
+	private final boolean patterns;
+
+	/* the resources whose children or name have changed, lock-free, because
+	 * resources notify their observers while holding their own lock */
+	private final Queue<Resource> changes = new ConcurrentLinkedQueue<Resource>();
+
+	/* guarded by this */
+	private final Map<Resource, TrieNode> nodes = new IdentityHashMap<Resource, TrieNode>();
+
+	private volatile TrieNode trie;
+
+	/**
+	 * Creates a resolver for a resource tree matching all names literally.
+	 *
+	 * @param root the root of the tree.
+	 */
+	ResourceResolver(final Resource root) {
+		this(root, false);
+	}
+
+	/**
+	 * Creates a resolver for a resource tree.
+	 *
+	 * @param root the root of the tree.
+	 * @param patterns {@code true}, if resources named <code>{param}</code> or
+	 *            <code>*</code> match any segment or any remaining segments,
+	 *            {@code false}, if these names are matched literally.
+	 */
+	ResourceResolver(final Resource root, final boolean patterns) {
+		this.root = root;
+		this.patterns = patterns;
+	}
+
+	/**
+	 * Resolves a path to a resource.
+	 *
+	 * @param path the UTF-8 encoded path segments.
+	 * @return the resource, or {@code null}, if the path cannot be resolved.
+	 */
+	Resource resolve(final List<byte[]> path) {
+		TrieNode current = trie;
+		if (current == null || !changes.isEmpty()) {
+			current = update();
+		}
+		return find(current, path, 0);
+	}
+
+	private synchronized TrieNode update() {
+		if (trie == null) {
+			changes.clear();
+			trie = compile(root, null);
+			return trie;
+		}
+		Resource resource;
+		while ((resource = changes.poll()) != null) {
+			// recompile the changed resource and its ancestors
+			TrieNode node = nodes.get(resource);
+			while (node != null) {
+				recompile(node);
+				if (node.resource == root) {
+					trie = nodes.get(root);
+					break;
+				}
+				Resource parent = node.resource.getParent();
+				node = parent == null ? null : nodes.get(parent);
+			}
+		}
+		return trie;
+	}
+
+	private TrieNode compile(final Resource resource, final ResourceObserver resourceObserver) {
+		ResourceObserver observer = resourceObserver;
+		if (observer == null) {
+			// observe before reading the children, so that no change is missed
+			observer = new NodeObserver(resource);
+			resource.addObserver(observer);
+		}
+		List<TrieNode> literals = new ArrayList<TrieNode>();
+		TrieNode parameter = null;
+		TrieNode wildcard = null;
+		for (Resource child : resource.getChildren()) {
+			String name = child.getName();
+			if (patterns && WILDCARD.equals(name)) {
+				wildcard = getOrCompile(child);
+			} else if (patterns && isParameter(name)) {
+				if (parameter == null) {
+					parameter = getOrCompile(child);
+				}
+			} else {
+				literals.add(getOrCompile(child));
+			}
+		}
+		TrieNode node = new TrieNode(resource, observer, literals, parameter, wildcard);
+		nodes.put(resource, node);
+		return node;
+	}
+
+	private TrieNode getOrCompile(final Resource resource) {
+		TrieNode node = nodes.get(resource);
+		return node == null ? compile(resource, null) : node;
+	}
+
+	private void recompile(final TrieNode previous) {
+		TrieNode node = compile(previous.resource, previous.observer);
+		Set<Resource> children = newIdentitySet();
+		for (TrieNode child : node.getChildNodes()) {
+			children.add(child.resource);
+		}
+		for (TrieNode child : previous.getChildNodes()) {
+			if (!children.contains(child.resource)) {
+				release(child.resource, node.resource);
+			}
+		}
+	}
+
+	/**
+	 * Stops observing a resource no longer part of the trie and its
+	 * descendants.
+	 * 
+	 * @param resource the resource.
+	 * @param parent the resource's previous parent. If the resource has been
+	 *            moved to another parent, it is still observed.
+	 */
+	private void release(final Resource resource, final Resource parent) {
+		Resource current = resource.getParent();
+		if (current != null && current != parent) {
+			return;
+		}
+		TrieNode node = nodes.remove(resource);
+		if (node != null) {
+			resource.removeObserver(node.observer);
+			for (TrieNode child : node.getChildNodes()) {
+				release(child.resource, resource);
+			}
+		}
+	}
+
+	private static Resource find(final TrieNode node, final List<byte[]> path, final int index) {
+		if (index == path.size()) {
+			return node.resource;
+		}
+		byte[] segment = path.get(index);
+		TrieNode child = node.getChild(segment);
+		if (child != null) {
+			Resource resource = find(child, path, index + 1);
+			if (resource != null) {
+				return resource;
+			}
+		}
+		if (node.parameter != null) {
+			Resource resource = find(node.parameter, path, index + 1);
+			if (resource != null) {
+				return resource;
+			}
+		}
+		if (node.wildcard != null) {
+			return node.wildcard.resource;
+		}
+		if (child == null) {
+			// the resource may provide children not compiled into the trie
+			Resource current = node.resource;
+			for (int i = index; current != null && i < path.size(); i++) {
+				current = current.getChild(new String(path.get(i), CoAP.UTF8_CHARSET));
+			}
+			return current;
+		}
+		return null;
+	}
+
+	private static boolean isParameter(final String name) {
+		return name.length() > 1 && name.charAt(0) == '{' && name.charAt(name.length() - 1) == '}';
+	}
+
+	private static int hash(final byte[] segment) {
+		int h = Arrays.hashCode(segment);
+		return h ^ (h >>> 16);
+	}
+
+	private static Set<Resource> newIdentitySet() {
+		return Collections.newSetFromMap(new IdentityHashMap<Resource, Boolean>());
+	}
+
+	/**
+	 * A node of the trie.
+	 * <p>
+	 * The literal children are kept in an open addressing hash table, so that
+	 * a segment can be looked up without creating a key object.
+	 */
+	private static final class TrieNode {
+
+		private final Resource resource;
+		private final ResourceObserver observer;
+		private final byte[][] keys;
+		private final TrieNode[] children;
+		private final TrieNode parameter;
+		private final TrieNode wildcard;
+
+		private TrieNode(final Resource resource, final ResourceObserver observer, final List<TrieNode> literals,
+				final TrieNode parameter, final TrieNode wildcard) {
+			this.resource = resource;
+			this.observer = observer;
+			this.parameter = parameter;
+			this.wildcard = wildcard;
+
+			if (literals.isEmpty()) {
+				this.keys = null;
+				this.children = null;
+			} else {
+				int size = Integer.highestOneBit(literals.size() * 2 - 1) << 1;
+				this.keys = new byte[size][];
+				this.children = new TrieNode[size];
+				for (TrieNode child : literals) {
+					byte[] key = child.resource.getName().getBytes(CoAP.UTF8_CHARSET);
+					int index = hash(key) & (size - 1);
+					while (keys[index] != null) {
+						index = (index + 1) & (size - 1);
+					}
+					keys[index] = key;
+					children[index] = child;
+				}
+			}
+		}
+
+		private TrieNode getChild(final byte[] segment) {
+			if (keys == null) {
+				return null;
+			}
+			int mask = keys.length - 1;
+			int index = hash(segment) & mask;
+			while (keys[index] != null) {
+				if (Arrays.equals(keys[index], segment)) {
+					return children[index];
+				}
+				index = (index + 1) & mask;
+			}
+			return null;
+		}
+
+		private List<TrieNode> getChildNodes() {
+			List<TrieNode> result = new ArrayList<TrieNode>();
+			if (children != null) {
+				for (TrieNode child : children) {
+					if (child != null) {
+						result.add(child);
+					}
+				}
+			}
+			if (parameter != null) {
+				result.add(parameter);
+			}
+			if (wildcard != null) {
+				result.add(wildcard);
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * Records the changes of a resource, so that its node is compiled again
+	 * on the next lookup.
+	 */
+	private class NodeObserver implements ResourceObserver {
+
+		private final Resource resource;
+
+		private NodeObserver(final Resource resource) {
+			this.resource = resource;
+		}
+
+		@Override
+		public void changedName(final String old) {
+			// the parent's keys have changed
+			Resource parent = resource.getParent();
+			changes.add(parent == null ? resource : parent);
+		}
+
+		@Override
+		public void changedPath(final String old) {
+		}
+
+		@Override
+		public void addedChild(final Resource child) {
+			changes.add(resource);
+		}
+
+		@Override
+		public void removedChild(final Resource child) {
+			changes.add(resource);
+		}
+
+		@Override
+		public void addedObserveRelation(final ObserveRelation relation) {
+		}
+
+		@Override
+		public void removedObserveRelation(final ObserveRelation relation) {
+		}
+	}
+}
@@ -18,38 +18,62 @@
  *    Kai Hudalla - logging
  *    Kai Hudalla (Bosch Software Innovations GmbH) - use Logger's message formatting instead of
  *                                                    explicit String concatenation
+ *    Bosch Software Innovations GmbH - provide block sinks of resources
+ *    Bosch Software Innovations GmbH - restore observe relations
+ *    Bosch Software Innovations GmbH - resolve resources by means of a trie,
+ *                                      optionally with parameters and wildcards
  ******************************************************************************/
 package org.eclipse.californium.core.server;
 
 import java.net.InetSocketAddress;
-import java.util.Deque;
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.Executor;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import org.eclipse.californium.core.CoapResource;
+import org.eclipse.californium.core.coap.BlockSink;
+import org.eclipse.californium.core.coap.CoAP;
 import org.eclipse.californium.core.coap.CoAP.Code;
 import org.eclipse.californium.core.coap.CoAP.ResponseCode;
 import org.eclipse.californium.core.coap.Request;
 import org.eclipse.californium.core.coap.Response;
+import org.eclipse.californium.core.network.Endpoint;
 import org.eclipse.californium.core.network.Exchange;
+import org.eclipse.californium.core.network.Exchange.Origin;
 import org.eclipse.californium.core.observe.ObserveManager;
 import org.eclipse.californium.core.observe.ObserveRelation;
+import org.eclipse.californium.core.observe.ObserveRelationRecord;
+import org.eclipse.californium.core.observe.ObserveRelationStore;
 import org.eclipse.californium.core.observe.ObservingEndpoint;
 import org.eclipse.californium.core.server.resources.Resource;
 
 /**
  * The ServerMessageDeliverer delivers requests to corresponding resources and
  * responses to corresponding requests.
+ * <p>
+ * Blockwise uploads to resources implementing {@link BlockSinkProvider} are
+ * written to the sinks provided by the resources.
  */
-public class ServerMessageDeliverer implements MessageDeliverer {
+public class ServerMessageDeliverer implements MessageDeliverer, BlockSinkProvider {
 
 	private static final Logger LOGGER = Logger.getLogger(ServerMessageDeliverer.class.getCanonicalName());
 
+	/*
+	 * The gap added to the stored observe numbers of restored relations. The
+	 * stored number may be outdated if the server has not been stopped
+	 * gracefully. Observers consider any number up to 2^23 larger than their
+	 * latest one to be newer.
+	 */
+	private static final int RESTORED_OBSERVE_NUMBER_GAP = 1 << 20;
+
 	/* The root of all resources */
 	private final Resource root;
 
+	/* The resolver matching the Uri-Path of requests to the resources */
+	private final ResourceResolver resolver;
+
 	/* The manager of the observe mechanism for this server */
 	private final ObserveManager observeManager = new ObserveManager();
 
@@ -60,7 +84,25 @@ public class ServerMessageDeliverer implements MessageDeliverer {
 	 * @param root the root resource
 	 */
 	public ServerMessageDeliverer(final Resource root) {
+		this(root, false);
+	}
+
+	/**
+	 * Constructs a message deliverer that delivers requests to the resources
+	 * rooted at the specified root.
+	 * <p>
+	 * If patterns are enabled, a resource named <code>{param}</code> matches
+	 * any single path segment and a resource named <code>*</code> matches any
+	 * number of remaining segments, unless another child matches literally.
+	 * Otherwise, these names are matched literally as well.
+	 * 
+	 * @param root the root resource
+	 * @param patterns {@code true} to enable parameterized and wildcard
+	 *            resource names.
+	 */
+	public ServerMessageDeliverer(final Resource root, final boolean patterns) {
 		this.root = root;
+		this.resolver = new ResourceResolver(root, patterns);
 	}
 
 	/**
@@ -72,7 +114,7 @@ public class ServerMessageDeliverer implements MessageDeliverer {
 	 * <p>
 	 * Otherwise, this method
 	 * <ol>
-	 * <li>tries to {@linkplain #findResource(List) find a matching resource},</li>
+	 * <li>tries to find a resource matching the request's Uri-Path,</li>
 	 * <li>handle a GET request's observe option and </li>
 	 * <li>deliver the request to the resource for processing.</li>
 	 * </ol>
@@ -88,8 +130,7 @@ public class ServerMessageDeliverer implements MessageDeliverer {
 		boolean processed = preDeliverRequest(exchange);
 		if (!processed) {
 			Request request = exchange.getRequest();
-			List<String> path = request.getOptions().getUriPath();
-			final Resource resource = findResource(path);
+			final Resource resource = resolver.resolve(request.getOptions().getUriPathValues());
 			if (resource != null) {
 				checkForObserveOption(exchange, resource);
 
@@ -106,12 +147,102 @@ public class ServerMessageDeliverer implements MessageDeliverer {
 				}
 			} else {
 				LOGGER.log(Level.INFO, "Did not find resource {0} requested by {1}:{2}",
-						new Object[]{path, request.getSource(), request.getSourcePort()});
+						new Object[]{request.getOptions().getUriPath(), request.getSource(), request.getSourcePort()});
 				exchange.sendResponse(new Response(ResponseCode.NOT_FOUND));
 			}
 		}
 	}
 
+	/**
+	 * Restores the observe relations kept in a store and keeps all further
+	 * relations in the store.
+	 * <p>
+	 * The notifications of a restored relation are sent using the endpoint
+	 * that has received the request establishing the relation. Relations of
+	 * unknown endpoints or resources, which are not observable, are removed
+	 * from the store.
+	 * 
+	 * @param store the store
+	 * @param endpoints the endpoints of the server
+	 * @return the number of restored relations
+	 */
+	public int restoreObserveRelations(final ObserveRelationStore store, final List<Endpoint> endpoints) {
+		int restored = 0;
+		for (ObserveRelationRecord record : store.restore()) {
+			Endpoint endpoint = findEndpoint(endpoints, record.getLocalAddress());
+			Request request = record.createRequest();
+			Resource resource = findResource(request.getOptions().getUriPath());
+			if (endpoint == null || resource == null || !resource.isObservable()) {
+				LOGGER.log(Level.FINE, "Discarding observe relation {0}", record);
+				store.remove(record.getPeer(), record.getToken());
+				continue;
+			}
+			Exchange exchange = new Exchange(request, Origin.REMOTE);
+			exchange.setRequest(request);
+			exchange.setEndpoint(endpoint);
+			ObservingEndpoint remote = observeManager.findObservingEndpoint(record.getPeer());
+			ObserveRelation relation = new ObserveRelation(remote, resource, exchange);
+			remote.addObserveRelation(relation);
+			exchange.setRelation(relation);
+			relation.setEstablished(true);
+			resource.addObserveRelation(relation);
+			if (resource instanceof CoapResource) {
+				((CoapResource) resource).advanceObserveNumber(record.getObserveNumber() + RESTORED_OBSERVE_NUMBER_GAP);
+			}
+			++restored;
+		}
+		observeManager.setObserveRelationStore(store);
+		LOGGER.log(Level.INFO, "Restored {0} observe relations", restored);
+		return restored;
+	}
+
+	/**
+	 * Adds all observe relations along with the observe numbers of their
+	 * latest notifications to the store set by
+	 * {@link #restoreObserveRelations(ObserveRelationStore, List)}.
+	 */
+	public void snapshotObserveRelations() {
+		observeManager.snapshot();
+	}
+
+	/**
+	 * Finds the endpoint bound to the address that has received the request
+	 * of a restored relation.
+	 *
+	 * @param endpoints the endpoints of the server.
+	 * @param localAddress the address, or {@code null}, if unknown.
+	 * @return the endpoint, or {@code null}, if no endpoint is bound to the
+	 *         address. If the address is unknown, the only endpoint of the
+	 *         server is returned.
+	 */
+	private static Endpoint findEndpoint(final List<Endpoint> endpoints, final InetSocketAddress localAddress) {
+		if (localAddress == null) {
+			return endpoints.size() == 1 ? endpoints.get(0) : null;
+		}
+		for (Endpoint endpoint : endpoints) {
+			if (localAddress.equals(endpoint.getAddress())) {
+				return endpoint;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Gets the sink of the resource targeted by a blockwise upload.
+	 * 
+	 * @param firstBlock The request containing the first block.
+	 * @return The sink provided by the resource, or {@code null}, if the
+	 *         resource does not exist or does not provide sinks.
+	 */
+	@Override
+	public BlockSink getBlockSink(final Request firstBlock) {
+		Resource resource = findResource(firstBlock.getOptions().getUriPath());
+		if (resource instanceof BlockSinkProvider) {
+			return ((BlockSinkProvider) resource).getBlockSink(firstBlock);
+		}
+		return null;
+	}
+
 	/**
 	 * Invoked by the <em>deliverRequest</em> before the request gets processed.
 	 * <p>
@@ -175,18 +306,19 @@ public class ServerMessageDeliverer implements MessageDeliverer {
 	 * Searches in the resource tree for the specified path. A parent resource
 	 * may accept requests to subresources, e.g., to allow addresses with
 	 * wildcards like <code>coap://example.com:5683/devices/*</code>
+	 * <p>
+	 * Resources named <code>*</code> match any number of remaining segments,
+	 * resources named <code>{param}</code> match any single segment.
 	 * 
 	 * @param list the path as list of resource names
 	 * @return the resource or null if not found
 	 */
 	protected final Resource findResource(final List<String> list) {
-		Deque<String> path = new LinkedList<String>(list);
-		Resource current = root;
-		while (!path.isEmpty() && current != null) {
-			String name = path.removeFirst();
-			current = current.getChild(name);
+		List<byte[]> path = new ArrayList<byte[]>(list.size());
+		for (String name : list) {
+			path.add(name.getBytes(CoAP.UTF8_CHARSET));
 		}
-		return current;
+		return resolver.resolve(path);
 	}
 
 	/**
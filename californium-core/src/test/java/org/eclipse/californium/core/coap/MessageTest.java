@@ -12,6 +12,7 @@
  * 
  * Contributors:
  *    Bosch Software Innovations - initial creation
+ *    Bosch Software Innovations - add tests for invalidating serialized bytes
  ******************************************************************************/
 package org.eclipse.californium.core.coap;
 
@@ -23,6 +24,7 @@ import java.util.Collections;
 import java.util.List;
 
 import org.eclipse.californium.category.Small;
+import org.eclipse.californium.core.coap.CoAP.ResponseCode;
 import org.eclipse.californium.core.coap.CoAP.Type;
 import org.junit.Test;
 import org.junit.experimental.categories.Category;
@@ -103,4 +105,58 @@ public class MessageTest {
 		ping.addMessageObserver(new MessageObserverAdapter() {});
 		assertThat(ping.getMessageObservers().size(), is(9));
 	}
+
+	@Test
+	public void testSerializedBytesAreKeptIfMessageIsUnchanged() {
+		Response response = newSerializedResponse();
+		byte[] bytes = response.getBytes();
+
+		// setting the same values again does not change the message
+		response.setType(Type.CON);
+		response.setMID(4711);
+		response.setToken(new byte[] { 0x01, 0x02 });
+		response.getOptions();
+
+		assertThat(response.getBytes(), is(sameInstance(bytes)));
+	}
+
+	@Test
+	public void testSerializedBytesAreDiscardedOnHeaderChange() {
+		Response response = newSerializedResponse();
+		response.setMID(4712);
+		assertThat(response.getBytes(), is(nullValue()));
+
+		response = newSerializedResponse();
+		response.setType(Type.NON);
+		assertThat(response.getBytes(), is(nullValue()));
+
+		response = newSerializedResponse();
+		response.setToken(new byte[] { 0x01 });
+		assertThat(response.getBytes(), is(nullValue()));
+	}
+
+	@Test
+	public void testSerializedBytesAreDiscardedOnOptionChange() {
+		Response response = newSerializedResponse();
+		response.getOptions().setObserve(2);
+		assertThat(response.getBytes(), is(nullValue()));
+	}
+
+	@Test
+	public void testSerializedBytesAreDiscardedOnPayloadChange() {
+		Response response = newSerializedResponse();
+		response.setPayload("changed");
+		assertThat(response.getBytes(), is(nullValue()));
+	}
+
+	private static Response newSerializedResponse() {
+		Response response = new Response(ResponseCode.CONTENT);
+		response.setType(Type.CON);
+		response.setMID(4711);
+		response.setToken(new byte[] { 0x01, 0x02 });
+		response.getOptions().setObserve(1);
+		response.setPayload("payload");
+		response.setBytes(new byte[] { 0x01 });
+		return response;
+	}
 }
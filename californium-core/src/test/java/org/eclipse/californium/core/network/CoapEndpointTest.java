@@ -17,6 +17,7 @@
 package org.eclipse.californium.core.network;
 
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.startsWith;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 
@@ -163,6 +164,41 @@ public class CoapEndpointTest {
 		assertTrue(receivedRequests.isEmpty());
 	}
 
+	@Test
+	public void testRequestsAreProcessedOnPeerLane() throws Exception {
+
+		// GIVEN an endpoint processing messages on per peer lanes
+		endpoint.stop();
+		NetworkConfig config = NetworkConfig.createStandardWithoutFile();
+		config.setInt(NetworkConfig.Keys.PROTOCOL_STAGE_LANES, 2);
+		final List<String> threads = new ArrayList<String>();
+		connector = new SimpleConnector();
+		endpoint = new CoapEndpoint(connector, config);
+		endpoint.setMessageDeliverer(new MessageDeliverer() {
+
+			@Override
+			public void deliverResponse(Exchange exchange, Response response) {
+			}
+
+			@Override
+			public void deliverRequest(Exchange exchange) {
+				threads.add(Thread.currentThread().getName());
+				latch.countDown();
+			}
+		});
+		endpoint.start();
+		latch = new CountDownLatch(1);
+
+		// WHEN a request is received
+		RawData inboundRequest = RawData.inbound(getSerializedRequest(), SOURCE_ADDRESS, null, null, false);
+		connector.receiveMessage(inboundRequest);
+
+		// THEN the request is delivered on a lane of the endpoint
+		assertTrue(latch.await(2, TimeUnit.SECONDS));
+		assertThat(threads.get(0), startsWith("CoapEndpoint-Lane-"));
+		endpoint.destroy();
+	}
+
 	private byte[] getSerializedRequest() {
 		return new byte[] { 0b01000011, // ver 1, CON, token length: 3
 				0b00000001, // code: 0.01 (GET request)
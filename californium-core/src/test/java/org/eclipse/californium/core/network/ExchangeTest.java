@@ -0,0 +1,86 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Bosch Software Innovations GmbH and others.
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ * 
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ * 
+ * Contributors:
+ *    Bosch Software Innovations - initial creation
+ ******************************************************************************/
+package org.eclipse.californium.core.network;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.net.InetAddress;
+
+import org.eclipse.californium.category.Small;
+import org.eclipse.californium.core.coap.Request;
+import org.eclipse.californium.core.network.Exchange.KeyMID;
+import org.eclipse.californium.core.network.Exchange.KeyToken;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/**
+ * Verifies behavior of the keys used for matching messages to exchanges.
+ */
+@Category(Small.class)
+public class ExchangeTest {
+
+	private static final byte[] IPV4 = new byte[] { (byte) 192, (byte) 168, 0, 1 };
+	private static final byte[] IPV6 = new byte[] { 0x20, 0x01, 0x0d, (byte) 0xb8, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 1 };
+
+	@Test
+	public void testKeyMIDForIpv4EndpointIsPacked() throws Exception {
+		KeyMID key = KeyMID.fromOutboundMessage(newRequest(IPV4, 5683, 0xFFFF));
+
+		assertTrue(key.isPacked());
+		assertThat(key.getPackedValue(), is(0xC0A80001L << 32 | 5683L << 16 | 0xFFFF));
+		assertThat(key, is(KeyMID.fromOutboundMessage(newRequest(IPV4, 5683, 0xFFFF))));
+		assertThat(key, is(not(KeyMID.fromOutboundMessage(newRequest(IPV4, 5684, 0xFFFF)))));
+	}
+
+	@Test
+	public void testKeyMIDForIpv6EndpointIsNotPacked() throws Exception {
+		KeyMID key = KeyMID.fromOutboundMessage(newRequest(IPV6, 5683, 12));
+
+		assertFalse(key.isPacked());
+		assertThat(key, is(KeyMID.fromOutboundMessage(newRequest(IPV6, 5683, 12))));
+		assertThat(key.hashCode(), is(KeyMID.fromOutboundMessage(newRequest(IPV6, 5683, 12)).hashCode()));
+		assertThat(key, is(not(KeyMID.fromOutboundMessage(newRequest(new byte[16], 5683, 12)))));
+	}
+
+	@Test
+	public void testKeyTokenDistinguishesTokenLength() {
+		KeyToken empty = KeyToken.fromValues(new byte[0], IPV4, 5683);
+		KeyToken zero = KeyToken.fromValues(new byte[] { 0 }, IPV4, 5683);
+		KeyToken zeros = KeyToken.fromValues(new byte[] { 0, 0 }, IPV4, 5683);
+
+		assertThat(empty, is(not(zero)));
+		assertThat(zero, is(not(zeros)));
+		assertThat(zero, is(KeyToken.fromValues(new byte[] { 0 }, IPV4, 5683)));
+	}
+
+	@Test
+	public void testKeyTokenReturnsToken() {
+		byte[] token = new byte[] { (byte) 0xFF, 0x01, 0x02, 0x03, 0x04, 0x05, 0x06, (byte) 0x80 };
+
+		assertArrayEquals(token, KeyToken.fromValues(token, IPV4, 5683).getToken());
+		assertArrayEquals(token, KeyToken.fromValues(token, IPV6, 5683).getToken());
+		assertThat(KeyToken.fromValues(token, IPV4, 5683), is(not(KeyToken.fromValues(token, IPV6, 5683))));
+	}
+
+	private static Request newRequest(final byte[] address, final int port, final int mid) throws Exception {
+		Request request = Request.newGet();
+		request.setDestination(InetAddress.getByAddress(address));
+		request.setDestinationPort(port);
+		request.setMID(mid);
+		return request;
+	}
+}
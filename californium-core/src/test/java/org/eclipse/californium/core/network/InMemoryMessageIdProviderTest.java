@@ -14,6 +14,7 @@
  *    Bosch Software Innovations - initial creation
  *    Achim Kraus (Bosch Software Innovations GmbH) - add tests for different
  *                                                    MessageIdTracker modes
+ *    Bosch Software Innovations - add tests for concurrent access
  ******************************************************************************/
 package org.eclipse.californium.core.network;
 
@@ -24,6 +25,11 @@ import static org.eclipse.californium.core.network.MessageIdTracker.TOTAL_NO_OF_
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.UnknownHostException;
+import java.util.BitSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.eclipse.californium.category.Small;
 import org.eclipse.californium.core.coap.CoAP;
@@ -127,6 +133,54 @@ public class InMemoryMessageIdProviderTest {
 				is(-1));
 	}
 
+	@Test
+	public void testGetNextMessageIdSupportsManyPeers() {
+
+		int peers = 5000;
+		config.setLong(NetworkConfig.Keys.MAX_ACTIVE_PEERS, peers);
+		InMemoryMessageIdProvider provider = new InMemoryMessageIdProvider(config);
+		for (int i = 0; i < peers; i++) {
+			InetSocketAddress peer = new InetSocketAddress(InetAddress.getLoopbackAddress(), 10000 + i);
+			assertThat(provider.getNextMessageId(peer), is(not(Message.NONE)));
+		}
+	}
+
+	@Test
+	public void testConcurrentCallersGetDistinctMids() throws Exception {
+
+		final int threads = 4;
+		final int midsPerThread = 5000;
+		final InMemoryMessageIdProvider provider = new InMemoryMessageIdProvider(config);
+		final InetSocketAddress peerAddress = getPeerAddress(1);
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			Future<?>[] results = new Future<?>[threads];
+			for (int i = 0; i < threads; i++) {
+				results[i] = executor.submit(new Callable<int[]>() {
+
+					@Override
+					public int[] call() {
+						int[] mids = new int[midsPerThread];
+						for (int index = 0; index < midsPerThread; index++) {
+							mids[index] = provider.getNextMessageId(peerAddress);
+						}
+						return mids;
+					}
+				});
+			}
+			BitSet used = new BitSet(TOTAL_NO_OF_MIDS);
+			for (Future<?> result : results) {
+				for (int mid : (int[]) result.get()) {
+					assertThat(mid, is(not(Message.NONE)));
+					assertFalse("MID " + mid + " has been used twice", used.get(mid));
+					used.set(mid);
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
 	private static void addPeers(final MessageIdProvider provider, final int peerCount) {
 		for (int i = 0; i < peerCount; i++) {
 			provider.getNextMessageId(getPeerAddress(i));
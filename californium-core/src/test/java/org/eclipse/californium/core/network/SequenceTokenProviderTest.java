@@ -0,0 +1,124 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Bosch Software Innovations GmbH and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *    Bosch Software Innovations - initial creation
+ ******************************************************************************/
+package org.eclipse.californium.core.network;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.net.InetAddress;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.eclipse.californium.category.Small;
+import org.eclipse.californium.core.coap.Request;
+import org.eclipse.californium.core.network.Exchange.KeyToken;
+import org.eclipse.californium.core.network.config.NetworkConfig;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/**
+ * Verifies behavior of {@link SequenceTokenProvider}.
+ */
+@Category(Small.class)
+public class SequenceTokenProviderTest {
+
+	private NetworkConfig config;
+	private Request request;
+
+	@Before
+	public void setUp() {
+		config = NetworkConfig.createStandardWithoutFile();
+		request = Request.newGet();
+		request.setDestination(InetAddress.getLoopbackAddress());
+		request.setDestinationPort(5683);
+	}
+
+	@Test
+	public void testTokensHaveConfiguredLength() {
+		config.setInt(NetworkConfig.Keys.TOKEN_SIZE_LIMIT, 4);
+		SequenceTokenProvider provider = new SequenceTokenProvider(config);
+		KeyToken token = provider.getUnusedToken(request);
+		assertThat(token.getToken().length, is(4));
+	}
+
+	@Test
+	public void testTokensAreUniqueUntilSequenceWrapsAround() {
+		// all 65536 values of a 2 byte token must be used exactly once
+		config.setInt(NetworkConfig.Keys.TOKEN_SIZE_LIMIT, 2);
+		SequenceTokenProvider provider = new SequenceTokenProvider(config);
+		Set<KeyToken> tokens = new HashSet<>();
+		for (int i = 0; i < 1 << 16; i++) {
+			assertTrue("duplicate token", tokens.add(provider.getUnusedToken(request)));
+		}
+	}
+
+	@Test
+	public void testTokensStillInUseAreSkippedAfterWrapAround() {
+		config.setInt(NetworkConfig.Keys.TOKEN_SIZE_LIMIT, 1);
+		SequenceTokenProvider provider = new SequenceTokenProvider(config);
+		// e.g. the token of a long-lived observation
+		KeyToken observe = provider.getUnusedToken(request);
+		assertTrue(provider.isTokenInUse(observe));
+		for (int i = 1; i < 1 << 8; i++) {
+			provider.releaseToken(provider.getUnusedToken(request));
+		}
+
+		// the sequence has wrapped around
+		KeyToken token = provider.getUnusedToken(request);
+		assertThat(token, is(not(observe)));
+		assertTrue(provider.isTokenInUse(token));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testGetUnusedTokenFailsIfAllTokensAreInUse() {
+		config.setInt(NetworkConfig.Keys.TOKEN_SIZE_LIMIT, 1);
+		SequenceTokenProvider provider = new SequenceTokenProvider(config);
+		for (int i = 0; i <= 1 << 8; i++) {
+			provider.getUnusedToken(request);
+		}
+	}
+
+	@Test
+	public void testTokensAreNotTracked() {
+		SequenceTokenProvider provider = new SequenceTokenProvider(config);
+		KeyToken token = provider.getUnusedToken(request);
+		assertThat(token.getToken().length, is(8));
+		assertFalse(provider.isTokenInUse(token));
+		provider.releaseToken(token);
+	}
+
+	@Test
+	public void testStoreUsesConfiguredTokenProvider() {
+		config.setString(NetworkConfig.Keys.TOKEN_PROVIDER, "SEQUENCE");
+		InMemoryMessageExchangeStore store = new InMemoryMessageExchangeStore(config);
+		store.start();
+		try {
+			Exchange exchange = new Exchange(request, Exchange.Origin.LOCAL);
+			assertTrue(store.registerOutboundRequest(exchange));
+			assertThat(request.getToken(), is(notNullValue()));
+			assertThat(request.getToken().length, is(8));
+		} finally {
+			store.stop();
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testStoreRejectsUnknownTokenProvider() {
+		config.setString(NetworkConfig.Keys.TOKEN_PROVIDER, "UNKNOWN");
+		new InMemoryMessageExchangeStore(config);
+	}
+}
@@ -0,0 +1,195 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Bosch Software Innovations GmbH and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *    Bosch Software Innovations - initial creation
+ *    Bosch Software Innovations - verify expiry of incomplete exchanges
+ ******************************************************************************/
+package org.eclipse.californium.core.network;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+import org.eclipse.californium.category.Small;
+import org.eclipse.californium.core.coap.Request;
+import org.eclipse.californium.core.network.Exchange.KeyMID;
+import org.eclipse.californium.core.network.Exchange.KeyToken;
+import org.eclipse.californium.core.network.Exchange.KeyUri;
+import org.eclipse.californium.core.network.Exchange.Origin;
+import org.eclipse.californium.core.network.config.NetworkConfig;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/**
+ * Verifies behavior of the {@link ShardedMessageExchangeStore}.
+ */
+@Category(Small.class)
+public class ShardedMessageExchangeStoreTest {
+
+	private static final int PEER_PORT = 12000;
+
+	private NetworkConfig config;
+	private ShardedMessageExchangeStore store;
+
+	@Before
+	public void setUp() {
+		config = NetworkConfig.createStandardWithoutFile();
+		config.setLong(NetworkConfig.Keys.EXCHANGE_LIFETIME, 1); // ms
+		store = new ShardedMessageExchangeStore(config, new InMemoryRandomTokenProvider(config), 5);
+		store.start();
+	}
+
+	@After
+	public void tearDown() {
+		store.stop();
+	}
+
+	@Test
+	public void testShardCountIsRoundedUpToPowerOfTwo() {
+		assertThat(store.getShardCount(), is(8));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testDefaultTokenProviderIsSelectedByConfiguration() {
+		config.setString(NetworkConfig.Keys.TOKEN_PROVIDER, "UNKNOWN");
+		new ShardedMessageExchangeStore(config);
+	}
+
+	@Test
+	public void testKeysOfSamePeerHaveSamePeerHash() throws Exception {
+		Request request = newOutboundRequest(1).getCurrentRequest();
+		request.setMID(10);
+		request.setToken(new byte[] { 0x01 });
+		KeyMID mid = KeyMID.fromOutboundMessage(request);
+		KeyToken token = KeyToken.fromOutboundMessage(request);
+		KeyUri uri = new KeyUri("coap://localhost/test", request.getDestination().getAddress(),
+				request.getDestinationPort());
+		assertThat(token.getPeerHash(), is(mid.getPeerHash()));
+		assertThat(uri.getPeerHash(), is(mid.getPeerHash()));
+	}
+
+	@Test
+	public void testRegisteredExchangesAreFoundInAllShards() throws Exception {
+
+		Exchange[] exchanges = new Exchange[32];
+		for (int i = 0; i < exchanges.length; i++) {
+			exchanges[i] = newOutboundRequest(i);
+			assertTrue(store.registerOutboundRequest(exchanges[i]));
+		}
+		for (Exchange exchange : exchanges) {
+			Request request = exchange.getCurrentRequest();
+			assertThat(store.get(KeyMID.fromOutboundMessage(request)), is(sameInstance(exchange)));
+			assertThat(store.get(KeyToken.fromOutboundMessage(request)), is(sameInstance(exchange)));
+		}
+		ShardedMessageExchangeStore.Statistics statistics = store.getStatistics();
+		assertThat(statistics.getExchangesByMid(), is(32));
+		assertThat(statistics.getExchangesByToken(), is(32));
+		assertThat(statistics.getRegistered(), is(64L));
+		int sum = 0;
+		for (ShardedMessageExchangeStore.Statistics shard : store.getShardStatistics()) {
+			sum += shard.getExchangesByMid();
+		}
+		assertThat(sum, is(32));
+	}
+
+	@Test
+	public void testRemoveUpdatesStatistics() throws Exception {
+
+		Exchange exchange = newOutboundRequest(1);
+		store.registerOutboundRequest(exchange);
+		Request request = exchange.getCurrentRequest();
+		store.remove(KeyMID.fromOutboundMessage(request), exchange);
+		store.remove(KeyToken.fromOutboundMessage(request), exchange);
+
+		ShardedMessageExchangeStore.Statistics statistics = store.getStatistics();
+		assertThat(statistics.getRemoved(), is(2L));
+		assertThat(statistics.getExpired(), is(0L));
+		assertTrue(store.isEmpty());
+	}
+
+	@Test
+	public void testExpireRemovesLeakedExchangesOnly() throws Exception {
+
+		Exchange leaked = newOutboundRequest(1);
+		store.registerOutboundRequest(leaked);
+		leaked.setComplete();
+		Exchange ongoing = newOutboundRequest(2);
+		store.registerOutboundRequest(ongoing);
+		Exchange observation = newOutboundRequest(3);
+		observation.getCurrentRequest().setObserve();
+		store.registerOutboundRequest(observation);
+		Thread.sleep(10);
+
+		store.expire();
+
+		ShardedMessageExchangeStore.Statistics statistics = store.getStatistics();
+		assertThat(statistics.getExpired(), is(4L));
+		assertThat(store.get(KeyMID.fromOutboundMessage(leaked.getCurrentRequest())), is(nullValue()));
+		assertThat(store.get(KeyMID.fromOutboundMessage(ongoing.getCurrentRequest())), is(nullValue()));
+		assertThat(store.get(KeyMID.fromOutboundMessage(observation.getCurrentRequest())),
+				is(sameInstance(observation)));
+		assertThat(store.get(KeyToken.fromOutboundMessage(observation.getCurrentRequest())),
+				is(sameInstance(observation)));
+	}
+
+	@Test
+	public void testExpireKeepsRecentlyCompletedExchanges() throws Exception {
+
+		store.stop();
+		config.setLong(NetworkConfig.Keys.EXCHANGE_LIFETIME, 200); // ms
+		store = new ShardedMessageExchangeStore(config, new InMemoryRandomTokenProvider(config), 5);
+		store.start();
+
+		Exchange exchange = newOutboundRequest(1);
+		store.registerOutboundRequest(exchange);
+		Thread.sleep(300);
+		exchange.setComplete();
+
+		store.expire();
+
+		assertThat(store.getStatistics().getExpired(), is(0L));
+		assertThat(store.get(KeyMID.fromOutboundMessage(exchange.getCurrentRequest())), is(sameInstance(exchange)));
+	}
+
+	@Test
+	public void testExpireReleasesTokens() throws Exception {
+
+		TokenProvider tokenProvider = new InMemoryRandomTokenProvider(config);
+		store.stop();
+		store = new ShardedMessageExchangeStore(config, tokenProvider, 5);
+		store.start();
+
+		Exchange leaked = newOutboundRequest(1);
+		store.registerOutboundRequest(leaked);
+		KeyToken token = KeyToken.fromOutboundMessage(leaked.getCurrentRequest());
+		assertTrue(tokenProvider.isTokenInUse(token));
+		leaked.setComplete();
+		Thread.sleep(10);
+
+		store.expire();
+
+		assertThat(store.get(token), is(nullValue()));
+		assertFalse(tokenProvider.isTokenInUse(token));
+	}
+
+	private static Exchange newOutboundRequest(final int peer) throws UnknownHostException {
+		Request request = Request.newGet();
+		request.setDestination(InetAddress.getByAddress(new byte[] { (byte) 192, (byte) 168, 0, (byte) peer }));
+		request.setDestinationPort(PEER_PORT);
+		return new Exchange(request, Origin.LOCAL);
+	}
+}
@@ -0,0 +1,177 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Bosch Software Innovations GmbH and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *    Bosch Software Innovations - initial creation
+ ******************************************************************************/
+package org.eclipse.californium.core.network;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.eclipse.californium.category.Small;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/**
+ * Verifies behavior of the {@link StripedProtocolStage}.
+ */
+@Category(Small.class)
+public class StripedProtocolStageTest {
+
+	private static final int PEER_PORT = 12000;
+
+	private StripedProtocolStage stage;
+	private InetAddress peer;
+
+	@Before
+	public void setUp() throws Exception {
+		stage = new StripedProtocolStage("Lane-", 3);
+		peer = InetAddress.getLoopbackAddress();
+	}
+
+	@After
+	public void tearDown() {
+		stage.shutdown();
+	}
+
+	@Test
+	public void testNumberOfLanesIsRoundedUpToPowerOfTwo() {
+		assertThat(stage.getLaneCount(), is(4));
+	}
+
+	@Test
+	public void testTasksOfSamePeerAreExecutedInOrderOnSameThread() throws Exception {
+		final int count = 1000;
+		final List<Integer> executed = Collections.synchronizedList(new ArrayList<Integer>());
+		final List<Thread> threads = Collections.synchronizedList(new ArrayList<Thread>());
+		final CountDownLatch latch = new CountDownLatch(count);
+		for (int i = 0; i < count; i++) {
+			final int index = i;
+			stage.execute(peer, PEER_PORT, new Runnable() {
+
+				@Override
+				public void run() {
+					executed.add(index);
+					threads.add(Thread.currentThread());
+					latch.countDown();
+				}
+			});
+		}
+		assertTrue(latch.await(2, TimeUnit.SECONDS));
+		for (int i = 0; i < count; i++) {
+			assertThat(executed.get(i), is(i));
+			assertThat(threads.get(i), is(sameInstance(threads.get(0))));
+		}
+	}
+
+	@Test
+	public void testScheduleFromLaneRunsOnSameLane() throws Exception {
+		final AtomicReference<Thread> laneThread = new AtomicReference<>();
+		final AtomicReference<Thread> timeoutThread = new AtomicReference<>();
+		final CountDownLatch latch = new CountDownLatch(1);
+		stage.execute(peer, PEER_PORT, new Runnable() {
+
+			@Override
+			public void run() {
+				laneThread.set(Thread.currentThread());
+				stage.schedule(new Runnable() {
+
+					@Override
+					public void run() {
+						timeoutThread.set(Thread.currentThread());
+						latch.countDown();
+					}
+				}, 10, TimeUnit.MILLISECONDS);
+			}
+		});
+		assertTrue(latch.await(2, TimeUnit.SECONDS));
+		assertThat(timeoutThread.get(), is(sameInstance(laneThread.get())));
+	}
+
+	@Test
+	public void testScheduleForPeerRunsOnPeersLaneAfterPendingTasks() throws Exception {
+		final List<Integer> executed = Collections.synchronizedList(new ArrayList<Integer>());
+		final AtomicReference<Thread> laneThread = new AtomicReference<>();
+		final AtomicReference<Thread> scheduledThread = new AtomicReference<>();
+		final CountDownLatch latch = new CountDownLatch(1);
+		stage.execute(peer, PEER_PORT, new Runnable() {
+
+			@Override
+			public void run() {
+				laneThread.set(Thread.currentThread());
+				executed.add(1);
+			}
+		});
+		// scheduled from a thread outside of the lanes
+		stage.schedule(peer, PEER_PORT, new Runnable() {
+
+			@Override
+			public void run() {
+				scheduledThread.set(Thread.currentThread());
+				executed.add(2);
+				latch.countDown();
+			}
+		}, 0, TimeUnit.MILLISECONDS);
+		assertTrue(latch.await(2, TimeUnit.SECONDS));
+		assertThat(scheduledThread.get(), is(sameInstance(laneThread.get())));
+		assertThat(executed, is(Arrays.asList(1, 2)));
+	}
+
+	@Test
+	public void testExecuteFromPeersLaneRunsImmediately() throws Exception {
+		final AtomicReference<Boolean> nestedDone = new AtomicReference<>();
+		final CountDownLatch latch = new CountDownLatch(1);
+		stage.execute(peer, PEER_PORT, new Runnable() {
+
+			@Override
+			public void run() {
+				final boolean[] done = new boolean[1];
+				stage.execute(peer, PEER_PORT, new Runnable() {
+
+					@Override
+					public void run() {
+						done[0] = true;
+					}
+				});
+				nestedDone.set(done[0]);
+				latch.countDown();
+			}
+		});
+		assertTrue(latch.await(2, TimeUnit.SECONDS));
+		assertTrue(nestedDone.get());
+	}
+
+	@Test(expected = RejectedExecutionException.class)
+	public void testShutdownRejectsTimeouts() {
+		stage.shutdown();
+		assertTrue(stage.isShutdown());
+		stage.schedule(new Runnable() {
+
+			@Override
+			public void run() {
+			}
+		}, 1, TimeUnit.MILLISECONDS);
+	}
+}
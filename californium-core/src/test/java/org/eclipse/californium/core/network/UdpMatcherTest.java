@@ -25,12 +25,15 @@ import java.net.InetSocketAddress;
 
 import org.eclipse.californium.category.Small;
 import org.eclipse.californium.core.coap.CoAP.ResponseCode;
+import org.eclipse.californium.core.coap.CoAP.Type;
 import org.eclipse.californium.core.coap.Message;
 import org.eclipse.californium.core.coap.Request;
 import org.eclipse.californium.core.coap.Response;
 import org.eclipse.californium.core.network.Exchange.KeyToken;
 import org.eclipse.californium.core.network.Exchange.Origin;
 import org.eclipse.californium.core.network.config.NetworkConfig;
+import org.eclipse.californium.core.observe.InMemoryObservationStore;
+import org.eclipse.californium.core.observe.Observation;
 import org.eclipse.californium.elements.CorrelationContext;
 import org.eclipse.californium.elements.DtlsCorrelationContext;
 import org.eclipse.californium.elements.MapBasedCorrelationContext;
@@ -202,6 +205,34 @@ public class UdpMatcherTest {
 		assertThat(matchedExchange, is(nullValue()));
 	}
 	
+	@Test
+	public void testReceiveNotificationOfStoredObservationChecksCorrelationContext() {
+		// GIVEN an observation sent via a DTLS transport kept in an observation store
+		UdpMatcher matcher = newMatcher(false);
+		InMemoryObservationStore store = new InMemoryObservationStore();
+		matcher.setObservationStore(store, null);
+		Request request = Request.newGet();
+		request.setMID(4711);
+		request.setToken(new byte[] { 0x01, 0x02 });
+		request.setDestination(dest.getAddress());
+		request.setDestinationPort(dest.getPort());
+		request.setObserve();
+		store.add(new Observation(request, new DtlsCorrelationContext(SESSION_ID, EPOCH, CIPHER), "handler", 1));
+
+		// WHEN notifications arrive in another and in the same session
+		Response notification = responseFor(request);
+		notification.setType(Type.NON);
+		notification.getOptions().setObserve(2);
+		Exchange forged = matcher.receiveResponse(notification,
+				new DtlsCorrelationContext(OTHER_SESSION_ID, EPOCH, CIPHER));
+		Exchange matched = matcher.receiveResponse(notification,
+				new DtlsCorrelationContext(SESSION_ID, EPOCH, CIPHER));
+
+		// THEN assert that only the notification of the same session is matched
+		assertThat(forged, is(nullValue()));
+		assertThat(matched.getRequest().getNotificationHandlerId(), is("handler"));
+	}
+
 	@Test
 	public void testReceiveResponseReleasesToken() {
 		// GIVEN a request without token sent
@@ -0,0 +1,176 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Bosch Software Innovations GmbH and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *    Bosch Software Innovations - initial creation
+ ******************************************************************************/
+package org.eclipse.californium.core.network.deduplication;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.net.InetAddress;
+
+import org.eclipse.californium.category.Small;
+import org.eclipse.californium.core.coap.CoAP.ResponseCode;
+import org.eclipse.californium.core.coap.CoAP.Type;
+import org.eclipse.californium.core.coap.Request;
+import org.eclipse.californium.core.coap.Response;
+import org.eclipse.californium.core.network.Exchange;
+import org.eclipse.californium.core.network.Exchange.KeyMID;
+import org.eclipse.californium.core.network.Exchange.Origin;
+import org.eclipse.californium.core.network.config.NetworkConfig;
+import org.eclipse.californium.core.network.serialization.UdpDataSerializer;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/**
+ * Verifies behavior of the {@link CompactDeduplicator}.
+ */
+@Category(Small.class)
+public class CompactDeduplicatorTest {
+
+	private static final int PEER_PORT = 12000;
+	private static final int MID = 4711;
+
+	private CompactDeduplicator deduplicator;
+
+	@Before
+	public void setUp() {
+		NetworkConfig config = NetworkConfig.createStandardWithoutFile();
+		deduplicator = new CompactDeduplicator(config);
+	}
+
+	@Test
+	public void testDuplicateOfCompactedExchangeIsAnsweredWithSameBytes() {
+
+		// GIVEN a completed exchange answered with a piggy-backed response
+		Exchange exchange = newInboundExchange();
+		KeyMID key = KeyMID.fromInboundMessage(exchange.getCurrentRequest());
+		assertThat(deduplicator.findPrevious(key, exchange), is(nullValue()));
+		Response response = new Response(ResponseCode.CONTENT);
+		response.setType(Type.ACK);
+		response.setMID(MID);
+		response.setToken(exchange.getCurrentRequest().getToken());
+		response.setPayload("hello");
+		response.setDestination(InetAddress.getLoopbackAddress());
+		response.setDestinationPort(PEER_PORT);
+		byte[] bytes = new UdpDataSerializer().serializeResponse(response).getBytes();
+		exchange.setCurrentResponse(response);
+		exchange.setComplete();
+
+		// WHEN the exchange is compacted
+		deduplicator.sweep();
+		assertThat(deduplicator.getCompactedCount(), is(1));
+
+		// THEN a duplicate of the request is answered with the original bytes
+		Exchange duplicate = newInboundExchange();
+		Exchange previous = deduplicator.findPrevious(key, duplicate);
+		assertNotNull(previous);
+		Response replay = previous.getCurrentResponse();
+		assertNotNull(replay);
+		assertThat(replay.getBytes(), is(bytes));
+		assertThat(replay.getMID(), is(MID));
+		assertThat(replay.getDestinationPort(), is(PEER_PORT));
+	}
+
+	@Test
+	public void testDuplicateOfCompactedAcknowledgedExchangeIsAcknowledged() {
+
+		Exchange exchange = newInboundExchange();
+		KeyMID key = KeyMID.fromInboundMessage(exchange.getCurrentRequest());
+		deduplicator.findPrevious(key, exchange);
+		exchange.getCurrentRequest().setAcknowledged(true);
+		exchange.setComplete();
+		deduplicator.sweep();
+
+		Exchange previous = deduplicator.findPrevious(key, newInboundExchange());
+		assertNotNull(previous);
+		assertThat(previous.getCurrentResponse(), is(nullValue()));
+		assertTrue(previous.getCurrentRequest().isAcknowledged());
+	}
+
+	@Test
+	public void testExchangeIsCompactedOnCompletion() {
+
+		// GIVEN an exchange answered with a piggy-backed response not serialized yet
+		Exchange exchange = newInboundExchange(InetAddress.getLoopbackAddress());
+		KeyMID key = KeyMID.fromInboundMessage(exchange.getCurrentRequest());
+		assertThat(deduplicator.findPrevious(key, exchange), is(nullValue()));
+		Response response = newPiggyBackedResponse(exchange);
+		exchange.setCurrentResponse(response);
+
+		// WHEN the exchange completes
+		exchange.setComplete();
+
+		// THEN the exchange is compacted without waiting for a sweep run
+		assertThat(deduplicator.getCompactedCount(), is(1));
+		assertNotNull(response.getBytes());
+		Exchange previous = deduplicator.findPrevious(key, newInboundExchange(InetAddress.getLoopbackAddress()));
+		assertThat(previous, is(not(sameInstance(exchange))));
+		assertThat(previous.getCurrentResponse().getBytes(), is(response.getBytes()));
+	}
+
+	@Test
+	public void testExchangeFromIPv6EndpointIsCompactedOnCompletion() throws Exception {
+
+		InetAddress address = InetAddress.getByName("::1");
+		Exchange exchange = newInboundExchange(address);
+		KeyMID key = KeyMID.fromInboundMessage(exchange.getCurrentRequest());
+		assertFalse(key.isPacked());
+		assertThat(deduplicator.findPrevious(key, exchange), is(nullValue()));
+		exchange.setCurrentResponse(newPiggyBackedResponse(exchange));
+		exchange.setComplete();
+
+		assertThat(deduplicator.getCompactedCount(), is(1));
+		assertNotNull(deduplicator.findPrevious(key, newInboundExchange(address)).getCurrentResponse());
+	}
+
+	@Test
+	public void testOngoingExchangeIsNotCompacted() {
+
+		Exchange exchange = newInboundExchange();
+		KeyMID key = KeyMID.fromInboundMessage(exchange.getCurrentRequest());
+		deduplicator.findPrevious(key, exchange);
+		deduplicator.sweep();
+
+		assertThat(deduplicator.getCompactedCount(), is(0));
+		assertThat(deduplicator.findPrevious(key, newInboundExchange()), is(sameInstance(exchange)));
+	}
+
+	private static Exchange newInboundExchange() {
+		return newInboundExchange(InetAddress.getLoopbackAddress());
+	}
+
+	private static Exchange newInboundExchange(final InetAddress source) {
+		Request request = Request.newGet();
+		request.setType(Type.CON);
+		request.setMID(MID);
+		request.setToken(new byte[] { 0x01, 0x02 });
+		request.setSource(source);
+		request.setSourcePort(PEER_PORT);
+		return new Exchange(request, Origin.REMOTE);
+	}
+
+	private static Response newPiggyBackedResponse(final Exchange exchange) {
+		Request request = exchange.getCurrentRequest();
+		Response response = new Response(ResponseCode.CONTENT);
+		response.setType(Type.ACK);
+		response.setMID(request.getMID());
+		response.setToken(request.getToken());
+		response.setPayload("hello");
+		response.setDestination(request.getSource());
+		response.setDestinationPort(request.getSourcePort());
+		return response;
+	}
+}
@@ -0,0 +1,133 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Bosch Software Innovations GmbH and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *    Bosch Software Innovations - initial creation
+ ******************************************************************************/
+package org.eclipse.californium.core.network.deduplication;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.net.InetAddress;
+
+import org.eclipse.californium.category.Small;
+import org.eclipse.californium.core.coap.CoAP.Type;
+import org.eclipse.californium.core.coap.Request;
+import org.eclipse.californium.core.network.Exchange;
+import org.eclipse.californium.core.network.Exchange.KeyMID;
+import org.eclipse.californium.core.network.Exchange.Origin;
+import org.eclipse.californium.core.network.config.NetworkConfig;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/**
+ * Verifies behavior of the {@link TimingWheelDeduplicator}.
+ */
+@Category(Small.class)
+public class TimingWheelDeduplicatorTest {
+
+	private static final int PEER_PORT = 12000;
+	private static final int LIFETIME_TICKS = 3;
+
+	private TimingWheelDeduplicator deduplicator;
+
+	@Before
+	public void setUp() {
+		NetworkConfig config = NetworkConfig.createStandardWithoutFile();
+		config.setLong(NetworkConfig.Keys.EXCHANGE_LIFETIME, LIFETIME_TICKS * 1000L);
+		config.setLong(NetworkConfig.Keys.TIMING_WHEEL_TICK, 1000L);
+		deduplicator = new TimingWheelDeduplicator(config);
+	}
+
+	@Test
+	public void testEntryIsKeptForWholeLifetime() {
+
+		Exchange exchange = newInboundExchange(1);
+		KeyMID key = KeyMID.fromInboundMessage(exchange.getCurrentRequest());
+		assertThat(deduplicator.findPrevious(key, exchange), is(nullValue()));
+
+		// an entry added right before the next tick must survive
+		// the number of ticks spanning the lifetime
+		for (int i = 0; i < LIFETIME_TICKS; i++) {
+			deduplicator.tick();
+			assertThat(deduplicator.findPrevious(key, newInboundExchange(1)), is(sameInstance(exchange)));
+		}
+
+		deduplicator.tick();
+		assertThat(deduplicator.find(key), is(nullValue()));
+		assertTrue(deduplicator.isEmpty());
+	}
+
+	@Test
+	public void testEntriesExpireInOrderOfArrival() {
+
+		Exchange first = newInboundExchange(1);
+		KeyMID firstKey = KeyMID.fromInboundMessage(first.getCurrentRequest());
+		deduplicator.findPrevious(firstKey, first);
+		deduplicator.tick();
+		Exchange second = newInboundExchange(2);
+		KeyMID secondKey = KeyMID.fromInboundMessage(second.getCurrentRequest());
+		deduplicator.findPrevious(secondKey, second);
+
+		for (int i = 0; i < LIFETIME_TICKS; i++) {
+			deduplicator.tick();
+		}
+		assertThat(deduplicator.find(firstKey), is(nullValue()));
+		assertThat(deduplicator.find(secondKey), is(sameInstance(second)));
+
+		deduplicator.tick();
+		assertTrue(deduplicator.isEmpty());
+	}
+
+	@Test
+	public void testExpiredKeyCanBeAddedAgain() {
+
+		Exchange exchange = newInboundExchange(1);
+		KeyMID key = KeyMID.fromInboundMessage(exchange.getCurrentRequest());
+		deduplicator.findPrevious(key, exchange);
+		for (int i = 0; i <= LIFETIME_TICKS; i++) {
+			deduplicator.tick();
+		}
+
+		Exchange next = newInboundExchange(1);
+		assertThat(deduplicator.findPrevious(key, next), is(nullValue()));
+		assertThat(deduplicator.find(key), is(sameInstance(next)));
+	}
+
+	@Test
+	public void testClearRemovesAllEntries() {
+
+		Exchange exchange = newInboundExchange(1);
+		KeyMID key = KeyMID.fromInboundMessage(exchange.getCurrentRequest());
+		deduplicator.findPrevious(key, exchange);
+		deduplicator.clear();
+		assertTrue(deduplicator.isEmpty());
+
+		// a stale expiry must not remove an entry added after clearing
+		Exchange next = newInboundExchange(1);
+		deduplicator.findPrevious(key, next);
+		deduplicator.tick();
+		assertThat(deduplicator.find(key), is(sameInstance(next)));
+	}
+
+	private static Exchange newInboundExchange(final int mid) {
+		Request request = Request.newGet();
+		request.setType(Type.CON);
+		request.setMID(mid);
+		request.setToken(new byte[] { 0x01, 0x02 });
+		request.setSource(InetAddress.getLoopbackAddress());
+		request.setSourcePort(PEER_PORT);
+		return new Exchange(request, Origin.REMOTE);
+	}
+}
@@ -19,18 +19,25 @@
  * Bosch Software Innovations GmbH - add test cases
  * Achim Kraus (Bosch Software Innovations GmbH) - add test for CoAP specific 
  *                                                 exception information
+ * Bosch Software Innovations GmbH - add tests for parsing byte ranges
+ * Bosch Software Innovations GmbH - add test for lazily decoded Uri-Path
  ******************************************************************************/
 package org.eclipse.californium.core.network.serialization;
 
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.fail;
 
 import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import org.eclipse.californium.category.Small;
+import org.eclipse.californium.core.coap.CoAP;
 import org.eclipse.californium.core.coap.CoAP.Code;
 import org.eclipse.californium.core.coap.CoAP.ResponseCode;
 import org.eclipse.californium.core.coap.CoAP.Type;
@@ -38,6 +45,7 @@ import org.eclipse.californium.core.coap.CoAPMessageFormatException;
 import org.eclipse.californium.core.coap.Message;
 import org.eclipse.californium.core.coap.MessageFormatException;
 import org.eclipse.californium.core.coap.Option;
+import org.eclipse.californium.core.coap.OptionSet;
 import org.eclipse.californium.core.coap.Request;
 import org.eclipse.californium.core.coap.Response;
 import org.eclipse.californium.elements.RawData;
@@ -88,6 +96,88 @@ import org.junit.runners.Parameterized;
 		assertEquals(request.getOptions().asSortedList(), result.getOptions().asSortedList());
 	}
 
+	@Test public void testParsedUriPathIsDecodedLazily() {
+		Request request = new Request(Code.GET);
+		request.setMID(expectedMid);
+		request.setToken(new byte[] { 1, 2 });
+		request.getOptions().setUriPath("rd/4711/3/0").addUriQuery("lt=300");
+
+		Request result = (Request) parser.parseMessage(serializer.serializeRequest(request));
+		List<byte[]> values = result.getOptions().getUriPathValues();
+		assertEquals(4, values.size());
+		assertArrayEquals("4711".getBytes(CoAP.UTF8_CHARSET), values.get(1));
+		assertEquals(request.getOptions().asSortedList(), result.getOptions().asSortedList());
+
+		result.getOptions().addUriPath("1");
+		assertEquals("rd/4711/3/0/1", result.getOptions().getUriPathString());
+		assertArrayEquals("1".getBytes(CoAP.UTF8_CHARSET), result.getOptions().getUriPathValues().get(4));
+	}
+
+	@Test public void testCopiedUriPathIsDecodedLazily() {
+		Request request = new Request(Code.GET);
+		request.setMID(expectedMid);
+		request.setToken(new byte[] { 1, 2 });
+		request.getOptions().setUriPath("rd/4711");
+
+		Request result = (Request) parser.parseMessage(serializer.serializeRequest(request));
+		List<byte[]> values = result.getOptions().getUriPathValues();
+		OptionSet copy = new OptionSet(result.getOptions());
+		// copying neither decodes the origin's values nor shares the list
+		assertSame(values, result.getOptions().getUriPathValues());
+		assertNotSame(values, copy.getUriPathValues());
+		assertEquals("rd/4711", copy.getUriPathString());
+		copy.addUriPath("1");
+		assertEquals("rd/4711", result.getOptions().getUriPathString());
+	}
+
+	@Test public void testParseMessageFromByteRange() {
+		Request request = new Request(Code.PUT);
+		request.setType(Type.CON);
+		request.setMID(expectedMid);
+		request.setToken(new byte[] { 1, 2, 3 });
+		request.getOptions().setUriPath("some/resource").setContentFormat(0);
+		request.setPayload("payload");
+		byte[] bytes = serializer.serializeRequest(request).getBytes();
+
+		// GIVEN an encoded request embedded in a larger array
+		byte[] data = new byte[bytes.length + 10];
+		Arrays.fill(data, (byte) 0xFF);
+		System.arraycopy(bytes, 0, data, 5, bytes.length);
+
+		// WHEN parsing the range containing the request
+		Request result = (Request) parser.parseMessage(data, 5, bytes.length);
+
+		// THEN the surrounding bytes are ignored
+		assertEquals(request.getMID(), result.getMID());
+		assertArrayEquals(request.getToken(), result.getToken());
+		assertEquals(request.getOptions().asSortedList(), result.getOptions().asSortedList());
+		assertEquals("payload", result.getPayloadString());
+	}
+
+	@Test public void testParseMessageFromDirectBuffer() {
+		Response response = new Response(ResponseCode.CONTENT);
+		response.setType(Type.NON);
+		response.setMID(expectedMid);
+		response.setToken(new byte[] { 9, 8, 7, 6 });
+		response.getOptions().setMaxAge(30).addOption(new Option(19205, "Arbitrary"));
+		response.setPayload("payload");
+		byte[] bytes = serializer.serializeResponse(response).getBytes();
+
+		ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length + 4);
+		buffer.position(2);
+		buffer.put(bytes);
+		buffer.flip();
+		buffer.position(2);
+
+		Response result = (Response) parser.parseMessage(buffer);
+		assertEquals(response.getMID(), result.getMID());
+		assertArrayEquals(response.getToken(), result.getToken());
+		assertEquals(response.getOptions().asSortedList(), result.getOptions().asSortedList());
+		assertEquals("payload", result.getPayloadString());
+		// the buffer's position is not changed by parsing
+		assertEquals(2, buffer.position());
+	}
+
 	@Test public void testParseMessageDetectsIllegalCodeClass() {
 		// GIVEN a message with a class code of 1, i.e. not a request
 		byte[] malformedRequest = new byte[] { 0b01000000, // ver 1, CON, token length: 0
@@ -12,6 +12,8 @@
  * 
  * Contributors:
  *    Bosch Software Innovations - initial creation
+ *    Bosch Software Innovations - add test for re-using the serialization buffer
+ *    Bosch Software Innovations - add tests for notification templates
  ******************************************************************************/
 package org.eclipse.californium.core.network.serialization;
 
@@ -19,9 +21,15 @@ import static org.hamcrest.CoreMatchers.*;
 import static org.junit.Assert.*;
 
 import java.net.InetAddress;
+import java.util.Arrays;
 
 import org.eclipse.californium.category.Small;
+import org.eclipse.californium.core.coap.CoAP.ResponseCode;
+import org.eclipse.californium.core.coap.CoAP.Type;
+import org.eclipse.californium.core.coap.MediaTypeRegistry;
+import org.eclipse.californium.core.coap.Option;
 import org.eclipse.californium.core.coap.Request;
+import org.eclipse.californium.core.coap.Response;
 import org.eclipse.californium.elements.RawData;
 import org.junit.Test;
 import org.junit.experimental.categories.Category;
@@ -92,4 +100,132 @@ public class DataSerializerTest {
 		assertNotNull(req.getBytes());
 		assertThat(raw.getBytes(), is(req.getBytes()));
 	}
+
+	/**
+	 * Verifies that messages are encoded into right-sized arrays regardless of
+	 * the size of previously encoded messages.
+	 */
+	@Test
+	public void testSerializationBufferIsReusedForSubsequentMessages() {
+
+		// GIVEN a small and a large CoAP request
+		Request small = Request.newGet();
+		small.setToken(new byte[]{0x01, 0x02});
+		small.getOptions().setUriPath("small");
+		byte[] expected = serializer.getByteArray(small);
+
+		Request large = Request.newPost();
+		large.setToken(new byte[]{0x03});
+		byte[] optionValue = new byte[300];
+		Arrays.fill(optionValue, (byte) 'a');
+		large.getOptions().addOption(new Option(65000, optionValue));
+		large.setPayload(new byte[5000]);
+
+		// WHEN serializing the large request before the small one
+		byte[] largeBytes = serializer.getByteArray(large);
+		byte[] smallBytes = serializer.getByteArray(small);
+
+		// THEN the large request contains all bytes and the small request's
+		// encoding is not affected by the large one
+		assertTrue(largeBytes.length > 5300);
+		assertArrayEquals(expected, smallBytes);
+	}
+
+	/**
+	 * Verifies that a notification serialized from a template is encoded
+	 * like a completely serialized notification.
+	 */
+	@Test
+	public void testNotificationTemplateProducesSameEncoding() {
+
+		// GIVEN a representation with options preceding and following the observe option
+		Response representation = new Response(ResponseCode.CONTENT);
+		representation.getOptions().addETag(new byte[]{0x01, 0x02});
+		representation.getOptions().setContentFormat(MediaTypeRegistry.APPLICATION_JSON);
+		representation.getOptions().setMaxAge(30);
+		representation.setPayload("{\"temp\": 21.5}");
+		NotificationTemplate template = NotificationTemplate.create(representation);
+
+		for (int observe : new int[]{0, 1, 300, 70000}) {
+			// WHEN serializing a notification with and without the template
+			Response expected = newNotification(representation, observe);
+			Response notification = newNotification(representation, observe);
+			notification.setNotificationTemplate(template);
+
+			// THEN both encodings are the same
+			assertArrayEquals(serializer.serializeResponse(expected).getBytes(),
+					serializer.serializeResponse(notification).getBytes());
+		}
+	}
+
+	/**
+	 * Verifies that a template is used for representations without options
+	 * and payload.
+	 */
+	@Test
+	public void testNotificationTemplateWithoutOptions() {
+
+		Response representation = new Response(ResponseCode.CONTENT);
+		NotificationTemplate template = NotificationTemplate.create(representation);
+
+		Response expected = newNotification(representation, 5);
+		Response notification = newNotification(representation, 5);
+		notification.setNotificationTemplate(template);
+
+		assertArrayEquals(serializer.serializeResponse(expected).getBytes(),
+				serializer.serializeResponse(notification).getBytes());
+	}
+
+	/**
+	 * Verifies that setting the payload discards the template.
+	 */
+	@Test
+	public void testSetPayloadDiscardsNotificationTemplate() {
+
+		Response representation = new Response(ResponseCode.CONTENT);
+		representation.setPayload("old");
+		Response notification = newNotification(representation, 5);
+		notification.setNotificationTemplate(NotificationTemplate.create(representation));
+
+		notification.setPayload("new");
+
+		assertNull(notification.getNotificationTemplate());
+	}
+
+	/**
+	 * Verifies that changing the options apart from the Observe option
+	 * discards the template.
+	 */
+	@Test
+	public void testChangingOptionsDiscardsNotificationTemplate() {
+
+		Response representation = new Response(ResponseCode.CONTENT);
+		representation.getOptions().setMaxAge(30);
+		NotificationTemplate template = NotificationTemplate.create(representation);
+		Response notification = newNotification(representation, 5);
+		notification.setNotificationTemplate(template);
+
+		notification.getOptions().setObserve(6);
+		assertSame(template, notification.getNotificationTemplate());
+
+		notification.getOptions().setMaxAge(60);
+		assertNull(notification.getNotificationTemplate());
+		Response expected = newNotification(representation, 6);
+		expected.getOptions().setMaxAge(60);
+		assertArrayEquals(serializer.serializeResponse(expected).getBytes(),
+				serializer.serializeResponse(notification).getBytes());
+	}
+
+	private static Response newNotification(final Response representation, final int observe) {
+		Response notification = new Response(representation.getCode());
+		notification.setType(Type.NON);
+		notification.setMID(4711);
+		notification.setToken(new byte[]{0x0A, 0x0B, 0x0C});
+		notification.setDestination(InetAddress.getLoopbackAddress());
+		notification.setDestinationPort(5683);
+		notification.setOptions(representation.getOptions());
+		notification.getOptions().setObserve(observe);
+		notification.setPayload(representation.getPayload());
+		return notification;
+	}
 }
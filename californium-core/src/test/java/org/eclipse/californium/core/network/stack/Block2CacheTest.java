@@ -0,0 +1,201 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Bosch Software Innovations GmbH and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *    Bosch Software Innovations - initial creation
+ ******************************************************************************/
+package org.eclipse.californium.core.network.stack;
+
+import static org.eclipse.californium.TestTools.generateRandomPayload;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import java.net.InetAddress;
+import java.util.Arrays;
+
+import org.eclipse.californium.category.Small;
+import org.eclipse.californium.core.coap.CoAP.ResponseCode;
+import org.eclipse.californium.core.coap.Request;
+import org.eclipse.californium.core.coap.Response;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/**
+ * Verifies behavior of the {@code Block2Cache}.
+ *
+ */
+@Category(Small.class)
+public class Block2CacheTest {
+
+	private static final byte[] ETAG_1 = new byte[] { 0x01 };
+	private static final byte[] ETAG_2 = new byte[] { 0x02 };
+	private static final int SZX_32 = 1;
+	private static final int PEER_PORT = 12000;
+
+	/**
+	 * Verifies that all requests for a body share the same block payloads.
+	 */
+	@Test
+	public void testBlocksAreShared() {
+
+		Block2Cache cache = new Block2Cache(1000, 10000);
+		String body = generateRandomPayload(100);
+		Block2Cache.Entry entry = cache.put(newGet("big"), newContent(body, ETAG_1), SZX_32);
+
+		assertThat(entry.getBlockCount(), is(4));
+		assertThat(cache.size(), is(100));
+		Block2Cache.Entry cached = cache.get(newGet("big"), SZX_32);
+		assertThat(cached, is(sameInstance(entry)));
+		assertThat(cache.put(newGet("big"), newContent(body, ETAG_1), SZX_32), is(sameInstance(entry)));
+
+		Response block = cached.createBlock(3);
+		assertThat(block.getPayload(), is(sameInstance(entry.createBlock(3).getPayload())));
+		assertThat(block.getPayloadString(), is(body.substring(96)));
+		assertThat(block.getOptions().getBlock2().isM(), is(false));
+		assertThat(block.getOptions().getSize2(), is(100));
+		assertThat(block.getOptions().containsETag(ETAG_1), is(true));
+		assertThat(cached.createBlock(1).getOptions().getBlock2().isM(), is(true));
+	}
+
+	/**
+	 * Verifies that a body with a new ETag becomes the current body, while
+	 * the previous body is still available by its ETag.
+	 */
+	@Test
+	public void testNewETagBecomesCurrentBody() {
+
+		Block2Cache cache = new Block2Cache(1000, 10000);
+		Block2Cache.Entry previous = cache.put(newGet("big"), newContent(generateRandomPayload(100), ETAG_1),
+				SZX_32);
+		Block2Cache.Entry entry = cache.put(newGet("big"), newContent(generateRandomPayload(50), ETAG_2), SZX_32);
+
+		assertThat(cache.get(newGet("big"), SZX_32), is(sameInstance(entry)));
+		Request request = newGet("big");
+		request.getOptions().addETag(ETAG_1);
+		assertThat(cache.get(request, SZX_32), is(sameInstance(previous)));
+		assertThat(cache.size(), is(150));
+	}
+
+	/**
+	 * Verifies that a cached body is only returned to peers, which have
+	 * fetched the first block.
+	 */
+	@Test
+	public void testGetIsRestrictedToPeersFetchingFirstBlock() {
+
+		Block2Cache cache = new Block2Cache(1000, 10000);
+		Block2Cache.Entry entry = cache.put(newGet("big"), newContent(generateRandomPayload(100), ETAG_1),
+				SZX_32);
+
+		Request other = newGet("big");
+		other.setSourcePort(PEER_PORT + 1);
+		assertThat(cache.get(other, SZX_32), is(nullValue()));
+
+		assertThat(cache.put(other, newContent(generateRandomPayload(100), ETAG_1), SZX_32), is(sameInstance(entry)));
+		assertThat(cache.get(other, SZX_32), is(sameInstance(entry)));
+	}
+
+	/**
+	 * Verifies that a cached body is not returned for a request containing
+	 * other ETags or another block size.
+	 */
+	@Test
+	public void testGetMatchesETagAndBlockSize() {
+
+		Block2Cache cache = new Block2Cache(1000, 10000);
+		cache.put(newGet("big"), newContent(generateRandomPayload(100), ETAG_1), SZX_32);
+
+		Request request = newGet("big");
+		request.getOptions().addETag(ETAG_2);
+		assertThat(cache.get(request, SZX_32), is(nullValue()));
+		request.getOptions().addETag(ETAG_1);
+		assertThat(cache.get(request, SZX_32) != null, is(true));
+		assertThat(cache.get(newGet("big"), SZX_32 + 1), is(nullValue()));
+		assertThat(cache.get(newGet("other"), SZX_32), is(nullValue()));
+	}
+
+	/**
+	 * Verifies that the least recently used bodies are evicted when the
+	 * capacity is exceeded.
+	 */
+	@Test
+	public void testEvictsLeastRecentlyUsedBodies() {
+
+		Block2Cache cache = new Block2Cache(250, 10000);
+		cache.put(newGet("a"), newContent(generateRandomPayload(100), ETAG_1), SZX_32);
+		cache.put(newGet("b"), newContent(generateRandomPayload(100), ETAG_1), SZX_32);
+		cache.get(newGet("a"), SZX_32);
+		cache.put(newGet("c"), newContent(generateRandomPayload(100), ETAG_1), SZX_32);
+
+		assertThat(cache.get(newGet("b"), SZX_32), is(nullValue()));
+		assertThat(cache.get(newGet("a"), SZX_32) != null, is(true));
+		assertThat(cache.get(newGet("c"), SZX_32) != null, is(true));
+		assertThat(cache.size(), is(200));
+
+	}
+
+	/**
+	 * Verifies that a body exceeding the capacity is not added to the cache.
+	 */
+	@Test
+	public void testPutRejectsBodyExceedingCapacity() {
+
+		Block2Cache cache = new Block2Cache(250, 10000);
+		cache.put(newGet("a"), newContent(generateRandomPayload(100), ETAG_1), SZX_32);
+
+		assertThat(cache.put(newGet("b"), newContent(generateRandomPayload(300), ETAG_1), SZX_32), is(nullValue()));
+		assertThat(cache.get(newGet("b"), SZX_32), is(nullValue()));
+		assertThat(cache.get(newGet("a"), SZX_32) != null, is(true));
+		assertThat(cache.size(), is(100));
+	}
+
+	/**
+	 * Verifies that only successful responses to GET requests with a single
+	 * ETag are cacheable.
+	 */
+	@Test
+	public void testIsCacheable() {
+
+		Response response = newContent(generateRandomPayload(100), ETAG_1);
+		assertThat(Block2Cache.isCacheable(newGet("big"), response), is(true));
+		assertThat(Block2Cache.isCacheable(Request.newPost(), response), is(false));
+
+		response.getOptions().addETag(ETAG_2);
+		assertThat(Block2Cache.isCacheable(newGet("big"), response), is(false));
+
+		response = newContent(generateRandomPayload(100), ETAG_1);
+		response.getOptions().setObserve(1);
+		assertThat(Block2Cache.isCacheable(newGet("big"), response), is(false));
+
+		response = new Response(ResponseCode.NOT_FOUND);
+		response.getOptions().addETag(ETAG_1);
+		response.setPayload("not found");
+		assertThat(Block2Cache.isCacheable(newGet("big"), response), is(false));
+	}
+
+	private static Request newGet(final String path) {
+		Request request = Request.newGet();
+		request.getOptions().setUriPath(path);
+		request.setSource(InetAddress.getLoopbackAddress());
+		request.setSourcePort(PEER_PORT);
+		return request;
+	}
+
+	private static Response newContent(final String body, final byte[] etag) {
+		Response response = new Response(ResponseCode.CONTENT);
+		response.getOptions().addETag(Arrays.copyOf(etag, etag.length));
+		response.setPayload(body);
+		return response;
+	}
+}
@@ -0,0 +1,98 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Bosch Software Innovations GmbH and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *    Bosch Software Innovations - initial creation
+ ******************************************************************************/
+package org.eclipse.californium.core.network.stack;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.eclipse.californium.category.Small;
+import org.eclipse.californium.core.coap.MediaTypeRegistry;
+import org.eclipse.californium.core.coap.Request;
+import org.eclipse.californium.core.network.Exchange;
+import org.eclipse.californium.core.network.Exchange.Origin;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/**
+ * Verifies behavior of the {@code BlockwiseMemoryBudget}.
+ *
+ */
+@Category(Small.class)
+public class BlockwiseMemoryBudgetTest {
+
+	/**
+	 * Verifies that buffers are not reserved once the capacity is exhausted.
+	 */
+	@Test
+	public void testReserveFailsIfCapacityIsExhausted() {
+
+		BlockwiseMemoryBudget budget = new BlockwiseMemoryBudget(1000);
+		assertThat(budget.reserve(600), is(true));
+		assertThat(budget.reserve(600), is(false));
+		assertThat(budget.reserve(400), is(true));
+		assertThat(budget.getReservedBytes(), is(1000L));
+		assertThat(budget.getActiveTransfers(), is(2));
+
+		budget.release(600);
+		assertThat(budget.reserve(600), is(true));
+		assertThat(budget.exceedsCapacity(1001), is(true));
+		assertThat(budget.exceedsCapacity(1000), is(false));
+	}
+
+	/**
+	 * Verifies that an unlimited budget still counts the transfers and bytes.
+	 */
+	@Test
+	public void testUnlimitedBudgetCountsTransfers() {
+
+		BlockwiseMemoryBudget budget = new BlockwiseMemoryBudget(0);
+		assertThat(budget.reserve(Integer.MAX_VALUE), is(true));
+		assertThat(budget.reserve(100), is(true));
+		assertThat(budget.getReservedBytes(), is(Integer.MAX_VALUE + 100L));
+		assertThat(budget.getActiveTransfers(), is(2));
+		assertThat(budget.exceedsCapacity(Integer.MAX_VALUE), is(false));
+	}
+
+	/**
+	 * Verifies that the buffer of a status is released once, when the status
+	 * is replaced and when the exchange completes.
+	 */
+	@Test
+	public void testExchangeReleasesBuffers() {
+
+		BlockwiseMemoryBudget budget = new BlockwiseMemoryBudget(1000);
+		Exchange exchange = new Exchange(Request.newPost(), Origin.REMOTE);
+
+		assertThat(budget.reserve(500), is(true));
+		BlockwiseStatus first = new BlockwiseStatus(500, MediaTypeRegistry.UNDEFINED, budget);
+		exchange.setRequestBlockStatus(first);
+		exchange.setRequestBlockStatus(first);
+		assertThat(budget.getReservedBytes(), is(500L));
+
+		assertThat(budget.reserve(300), is(true));
+		exchange.setRequestBlockStatus(new BlockwiseStatus(300, MediaTypeRegistry.UNDEFINED, budget));
+		assertThat(budget.getReservedBytes(), is(300L));
+		assertThat(budget.getActiveTransfers(), is(1));
+
+		assertThat(budget.reserve(200), is(true));
+		exchange.setResponseBlockStatus(new BlockwiseStatus(200, MediaTypeRegistry.UNDEFINED, budget));
+		exchange.setComplete();
+		exchange.setRequestBlockStatus(null);
+		first.releaseBuffer();
+		assertThat(budget.getReservedBytes(), is(0L));
+		assertThat(budget.getActiveTransfers(), is(0));
+	}
+}
@@ -0,0 +1,129 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Bosch Software Innovations GmbH and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *    Bosch Software Innovations - initial creation
+ ******************************************************************************/
+package org.eclipse.californium.core.observe;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.List;
+
+import org.eclipse.californium.category.Small;
+import org.eclipse.californium.core.coap.CoAP.Type;
+import org.eclipse.californium.core.coap.Request;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Verifies behavior of the {@code FileObserveRelationStore}.
+ *
+ */
+@Category(Small.class)
+public class FileObserveRelationStoreTest {
+
+	private static final InetSocketAddress PEER = new InetSocketAddress(InetAddress.getLoopbackAddress(), 5683);
+	private static final InetSocketAddress LOCAL = new InetSocketAddress(InetAddress.getLoopbackAddress(), 5684);
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * Verifies that the relations added and not removed are restored.
+	 */
+	@Test
+	public void testRestoresAddedRelations() throws Exception {
+
+		File file = new File(folder.getRoot(), "relations");
+		FileObserveRelationStore store = new FileObserveRelationStore(file);
+		assertThat(store.restore().isEmpty(), is(true));
+		store.add(newRecord(new byte[] { 0x01 }, "a", 1));
+		store.add(newRecord(new byte[] { 0x02 }, "b", 2));
+		store.add(newRecord(new byte[] { 0x01 }, "a", 7));
+		store.remove(PEER, new byte[] { 0x02 });
+		store.close();
+
+		List<ObserveRelationRecord> records = new FileObserveRelationStore(file).restore();
+		assertThat(records.size(), is(1));
+		ObserveRelationRecord record = records.get(0);
+		assertThat(record.getPeer(), is(PEER));
+		assertThat(record.getLocalAddress(), is(LOCAL));
+		assertThat(record.getType(), is(Type.CON));
+		assertThat(record.getToken(), is(new byte[] { 0x01 }));
+		assertThat(record.getObserveNumber(), is(7));
+
+		Request request = record.createRequest();
+		assertThat(request.getOptions().getUriPathString(), is("a"));
+		assertThat(request.getOptions().getObserve(), is(0));
+		assertThat(request.getSourcePort(), is(PEER.getPort()));
+		assertThat(request.isAcknowledged(), is(true));
+	}
+
+	/**
+	 * Verifies that a partially written record is ignored and that the file is
+	 * compacted when the relations are restored.
+	 */
+	@Test
+	public void testIgnoresPartialRecordAndCompacts() throws Exception {
+
+		File file = new File(folder.getRoot(), "relations");
+		FileObserveRelationStore store = new FileObserveRelationStore(file);
+		store.add(newRecord(new byte[] { 0x01 }, "a", 1));
+		store.add(newRecord(new byte[] { 0x02 }, "b", 2));
+		store.remove(PEER, new byte[] { 0x02 });
+		store.close();
+		long length = file.length();
+		FileOutputStream out = new FileOutputStream(file, true);
+		out.write(new byte[] { 1, 4, 127 });
+		out.close();
+
+		assertThat(new FileObserveRelationStore(file).restore().size(), is(1));
+		assertThat(file.length() < length, is(true));
+
+		// file still readable after compaction
+		store = new FileObserveRelationStore(file);
+		assertThat(store.restore().size(), is(1));
+		store.add(newRecord(new byte[] { 0x03 }, "c", 3));
+		store.close();
+		assertThat(new FileObserveRelationStore(file).restore().size(), is(2));
+	}
+
+	/**
+	 * Verifies that a file of an unknown version is ignored.
+	 */
+	@Test
+	public void testIgnoresUnknownVersion() throws Exception {
+
+		File file = new File(folder.getRoot(), "relations");
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		raf.write(new byte[] { 99, 1, 2, 3 });
+		raf.close();
+
+		assertThat(new FileObserveRelationStore(file).restore().isEmpty(), is(true));
+	}
+
+	private static ObserveRelationRecord newRecord(final byte[] token, final String path, final int observe) {
+		Request request = Request.newGet();
+		request.getOptions().setUriPath(path);
+		request.getOptions().setObserve(0);
+		return new ObserveRelationRecord(PEER, LOCAL, Type.CON, token, request.getOptions().asSortedList(), observe);
+	}
+}
@@ -0,0 +1,193 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Bosch Software Innovations GmbH and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *    Bosch Software Innovations - initial creation
+ ******************************************************************************/
+package org.eclipse.californium.core.observe;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.californium.category.Small;
+import org.eclipse.californium.core.CoapResource;
+import org.eclipse.californium.core.CoapServer;
+import org.eclipse.californium.core.coap.CoAP.ResponseCode;
+import org.eclipse.californium.core.coap.Request;
+import org.eclipse.californium.core.coap.Response;
+import org.eclipse.californium.core.network.CoapEndpoint;
+import org.eclipse.californium.core.network.Exchange;
+import org.eclipse.californium.core.network.Exchange.Origin;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/**
+ * Verifies behavior of the {@code NotificationPolicy} applied by a
+ * {@code CoapResource}.
+ *
+ */
+@Category(Small.class)
+public class NotificationPolicyTest {
+
+	private ScheduledExecutorService scheduler;
+
+	@Before
+	public void setUp() {
+		scheduler = Executors.newSingleThreadScheduledExecutor();
+	}
+
+	@After
+	public void tearDown() {
+		scheduler.shutdownNow();
+	}
+
+	/**
+	 * Verifies that changes within the minimum interval are coalesced into a
+	 * single deferred notification round.
+	 */
+	@Test
+	public void testChangesWithinMinIntervalAreCoalesced() throws Exception {
+
+		NotificationPolicy policy = new NotificationPolicy(200);
+		CountingResource resource = new CountingResource(2);
+		resource.scheduler = scheduler;
+		resource.setNotificationPolicy(policy);
+
+		resource.changed();
+		assertThat(resource.rounds.get(), is(1));
+
+		resource.changed();
+		resource.changed();
+		resource.changed();
+		assertThat(resource.rounds.get(), is(1));
+		assertThat(policy.getCoalescedCount(), is(2L));
+
+		assertTrue(resource.latch.await(2, TimeUnit.SECONDS));
+		assertThat(resource.rounds.get(), is(2));
+		assertThat(resource.lastFilter, is(nullValue()));
+	}
+
+	/**
+	 * Verifies that every change starts a round without a minimum interval.
+	 */
+	@Test
+	public void testChangesWithoutMinIntervalAreNotCoalesced() {
+
+		NotificationPolicy policy = new NotificationPolicy(0, 5, 1000);
+		CountingResource resource = new CountingResource(3);
+		resource.setNotificationPolicy(policy);
+
+		resource.changed();
+		resource.changed();
+		resource.changed();
+		assertThat(resource.rounds.get(), is(3));
+		assertThat(policy.getCoalescedCount(), is(0L));
+	}
+
+	/**
+	 * Verifies that the policy paces the CON notifications of a relation and
+	 * counts superseded notifications.
+	 */
+	@Test
+	public void testRelationAppliesPolicy() {
+
+		NotificationPolicy policy = new NotificationPolicy(0, 3, 60000);
+		CoapResource resource = new CoapResource("test");
+		Request request = Request.newGet();
+		Exchange exchange = new Exchange(request, Origin.REMOTE);
+		exchange.setRequest(request);
+		ObserveRelation relation = new ObserveRelation(new ObservingEndpoint(new InetSocketAddress(0)), resource, exchange);
+		resource.addObserveRelation(relation);
+		resource.setNotificationPolicy(policy);
+		assertThat(relation.getNotificationPolicy(), is(policy));
+
+		assertThat(relation.check(), is(false));
+		assertThat(relation.check(), is(true));
+		assertThat(relation.check(), is(false));
+		assertThat(relation.check(), is(false));
+		assertThat(relation.check(), is(true));
+
+		relation.setNextControlNotification(new Response(ResponseCode.CONTENT));
+		relation.setNextControlNotification(new Response(ResponseCode.CONTENT));
+		relation.setNextControlNotification(null);
+		assertThat(policy.getRejectedCount(), is(1L));
+	}
+
+	/**
+	 * Verifies that a resource of a server defers rounds on the server's
+	 * executor and that stopping the server cancels a deferred round.
+	 */
+	@Test
+	public void testStoppingServerCancelsDeferredRound() throws Exception {
+
+		CoapServer server = new CoapServer();
+		server.addEndpoint(new CoapEndpoint(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0)));
+		CountingResource resource = new CountingResource(2);
+		resource.setNotificationPolicy(new NotificationPolicy(200));
+		server.add(resource);
+		server.start();
+		try {
+			resource.changed();
+			resource.changed();
+			assertThat(resource.rounds.get(), is(1));
+
+			server.stop();
+			assertThat(resource.latch.await(500, TimeUnit.MILLISECONDS), is(false));
+			assertThat(resource.rounds.get(), is(1));
+		} finally {
+			server.destroy();
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNegativeMinIntervalIsRejected() {
+		new NotificationPolicy(-1);
+	}
+
+	private static class CountingResource extends CoapResource {
+
+		private final AtomicInteger rounds = new AtomicInteger();
+		private final CountDownLatch latch;
+		private volatile ObserveRelationFilter lastFilter;
+		private ScheduledExecutorService scheduler;
+
+		CountingResource(final int expectedRounds) {
+			super("counting");
+			latch = new CountDownLatch(expectedRounds);
+		}
+
+		@Override
+		protected void notifyObserverRelations(final ObserveRelationFilter filter) {
+			lastFilter = filter;
+			rounds.incrementAndGet();
+			latch.countDown();
+		}
+
+		@Override
+		protected ScheduledExecutorService getNotificationScheduler() {
+			return scheduler != null ? scheduler : super.getNotificationScheduler();
+		}
+	}
+}
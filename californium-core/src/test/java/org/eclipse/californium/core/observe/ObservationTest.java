@@ -0,0 +1,158 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Bosch Software Innovations GmbH and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *    Bosch Software Innovations - initial creation
+ ******************************************************************************/
+package org.eclipse.californium.core.observe;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+
+import org.eclipse.californium.category.Small;
+import org.eclipse.californium.core.coap.CoAP.Code;
+import org.eclipse.californium.core.coap.CoAP.Type;
+import org.eclipse.californium.core.coap.Request;
+import org.eclipse.californium.core.network.Exchange.KeyToken;
+import org.eclipse.californium.core.network.serialization.UdpDataSerializer;
+import org.eclipse.californium.elements.DtlsCorrelationContext;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/**
+ * Verifies behavior of {@code Observation} and {@code InMemoryObservationStore}.
+ *
+ */
+@Category(Small.class)
+public class ObservationTest {
+
+	private static final byte[] TOKEN = new byte[] { 0x01, 0x02, 0x03, 0x04 };
+	private static final InetSocketAddress PEER = new InetSocketAddress(InetAddress.getLoopbackAddress(), 5683);
+
+	/**
+	 * Verifies that an observation re-creates the request it has been created
+	 * for after it has been encoded and decoded.
+	 */
+	@Test
+	public void testEncodedObservationCreatesRequest() {
+
+		Observation observation = new Observation(newRequest(), "handler", 10);
+		Observation decoded = Observation.fromByteArray(observation.toByteArray());
+
+		assertThat(decoded, is(observation));
+		assertThat(decoded.getKey(), is(KeyToken.fromValues(TOKEN, PEER.getAddress().getAddress(), PEER.getPort())));
+		assertThat(decoded.getObserveNumber(), is(10));
+		assertThat(decoded.getPeer(), is(PEER));
+
+		Request request = decoded.createRequest();
+		assertThat(request.getMID(), is(4711));
+		assertThat(request.getType(), is(Type.NON));
+		assertThat(request.getToken(), is(TOKEN));
+		assertThat(request.getOptions().getUriPathString(), is("sensors/temp"));
+		assertThat(request.getOptions().getObserve(), is(0));
+		assertThat(request.getDestination(), is(PEER.getAddress()));
+		assertThat(request.getDestinationPort(), is(PEER.getPort()));
+		assertThat(request.getNotificationHandlerId(), is("handler"));
+	}
+
+	/**
+	 * Verifies that the correlation context of the request is kept when the
+	 * observation is encoded and decoded.
+	 */
+	@Test
+	public void testEncodedObservationKeepsCorrelationContext() {
+
+		DtlsCorrelationContext context = new DtlsCorrelationContext("010203", "1", "TLS_PSK");
+		Observation observation = new Observation(newRequest(), context, "handler", 10);
+		Observation decoded = Observation.fromByteArray(observation.toByteArray());
+
+		assertThat(decoded.getCorrelationContext().get(DtlsCorrelationContext.KEY_SESSION_ID), is("010203"));
+		assertThat(decoded.getCorrelationContext().entrySet(), is(context.entrySet()));
+		assertThat(Observation.fromByteArray(new Observation(newRequest(), "handler", 10).toByteArray())
+				.getCorrelationContext(), is(nullValue()));
+	}
+
+	/**
+	 * Verifies that the requests created by an observation are independent of
+	 * each other and that the bytes of a serialized request are reused.
+	 */
+	@Test
+	public void testCreatedRequestsAreIndependent() {
+
+		// the bytes of the request as sent, marked by another MID
+		Request sent = newRequest();
+		sent.setMID(4712);
+		Request original = newRequest();
+		original.setBytes(new UdpDataSerializer().getByteArray(sent));
+		Observation observation = new Observation(original, "handler", 10);
+
+		Request first = observation.createRequest();
+		assertThat(first.getMID(), is(4712));
+		first.getOptions().setUriPath("other");
+		Request second = observation.createRequest();
+		assertThat(second.getOptions().getUriPathString(), is("sensors/temp"));
+		assertThat(second.getToken(), is(TOKEN));
+		assertThat(second.getMID(), is(4712));
+	}
+
+	/**
+	 * Verifies that only newer observe numbers are accepted, taking the
+	 * wrap around of the numbers into account.
+	 */
+	@Test
+	public void testUpdateObserveNumberDiscardsReorderedNotifications() {
+
+		Observation observation = new Observation(newRequest(), "handler", 10);
+		assertThat(observation.updateObserveNumber(11), is(true));
+		assertThat(observation.updateObserveNumber(11), is(false));
+		assertThat(observation.updateObserveNumber(9), is(false));
+		assertThat(observation.updateObserveNumber((1 << 24) - 1), is(false));
+
+		observation = new Observation(newRequest(), "handler", (1 << 24) - 1);
+		assertThat(observation.updateObserveNumber(1), is(true));
+		assertThat(observation.getObserveNumber(), is(1));
+	}
+
+	/**
+	 * Verifies that the store finds observations by the token and address of a
+	 * notification.
+	 */
+	@Test
+	public void testStoreFindsObservationByKey() {
+
+		InMemoryObservationStore store = new InMemoryObservationStore();
+		Observation observation = new Observation(newRequest(), "handler", 10);
+		store.add(observation);
+
+		KeyToken key = KeyToken.fromValues(TOKEN, PEER.getAddress().getAddress(), PEER.getPort());
+		KeyToken otherPort = KeyToken.fromValues(TOKEN, PEER.getAddress().getAddress(), PEER.getPort() + 1);
+		assertThat(store.get(key), is(observation));
+		assertThat(store.get(otherPort), is(nullValue()));
+		assertThat(store.remove(key), is(observation));
+		assertThat(store.size(), is(0));
+	}
+
+	private static Request newRequest() {
+		Request request = new Request(Code.GET, Type.NON);
+		request.setMID(4711);
+		request.setToken(TOKEN);
+		request.getOptions().setUriPath("sensors/temp");
+		request.setObserve();
+		request.setDestination(PEER.getAddress());
+		request.setDestinationPort(PEER.getPort());
+		return request;
+	}
+}
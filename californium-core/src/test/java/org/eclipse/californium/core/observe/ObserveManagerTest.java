@@ -0,0 +1,139 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Bosch Software Innovations GmbH and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *    Bosch Software Innovations - initial creation
+ *    Bosch Software Innovations - cancel relations replaced for other resource
+ ******************************************************************************/
+package org.eclipse.californium.core.observe;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+
+import org.eclipse.californium.category.Small;
+import org.eclipse.californium.core.CoapResource;
+import org.eclipse.californium.core.coap.Request;
+import org.eclipse.californium.core.network.Exchange;
+import org.eclipse.californium.core.network.Exchange.Origin;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/**
+ * Verifies behavior of the {@code ObserveManager} and the relation indexes of
+ * the {@code ObservingEndpoint} and the {@code ObserveRelationContainer}.
+ *
+ */
+@Category(Small.class)
+public class ObserveManagerTest {
+
+	private static final InetSocketAddress PEER_1 = new InetSocketAddress(InetAddress.getLoopbackAddress(), 5683);
+	private static final InetSocketAddress PEER_2 = new InetSocketAddress(InetAddress.getLoopbackAddress(), 5684);
+
+	/**
+	 * Verifies that relations are found by peer and token.
+	 */
+	@Test
+	public void testGetRelationByPeerAndToken() {
+
+		ObserveManager manager = new ObserveManager();
+		CoapResource resource = new CoapResource("test");
+		ObserveRelation relation1 = establish(manager, resource, PEER_1, new byte[] { 0x01 });
+		ObserveRelation relation2 = establish(manager, resource, PEER_2, new byte[] { 0x01 });
+
+		assertThat(manager.getRelation(PEER_1, new byte[] { 0x01 }), is(sameInstance(relation1)));
+		assertThat(manager.getRelation(PEER_2, new byte[] { 0x01 }), is(sameInstance(relation2)));
+		assertThat(manager.getRelation(PEER_1, new byte[] { 0x02 }), is(nullValue()));
+		assertThat(resource.getObserverCount(), is(2));
+	}
+
+	/**
+	 * Verifies that canceling a replaced relation keeps the newer relation
+	 * with the same token.
+	 */
+	@Test
+	public void testReplacedRelationIsCanceled() {
+
+		ObserveManager manager = new ObserveManager();
+		CoapResource resource = new CoapResource("test");
+		establish(manager, resource, PEER_1, new byte[] { 0x01 });
+		ObserveRelation newer = establish(manager, resource, PEER_1, new byte[] { 0x01 });
+
+		assertThat(manager.getRelation(PEER_1, new byte[] { 0x01 }), is(sameInstance(newer)));
+		assertThat(manager.getObservingEndpoint(PEER_1).getObserveRelationCount(), is(1));
+		assertThat(resource.getObserverCount(), is(1));
+
+		newer.cancel();
+		assertThat(manager.getRelation(PEER_1, new byte[] { 0x01 }), is(nullValue()));
+		assertThat(resource.getObserverCount(), is(0));
+	}
+
+	/**
+	 * Verifies that a relation replaced by a relation with the same token to
+	 * another resource is canceled.
+	 */
+	@Test
+	public void testRelationReplacedForOtherResourceIsCanceled() {
+
+		ObserveManager manager = new ObserveManager();
+		CoapResource resource1 = new CoapResource("test1");
+		CoapResource resource2 = new CoapResource("test2");
+		ObserveRelation older = establish(manager, resource1, PEER_1, new byte[] { 0x01 });
+		ObserveRelation newer = establish(manager, resource2, PEER_1, new byte[] { 0x01 });
+
+		assertThat(older.isEstablished(), is(false));
+		assertThat(resource1.getObserverCount(), is(0));
+		assertThat(manager.getRelation(PEER_1, new byte[] { 0x01 }), is(sameInstance(newer)));
+
+		manager.cancelAll(PEER_1);
+		assertThat(resource2.getObserverCount(), is(0));
+	}
+
+	/**
+	 * Verifies that all relations of a peer are canceled at once.
+	 */
+	@Test
+	public void testCancelAllForPeer() {
+
+		ObserveManager manager = new ObserveManager();
+		CoapResource resource = new CoapResource("test");
+		establish(manager, resource, PEER_1, new byte[] { 0x01 });
+		establish(manager, resource, PEER_1, new byte[] { 0x02, 0x03 });
+		ObserveRelation other = establish(manager, resource, PEER_2, new byte[] { 0x01 });
+
+		manager.cancelAll(PEER_1);
+
+		assertThat(manager.getObservingEndpoint(PEER_1).getObserveRelationCount(), is(0));
+		assertThat(manager.getRelation(PEER_2, new byte[] { 0x01 }), is(sameInstance(other)));
+		assertThat(resource.getObserverCount(), is(1));
+	}
+
+	private static ObserveRelation establish(final ObserveManager manager, final CoapResource resource,
+			final InetSocketAddress peer, final byte[] token) {
+		Request request = Request.newGet();
+		request.setToken(token);
+		request.setSource(peer.getAddress());
+		request.setSourcePort(peer.getPort());
+		Exchange exchange = new Exchange(request, Origin.REMOTE);
+		exchange.setRequest(request);
+		ObservingEndpoint remote = manager.findObservingEndpoint(peer);
+		ObserveRelation relation = new ObserveRelation(remote, resource, exchange);
+		remote.addObserveRelation(relation);
+		relation.setEstablished(true);
+		resource.addObserveRelation(relation);
+		return relation;
+	}
+}
@@ -0,0 +1,74 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Bosch Software Innovations GmbH and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *    Bosch Software Innovations - initial creation
+ ******************************************************************************/
+package org.eclipse.californium.core.observe;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.eclipse.californium.category.Small;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/**
+ * Verifies behavior of the {@code ObserveNotificationOrderer}.
+ *
+ */
+@Category(Small.class)
+public class ObserveNotificationOrdererTest {
+
+	private static final int MAX = (1 << 24) - 1;
+
+	/**
+	 * Verifies that the number is advanced to newer numbers only.
+	 */
+	@Test
+	public void testAdvanceToNewerNumber() {
+
+		ObserveNotificationOrderer orderer = new ObserveNotificationOrderer();
+		orderer.advanceTo(100);
+		assertThat(orderer.getCurrent(), is(100));
+
+		orderer.advanceTo(50);
+		assertThat(orderer.getCurrent(), is(100));
+		assertThat(orderer.getNextObserveNumber(), is(101));
+	}
+
+	/**
+	 * Verifies that the number is advanced across the 24-bit wrap and not
+	 * set back to a number preceding it.
+	 */
+	@Test
+	public void testAdvanceToAppliesSerialNumberArithmetic() {
+
+		ObserveNotificationOrderer orderer = new ObserveNotificationOrderer();
+		// more than 2^23 ahead of 0 is older
+		orderer.advanceTo(MAX - 10);
+		assertThat(orderer.getCurrent(), is(0));
+		orderer.advanceTo(8000000);
+		orderer.advanceTo(16000000);
+		orderer.advanceTo(MAX - 10);
+		assertThat(orderer.getCurrent(), is(MAX - 10));
+
+		// wrapped numbers are newer
+		orderer.advanceTo(5);
+		assertThat(orderer.getCurrent(), is(5));
+
+		// numbers preceding the wrap are older
+		orderer.advanceTo(MAX - 5);
+		assertThat(orderer.getCurrent(), is(5));
+		assertThat(orderer.getNextObserveNumber(), is(6));
+	}
+}
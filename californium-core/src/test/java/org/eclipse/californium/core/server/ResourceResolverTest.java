@@ -0,0 +1,188 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Bosch Software Innovations GmbH and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *    Bosch Software Innovations - initial creation
+ ******************************************************************************/
+package org.eclipse.californium.core.server;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.californium.category.Small;
+import org.eclipse.californium.core.CoapResource;
+import org.eclipse.californium.core.coap.CoAP;
+import org.eclipse.californium.core.server.resources.Resource;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/**
+ * Verifies behavior of {@code ResourceResolver}.
+ *
+ */
+@Category(Small.class)
+public class ResourceResolverTest {
+
+	private CoapResource root;
+	private CoapResource rd;
+	private CoapResource registration;
+	private CoapResource instance;
+	private ResourceResolver resolver;
+
+	/**
+	 * Sets up a tree of resources similar to a resource directory.
+	 */
+	@Before
+	public void setUp() {
+		root = new CoapResource("");
+		rd = new CoapResource("rd");
+		registration = new CoapResource("{id}");
+		instance = new CoapResource("{instance}");
+		root.add(rd.add(registration.add(new CoapResource("3").add(instance))));
+		resolver = new ResourceResolver(root, true);
+	}
+
+	/**
+	 * Verifies that literal segments take precedence over parameterized
+	 * segments and that parameterized segments match any single segment.
+	 */
+	@Test
+	public void testResolvesLiteralAndParameterizedSegments() {
+
+		CoapResource own = new CoapResource("own");
+		rd.add(own);
+
+		assertThat(resolver.resolve(path()), is(sameInstance((Resource) root)));
+		assertThat(resolver.resolve(path("rd")), is(sameInstance((Resource) rd)));
+		assertThat(resolver.resolve(path("rd", "own")), is(sameInstance((Resource) own)));
+		assertThat(resolver.resolve(path("rd", "4711")), is(sameInstance((Resource) registration)));
+		assertThat(resolver.resolve(path("rd", "4711", "3", "0")), is(sameInstance((Resource) instance)));
+		// backtracks to the parameterized segment
+		assertThat(resolver.resolve(path("rd", "own", "3", "0")), is(sameInstance((Resource) instance)));
+		assertThat(resolver.resolve(path("rd", "4711", "3", "0", "1")), is(nullValue()));
+		assertThat(resolver.resolve(path("other")), is(nullValue()));
+	}
+
+	/**
+	 * Verifies that a wildcard segment matches all remaining segments.
+	 */
+	@Test
+	public void testResolvesWildcardSegment() {
+
+		CoapResource wildcard = new CoapResource("*");
+		instance.add(wildcard);
+
+		assertThat(resolver.resolve(path("rd", "4711", "3", "0", "1")), is(sameInstance((Resource) wildcard)));
+		assertThat(resolver.resolve(path("rd", "4711", "3", "0", "1", "2")), is(sameInstance((Resource) wildcard)));
+		assertThat(resolver.resolve(path("rd", "4711", "3", "0")), is(sameInstance((Resource) instance)));
+	}
+
+	/**
+	 * Verifies that resources added or deleted after the first lookup are
+	 * resolved accordingly.
+	 */
+	@Test
+	public void testRecompilesTrieOnChanges() {
+
+		assertThat(resolver.resolve(path("rd", "own")), is(sameInstance((Resource) registration)));
+
+		CoapResource own = new CoapResource("own");
+		rd.add(own);
+		assertThat(resolver.resolve(path("rd", "own")), is(sameInstance((Resource) own)));
+
+		CoapResource child = new CoapResource("child");
+		own.add(child);
+		assertThat(resolver.resolve(path("rd", "own", "child")), is(sameInstance((Resource) child)));
+
+		own.delete();
+		assertThat(resolver.resolve(path("rd", "own")), is(sameInstance((Resource) registration)));
+		assertThat(resolver.resolve(path("rd", "own", "child")), is(nullValue()));
+		// a deleted resource is no longer observed
+		child.add(new CoapResource("grandchild"));
+		assertThat(resolver.resolve(path("rd", "own", "child")), is(nullValue()));
+	}
+
+	/**
+	 * Verifies that parameterized and wildcard names are matched literally,
+	 * unless enabled.
+	 */
+	@Test
+	public void testMatchesPatternsLiterallyByDefault() {
+
+		ResourceResolver literal = new ResourceResolver(root);
+		CoapResource wildcard = new CoapResource("*");
+		rd.add(wildcard);
+
+		assertThat(literal.resolve(path("rd", "4711")), is(nullValue()));
+		assertThat(literal.resolve(path("rd", "{id}")), is(sameInstance((Resource) registration)));
+		assertThat(literal.resolve(path("rd", "*")), is(sameInstance((Resource) wildcard)));
+		assertThat(literal.resolve(path("rd", "other", "1")), is(nullValue()));
+	}
+
+	/**
+	 * Verifies that renamed and moved resources are resolved by their new
+	 * path and no longer by their previous one.
+	 */
+	@Test
+	public void testUpdatesTrieOnRenamedAndMovedResources() {
+
+		CoapResource own = new CoapResource("own");
+		CoapResource child = new CoapResource("child");
+		rd.add(own.add(child));
+		assertThat(resolver.resolve(path("rd", "own", "child")), is(sameInstance((Resource) child)));
+
+		own.setName("mine");
+		assertThat(resolver.resolve(path("rd", "mine", "child")), is(sameInstance((Resource) child)));
+		assertThat(resolver.resolve(path("rd", "own")), is(sameInstance((Resource) registration)));
+
+		root.add(child);
+		assertThat(resolver.resolve(path("child")), is(sameInstance((Resource) child)));
+		assertThat(resolver.resolve(path("rd", "mine", "child")), is(nullValue()));
+		// the moved resource is still observed
+		CoapResource grandchild = new CoapResource("grandchild");
+		child.add(grandchild);
+		assertThat(resolver.resolve(path("child", "grandchild")), is(sameInstance((Resource) grandchild)));
+	}
+
+	/**
+	 * Verifies that segments not matching a child are resolved by means of
+	 * the resource's getChild method.
+	 */
+	@Test
+	public void testFallsBackToGetChild() {
+
+		CoapResource devices = new CoapResource("devices") {
+
+			@Override
+			public Resource getChild(final String name) {
+				return this;
+			}
+		};
+		root.add(devices);
+
+		assertThat(resolver.resolve(path("devices", "a", "b")), is(sameInstance((Resource) devices)));
+	}
+
+	private static List<byte[]> path(final String... segments) {
+		List<byte[]> path = new ArrayList<byte[]>(segments.length);
+		for (String segment : segments) {
+			path.add(segment.getBytes(CoAP.UTF8_CHARSET));
+		}
+		return path;
+	}
+}
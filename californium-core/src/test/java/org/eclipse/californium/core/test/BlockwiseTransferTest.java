@@ -19,28 +19,43 @@
  *    Achim Kraus (Bosch Software Innovations GmbH) - test stop transfer on cancel
  *    Achim Kraus (Bosch Software Innovations GmbH) - use CoapNetworkRule for
  *                                                    setup of test-network
+ *    Bosch Software Innovations GmbH - test block sources and block sinks
+ *    Bosch Software Innovations GmbH - test aborting a sink on a wrong block number
+ *    Bosch Software Innovations GmbH - test shared block2 cache
  ******************************************************************************/
 package org.eclipse.californium.core.test;
 
 import static org.eclipse.californium.TestTools.*;
 import static org.junit.Assert.*;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.eclipse.californium.category.Medium;
 import org.eclipse.californium.core.CoapResource;
 import org.eclipse.californium.core.CoapServer;
+import org.eclipse.californium.core.coap.BlockOption;
+import org.eclipse.californium.core.coap.BlockSink;
+import org.eclipse.californium.core.coap.BlockSource;
+import org.eclipse.californium.core.coap.ByteBufferBlockSource;
+import org.eclipse.californium.core.coap.CoAP;
+import org.eclipse.californium.core.coap.CoAP.ResponseCode;
 import org.eclipse.californium.core.coap.MessageObserverAdapter;
 import org.eclipse.californium.core.coap.Request;
 import org.eclipse.californium.core.coap.Response;
 import org.eclipse.californium.core.network.CoapEndpoint;
 import org.eclipse.californium.core.network.Endpoint;
 import org.eclipse.californium.core.network.config.NetworkConfig;
+import org.eclipse.californium.core.network.interceptors.MessageInterceptorAdapter;
+import org.eclipse.californium.core.server.BlockSinkProvider;
 import org.eclipse.californium.core.server.resources.CoapExchange;
 import org.eclipse.californium.core.test.lockstep.ServerBlockwiseInterceptor;
 import org.eclipse.californium.rule.CoapNetworkRule;
@@ -70,6 +85,9 @@ public class BlockwiseTransferTest {
 	private static final String PARAM_SHORT_REQ = "sr";
 	private static final String RESOURCE_TEST = "test";
 	private static final String RESOURCE_BIG = "big";
+	private static final String RESOURCE_STREAM = "stream";
+	private static final String RESOURCE_CACHED = "cached";
+	private static final String RESOURCE_UNCACHED = "uncached";
 
 	private static final String SHORT_POST_REQUEST  = generateRandomPayload(15);
 	private static final String LONG_POST_REQUEST   = generateRandomPayload(150);
@@ -78,11 +96,18 @@ public class BlockwiseTransferTest {
 	private static final String SHORT_GET_RESPONSE = generateRandomPayload(17);
 	private static final String LONG_GET_RESPONSE  = generateRandomPayload(152);
 	private static final String OVERSIZE_BODY = generateRandomPayload(510);
+	private static final String STREAMED_BODY = generateRandomPayload(300);
 
 	private static CoapServer server;
 	private static NetworkConfig config;
 	private static Endpoint serverEndpoint;
+	private static NetworkConfig cachingConfig;
+	private static Endpoint cachingServerEndpoint;
 	private static ServerBlockwiseInterceptor interceptor = new ServerBlockwiseInterceptor();
+	private static final ByteArrayOutputStream uploaded = new ByteArrayOutputStream();
+	private static final AtomicInteger uploadedBlocks = new AtomicInteger();
+	private static final AtomicInteger abortedUploads = new AtomicInteger();
+	private static final AtomicInteger cachedResourceRequests = new AtomicInteger();
 
 	private Endpoint clientEndpoint;
 
@@ -93,6 +118,11 @@ public class BlockwiseTransferTest {
 			.setInt(NetworkConfig.Keys.PREFERRED_BLOCK_SIZE, 32)
 			.setInt(NetworkConfig.Keys.MAX_MESSAGE_SIZE, 32)
 			.setInt(NetworkConfig.Keys.MAX_RESOURCE_BODY_SIZE, 500);
+		cachingConfig = network.createStandardTestConfig()
+			.setInt(NetworkConfig.Keys.PREFERRED_BLOCK_SIZE, 32)
+			.setInt(NetworkConfig.Keys.MAX_MESSAGE_SIZE, 32)
+			.setInt(NetworkConfig.Keys.MAX_RESOURCE_BODY_SIZE, 500)
+			.setInt(NetworkConfig.Keys.BLOCKWISE_CACHE_SIZE, 200);
 		server = createSimpleServer();
 	}
 
@@ -177,6 +207,149 @@ public class BlockwiseTransferTest {
 		assertTrue(latch.await(1000, TimeUnit.MILLISECONDS));
 	}
 
+	@Test
+	public void testGETReadsBodyFromBlockSource() throws Exception {
+
+		Request request = Request.newGet().setURI(getUri(serverEndpoint, RESOURCE_STREAM));
+		clientEndpoint.sendRequest(request);
+
+		Response response = request.waitForResponse(2000);
+		assertNotNull("Client received no response", response);
+		assertEquals(STREAMED_BODY, response.getPayloadString());
+	}
+
+	@Test
+	public void testPOSTWritesBodyToBlockSink() throws Exception {
+
+		uploaded.reset();
+		uploadedBlocks.set(0);
+		Request request = Request.newPost().setURI(getUri(serverEndpoint, RESOURCE_STREAM));
+		request.setPayload(LONG_POST_REQUEST);
+		clientEndpoint.sendRequest(request);
+
+		Response response = request.waitForResponse(2000);
+		assertNotNull("Client received no response", response);
+		assertEquals(ResponseCode.CHANGED, response.getCode());
+		assertEquals(LONG_POST_REQUEST, uploaded.toString("UTF-8"));
+		// 150 bytes in blocks of 32 bytes
+		assertEquals(5, uploadedBlocks.get());
+	}
+
+	@Test
+	public void testPOSTWithWrongBlockNumberAbortsBlockSink() throws Exception {
+
+		abortedUploads.set(0);
+		final BlockingQueue<Response> responses = new LinkedBlockingQueue<>();
+		clientEndpoint.addInterceptor(new MessageInterceptorAdapter() {
+
+			@Override
+			public void receiveResponse(final Response response) {
+				responses.add(response);
+			}
+		});
+
+		// GIVEN an upload to a block sink that has been started
+		Request request = newBlock1Request(0);
+		clientEndpoint.sendRequest(request);
+		Response response = responses.poll(2000, TimeUnit.MILLISECONDS);
+		assertNotNull("Client received no response", response);
+		assertEquals(ResponseCode.CONTINUE, response.getCode());
+
+		// WHEN the client sends a block out of order
+		request = newBlock1Request(2);
+		clientEndpoint.sendRequest(request);
+
+		// THEN the server responds with 4.08 and aborts the sink
+		response = responses.poll(2000, TimeUnit.MILLISECONDS);
+		assertNotNull("Client received no response", response);
+		assertEquals(ResponseCode.REQUEST_ENTITY_INCOMPLETE, response.getCode());
+		assertEquals(1, abortedUploads.get());
+	}
+
+	private static Request newBlock1Request(final int num) {
+		Request request = Request.newPost().setURI(getUri(serverEndpoint, RESOURCE_STREAM));
+		request.getOptions().setBlock1(BlockOption.size2Szx(16), true, num);
+		request.setPayload(generateRandomPayload(16));
+		return request;
+	}
+
+	@Test
+	public void testGETServesFollowingBlocksFromCache() throws Exception {
+
+		cachedResourceRequests.set(0);
+		Request request = Request.newGet().setURI(getUri(cachingServerEndpoint, RESOURCE_CACHED));
+		clientEndpoint.sendRequest(request);
+		Response response = request.waitForResponse(2000);
+		assertNotNull("Client received no response", response);
+		assertEquals(LONG_GET_RESPONSE, response.getPayloadString());
+
+		// a block following the first one is served from the cache
+		response = requestBlock(clientEndpoint, cachingServerEndpoint, 2);
+		assertNotNull("Client received no response", response);
+		assertEquals(LONG_GET_RESPONSE.substring(64, 96), response.getPayloadString());
+		assertEquals(1, cachedResourceRequests.get());
+	}
+
+	@Test
+	public void testGETServesCachedBlocksOnlyToPeersFetchingFirstBlock() throws Exception {
+
+		cachedResourceRequests.set(0);
+		Request request = Request.newGet().setURI(getUri(cachingServerEndpoint, RESOURCE_CACHED));
+		clientEndpoint.sendRequest(request);
+		Response response = request.waitForResponse(2000);
+		assertNotNull("Client received no response", response);
+
+		Endpoint otherClientEndpoint = new CoapEndpoint(config);
+		otherClientEndpoint.start();
+		try {
+			response = requestBlock(otherClientEndpoint, cachingServerEndpoint, 2);
+			assertNotNull("Client received no response", response);
+			assertEquals(LONG_GET_RESPONSE.substring(64, 96), response.getPayloadString());
+			// the other peer hasn't fetched the first block, so the resource is invoked
+			assertEquals(2, cachedResourceRequests.get());
+		} finally {
+			otherClientEndpoint.destroy();
+		}
+	}
+
+	@Test
+	public void testGETDoesNotCacheBodiesByDefault() throws Exception {
+
+		cachedResourceRequests.set(0);
+		Request request = Request.newGet().setURI(getUri(serverEndpoint, RESOURCE_CACHED));
+		clientEndpoint.sendRequest(request);
+		Response response = request.waitForResponse(2000);
+		assertNotNull("Client received no response", response);
+		assertEquals(LONG_GET_RESPONSE, response.getPayloadString());
+
+		response = requestBlock(clientEndpoint, serverEndpoint, 2);
+		assertNotNull("Client received no response", response);
+		assertEquals(LONG_GET_RESPONSE.substring(64, 96), response.getPayloadString());
+		assertEquals(2, cachedResourceRequests.get());
+	}
+
+	@Test
+	public void testGETKeepsBodyExceedingCache() throws Exception {
+
+		cachedResourceRequests.set(0);
+		Request request = Request.newGet().setURI(getUri(cachingServerEndpoint, RESOURCE_UNCACHED));
+		clientEndpoint.sendRequest(request);
+
+		Response response = request.waitForResponse(2000);
+		assertNotNull("Client received no response", response);
+		assertEquals(STREAMED_BODY, response.getPayloadString());
+		// the body doesn't fit into the cache, so the exchange keeps it
+		assertEquals(1, cachedResourceRequests.get());
+	}
+
+	private static Response requestBlock(final Endpoint client, final Endpoint server, final int num)
+			throws InterruptedException {
+		Request request = Request.newGet().setURI(getUri(server, RESOURCE_CACHED));
+		request.getOptions().setBlock2(BlockOption.size2Szx(32), false, num);
+		client.sendRequest(request);
+		return request.waitForResponse(2000);
+	}
+
 	private void executeGETRequest(final boolean respondShort) throws Exception {
 		executeGETRequest(respondShort, false);
 	}
@@ -266,6 +439,9 @@ public class BlockwiseTransferTest {
 		serverEndpoint = new CoapEndpoint(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), config);
 		serverEndpoint.addInterceptor(interceptor);
 		result.addEndpoint(serverEndpoint);
+		cachingServerEndpoint = new CoapEndpoint(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0),
+				cachingConfig);
+		result.addEndpoint(cachingServerEndpoint);
 		result.add(new CoapResource(RESOURCE_TEST) {
 
 			private boolean isShortRequest(final CoapExchange exchange) {
@@ -311,11 +487,81 @@ public class BlockwiseTransferTest {
 			}
 		});
 
+		result.add(new StreamResource(RESOURCE_STREAM));
+		result.add(new CoapResource(RESOURCE_CACHED) {
+
+			@Override
+			public void handleGET(final CoapExchange exchange) {
+				cachedResourceRequests.incrementAndGet();
+				exchange.setETag(new byte[] { 0x01 });
+				exchange.respond(LONG_GET_RESPONSE);
+			}
+		});
+		result.add(new CoapResource(RESOURCE_UNCACHED) {
+
+			@Override
+			public void handleGET(final CoapExchange exchange) {
+				cachedResourceRequests.incrementAndGet();
+				exchange.setETag(new byte[] { 0x02 });
+				exchange.respond(STREAMED_BODY);
+			}
+		});
+
 		result.start();
 		System.out.println("serverPort: " + serverEndpoint.getAddress().getPort());
 		return result;
 	}
 
+	/**
+	 * A resource reading its body from a block source and writing uploads
+	 * to a block sink.
+	 */
+	private static class StreamResource extends CoapResource implements BlockSinkProvider {
+
+		private final BlockSource source = new ByteBufferBlockSource(
+				ByteBuffer.wrap(STREAMED_BODY.getBytes(CoAP.UTF8_CHARSET)).asReadOnlyBuffer());
+
+		public StreamResource(final String name) {
+			super(name);
+		}
+
+		@Override
+		public void handleGET(final CoapExchange exchange) {
+			Response response = new Response(ResponseCode.CONTENT);
+			response.setBlockSource(source);
+			exchange.respond(response);
+		}
+
+		@Override
+		public void handlePOST(final CoapExchange exchange) {
+			// the body has been written to the sink
+			assertEquals(0, exchange.getRequestPayload().length);
+			exchange.respond(ResponseCode.CHANGED);
+		}
+
+		@Override
+		public BlockSink getBlockSink(final Request firstBlock) {
+			return new BlockSink() {
+
+				@Override
+				public void write(final byte[] block) throws IOException {
+					uploadedBlocks.incrementAndGet();
+					uploaded.write(block);
+				}
+
+				@Override
+				public void close() {
+				}
+
+				@Override
+				public void abort() {
+					abortedUploads.incrementAndGet();
+					uploaded.reset();
+				}
+			};
+		}
+	}
+
 	public interface ReceiveRequestHandler {
 		void receiveRequest(Request received);
 	}
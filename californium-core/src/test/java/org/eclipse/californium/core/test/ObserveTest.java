@@ -25,6 +25,8 @@
  *                                                    use expected= annotation for
  *                                                    expected exceptions
  *    Achim Kraus (Bosch Software Innovations GmbH) - use MessageInterceptorAdapter
+ *    Bosch Software Innovations GmbH - add test for notification fan-out
+ *    Bosch Software Innovations GmbH - add test for restored observe relations
  ******************************************************************************/
 package org.eclipse.californium.core.test;
 
@@ -34,8 +36,11 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
+import java.io.File;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -53,16 +58,22 @@ import org.eclipse.californium.core.coap.EmptyMessage;
 import org.eclipse.californium.core.coap.Request;
 import org.eclipse.californium.core.coap.Response;
 import org.eclipse.californium.core.network.CoapEndpoint;
+import org.eclipse.californium.core.network.Endpoint;
 import org.eclipse.californium.core.network.EndpointManager;
 import org.eclipse.californium.core.network.config.NetworkConfig;
 import org.eclipse.californium.core.network.interceptors.MessageInterceptorAdapter;
+import org.eclipse.californium.core.observe.FileObserveRelationStore;
+import org.eclipse.californium.core.observe.ObserveRelationRecord;
+import org.eclipse.californium.core.server.ServerMessageDeliverer;
 import org.eclipse.californium.core.server.resources.CoapExchange;
 import org.eclipse.californium.rule.CoapNetworkRule;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.ClassRule;
+import org.junit.Rule;
 import org.junit.Test;
 import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
 
 /**
  * This test tests that a server removes all observe relations to a client if a
@@ -103,6 +114,9 @@ public class ObserveTest {
 	static final String TARGET_Y = "resY";
 	static final String RESPONSE = "hi";
 
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
 	private CoapServer server;
 	private MyResource resourceX;
 	private MyResource resourceY;
@@ -218,6 +232,100 @@ public class ObserveTest {
 		assertEquals(1, resourceX.getObserverCount());
 	}
 
+	@Test
+	public void testObserveFanOut() throws Exception {
+		resourceX.setObserveType(Type.NON);
+		resourceX.setNotificationFanOut(true);
+
+		int observers = 3;
+		CountingHandler[] handlers = new CountingHandler[observers];
+		CoapObserveRelation[] relations = new CoapObserveRelation[observers];
+		for (int i = 0; i < observers; ++i) {
+			handlers[i] = new CountingHandler();
+			relations[i] = new CoapClient(uriX).observeAndWait(handlers[i]);
+			assertTrue(handlers[i].waitForLoadCalls(1, 1000, TimeUnit.MILLISECONDS));
+		}
+		assertEquals(observers, resourceX.getObserverCount());
+		resourceX.getCalls.set(0);
+
+		resourceX.changed("fan-out");
+
+		for (int i = 0; i < observers; ++i) {
+			assertTrue(handlers[i].waitForLoadCalls(2, 1000, TimeUnit.MILLISECONDS));
+			assertEquals("\"resX says fan-out for the 2 time\"", relations[i].getCurrent().getResponseText());
+		}
+		// the resource has been invoked for a single observer only
+		assertEquals(1, resourceX.getCalls.get());
+		for (int i = 0; i < observers; ++i) {
+			relations[i].proactiveCancel();
+		}
+	}
+
+	@Test
+	public void testObserveRelationsAreRestored() throws Exception {
+		File file = new File(folder.getRoot(), "relations");
+		NetworkConfig config = network.createTestConfig();
+
+		CoapServer first = new CoapServer();
+		first.setObserveRelationStore(new FileObserveRelationStore(file));
+		CoapEndpoint endpoint = new CoapEndpoint(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), config);
+		first.addEndpoint(endpoint);
+		MyResource resource = new MyResource("persistent");
+		first.add(resource);
+		first.start();
+
+		CountingHandler handler = new CountingHandler();
+		CoapObserveRelation relation = new CoapClient(getUri(endpoint, "persistent")).observeAndWait(handler);
+		assertTrue(handler.waitForLoadCalls(1, 1000, TimeUnit.MILLISECONDS));
+		resource.changed("first");
+		assertTrue(handler.waitForLoadCalls(2, 1000, TimeUnit.MILLISECONDS));
+		InetSocketAddress address = endpoint.getAddress();
+		first.destroy();
+
+		// restart on the same port without the client re-registering
+		CoapServer second = new CoapServer();
+		second.setObserveRelationStore(new FileObserveRelationStore(file));
+		second.addEndpoint(new CoapEndpoint(address, config));
+		resource = new MyResource("persistent");
+		second.add(resource);
+		second.start();
+		assertEquals(1, resource.getObserverCount());
+
+		resource.changed("restored");
+		assertTrue(handler.waitForLoadCalls(3, 1000, TimeUnit.MILLISECONDS));
+		assertEquals("\"persistent says restored for the 2 time\"", relation.getCurrent().getResponseText());
+
+		relation.proactiveCancel();
+		second.destroy();
+	}
+
+	@Test
+	public void testRestoredObserveRelationsRequireSameLocalAddress() throws Exception {
+		NetworkConfig config = network.createTestConfig();
+		InetSocketAddress peer = new InetSocketAddress(InetAddress.getLoopbackAddress(), 5683);
+		InetSocketAddress loopback = new InetSocketAddress(InetAddress.getLoopbackAddress(), 5684);
+		InetSocketAddress wildcard = new InetSocketAddress(5684);
+		Request request = Request.newGet();
+		request.getOptions().setUriPath("persistent");
+		request.getOptions().setObserve(0);
+
+		FileObserveRelationStore store = new FileObserveRelationStore(new File(folder.getRoot(), "relations"));
+		store.add(new ObserveRelationRecord(peer, loopback, Type.CON, new byte[] { 0x01 },
+				request.getOptions().asSortedList(), 5));
+		store.add(new ObserveRelationRecord(peer, null, Type.CON, new byte[] { 0x02 },
+				request.getOptions().asSortedList(), 5));
+		store.close();
+
+		// the same port on another address doesn't match
+		CoapResource root = new CoapResource("");
+		MyResource resource = new MyResource("persistent");
+		root.add(resource);
+		List<Endpoint> endpoints = Arrays.<Endpoint> asList(new CoapEndpoint(wildcard, config),
+				new CoapEndpoint(new InetSocketAddress(InetAddress.getLoopbackAddress(), 5685), config));
+		assertEquals(0, new ServerMessageDeliverer(root).restoreObserveRelations(store, endpoints));
+		assertEquals(0, resource.getObserverCount());
+	}
+
 	@Test
 	public void testObserveClientReregister() throws Exception {
 		resourceX.setObserveType(Type.NON);
@@ -466,6 +574,7 @@ public class ObserveTest {
 		private AtomicBoolean reject = new AtomicBoolean();
 		private AtomicInteger counter = new AtomicInteger();
 		private AtomicInteger delay = new AtomicInteger();
+		private AtomicInteger getCalls = new AtomicInteger();
 
 		public MyResource(String name) {
 			super(name);
@@ -475,6 +584,7 @@ public class ObserveTest {
 
 		@Override
 		public void handleGET(CoapExchange exchange) {
+			getCalls.incrementAndGet();
 			int delay = this.delay.getAndSet(0);
 			if (0 < delay) {
 				try {
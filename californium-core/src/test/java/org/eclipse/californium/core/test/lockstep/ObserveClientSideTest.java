@@ -20,6 +20,8 @@
  *                                      separate test cases, remove wait cycles
  *    Achim Kraus (Bosch Software Innovations GmbH) - use CoapNetworkRule for
  *                                                    setup of test-network
+ *    Bosch Software Innovations GmbH - add test for observations kept in an
+ *                                      observation store
  ******************************************************************************/
 package org.eclipse.californium.core.test.lockstep;
 
@@ -31,6 +33,9 @@ import static org.eclipse.californium.core.test.lockstep.IntegrationTestTools.*;
 
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.Assert;
 import org.eclipse.californium.category.Large;
@@ -40,6 +45,9 @@ import org.eclipse.californium.core.network.CoapEndpoint;
 import org.eclipse.californium.core.network.Endpoint;
 import org.eclipse.californium.core.network.config.NetworkConfig;
 import org.eclipse.californium.core.network.interceptors.MessageTracer;
+import org.eclipse.californium.core.observe.InMemoryObservationStore;
+import org.eclipse.californium.core.observe.NotificationListener;
+import org.eclipse.californium.core.observe.Observation;
 import org.eclipse.californium.rule.CoapNetworkRule;
 import org.junit.After;
 import org.junit.AfterClass;
@@ -143,6 +151,65 @@ public class ObserveClientSideTest {
 		assertResponseContainsExpectedPayload(response, respPayload);
 	}
 
+	/**
+	 * Verifies that notifications of an observation kept in an observation
+	 * store are delivered to the notification listener, that reordered
+	 * notifications are discarded and that the observation is removed once the
+	 * server ends it.
+	 */
+	@Test
+	public void testObserveWithObservationStore() throws Exception {
+		System.out.println("Observe with observation store:");
+		respPayload = generateRandomPayload(10);
+		String path = "test";
+		int obs = 100;
+
+		InMemoryObservationStore store = new InMemoryObservationStore();
+		final BlockingQueue<Response> notifications = new LinkedBlockingQueue<>();
+		CoapEndpoint endpoint = (CoapEndpoint) client;
+		endpoint.setObservationStore(store);
+		endpoint.addNotificationListener("handler", new NotificationListener() {
+
+			@Override
+			public void onNotification(final Observation observation, final Response response) {
+				notifications.add(response);
+			}
+		});
+
+		Request request = createRequest(GET, path, server);
+		request.setObserve();
+		request.setNotificationHandlerId("handler");
+		client.sendRequest(request);
+
+		server.expectRequest(CON, GET, path).storeMID("A").storeToken("T").observe(0).go();
+		server.sendResponse(ACK, CONTENT).loadMID("A").loadToken("T").observe(obs).payload(respPayload).go();
+
+		Response response = request.waitForResponse(1000);
+		assertResponseContainsExpectedPayload(response, respPayload);
+		Assert.assertEquals(1, store.size());
+
+		respPayload = generateRandomPayload(10); // changed
+		server.sendResponse(CON, CONTENT).loadToken("T").payload(respPayload).mid(++mid).observe(++obs).go();
+		server.expectEmpty(ACK, mid).go();
+		assertResponseContainsExpectedPayload(notifications.poll(1000, TimeUnit.MILLISECONDS), respPayload);
+
+		// reordered notification must be acknowledged but not delivered
+		server.sendResponse(CON, CONTENT).loadToken("T").payload("reordered").mid(++mid).observe(obs - 1).go();
+		server.expectEmpty(ACK, mid).go();
+		Assert.assertNull("Client delivered reordered notification", notifications.poll(200, TimeUnit.MILLISECONDS));
+
+		// server ends the observation
+		server.sendResponse(CON, CONTENT).loadToken("T").payload(respPayload).mid(++mid).go();
+		server.expectEmpty(ACK, mid).go();
+		assertResponseContainsExpectedPayload(notifications.poll(1000, TimeUnit.MILLISECONDS), respPayload);
+		Assert.assertEquals(0, store.size());
+
+		// next notification must be rejected
+		server.sendResponse(NON, CONTENT).loadToken("T").payload(respPayload).mid(++mid).observe(++obs).go();
+		server.expectEmpty(RST, mid).go();
+		printServerLog(clientInterceptor);
+	}
+
 	/**
 	 * Verifies behavior of observing a resource that is transferred in multiple chunks using blockwise transfer.
 	 * 
@@ -0,0 +1,46 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Bosch Software Innovations GmbH and others.
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ * 
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ * 
+ * Contributors:
+ *    Bosch Software Innovations GmbH - initial creation
+ ******************************************************************************/
+package org.eclipse.californium.elements;
+
+import java.util.List;
+
+/**
+ * A processor for messages received from the network layer that is able to
+ * process several messages at once.
+ * 
+ * Connectors supporting batched receiving (e.g. the {@link UDPChannelConnector})
+ * hand over all messages that have been received within one wake-up of a
+ * receiver thread by means of a single invocation of
+ * {@link #receiveBatch(List)} instead of invoking
+ * {@link #receiveData(RawData)} for each message.
+ */
+public interface BatchRawDataChannel extends RawDataChannel {
+
+	/**
+	 * Processes raw messages received from the network.
+	 * 
+	 * The same considerations regarding fast return apply as for
+	 * {@link #receiveData(RawData)}.
+	 * 
+	 * @param batch the raw messages to process in the order of their reception.
+	 *            The list and its messages are owned by the channel after this
+	 *            method has been invoked, even if it throws an exception. The
+	 *            channel therefore must release the messages it fails to
+	 *            process.
+	 */
+	public void receiveBatch(List<RawData> batch);
+
+}
@@ -0,0 +1,40 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Bosch Software Innovations GmbH and others.
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ * 
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ * 
+ * Contributors:
+ *    Bosch Software Innovations GmbH - initial creation
+ ******************************************************************************/
+package org.eclipse.californium.elements;
+
+/**
+ * A {@link MessageCallback} that also wants to be notified about messages
+ * the connector could not send.
+ * <p>
+ * Connectors check for this interface by means of {@code instanceof}, so
+ * existing {@link MessageCallback} implementations are not affected.
+ * </p>
+ */
+public interface MessageErrorCallback extends MessageCallback {
+
+	/**
+	 * Called when the message cannot be sent by the connector.
+	 * <p>
+	 * E.g. a connector with a bounded outbound queue may reject a message
+	 * when the queue is full (see {@link OutboundMessageQueue.OverflowPolicy#REJECT}).
+	 * </p>
+	 * Note: this callback may be invoked synchronously within
+	 * {@link Connector#send(RawData)}.
+	 * 
+	 * @param error the reason why the message could not be sent
+	 */
+	void onError(Throwable error);
+}
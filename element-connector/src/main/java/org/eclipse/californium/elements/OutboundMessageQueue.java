@@ -0,0 +1,254 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Bosch Software Innovations GmbH and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *    Bosch Software Innovations GmbH - initial creation
+ ******************************************************************************/
+package org.eclipse.californium.elements;
+
+import java.util.Collection;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A bounded queue for messages waiting to be sent by a connector.
+ * <p>
+ * The queue's {@link OverflowPolicy} determines what happens to a message
+ * that is added while the queue is full. The number of messages affected by
+ * each policy is counted and can be retrieved in order to monitor the
+ * connector's load.
+ * </p>
+ * <p>
+ * Instances are thread safe.
+ * </p>
+ */
+public final class OutboundMessageQueue {
+
+	private static final Logger LOGGER = Logger.getLogger(OutboundMessageQueue.class.getName());
+
+	/**
+	 * The behavior of a full queue.
+	 */
+	public enum OverflowPolicy {
+		/**
+		 * The sending thread is blocked until there is space in the queue.
+		 */
+		BLOCK,
+		/**
+		 * The message to send is discarded.
+		 */
+		DROP_NEWEST,
+		/**
+		 * The message that has been in the queue the longest is discarded to
+		 * make room for the message to send.
+		 */
+		DROP_OLDEST,
+		/**
+		 * The message to send is discarded and the sender is notified by means
+		 * of {@link MessageErrorCallback#onError(Throwable)}.
+		 */
+		REJECT
+	}
+
+	private final BlockingQueue<RawData> queue;
+	private final int capacity;
+	private final OverflowPolicy policy;
+
+	private final AtomicLong blocked = new AtomicLong();
+	private final AtomicLong droppedNewest = new AtomicLong();
+	private final AtomicLong droppedOldest = new AtomicLong();
+	private final AtomicLong rejected = new AtomicLong();
+
+	/**
+	 * Creates an unbounded queue.
+	 */
+	public OutboundMessageQueue() {
+		this(Integer.MAX_VALUE, OverflowPolicy.BLOCK);
+	}
+
+	/**
+	 * Creates a queue for a capacity and overflow policy.
+	 *
+	 * @param capacity the maximum number of messages in the queue.
+	 * @param policy the policy to apply when the queue is full.
+	 * @throws IllegalArgumentException if capacity is &lt; 1.
+	 * @throws NullPointerException if policy is {@code null}.
+	 */
+	public OutboundMessageQueue(final int capacity, final OverflowPolicy policy) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("Capacity must be at least 1");
+		} else if (policy == null) {
+			throw new NullPointerException("Overflow policy must not be null");
+		}
+		this.capacity = capacity;
+		this.policy = policy;
+		this.queue = new LinkedBlockingQueue<RawData>(capacity);
+	}
+
+	/**
+	 * Adds a message to the queue applying the overflow policy if the queue is
+	 * full.
+	 *
+	 * @param msg the message to add.
+	 * @return {@code true} if the message has been added, {@code false} if it
+	 *         has been discarded.
+	 */
+	public boolean add(final RawData msg) {
+		if (queue.offer(msg)) {
+			return true;
+		}
+		switch (policy) {
+		case BLOCK:
+			blocked.incrementAndGet();
+			try {
+				queue.put(msg);
+				return true;
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				droppedNewest.incrementAndGet();
+				return false;
+			}
+		case DROP_OLDEST:
+			while (!queue.offer(msg)) {
+				if (queue.poll() != null) {
+					droppedOldest.incrementAndGet();
+				}
+			}
+			return true;
+		case REJECT:
+			rejected.incrementAndGet();
+			MessageCallback callback = msg.getMessageCallback();
+			if (callback instanceof MessageErrorCallback) {
+				((MessageErrorCallback) callback).onError(new IllegalStateException("Outbound message queue is full"));
+			}
+			LOGGER.log(Level.FINER, "Outbound message queue is full, rejecting message to {0}",
+					msg.getInetSocketAddress());
+			return false;
+		case DROP_NEWEST:
+		default:
+			droppedNewest.incrementAndGet();
+			LOGGER.log(Level.FINER, "Outbound message queue is full, dropping message to {0}",
+					msg.getInetSocketAddress());
+			return false;
+		}
+	}
+
+	/**
+	 * Takes the next message from the queue, waiting if necessary until a
+	 * message becomes available.
+	 *
+	 * @return the message.
+	 * @throws InterruptedException if interrupted while waiting.
+	 */
+	public RawData take() throws InterruptedException {
+		return queue.take();
+	}
+
+	/**
+	 * Takes up to a given number of messages from the queue, waiting if
+	 * necessary until at least one message becomes available.
+	 * <p>
+	 * This allows a sender to process all messages queued up at the time
+	 * it wakes up at once.
+	 *
+	 * @param batch the collection to add the messages to.
+	 * @param maxMessages the maximum number of messages to take.
+	 * @return the number of messages added to the batch.
+	 * @throws InterruptedException if interrupted while waiting.
+	 */
+	public int take(final Collection<RawData> batch, final int maxMessages) throws InterruptedException {
+		batch.add(queue.take());
+		if (maxMessages > 1) {
+			return 1 + queue.drainTo(batch, maxMessages - 1);
+		} else {
+			return 1;
+		}
+	}
+
+	/**
+	 * Removes all messages from the queue.
+	 */
+	public void clear() {
+		queue.clear();
+	}
+
+	/**
+	 * Gets the number of messages currently in the queue.
+	 *
+	 * @return the number of messages.
+	 */
+	public int size() {
+		return queue.size();
+	}
+
+	/**
+	 * Gets the maximum number of messages in the queue.
+	 *
+	 * @return the capacity.
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Gets the policy applied when the queue is full.
+	 *
+	 * @return the policy.
+	 */
+	public OverflowPolicy getOverflowPolicy() {
+		return policy;
+	}
+
+	/**
+	 * Gets the number of times a sender has been blocked because the queue was
+	 * full ({@link OverflowPolicy#BLOCK}).
+	 *
+	 * @return the number of blocked senders.
+	 */
+	public long getBlockedCount() {
+		return blocked.get();
+	}
+
+	/**
+	 * Gets the number of messages that have been discarded because the queue
+	 * was full when they were added ({@link OverflowPolicy#DROP_NEWEST}, or
+	 * {@link OverflowPolicy#BLOCK} when interrupted while waiting).
+	 *
+	 * @return the number of discarded messages.
+	 */
+	public long getDroppedNewestCount() {
+		return droppedNewest.get();
+	}
+
+	/**
+	 * Gets the number of queued messages that have been discarded in favor of
+	 * newer messages ({@link OverflowPolicy#DROP_OLDEST}).
+	 *
+	 * @return the number of discarded messages.
+	 */
+	public long getDroppedOldestCount() {
+		return droppedOldest.get();
+	}
+
+	/**
+	 * Gets the number of messages that have been rejected
+	 * ({@link OverflowPolicy#REJECT}).
+	 *
+	 * @return the number of rejected messages.
+	 */
+	public long getRejectedCount() {
+		return rejected.get();
+	}
+}
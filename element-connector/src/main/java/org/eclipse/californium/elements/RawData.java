@@ -17,14 +17,19 @@
  *    Bosch Software Innovations GmbH - add support for correlation context to provide
  *                                      additional information to application layer for
  *                                      matching messages (fix GitHub issue #1)
+ *    Bosch Software Innovations GmbH - add support for messages backed by pooled
+ *                                      byte buffers
  ******************************************************************************/
 package org.eclipse.californium.elements;
 
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
 import java.security.Principal;
 import java.util.Arrays;
 
+import org.eclipse.californium.elements.util.ByteBufferPool;
+
 /**
  * A container object for the data received or sent via a <code>Connector</code>.
  * 
@@ -38,12 +43,32 @@ import java.util.Arrays;
  * 
  * A message received from a client via the network may also optionally contain the
  * authenticated sender's identity as a <code>java.security.Principal</code> object.
+ * <p>
+ * Inbound messages may also be backed by a (direct) buffer taken from a
+ * {@link ByteBufferPool} instead of a byte array (see
+ * {@link #inbound(ByteBuffer, ByteBufferPool, InetSocketAddress, Principal, CorrelationContext, boolean)}).
+ * Such messages must be {@linkplain #release() released} once their content has been
+ * processed so that the buffer can be re-used for receiving other messages.
+ * </p>
  */
 public final class RawData {
 
-	/** The raw message. */
+	private static final byte[] NO_BYTES = new byte[0];
+
+	/**
+	 * The raw message.
+	 * <p>
+	 * Empty, if this message is backed by a pooled buffer. Use {@link #getBytes()}
+	 * or {@link #getByteBuffer()} instead of accessing this field directly.
+	 */
 	public final byte[] bytes;
 
+	/** The pooled buffer backing this message, {@code null} if backed by {@link #bytes} */
+	private ByteBuffer buffer;
+
+	/** The pool to hand back the buffer to on {@link #release()} */
+	private final ByteBufferPool pool;
+
 	/** The source/destination address. */
 	private InetSocketAddress address;
 
@@ -153,6 +178,25 @@ public final class RawData {
 			throw new NullPointerException("Address must not be null");
 		} else {
 			this.bytes = data;
+			this.buffer = null;
+			this.pool = null;
+			this.address = address;
+			this.senderIdentity = clientIdentity;
+			this.correlationContext = correlationContext;
+			this.multicast = multicast;
+		}
+	}
+
+	private RawData(ByteBuffer data, ByteBufferPool pool, InetSocketAddress address, Principal clientIdentity,
+			CorrelationContext correlationContext, boolean multicast) {
+		if (data == null) {
+			throw new NullPointerException("Data must not be null");
+		} else if (address == null) {
+			throw new NullPointerException("Address must not be null");
+		} else {
+			this.bytes = NO_BYTES;
+			this.buffer = data;
+			this.pool = pool;
 			this.address = address;
 			this.senderIdentity = clientIdentity;
 			this.correlationContext = correlationContext;
@@ -208,6 +252,31 @@ public final class RawData {
 		return new RawData(data, address, clientIdentity, correlationContext, isMulticast);
 	}
 
+	/**
+	 * Instantiates a new raw data for a message received from a peer that is
+	 * backed by a pooled buffer.
+	 * <p>
+	 * The message's content are the bytes between the buffer's position and its limit.
+	 * The buffer is handed back to the pool when {@link #release()} is invoked. The buffer
+	 * must not be accessed by the caller afterwards.
+	 * </p>
+	 *
+	 * @param data the buffer containing the received data.
+	 * @param pool the pool to hand back the buffer to (may be <code>null</code>).
+	 * @param address the IP address and port the data has been received from.
+	 * @param clientIdentity the identity of the authenticated sender of the message
+	 *     (or <code>null</code> if sender is not authenticated).
+	 * @param correlationContext additional information regarding the context the message has been
+	 *      received in.
+	 * @param isMulticast indicates whether the data has been received as a multicast message.
+	 * @return the raw data object containing the inbound message.
+	 * @throws NullPointerException if data or address is <code>null</code>.
+	 */
+	public static RawData inbound(ByteBuffer data, ByteBufferPool pool, InetSocketAddress address,
+			Principal clientIdentity, CorrelationContext correlationContext, boolean isMulticast) {
+		return new RawData(data, pool, address, clientIdentity, correlationContext, isMulticast);
+	}
+
 	/**
 	 * Instantiates a new raw data for a message to be sent to a peer.
 	 * <p>
@@ -242,7 +311,31 @@ public final class RawData {
 	 * @return a copy of the raw message bytes
 	 */
 	public byte[] getBytes() {
-		return Arrays.copyOf(bytes, bytes.length);
+		ByteBuffer data = getPooledBuffer();
+		if (data == null) {
+			return Arrays.copyOf(bytes, bytes.length);
+		} else {
+			byte[] result = new byte[data.remaining()];
+			data.get(result);
+			return result;
+		}
+	}
+
+	/**
+	 * Gets a read-only view on the raw message.
+	 * <p>
+	 * The view must not be used after this message has been {@linkplain #release() released}.
+	 *
+	 * @return a buffer with its position set to the first byte of the message
+	 *         and its limit set to the end of the message
+	 */
+	public ByteBuffer getByteBuffer() {
+		ByteBuffer data = getPooledBuffer();
+		if (data == null) {
+			return ByteBuffer.wrap(bytes).asReadOnlyBuffer();
+		} else {
+			return data.asReadOnlyBuffer();
+		}
 	}
 
 	/**
@@ -251,7 +344,51 @@ public final class RawData {
 	 * @return the size
 	 */
 	public int getSize() {
-		return bytes.length;
+		ByteBuffer data = getPooledBuffer();
+		if (data == null) {
+			return bytes.length;
+		} else {
+			return data.remaining();
+		}
+	}
+
+	/**
+	 * Checks whether this message is backed by a pooled buffer.
+	 *
+	 * @return {@code true} if this message is backed by a buffer that has not
+	 *         been released yet
+	 */
+	public synchronized boolean isPooled() {
+		return buffer != null;
+	}
+
+	/**
+	 * Releases the pooled buffer backing this message (if any).
+	 * <p>
+	 * The message's content cannot be accessed anymore after this method has
+	 * been invoked. Invoking this method on a message that is backed by a byte
+	 * array or that has already been released has no effect.
+	 */
+	public void release() {
+		ByteBuffer data;
+		synchronized (this) {
+			data = buffer;
+			buffer = null;
+		}
+		if (data != null && pool != null) {
+			pool.release(data);
+		}
+	}
+
+	private synchronized ByteBuffer getPooledBuffer() {
+		if (buffer == null) {
+			if (bytes == NO_BYTES) {
+				// message has been backed by a buffer
+				throw new IllegalStateException("Message has already been released");
+			}
+			return null;
+		}
+		return buffer.duplicate();
 	}
 
 	/**
@@ -0,0 +1,731 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Bosch Software Innovations GmbH and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *    Bosch Software Innovations GmbH - initial creation, based on UDPConnector
+ *    Bosch Software Innovations GmbH - support multiple sockets bound to the
+ *                                      same port using SO_REUSEPORT
+ *    Bosch Software Innovations GmbH - send and receive datagrams in batches
+ *    Bosch Software Innovations GmbH - drop datagrams if the buffer pool is exhausted
+ ******************************************************************************/
+package org.eclipse.californium.elements;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.SocketOption;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.eclipse.californium.elements.util.ByteBufferPool;
+
+/**
+ * A {@link Connector} employing UDP as the transport protocol based on a NIO
+ * {@code DatagramChannel}.
+ * <p>
+ * In contrast to the {@link UDPConnector} this connector does not copy the
+ * received datagrams into newly allocated byte arrays. Instead, datagrams are
+ * received directly into direct buffers taken from a {@link ByteBufferPool}.
+ * The {@link RawData} handed over to the {@link RawDataChannel} is backed by
+ * that buffer. The receiver of the data is therefore required to
+ * {@linkplain RawData#release() release} the raw data once it has been
+ * processed, e.g. after the message has been parsed. If all buffers of the
+ * pool are in use, received datagrams are dropped until buffers are released
+ * again. Each dropped datagram is counted by the pool's
+ * {@link ByteBufferPool#getMissCount()}, which may however also count buffers
+ * that have been released before the datagram could be dropped.
+ * </p>
+ * <p>
+ * The channel is used in blocking mode, the number of threads can be set
+ * through {@link #setReceiverThreadCount(int)} and
+ * {@link #setSenderThreadCount(int)} before the connector is started.
+ * </p>
+ * <p>
+ * On platforms supporting the {@code SO_REUSEPORT} socket option (e.g. Linux
+ * 3.9+ with Java 9+), the connector can open several channels bound to the
+ * same address by means of {@link #setSocketCount(int)}. Each channel is
+ * served by its own receiver threads and the kernel distributes the incoming
+ * flows among the channels, so that receiving scales with the number of
+ * cores instead of being limited by a single socket's queue.
+ * </p>
+ * <p>
+ * If a {@link #setBatchSize(int) batch size} greater than 1 is set, the
+ * channels are used in non-blocking mode. Each receiver thread then reads all
+ * datagrams ready on wake-up (up to the batch size) and hands them over at
+ * once, if the registered receiver is a {@link BatchRawDataChannel}. Each
+ * sender thread takes up to the batch size of queued messages on wake-up.
+ * </p>
+ */
+public class UDPChannelConnector implements Connector {
+
+	public final static Logger LOGGER = Logger.getLogger(UDPChannelConnector.class.getName());
+
+	/**
+	 * The default number of pooled receive buffers.
+	 */
+	public static final int DEFAULT_BUFFER_POOL_SIZE = 256;
+
+	/**
+	 * The name of the socket option for binding multiple sockets to the same
+	 * address and port.
+	 */
+	private static final String SO_REUSEPORT = "SO_REUSEPORT";
+
+	private volatile boolean running;
+
+	/** The bound channels, all bound to the same address. */
+	private volatile List<DatagramChannel> channels;
+
+	private ByteBufferPool pool;
+
+	private final InetSocketAddress localAddr;
+
+	private List<Thread> receiverThreads;
+	private List<Thread> senderThreads;
+
+	/** The outbound message queue. */
+	private volatile OutboundMessageQueue outgoing;
+
+	/** The receiver of incoming messages. */
+	private RawDataChannel receiver;
+
+	private int receiveBufferSize = UDPConnector.UNDEFINED;
+	private int sendBufferSize = UDPConnector.UNDEFINED;
+
+	private int senderCount = 1;
+	private int receiverCount = 1;
+
+	private int receiverPacketSize = 2048;
+	private int bufferPoolSize = DEFAULT_BUFFER_POOL_SIZE;
+	private int socketCount = 1;
+	private int batchSize = 1;
+
+	/** The selectors used by the receiver and sender threads in batch mode. */
+	private List<Selector> selectors;
+
+	/**
+	 * Creates a connector on the wildcard address listening on an
+	 * ephemeral port, i.e. a port chosen by the system.
+	 *
+	 * The effect of this constructor is the same as invoking
+	 * <code>UDPChannelConnector(null)</code>.
+	 */
+	public UDPChannelConnector() {
+		this(null);
+	}
+
+	/**
+	 * Creates a connector bound to a given IP address and port.
+	 *
+	 * @param address the IP address and port, if <code>null</code>
+	 * the connector is bound to an ephemeral port on the wildcard address
+	 */
+	public UDPChannelConnector(InetSocketAddress address) {
+		if (address == null) {
+			this.localAddr = new InetSocketAddress(0);
+		} else {
+			this.localAddr = address;
+		}
+		this.running = false;
+		this.outgoing = new OutboundMessageQueue();
+	}
+
+	@Override
+	public synchronized void start() throws IOException {
+		if (running) {
+			return;
+		}
+
+		List<DatagramChannel> opened = new ArrayList<>(socketCount);
+		try {
+			InetSocketAddress bindAddress = localAddr;
+			DatagramChannel first = openChannel(bindAddress, socketCount > 1);
+			opened.add(first);
+			if (socketCount > 1) {
+				if (supportsReusePort(first)) {
+					// use the actual port, if an ephemeral port has been requested
+					bindAddress = (InetSocketAddress) first.getLocalAddress();
+					for (int i = 1; i < socketCount; i++) {
+						opened.add(openChannel(bindAddress, true));
+					}
+				} else {
+					LOGGER.log(Level.WARNING, "SO_REUSEPORT is not supported, UDPChannelConnector uses a single socket");
+				}
+			}
+		} catch (IOException e) {
+			for (DatagramChannel channel : opened) {
+				channel.close();
+			}
+			throw e;
+		}
+		channels = opened;
+		// running only, if the channels could be opened
+		running = true;
+
+		boolean batching = batchSize > 1;
+		selectors = new ArrayList<>();
+		DatagramChannel channel = opened.get(0);
+		receiveBufferSize = channel.getOption(StandardSocketOptions.SO_RCVBUF);
+		sendBufferSize = channel.getOption(StandardSocketOptions.SO_SNDBUF);
+		pool = new ByteBufferPool(bufferPoolSize, receiverPacketSize);
+
+		LOGGER.log(Level.CONFIG, "UDPChannelConnector starts up {0} sender threads and {1} receiver threads for each of {2} sockets",
+				new Object[]{senderCount, receiverCount, opened.size()});
+
+		receiverThreads = new LinkedList<Thread>();
+		for (int c = 0; c < opened.size(); c++) {
+			for (int i = 0; i < receiverCount; i++) {
+				receiverThreads.add(new Receiver("UDP-Receiver-" + localAddr + "[" + c + "." + i + "]", opened.get(c),
+						batching ? register(opened.get(c), SelectionKey.OP_READ) : null));
+			}
+		}
+
+		senderThreads = new LinkedList<Thread>();
+		for (int i = 0; i < senderCount; i++) {
+			DatagramChannel senderChannel = opened.get(i % opened.size());
+			senderThreads.add(new Sender("UDP-Sender-" + localAddr + "[" + i + "]", senderChannel,
+					batching ? register(senderChannel, SelectionKey.OP_WRITE) : null));
+		}
+
+		for (Thread t : receiverThreads) {
+			t.start();
+		}
+		for (Thread t : senderThreads) {
+			t.start();
+		}
+
+		if (LOGGER.isLoggable(Level.CONFIG)) {
+			String startupMsg = new StringBuilder("UDPChannelConnector listening on ")
+				.append(channel.getLocalAddress()).append(", recv buf = ")
+				.append(receiveBufferSize).append(", send buf = ").append(sendBufferSize)
+				.append(", recv packet size = ").append(receiverPacketSize)
+				.append(", buffer pool size = ").append(bufferPoolSize)
+				.append(", sockets = ").append(opened.size())
+				.append(", batch size = ").append(batchSize).toString();
+			LOGGER.log(Level.CONFIG, startupMsg);
+		}
+	}
+
+	@Override
+	public synchronized void stop() {
+		if (!running) {
+			return;
+		}
+		running = false;
+		// stop all threads
+		if (senderThreads != null) {
+			for (Thread t : senderThreads) {
+				t.interrupt();
+			}
+			senderThreads.clear();
+			senderThreads = null;
+		}
+		if (receiverThreads != null) {
+			for (Thread t : receiverThreads) {
+				t.interrupt();
+			}
+			receiverThreads.clear();
+			receiverThreads = null;
+		}
+		outgoing.clear();
+
+		String address = getAddress().toString();
+		if (channels != null) {
+			for (DatagramChannel channel : channels) {
+				try {
+					channel.close();
+				} catch (IOException e) {
+					LOGGER.log(Level.FINE, "Error closing channel", e);
+				}
+			}
+			channels = null;
+		}
+		if (selectors != null) {
+			for (Selector selector : selectors) {
+				try {
+					selector.close();
+				} catch (IOException e) {
+					LOGGER.log(Level.FINE, "Error closing selector", e);
+				}
+			}
+			selectors = null;
+		}
+		LOGGER.log(Level.CONFIG, "UDPChannelConnector on [{0}] has stopped.", address);
+	}
+
+	@Override
+	public void destroy() {
+		stop();
+	}
+
+	@Override
+	public void send(RawData msg) {
+		if (msg == null) {
+			throw new NullPointerException("Message must not be null");
+		} else {
+			outgoing.add(msg);
+		}
+	}
+
+	@Override
+	public void setRawDataReceiver(RawDataChannel receiver) {
+		this.receiver = receiver;
+	}
+
+	@Override
+	public InetSocketAddress getAddress() {
+		List<DatagramChannel> current = channels;
+		if (current != null) {
+			try {
+				SocketAddress address = current.get(0).getLocalAddress();
+				if (address instanceof InetSocketAddress) {
+					return (InetSocketAddress) address;
+				}
+			} catch (IOException e) {
+				// channel has been closed concurrently
+			}
+		}
+		return localAddr;
+	}
+
+	private DatagramChannel openChannel(final InetSocketAddress bindAddress, final boolean reusePort) throws IOException {
+		DatagramChannel channel = DatagramChannel.open();
+		try {
+			if (reusePort) {
+				setReusePort(channel);
+			}
+			if (receiveBufferSize != UDPConnector.UNDEFINED) {
+				channel.setOption(StandardSocketOptions.SO_RCVBUF, receiveBufferSize);
+			}
+			if (sendBufferSize != UDPConnector.UNDEFINED) {
+				channel.setOption(StandardSocketOptions.SO_SNDBUF, sendBufferSize);
+			}
+			channel.setOption(StandardSocketOptions.SO_BROADCAST, true);
+			channel.bind(bindAddress);
+			return channel;
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Switches a channel to non-blocking mode and registers it with a new
+	 * selector.
+	 */
+	private Selector register(final DatagramChannel channel, final int operation) throws IOException {
+		Selector selector = Selector.open();
+		selectors.add(selector);
+		channel.configureBlocking(false);
+		channel.register(selector, operation);
+		return selector;
+	}
+
+	/**
+	 * Looks up the {@code SO_REUSEPORT} option by name because it is not part
+	 * of the {@code StandardSocketOptions} of all supported Java versions.
+	 */
+	@SuppressWarnings("unchecked")
+	private static SocketOption<Boolean> getReusePortOption(final DatagramChannel channel) {
+		for (SocketOption<?> option : channel.supportedOptions()) {
+			if (SO_REUSEPORT.equals(option.name()) && Boolean.class.equals(option.type())) {
+				return (SocketOption<Boolean>) option;
+			}
+		}
+		return null;
+	}
+
+	private static boolean supportsReusePort(final DatagramChannel channel) {
+		return getReusePortOption(channel) != null;
+	}
+
+	private static void setReusePort(final DatagramChannel channel) throws IOException {
+		SocketOption<Boolean> option = getReusePortOption(channel);
+		if (option != null) {
+			channel.setOption(option, true);
+		}
+	}
+
+	/**
+	 * Gets the pool providing the receive buffers.
+	 *
+	 * @return the pool, or {@code null}, if the connector has not been started yet
+	 */
+	public ByteBufferPool getBufferPool() {
+		return pool;
+	}
+
+	private abstract class NetworkStageThread extends Thread {
+
+		protected NetworkStageThread(String name) {
+			super(UDPConnector.ELEMENTS_THREAD_GROUP, name);
+			setDaemon(true);
+		}
+
+		public void run() {
+			LOGGER.log(Level.FINE, "Starting network stage thread [{0}]", getName());
+			while (true) {
+				try {
+					work();
+					if (!running) {
+						LOGGER.log(Level.FINE, "Network stage thread [{0}] was stopped successfully", getName());
+						break;
+					}
+				} catch (Throwable t) {
+					if (running) {
+						LOGGER.log(Level.SEVERE, "Exception in network stage thread [" + getName() + "]:", t);
+					} else {
+						LOGGER.log(Level.FINE, "Network stage thread [{0}] was stopped successfully", getName());
+						LOGGER.log(Level.FINER, "   stopped at:", t);
+						break;
+					}
+				}
+			}
+		}
+
+		/**
+		 * @throws Exception the exception to be properly logged
+		 */
+		protected abstract void work() throws Exception;
+	}
+
+	private class Receiver extends NetworkStageThread {
+
+		private final DatagramChannel channel;
+		/** The selector to wait for datagrams in batch mode, {@code null} otherwise */
+		private final Selector selector;
+		/** The buffer to drain datagrams into, which are dropped because the pool is exhausted */
+		private ByteBuffer discardBuffer;
+
+		private Receiver(String name, DatagramChannel channel, Selector selector) {
+			super(name);
+			this.channel = channel;
+			this.selector = selector;
+		}
+
+		/**
+		 * Gets the buffer to receive a datagram into, if the pool is exhausted.
+		 * 
+		 * @return the cleared buffer.
+		 */
+		private ByteBuffer getDiscardBuffer() {
+			if (discardBuffer == null) {
+				discardBuffer = ByteBuffer.allocate(receiverPacketSize);
+			}
+			discardBuffer.clear();
+			return discardBuffer;
+		}
+
+		/**
+		 * Copies a datagram received into the discard buffer to a pooled
+		 * buffer, if a buffer has been released in the meantime.
+		 * 
+		 * @param source the source of the datagram.
+		 * @return the pooled buffer, or {@code null}, if the datagram is
+		 *         dropped.
+		 */
+		private ByteBuffer toPooledBuffer(SocketAddress source) {
+			ByteBuffer buffer = pool.acquire();
+			if (buffer == null) {
+				LOGGER.log(Level.FINE, "UDPChannelConnector ({0}) dropped datagram from {1}, buffer pool exhausted",
+						new Object[]{localAddr, source});
+			} else {
+				discardBuffer.flip();
+				buffer.put(discardBuffer);
+			}
+			return buffer;
+		}
+
+		protected void work() throws IOException {
+			if (selector == null) {
+				receiveSingle();
+			} else {
+				receiveBatch();
+			}
+		}
+
+		private void receiveBatch() throws IOException {
+			selector.select();
+			selector.selectedKeys().clear();
+			List<RawData> batch = new ArrayList<>(batchSize);
+			while (batch.size() < batchSize) {
+				ByteBuffer buffer = pool.acquire();
+				SocketAddress source = null;
+				try {
+					source = channel.receive(buffer == null ? getDiscardBuffer() : buffer);
+				} finally {
+					if (source == null) {
+						pool.release(buffer);
+					}
+				}
+				if (source == null) {
+					// no more datagrams ready
+					break;
+				}
+				if (buffer == null) {
+					buffer = toPooledBuffer(source);
+					if (buffer == null) {
+						continue;
+					}
+				}
+				buffer.flip();
+				batch.add(RawData.inbound(buffer, pool, (InetSocketAddress) source, null, null, false));
+			}
+			if (batch.isEmpty()) {
+				return;
+			}
+			if (LOGGER.isLoggable(Level.FINER)) {
+				LOGGER.log(Level.FINER, "UDPChannelConnector ({0}) received batch of {1} datagrams",
+						new Object[]{localAddr, batch.size()});
+			}
+			RawDataChannel target = receiver;
+			if (target instanceof BatchRawDataChannel) {
+				// the channel owns the messages, even if it fails
+				((BatchRawDataChannel) target).receiveBatch(batch);
+			} else {
+				for (int index = 0; index < batch.size(); index++) {
+					try {
+						target.receiveData(batch.get(index));
+					} catch (RuntimeException e) {
+						// release the failed message and the ones not handed over yet
+						for (RawData msg : batch.subList(index, batch.size())) {
+							msg.release();
+						}
+						throw e;
+					}
+				}
+			}
+		}
+
+		private void receiveSingle() throws IOException {
+			ByteBuffer buffer = pool.acquire();
+			SocketAddress source = null;
+			try {
+				source = channel.receive(buffer == null ? getDiscardBuffer() : buffer);
+			} finally {
+				if (source == null) {
+					pool.release(buffer);
+				}
+			}
+			if (source == null) {
+				// nothing received
+				return;
+			}
+			if (buffer == null) {
+				buffer = toPooledBuffer(source);
+				if (buffer == null) {
+					return;
+				}
+			}
+			buffer.flip();
+			if (LOGGER.isLoggable(Level.FINER)) {
+				LOGGER.log(Level.FINER, "UDPChannelConnector ({0}) received {1} bytes from {2}",
+						new Object[]{localAddr, buffer.remaining(), source});
+			}
+			RawData msg = RawData.inbound(buffer, pool, (InetSocketAddress) source, null, null, false);
+
+			try {
+				receiver.receiveData(msg);
+			} catch (RuntimeException e) {
+				msg.release();
+				throw e;
+			}
+		}
+	}
+
+	private class Sender extends NetworkStageThread {
+
+		private final DatagramChannel channel;
+		/** The selector to wait for the channel to become writable in batch mode, {@code null} otherwise */
+		private final Selector selector;
+		private final List<RawData> batch;
+
+		private Sender(String name, DatagramChannel channel, Selector selector) {
+			super(name);
+			this.channel = channel;
+			this.selector = selector;
+			this.batch = new ArrayList<>(batchSize);
+		}
+
+		protected void work() throws InterruptedException, IOException {
+			batch.clear();
+			outgoing.take(batch, batchSize); // Blocking
+			for (RawData raw : batch) {
+				try {
+					sendDatagram(raw);
+				} catch (IOException e) {
+					if (!running) {
+						throw e;
+					}
+					LOGGER.log(Level.SEVERE, "Exception in network stage thread [" + getName() + "]:", e);
+				}
+			}
+		}
+
+		private void sendDatagram(RawData raw) throws IOException {
+			if (LOGGER.isLoggable(Level.FINER)) {
+				LOGGER.log(Level.FINER, "UDPChannelConnector ({0}) sends {1} bytes to {2}",
+						new Object[]{localAddr, raw.getSize(), raw.getInetSocketAddress()});
+			}
+			ByteBuffer data = raw.getByteBuffer();
+			while (channel.send(data, raw.getInetSocketAddress()) == 0 && selector != null && running) {
+				// non-blocking channel's send buffer is full
+				selector.select(100);
+				selector.selectedKeys().clear();
+			}
+		}
+	}
+
+	public void setReceiveBufferSize(int size) {
+		this.receiveBufferSize = size;
+	}
+
+	public int getReceiveBufferSize() {
+		return receiveBufferSize;
+	}
+
+	public void setSendBufferSize(int size) {
+		this.sendBufferSize = size;
+	}
+
+	public int getSendBufferSize() {
+		return sendBufferSize;
+	}
+
+	public void setReceiverThreadCount(int count) {
+		this.receiverCount = count;
+	}
+
+	public int getReceiverThreadCount() {
+		return receiverCount;
+	}
+
+	public void setSenderThreadCount(int count) {
+		this.senderCount = count;
+	}
+
+	public int getSenderThreadCount() {
+		return senderCount;
+	}
+
+	public void setReceiverPacketSize(int size) {
+		this.receiverPacketSize = size;
+	}
+
+	public int getReceiverPacketSize() {
+		return receiverPacketSize;
+	}
+
+	/**
+	 * Sets the number of pooled receive buffers.
+	 * <p>
+	 * This value should be large enough to cover the datagrams that are
+	 * received but not yet processed (released) by the protocol stage.
+	 *
+	 * @param size the number of buffers
+	 */
+	public void setBufferPoolSize(int size) {
+		this.bufferPoolSize = size;
+	}
+
+	public int getBufferPoolSize() {
+		return bufferPoolSize;
+	}
+
+	/**
+	 * Sets the number of sockets to bind to the connector's address.
+	 * <p>
+	 * A value greater than 1 requires the {@code SO_REUSEPORT} socket option.
+	 * If the option is not supported by the platform, a single socket is used.
+	 * Each socket is served by {@link #getReceiverThreadCount()} receiver
+	 * threads.
+	 *
+	 * @param count the number of sockets
+	 * @throws IllegalArgumentException if count is &lt; 1.
+	 */
+	public void setSocketCount(int count) {
+		if (count < 1) {
+			throw new IllegalArgumentException("Socket count must be at least 1");
+		}
+		this.socketCount = count;
+	}
+
+	public int getSocketCount() {
+		return socketCount;
+	}
+
+	/**
+	 * Sets the maximum number of datagrams a receiver or sender thread
+	 * processes on each wake-up.
+	 * <p>
+	 * A value greater than 1 switches the channels to non-blocking mode.
+	 *
+	 * @param size the number of datagrams, 1 to process datagrams one by one.
+	 * @throws IllegalArgumentException if size is &lt; 1.
+	 */
+	public void setBatchSize(int size) {
+		if (size < 1) {
+			throw new IllegalArgumentException("Batch size must be at least 1");
+		}
+		this.batchSize = size;
+	}
+
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	/**
+	 * Gets the number of sockets actually bound.
+	 *
+	 * @return the number of sockets, 0 if the connector is not running.
+	 */
+	public int getBoundSocketCount() {
+		List<DatagramChannel> current = channels;
+		return current == null ? 0 : current.size();
+	}
+
+	/**
+	 * Sets the capacity of the outbound message queue and the policy to apply
+	 * when it is full.
+	 * <p>
+	 * Must be invoked before the connector is started, messages already queued
+	 * are discarded.
+	 *
+	 * @param capacity the maximum number of messages waiting to be sent.
+	 * @param policy the policy to apply when the queue is full.
+	 * @throws IllegalStateException if the connector is running.
+	 */
+	public synchronized void setOutboundQueue(int capacity, OutboundMessageQueue.OverflowPolicy policy) {
+		if (running) {
+			throw new IllegalStateException("Connector is running");
+		}
+		this.outgoing = new OutboundMessageQueue(capacity, policy);
+	}
+
+	/**
+	 * Gets the outbound message queue, e.g. to retrieve the number of messages
+	 * affected by its overflow policy.
+	 *
+	 * @return the queue.
+	 */
+	public OutboundMessageQueue getOutboundQueue() {
+		return outgoing;
+	}
+}
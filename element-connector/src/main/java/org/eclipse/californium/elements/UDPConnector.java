@@ -18,6 +18,8 @@
  *    Achim Kraus (Bosch Software Innovations GmbH) - fix error stopping an connector,
  *                                                    when socket failed to open.
  *                                                    issue #345
+ *    Bosch Software Innovations GmbH - bounded outbound queue with overflow policies
+ *    Bosch Software Innovations GmbH - send queued messages in batches
  ******************************************************************************/
 package org.eclipse.californium.elements;
 
@@ -25,11 +27,10 @@ import java.io.IOException;
 import java.net.DatagramPacket;
 import java.net.DatagramSocket;
 import java.net.InetSocketAddress;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -48,6 +49,9 @@ import java.util.logging.Logger;
  * 
  * The number of threads can be set through {@link #setReceiverThreadCount(int)}
  * and {@link #setSenderThreadCount(int)} before the connector is started.
+ * 
+ * A sender thread takes up to {@link #setBatchSize(int)} queued messages
+ * on each wake-up.
  */
 public class UDPConnector implements Connector {
 
@@ -67,7 +71,7 @@ public class UDPConnector implements Connector {
 	private List<Thread> senderThreads;
 
 	/** The outbound message queue. */
-	private final BlockingQueue<RawData> outgoing;
+	private volatile OutboundMessageQueue outgoing;
 	
 	/** The receiver of incoming messages. */
 	private RawDataChannel receiver;
@@ -79,6 +83,8 @@ public class UDPConnector implements Connector {
 	private int receiverCount = 1;
 	
 	private int receiverPacketSize = 2048;
+
+	private int batchSize = 1;
 	
 	/**
 	 * Creates a connector on the wildcard address listening on an
@@ -104,9 +110,7 @@ public class UDPConnector implements Connector {
 			this.localAddr = address;
 		}
 		this.running = false;
-		
-		//TODO: think about restricting the outbound queue's capacity
-		this.outgoing = new LinkedBlockingQueue<RawData>();
+		this.outgoing = new OutboundMessageQueue();
 	}
 	
 	@Override
@@ -290,14 +294,30 @@ public class UDPConnector implements Connector {
 	private class Sender extends NetworkStageThread {
 		
 		private DatagramPacket datagram;
+		private List<RawData> batch;
 		
 		private Sender(String name) {
 			super(name);
 			this.datagram = new DatagramPacket(new byte[0], 0);
+			this.batch = new ArrayList<RawData>(batchSize);
 		}
 		
 		protected void work() throws InterruptedException, IOException {
-			RawData raw = outgoing.take(); // Blocking
+			batch.clear();
+			outgoing.take(batch, batchSize); // Blocking
+			for (RawData raw : batch) {
+				try {
+					sendDatagram(raw);
+				} catch (IOException e) {
+					if (!running) {
+						throw e;
+					}
+					LOGGER.log(Level.SEVERE, "Exception in network stage thread [" + getName() + "]:", e);
+				}
+			}
+		}
+
+		private void sendDatagram(RawData raw) throws IOException {
 			datagram.setData(raw.getBytes());
 			datagram.setAddress(raw.getAddress());
 			datagram.setPort(raw.getPort());
@@ -349,4 +369,50 @@ public class UDPConnector implements Connector {
 	public int getReceiverPacketSize() {
 		return receiverPacketSize;
 	}
+
+	/**
+	 * Sets the maximum number of messages a sender thread takes from the
+	 * outbound queue on each wake-up.
+	 * 
+	 * @param size the number of messages, 1 to send messages one by one.
+	 * @throws IllegalArgumentException if size is &lt; 1.
+	 */
+	public void setBatchSize(int size) {
+		if (size < 1) {
+			throw new IllegalArgumentException("Batch size must be at least 1");
+		}
+		this.batchSize = size;
+	}
+
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	/**
+	 * Sets the capacity of the outbound message queue and the policy to apply
+	 * when it is full.
+	 * <p>
+	 * Must be invoked before the connector is started, messages already queued
+	 * are discarded.
+	 * 
+	 * @param capacity the maximum number of messages waiting to be sent.
+	 * @param policy the policy to apply when the queue is full.
+	 * @throws IllegalStateException if the connector is running.
+	 */
+	public synchronized void setOutboundQueue(int capacity, OutboundMessageQueue.OverflowPolicy policy) {
+		if (running) {
+			throw new IllegalStateException("Connector is running");
+		}
+		this.outgoing = new OutboundMessageQueue(capacity, policy);
+	}
+
+	/**
+	 * Gets the outbound message queue, e.g. to retrieve the number of messages
+	 * affected by its overflow policy.
+	 * 
+	 * @return the queue.
+	 */
+	public OutboundMessageQueue getOutboundQueue() {
+		return outgoing;
+	}
 }
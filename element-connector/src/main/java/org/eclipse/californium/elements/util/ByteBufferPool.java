@@ -0,0 +1,142 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Bosch Software Innovations GmbH and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *    Bosch Software Innovations GmbH - initial creation
+ ******************************************************************************/
+package org.eclipse.californium.elements.util;
+
+import java.nio.ByteBuffer;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A fixed size pool of equally sized direct {@code ByteBuffer}s.
+ * <p>
+ * Direct buffers are expensive to allocate and are only reclaimed by the
+ * garbage collector lazily. Connectors therefore should acquire a buffer from
+ * the pool for receiving a datagram and hand it back once the datagram's
+ * content has been processed.
+ * </p>
+ * <p>
+ * If the pool is exhausted, {@link #acquire()} neither blocks nor allocates
+ * an additional buffer but returns {@code null}, so that the caller can drop
+ * the datagram. The number of these <em>misses</em> can be obtained by means
+ * of {@link #getMissCount()} in order to detect an undersized pool or buffers
+ * that are not released. The pool never keeps more than its initial number of
+ * buffers.
+ * </p>
+ * <p>
+ * Instances are thread safe.
+ * </p>
+ */
+public final class ByteBufferPool {
+
+	private final BlockingQueue<ByteBuffer> buffers;
+	/** The buffers owned by this pool, flagged if currently available */
+	private final Map<ByteBuffer, AtomicBoolean> owned;
+	private final int bufferSize;
+	private final AtomicLong misses = new AtomicLong();
+
+	/**
+	 * Creates a new pool.
+	 *
+	 * @param poolSize the number of direct buffers to pre-allocate.
+	 * @param bufferSize the capacity of each buffer in bytes.
+	 * @throws IllegalArgumentException if any of the sizes is &lt; 1.
+	 */
+	public ByteBufferPool(final int poolSize, final int bufferSize) {
+		if (poolSize < 1) {
+			throw new IllegalArgumentException("Pool size must be at least 1");
+		} else if (bufferSize < 1) {
+			throw new IllegalArgumentException("Buffer size must be at least 1");
+		}
+		this.bufferSize = bufferSize;
+		this.buffers = new ArrayBlockingQueue<>(poolSize);
+		this.owned = new IdentityHashMap<>(poolSize);
+		for (int i = 0; i < poolSize; i++) {
+			ByteBuffer buffer = ByteBuffer.allocateDirect(bufferSize);
+			owned.put(buffer, new AtomicBoolean(true));
+			buffers.add(buffer);
+		}
+	}
+
+	/**
+	 * Takes a buffer from the pool.
+	 * <p>
+	 * The returned buffer is cleared, i.e. its position is 0 and its limit is
+	 * equal to its capacity.
+	 *
+	 * @return the buffer, or {@code null}, if the pool is exhausted.
+	 */
+	public ByteBuffer acquire() {
+		ByteBuffer buffer = buffers.poll();
+		if (buffer == null) {
+			misses.incrementAndGet();
+			return null;
+		} else {
+			owned.get(buffer).set(false);
+			buffer.clear();
+			return buffer;
+		}
+	}
+
+	/**
+	 * Hands back a buffer to the pool.
+	 * <p>
+	 * Buffers that have not been taken from this pool are silently discarded,
+	 * as are buffers which have already been handed back since they have been
+	 * taken.
+	 *
+	 * @param buffer the buffer to release.
+	 */
+	public void release(final ByteBuffer buffer) {
+		if (buffer != null) {
+			AtomicBoolean available = owned.get(buffer);
+			if (available != null && available.compareAndSet(false, true)) {
+				buffers.offer(buffer);
+			}
+		}
+	}
+
+	/**
+	 * Gets the capacity of the buffers provided by this pool.
+	 *
+	 * @return the size in bytes.
+	 */
+	public int getBufferSize() {
+		return bufferSize;
+	}
+
+	/**
+	 * Gets the number of buffers currently available in the pool.
+	 *
+	 * @return the number of buffers.
+	 */
+	public int available() {
+		return buffers.size();
+	}
+
+	/**
+	 * Gets the number of times no buffer could be acquired because the pool
+	 * was exhausted.
+	 *
+	 * @return the number of misses.
+	 */
+	public long getMissCount() {
+		return misses.get();
+	}
+}
@@ -13,6 +13,7 @@
  * Contributors:
  *    Matthias Kovatsch - creator and main architect
  *    Stefan Jucker - DTLS implementation
+ *    Bosch Software Innovations GmbH - write single bytes without allocating an array
  ******************************************************************************/
 package org.eclipse.californium.elements.util;
 
@@ -150,7 +151,12 @@ public final class DatagramWriter {
 	 *            The byte to be written.
 	 */
 	public void writeByte(final byte b) {
-		writeBytes(new byte[] { b });
+
+		if (currentBitIndex < Byte.SIZE - 1) {
+			write(b, Byte.SIZE);
+		} else {
+			byteStream.write(b);
+		}
 	}
 
 	// Functions ///////////////////////////////////////////////////////////////
@@ -0,0 +1,107 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Bosch Software Innovations GmbH and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *    Bosch Software Innovations GmbH - initial creation
+ *    Bosch Software Innovations GmbH - don't shut down the shared executor,
+ *                                      hand expired tasks to an executor
+ ******************************************************************************/
+package org.eclipse.californium.elements.util;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link TimeoutScheduler} delegating to a {@code ScheduledExecutorService}.
+ * <p>
+ * Expired tasks are either run by the scheduled executor's threads or handed
+ * to an executor, if one has been provided. In the first case, the tasks are
+ * passed to the scheduled executor as they are, so that this scheduler adds
+ * no cost per task.
+ * </p>
+ * <p>
+ * The scheduled executor is not owned by this scheduler, it may be shared
+ * with other components. Shutting down this scheduler therefore only rejects
+ * further tasks. The tasks which have been scheduled already are discarded,
+ * when the owner shuts down the scheduled executor.
+ * </p>
+ */
+public final class ExecutorTimeoutScheduler implements TimeoutScheduler {
+
+	private final ScheduledExecutorService scheduler;
+	private final Executor executor;
+	private volatile boolean shutdown;
+
+	/**
+	 * Creates a new scheduler running expired tasks on the threads of a
+	 * scheduled executor.
+	 *
+	 * @param scheduler the executor to schedule the tasks on.
+	 * @throws NullPointerException if the executor is {@code null}.
+	 */
+	public ExecutorTimeoutScheduler(final ScheduledExecutorService scheduler) {
+		this(scheduler, null);
+	}
+
+	/**
+	 * Creates a new scheduler.
+	 *
+	 * @param scheduler the executor to schedule the tasks on.
+	 * @param executor the executor to run expired tasks on. If {@code null},
+	 *            the tasks are run on the scheduled executor's threads.
+	 * @throws NullPointerException if the scheduled executor is {@code null}.
+	 */
+	public ExecutorTimeoutScheduler(final ScheduledExecutorService scheduler, final Executor executor) {
+		if (scheduler == null) {
+			throw new NullPointerException("Executor must not be null");
+		}
+		this.scheduler = scheduler;
+		this.executor = executor;
+	}
+
+	@Override
+	public ScheduledFuture<?> schedule(final Runnable task, final long delay, final TimeUnit unit) {
+		if (task == null) {
+			throw new NullPointerException("Task must not be null");
+		} else if (shutdown) {
+			throw new RejectedExecutionException("Scheduler has been shut down");
+		} else if (executor == null) {
+			return scheduler.schedule(task, delay, unit);
+		}
+		return scheduler.schedule(new Runnable() {
+
+			@Override
+			public void run() {
+				executor.execute(task);
+			}
+		}, delay, unit);
+	}
+
+	@Override
+	public boolean isShutdown() {
+		return shutdown || scheduler.isShutdown();
+	}
+
+	/**
+	 * Rejects further tasks.
+	 * <p>
+	 * The scheduled executor is not shut down. Tasks scheduled already are
+	 * discarded, when the owner of the scheduled executor shuts it down.
+	 */
+	@Override
+	public void shutdown() {
+		shutdown = true;
+	}
+}
@@ -0,0 +1,396 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Bosch Software Innovations GmbH and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *    Bosch Software Innovations GmbH - initial creation
+ ******************************************************************************/
+package org.eclipse.californium.elements.util;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A {@link TimeoutScheduler} based on a hashed timing wheel.
+ * <p>
+ * The wheel consists of a fixed number of buckets, each covering one tick. A
+ * timeout is put into the bucket of the tick it expires in, together with the
+ * number of remaining rounds of the wheel. A single worker thread advances the
+ * wheel once per tick and expires the timeouts of the current bucket whose
+ * remaining rounds are zero.
+ * </p>
+ * <p>
+ * Scheduling a timeout only appends it to a lock-free queue, cancelling it
+ * only marks it as cancelled and appends it to another lock-free queue. The
+ * worker thread moves new timeouts into their buckets and unlinks cancelled
+ * timeouts from their buckets, both in constant time. In contrast to a
+ * {@code ScheduledExecutorService} neither operation needs to lock or
+ * re-balance a priority queue, which makes this timer suitable for large
+ * numbers of timeouts which are cancelled before they expire, e.g.
+ * retransmission timeouts.
+ * </p>
+ * <p>
+ * Timeouts expire with a precision of one tick. Expired tasks are either run
+ * by the worker thread or handed to an executor, if one has been provided.
+ * </p>
+ */
+public final class HashedWheelTimer implements TimeoutScheduler {
+
+	private static final Logger LOGGER = Logger.getLogger(HashedWheelTimer.class.getName());
+
+	/**
+	 * The default number of buckets.
+	 */
+	public static final int DEFAULT_TICKS_PER_WHEEL = 512;
+
+	private final Bucket[] wheel;
+	private final int mask;
+	private final long tickDuration;
+	private final long startTime;
+	private final Executor executor;
+	private final Queue<Timeout> pendingTimeouts = new ConcurrentLinkedQueue<>();
+	private final Queue<Timeout> cancelledTimeouts = new ConcurrentLinkedQueue<>();
+	private final Thread worker;
+	private volatile boolean shutdown;
+
+	/**
+	 * Creates a new timer running expired tasks on its worker thread.
+	 *
+	 * @param name the name of the worker thread.
+	 * @param tickDuration the duration of a tick.
+	 * @param unit the unit of the tick duration.
+	 * @throws IllegalArgumentException if the tick duration is &lt; 1 ms.
+	 */
+	public HashedWheelTimer(final String name, final long tickDuration, final TimeUnit unit) {
+		this(name, tickDuration, unit, DEFAULT_TICKS_PER_WHEEL, null);
+	}
+
+	/**
+	 * Creates a new timer.
+	 *
+	 * @param name the name of the worker thread.
+	 * @param tickDuration the duration of a tick.
+	 * @param unit the unit of the tick duration.
+	 * @param ticksPerWheel the number of buckets. The number is rounded up
+	 *            to the next power of two.
+	 * @param executor the executor to run expired tasks on. If {@code null},
+	 *            the tasks are run on the worker thread and therefore must
+	 *            not block.
+	 * @throws IllegalArgumentException if the tick duration is &lt; 1 ms or
+	 *             the number of ticks is &lt; 1.
+	 */
+	public HashedWheelTimer(final String name, final long tickDuration, final TimeUnit unit,
+			final int ticksPerWheel, final Executor executor) {
+		if (unit.toMillis(tickDuration) < 1) {
+			throw new IllegalArgumentException("Tick duration must be at least 1ms");
+		} else if (ticksPerWheel < 1 || ticksPerWheel > 1 << 30) {
+			throw new IllegalArgumentException("Ticks per wheel must be between 1 and 2^30");
+		}
+		int size = Integer.highestOneBit(ticksPerWheel);
+		if (size < ticksPerWheel) {
+			size <<= 1;
+		}
+		this.wheel = new Bucket[size];
+		for (int i = 0; i < size; i++) {
+			wheel[i] = new Bucket();
+		}
+		this.mask = size - 1;
+		this.tickDuration = unit.toNanos(tickDuration);
+		this.executor = executor;
+		this.startTime = System.nanoTime();
+		this.worker = new DaemonThreadFactory(name).newThread(new Worker());
+		this.worker.start();
+	}
+
+	@Override
+	public ScheduledFuture<?> schedule(final Runnable task, final long delay, final TimeUnit unit) {
+		if (task == null) {
+			throw new NullPointerException("Task must not be null");
+		} else if (shutdown) {
+			throw new RejectedExecutionException("Timer has been shut down");
+		}
+		long deadline = System.nanoTime() - startTime + Math.max(0, unit.toNanos(delay));
+		Timeout timeout = new Timeout(task, deadline);
+		pendingTimeouts.add(timeout);
+		if (shutdown) {
+			// raced with shutdown(), the worker may have cleared the pending
+			// timeouts before the timeout has been added
+			pendingTimeouts.remove(timeout);
+			throw new RejectedExecutionException("Timer has been shut down");
+		}
+		return timeout;
+	}
+
+	@Override
+	public boolean isShutdown() {
+		return shutdown;
+	}
+
+	/**
+	 * Stops the worker thread.
+	 * <p>
+	 * Timeouts which have not expired yet are discarded.
+	 */
+	@Override
+	public void shutdown() {
+		shutdown = true;
+		worker.interrupt();
+	}
+
+	/**
+	 * Gets the number of timeouts which have not been moved into their
+	 * buckets yet.
+	 *
+	 * @return the number of timeouts.
+	 */
+	int getPendingCount() {
+		return pendingTimeouts.size();
+	}
+
+	/**
+	 * The worker advancing the wheel.
+	 */
+	private final class Worker implements Runnable {
+
+		private long tick;
+
+		@Override
+		public void run() {
+			while (!shutdown) {
+				long deadline = waitForNextTick();
+				if (deadline > 0) {
+					removeCancelledTimeouts();
+					transferPendingTimeouts();
+					wheel[(int) (tick & mask)].expireTimeouts(deadline);
+					tick++;
+				}
+			}
+			pendingTimeouts.clear();
+			cancelledTimeouts.clear();
+		}
+
+		/**
+		 * Waits until the end of the current tick.
+		 *
+		 * @return the end of the tick relative to the start time, or
+		 *         {@code -1} if the timer has been shut down.
+		 */
+		private long waitForNextTick() {
+			long deadline = tickDuration * (tick + 1);
+			while (!shutdown) {
+				long sleepTime = deadline - (System.nanoTime() - startTime);
+				if (sleepTime <= 0) {
+					return deadline;
+				}
+				LockSupport.parkNanos(this, sleepTime);
+			}
+			return -1;
+		}
+
+		private void transferPendingTimeouts() {
+			Timeout timeout;
+			while ((timeout = pendingTimeouts.poll()) != null) {
+				if (timeout.isCancelled()) {
+					continue;
+				}
+				long expiryTick = timeout.deadline / tickDuration;
+				timeout.remainingRounds = (expiryTick - tick) / wheel.length;
+				// timeouts which should have expired already go into the current bucket
+				wheel[(int) (Math.max(expiryTick, tick) & mask)].add(timeout);
+			}
+		}
+
+		private void removeCancelledTimeouts() {
+			Timeout timeout;
+			while ((timeout = cancelledTimeouts.poll()) != null) {
+				if (timeout.bucket != null) {
+					timeout.bucket.remove(timeout);
+				}
+			}
+		}
+	}
+
+	/**
+	 * A doubly linked list of timeouts.
+	 * <p>
+	 * Only accessed by the worker thread.
+	 */
+	private final class Bucket {
+
+		private Timeout head;
+		private Timeout tail;
+
+		private void add(final Timeout timeout) {
+			timeout.bucket = this;
+			if (head == null) {
+				head = tail = timeout;
+			} else {
+				tail.next = timeout;
+				timeout.prev = tail;
+				tail = timeout;
+			}
+		}
+
+		private void remove(final Timeout timeout) {
+			if (timeout.prev != null) {
+				timeout.prev.next = timeout.next;
+			} else {
+				head = timeout.next;
+			}
+			if (timeout.next != null) {
+				timeout.next.prev = timeout.prev;
+			} else {
+				tail = timeout.prev;
+			}
+			timeout.prev = null;
+			timeout.next = null;
+			timeout.bucket = null;
+		}
+
+		private void expireTimeouts(final long deadline) {
+			Timeout timeout = head;
+			while (timeout != null) {
+				Timeout next = timeout.next;
+				if (timeout.remainingRounds <= 0) {
+					remove(timeout);
+					if (timeout.deadline <= deadline) {
+						timeout.expire();
+					} else {
+						// must not happen, timeouts are always put into the right bucket
+						LOGGER.log(Level.WARNING, "timeout deadline {0} is after tick deadline {1}",
+								new Object[] { timeout.deadline, deadline });
+					}
+				} else if (timeout.isCancelled()) {
+					remove(timeout);
+				} else {
+					timeout.remainingRounds--;
+				}
+				timeout = next;
+			}
+		}
+	}
+
+	/**
+	 * A scheduled task.
+	 */
+	private final class Timeout implements ScheduledFuture<Object> {
+
+		private static final int INIT = 0;
+		private static final int CANCELLED = 1;
+		private static final int EXPIRED = 2;
+
+		private final Runnable task;
+		/**
+		 * Deadline in nanoseconds relative to the timer's start time.
+		 */
+		private final long deadline;
+		private final AtomicInteger state = new AtomicInteger(INIT);
+		// the following fields are only accessed by the worker thread
+		private long remainingRounds;
+		private Timeout next;
+		private Timeout prev;
+		private Bucket bucket;
+
+		private Timeout(final Runnable task, final long deadline) {
+			this.task = task;
+			this.deadline = deadline;
+		}
+
+		private void expire() {
+			if (state.compareAndSet(INIT, EXPIRED)) {
+				try {
+					if (executor == null) {
+						task.run();
+					} else {
+						executor.execute(task);
+					}
+				} catch (Throwable t) {
+					LOGGER.log(Level.WARNING, "Exception while running expired task", t);
+				}
+				synchronized (this) {
+					notifyAll();
+				}
+			}
+		}
+
+		@Override
+		public boolean cancel(final boolean mayInterruptIfRunning) {
+			if (state.compareAndSet(INIT, CANCELLED)) {
+				cancelledTimeouts.add(this);
+				synchronized (this) {
+					notifyAll();
+				}
+				return true;
+			}
+			return false;
+		}
+
+		@Override
+		public boolean isCancelled() {
+			return state.get() == CANCELLED;
+		}
+
+		@Override
+		public boolean isDone() {
+			return state.get() != INIT;
+		}
+
+		@Override
+		public long getDelay(final TimeUnit unit) {
+			return unit.convert(deadline - (System.nanoTime() - startTime), TimeUnit.NANOSECONDS);
+		}
+
+		@Override
+		public int compareTo(final Delayed other) {
+			long diff = getDelay(TimeUnit.NANOSECONDS) - other.getDelay(TimeUnit.NANOSECONDS);
+			return diff < 0 ? -1 : (diff > 0 ? 1 : 0);
+		}
+
+		/**
+		 * Waits until the task has expired or has been cancelled.
+		 * <p>
+		 * If the task is run by an executor, this method does not wait for
+		 * the task to complete.
+		 */
+		@Override
+		public synchronized Object get() throws InterruptedException, ExecutionException {
+			while (!isDone()) {
+				wait();
+			}
+			return null;
+		}
+
+		@Override
+		public synchronized Object get(final long timeout, final TimeUnit unit)
+				throws InterruptedException, ExecutionException, TimeoutException {
+			long end = System.nanoTime() + unit.toNanos(timeout);
+			while (!isDone()) {
+				long remaining = TimeUnit.NANOSECONDS.toMillis(end - System.nanoTime());
+				if (remaining <= 0) {
+					throw new TimeoutException();
+				}
+				wait(remaining);
+			}
+			return null;
+		}
+	}
+}
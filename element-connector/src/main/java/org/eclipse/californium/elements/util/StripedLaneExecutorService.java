@@ -0,0 +1,296 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Bosch Software Innovations GmbH and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *    Bosch Software Innovations GmbH - initial creation
+ ******************************************************************************/
+package org.eclipse.californium.elements.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import eu.javaspecialists.tjsn.concurrency.stripedexecutor.StripedObject;
+
+/**
+ * An executor service executing the tasks of a stripe consecutively.
+ * <p>
+ * This executor honors the same contract as the {@code StripedExecutorService}:
+ * all tasks implementing {@link StripedObject}, e.g. {@code StripedRunnable}s,
+ * which return equal stripes are executed consecutively and in the order they
+ * have been submitted. Other tasks are executed in any order.
+ * </p>
+ * <p>
+ * In contrast to the {@code StripedExecutorService}, this executor neither
+ * creates nor removes an executor per stripe and does not need a global lock.
+ * It consists of a fixed number of lanes, each with a lock-free queue and a
+ * dedicated thread consuming it. A stripe is assigned to a lane by its hash
+ * code, tasks without stripe are distributed over all lanes in turn.
+ * Submitting a task therefore only appends it to the lane's queue and wakes up
+ * the lane's thread, if it is waiting.
+ * </p>
+ * <p>
+ * As a consequence, a long running task delays all other tasks of its lane,
+ * including the tasks of other stripes assigned to the same lane.
+ * </p>
+ */
+public final class StripedLaneExecutorService extends AbstractExecutorService {
+
+	private static final Logger LOGGER = Logger.getLogger(StripedLaneExecutorService.class.getName());
+
+	private final Lane[] lanes;
+	private final AtomicInteger nextLane = new AtomicInteger();
+	private volatile boolean shutdown;
+
+	/**
+	 * Creates a new executor with daemon threads.
+	 *
+	 * @param lanes the number of lanes.
+	 * @throws IllegalArgumentException if the number of lanes is &lt; 1.
+	 */
+	public StripedLaneExecutorService(final int lanes) {
+		this(lanes, new DaemonThreadFactory("StripedLane#"));
+	}
+
+	/**
+	 * Creates a new executor.
+	 * <p>
+	 * The threads of all lanes are started right away.
+	 *
+	 * @param lanes the number of lanes.
+	 * @param threadFactory the factory to create the lanes' threads with.
+	 * @throws IllegalArgumentException if the number of lanes is &lt; 1.
+	 * @throws NullPointerException if the thread factory is {@code null}.
+	 */
+	public StripedLaneExecutorService(final int lanes, final ThreadFactory threadFactory) {
+		if (lanes < 1) {
+			throw new IllegalArgumentException("Number of lanes must be at least 1");
+		} else if (threadFactory == null) {
+			throw new NullPointerException("Thread factory must not be null");
+		}
+		this.lanes = new Lane[lanes];
+		for (int i = 0; i < lanes; i++) {
+			this.lanes[i] = new Lane();
+		}
+		for (Lane lane : this.lanes) {
+			lane.thread = threadFactory.newThread(lane);
+			lane.thread.start();
+		}
+	}
+
+	/**
+	 * Gets the number of lanes.
+	 *
+	 * @return the number of lanes.
+	 */
+	public int getLaneCount() {
+		return lanes.length;
+	}
+
+	@Override
+	public void execute(final Runnable command) {
+		if (command == null) {
+			throw new NullPointerException("Command must not be null");
+		} else if (shutdown) {
+			throw new RejectedExecutionException("Executor has been shut down");
+		}
+		Lane lane = getLane(command);
+		lane.add(command);
+		if (shutdown && lane.queue.remove(command)) {
+			// raced with shutdown, the lane may have terminated already
+			throw new RejectedExecutionException("Executor has been shut down");
+		}
+	}
+
+	private Lane getLane(final Object task) {
+		int index;
+		Object stripe = task instanceof StripedObject ? ((StripedObject) task).getStripe() : null;
+		if (stripe == null) {
+			index = nextLane.getAndIncrement();
+		} else {
+			index = stripe.hashCode();
+			index ^= index >>> 16;
+		}
+		return lanes[(index & Integer.MAX_VALUE) % lanes.length];
+	}
+
+	/**
+	 * Keeps the stripe of a task submitted for a result.
+	 */
+	@Override
+	protected <T> RunnableFuture<T> newTaskFor(final Runnable runnable, final T value) {
+		if (runnable instanceof StripedObject) {
+			return new StripedFutureTask<>(runnable, value, ((StripedObject) runnable).getStripe());
+		}
+		return super.newTaskFor(runnable, value);
+	}
+
+	/**
+	 * Keeps the stripe of a task submitted for a result.
+	 */
+	@Override
+	protected <T> RunnableFuture<T> newTaskFor(final Callable<T> callable) {
+		if (callable instanceof StripedObject) {
+			return new StripedFutureTask<>(callable, ((StripedObject) callable).getStripe());
+		}
+		return super.newTaskFor(callable);
+	}
+
+	/**
+	 * Stops accepting new tasks.
+	 * <p>
+	 * Tasks which have already been submitted are still executed.
+	 */
+	@Override
+	public void shutdown() {
+		shutdown = true;
+		for (Lane lane : lanes) {
+			lane.wakeUp();
+		}
+	}
+
+	/**
+	 * Stops accepting new tasks and interrupts the lanes' threads.
+	 *
+	 * @return the tasks which have not been executed.
+	 */
+	@Override
+	public List<Runnable> shutdownNow() {
+		shutdown = true;
+		List<Runnable> pending = new ArrayList<>();
+		for (Lane lane : lanes) {
+			Runnable task;
+			while ((task = lane.queue.poll()) != null) {
+				pending.add(task);
+			}
+			lane.thread.interrupt();
+			lane.wakeUp();
+		}
+		return pending;
+	}
+
+	@Override
+	public boolean isShutdown() {
+		return shutdown;
+	}
+
+	@Override
+	public boolean isTerminated() {
+		if (!shutdown) {
+			return false;
+		}
+		for (Lane lane : lanes) {
+			if (lane.thread.isAlive()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public boolean awaitTermination(final long timeout, final TimeUnit unit) throws InterruptedException {
+		long end = System.nanoTime() + unit.toNanos(timeout);
+		for (Lane lane : lanes) {
+			long remaining = TimeUnit.NANOSECONDS.toMillis(end - System.nanoTime());
+			if (remaining <= 0) {
+				return isTerminated();
+			}
+			lane.thread.join(remaining);
+		}
+		return isTerminated();
+	}
+
+	/**
+	 * A queue of tasks consumed by a single thread.
+	 */
+	private final class Lane implements Runnable {
+
+		private final Queue<Runnable> queue = new ConcurrentLinkedQueue<>();
+		private final AtomicBoolean waiting = new AtomicBoolean();
+		private Thread thread;
+
+		private void add(final Runnable task) {
+			queue.offer(task);
+			wakeUp();
+		}
+
+		private void wakeUp() {
+			if (waiting.get() && waiting.compareAndSet(true, false)) {
+				LockSupport.unpark(thread);
+			}
+		}
+
+		@Override
+		public void run() {
+			while (true) {
+				Runnable task = queue.poll();
+				if (task != null) {
+					try {
+						task.run();
+					} catch (Throwable t) {
+						LOGGER.log(Level.SEVERE, "Exception in lane thread", t);
+					}
+				} else if (shutdown) {
+					// re-check, a task may have been added before shutdown
+					if (queue.isEmpty()) {
+						break;
+					}
+				} else {
+					waiting.set(true);
+					// re-check, a task may have been added before waiting was set
+					if (queue.isEmpty() && !shutdown) {
+						LockSupport.park(this);
+					}
+					waiting.set(false);
+					// a pending interrupt would prevent the thread from parking
+					Thread.interrupted();
+				}
+			}
+		}
+	}
+
+	/**
+	 * A future task keeping the stripe of the task it wraps.
+	 */
+	private static final class StripedFutureTask<T> extends FutureTask<T> implements StripedObject {
+
+		private final Object stripe;
+
+		private StripedFutureTask(final Runnable runnable, final T value, final Object stripe) {
+			super(runnable, value);
+			this.stripe = stripe;
+		}
+
+		private StripedFutureTask(final Callable<T> callable, final Object stripe) {
+			super(callable);
+			this.stripe = stripe;
+		}
+
+		@Override
+		public Object getStripe() {
+			return stripe;
+		}
+	}
+}
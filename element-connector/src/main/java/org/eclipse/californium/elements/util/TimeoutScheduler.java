@@ -0,0 +1,65 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Bosch Software Innovations GmbH and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *    Bosch Software Innovations GmbH - initial creation
+ ******************************************************************************/
+package org.eclipse.californium.elements.util;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A scheduler for one-shot timeouts.
+ * <p>
+ * Protocol implementations schedule a timeout for (almost) every message they
+ * send, e.g. for retransmitting it, and cancel most of these timeouts before
+ * they expire. This interface covers exactly this use case, so that it can be
+ * implemented by a plain {@code ScheduledExecutorService} as well as by
+ * implementations optimized for large numbers of short lived timeouts.
+ * </p>
+ * <p>
+ * Implementations must be thread safe.
+ * </p>
+ *
+ * @see ExecutorTimeoutScheduler
+ * @see HashedWheelTimer
+ */
+public interface TimeoutScheduler {
+
+	/**
+	 * Schedules a task to be run after a delay.
+	 *
+	 * @param task the task to run.
+	 * @param delay the delay.
+	 * @param unit the unit of the delay.
+	 * @return the handle for cancelling the task.
+	 * @throws RejectedExecutionException if this scheduler has been shut
+	 *             down.
+	 */
+	ScheduledFuture<?> schedule(Runnable task, long delay, TimeUnit unit);
+
+	/**
+	 * Checks whether this scheduler has been shut down.
+	 *
+	 * @return {@code true} if no more tasks can be scheduled.
+	 */
+	boolean isShutdown();
+
+	/**
+	 * Shuts down this scheduler.
+	 * <p>
+	 * Tasks which have not expired yet are discarded.
+	 */
+	void shutdown();
+}
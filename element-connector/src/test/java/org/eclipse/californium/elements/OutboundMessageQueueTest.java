@@ -0,0 +1,129 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Bosch Software Innovations GmbH and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *    Bosch Software Innovations GmbH - initial creation
+ ******************************************************************************/
+package org.eclipse.californium.elements;
+
+import static org.junit.Assert.*;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.eclipse.californium.elements.OutboundMessageQueue.OverflowPolicy;
+import org.junit.Test;
+
+public class OutboundMessageQueueTest {
+
+	private static final InetSocketAddress DESTINATION = new InetSocketAddress(InetAddress.getLoopbackAddress(), 5683);
+
+	@Test
+	public void testDropNewestDiscardsAddedMessage() throws Exception {
+		OutboundMessageQueue queue = new OutboundMessageQueue(2, OverflowPolicy.DROP_NEWEST);
+		RawData first = newMessage(1, null);
+
+		assertTrue(queue.add(first));
+		assertTrue(queue.add(newMessage(2, null)));
+		assertFalse(queue.add(newMessage(3, null)));
+
+		assertEquals(2, queue.size());
+		assertEquals(1, queue.getDroppedNewestCount());
+		assertSame(first, queue.take());
+	}
+
+	@Test
+	public void testDropOldestDiscardsQueuedMessage() throws Exception {
+		OutboundMessageQueue queue = new OutboundMessageQueue(2, OverflowPolicy.DROP_OLDEST);
+		RawData second = newMessage(2, null);
+
+		assertTrue(queue.add(newMessage(1, null)));
+		assertTrue(queue.add(second));
+		assertTrue(queue.add(newMessage(3, null)));
+
+		assertEquals(2, queue.size());
+		assertEquals(1, queue.getDroppedOldestCount());
+		assertSame(second, queue.take());
+	}
+
+	@Test
+	public void testRejectNotifiesMessageCallback() throws Exception {
+		OutboundMessageQueue queue = new OutboundMessageQueue(1, OverflowPolicy.REJECT);
+		final AtomicReference<Throwable> error = new AtomicReference<>();
+		MessageCallback callback = new MessageErrorCallback() {
+
+			@Override
+			public void onContextEstablished(CorrelationContext context) {
+			}
+
+			@Override
+			public void onError(Throwable cause) {
+				error.set(cause);
+			}
+		};
+
+		assertTrue(queue.add(newMessage(1, callback)));
+		assertNull(error.get());
+		assertFalse(queue.add(newMessage(2, callback)));
+
+		assertNotNull(error.get());
+		assertEquals(1, queue.getRejectedCount());
+		assertEquals(1, queue.size());
+	}
+
+	@Test
+	public void testBlockWaitsForSpace() throws Exception {
+		final OutboundMessageQueue queue = new OutboundMessageQueue(1, OverflowPolicy.BLOCK);
+		queue.add(newMessage(1, null));
+
+		Thread sender = new Thread() {
+
+			@Override
+			public void run() {
+				queue.add(newMessage(2, null));
+			}
+		};
+		sender.start();
+		sender.join(200);
+		assertTrue(sender.isAlive());
+
+		queue.take();
+		sender.join(2000);
+		assertFalse(sender.isAlive());
+		assertEquals(1, queue.size());
+		assertEquals(1, queue.getBlockedCount());
+	}
+
+	@Test
+	public void testTakeBatchDrainsUpToMaxMessages() throws Exception {
+		OutboundMessageQueue queue = new OutboundMessageQueue();
+		for (int i = 0; i < 5; i++) {
+			queue.add(newMessage(i, null));
+		}
+
+		List<RawData> batch = new ArrayList<>();
+		assertEquals(3, queue.take(batch, 3));
+		assertEquals(3, batch.size());
+		assertEquals(2, queue.size());
+
+		batch.clear();
+		assertEquals(2, queue.take(batch, 3));
+		assertEquals(0, queue.size());
+	}
+
+	private static RawData newMessage(int id, MessageCallback callback) {
+		return RawData.outbound(new byte[]{(byte) id}, DESTINATION, callback, false);
+	}
+}
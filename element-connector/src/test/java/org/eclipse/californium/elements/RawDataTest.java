@@ -19,6 +19,9 @@ import static org.junit.Assert.*;
 
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+
+import org.eclipse.californium.elements.util.ByteBufferPool;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -48,6 +51,67 @@ public class RawDataTest {
 		assertFalse(rawData.isSecure());
 	}
 
+	/**
+	 * Verifies that raw data backed by a pooled buffer provides access to
+	 * the buffer's content and hands back the buffer to the pool on release.
+	 */
+	@Test
+	public void testPooledBufferIsReleasedToPool() {
+
+		ByteBufferPool pool = new ByteBufferPool(1, 16);
+		ByteBuffer buffer = pool.acquire();
+		buffer.put(new byte[]{0x01, 0x02, 0x03}).flip();
+		assertEquals(0, pool.available());
+
+		RawData rawData = RawData.inbound(buffer, pool, SOURCE, null, null, false);
+		assertTrue(rawData.isPooled());
+		assertEquals(3, rawData.getSize());
+		assertArrayEquals(new byte[]{0x01, 0x02, 0x03}, rawData.getBytes());
+		assertEquals(3, rawData.getByteBuffer().remaining());
+
+		rawData.release();
+		assertFalse(rawData.isPooled());
+		assertEquals(1, pool.available());
+
+		// releasing twice must not add the buffer twice
+		rawData.release();
+		assertEquals(1, pool.available());
+	}
+
+	/**
+	 * Verifies that the content of raw data cannot be accessed after the
+	 * pooled buffer backing it has been released.
+	 */
+	@Test(expected = IllegalStateException.class)
+	public void testGetBytesFailsAfterRelease() {
+
+		ByteBufferPool pool = new ByteBufferPool(1, 16);
+		ByteBuffer buffer = pool.acquire();
+		buffer.put((byte) 0x01).flip();
+		RawData rawData = RawData.inbound(buffer, pool, SOURCE, null, null, false);
+		rawData.release();
+		rawData.getBytes();
+	}
+
+	/**
+	 * Verifies that the pool neither accepts foreign buffers nor the same
+	 * buffer twice, even if handed back directly.
+	 */
+	@Test
+	public void testPoolDiscardsForeignAndDoubleReleasedBuffers() {
+
+		ByteBufferPool pool = new ByteBufferPool(2, 16);
+		ByteBuffer buffer = pool.acquire();
+		assertEquals(1, pool.available());
+
+		pool.release(ByteBuffer.allocateDirect(16));
+		assertEquals(1, pool.available());
+
+		pool.release(buffer);
+		pool.release(buffer);
+		assertEquals(2, pool.available());
+	}
+
 	private CorrelationContext getSecureCorrelationContext() {
 		return new DtlsCorrelationContext("12345", "2", "PSK");
 	}
@@ -0,0 +1,216 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Bosch Software Innovations GmbH and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *    Bosch Software Innovations GmbH - initial creation
+ *    Bosch Software Innovations GmbH - add test for dropping datagrams
+ ******************************************************************************/
+package org.eclipse.californium.elements;
+
+import static org.junit.Assert.*;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class UDPChannelConnectorTest {
+
+	private UDPChannelConnector server;
+	private UDPChannelConnector client;
+	private BlockingQueue<RawData> received;
+
+	@Before
+	public void setUp() throws Exception {
+		received = new LinkedBlockingQueue<>();
+		server = new UDPChannelConnector(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+		server.setBufferPoolSize(2);
+		server.setRawDataReceiver(new RawDataChannel() {
+
+			@Override
+			public void receiveData(RawData raw) {
+				received.add(raw);
+			}
+		});
+		server.start();
+		client = new UDPChannelConnector(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+		client.setRawDataReceiver(new RawDataChannel() {
+
+			@Override
+			public void receiveData(RawData raw) {
+				raw.release();
+			}
+		});
+		client.start();
+	}
+
+	@After
+	public void tearDown() {
+		client.destroy();
+		server.destroy();
+	}
+
+	/**
+	 * Verifies that datagrams are received into pooled buffers which are
+	 * handed back to the pool when the raw data is released.
+	 */
+	@Test
+	public void testReceivedDataIsBackedByPooledBuffer() throws Exception {
+
+		byte[] data = new byte[]{0x40, 0x01, 0x00, 0x01};
+		client.send(RawData.outbound(data, server.getAddress(), null, false));
+
+		RawData raw = received.poll(2, TimeUnit.SECONDS);
+		assertNotNull(raw);
+		assertTrue(raw.isPooled());
+		assertArrayEquals(data, raw.getBytes());
+		assertEquals(client.getAddress().getPort(), raw.getPort());
+
+		raw.release();
+	}
+
+	/**
+	 * Verifies that released buffers are re-used for receiving subsequent
+	 * datagrams so that no additional buffers need to be allocated.
+	 */
+	@Test
+	public void testReleasedBuffersAreReused() throws Exception {
+
+		for (int i = 0; i < 10; i++) {
+			client.send(RawData.outbound(new byte[]{(byte) i}, server.getAddress(), null, false));
+			RawData raw = received.poll(2, TimeUnit.SECONDS);
+			assertNotNull(raw);
+			assertArrayEquals(new byte[]{(byte) i}, raw.getBytes());
+			raw.release();
+		}
+		assertEquals(0, server.getBufferPool().getMissCount());
+	}
+
+	/**
+	 * Verifies that datagrams are dropped instead of allocating additional
+	 * buffers while all pooled buffers are in use.
+	 */
+	@Test
+	public void testDropsDatagramsIfPoolIsExhausted() throws Exception {
+
+		// the server's pool has two buffers
+		for (int i = 0; i < 2; i++) {
+			client.send(RawData.outbound(new byte[]{(byte) i}, server.getAddress(), null, false));
+		}
+		RawData first = received.poll(2, TimeUnit.SECONDS);
+		RawData second = received.poll(2, TimeUnit.SECONDS);
+		assertNotNull(second);
+
+		client.send(RawData.outbound(new byte[]{0x02}, server.getAddress(), null, false));
+		assertNull(received.poll(200, TimeUnit.MILLISECONDS));
+		assertTrue(server.getBufferPool().getMissCount() > 0);
+
+		first.release();
+		second.release();
+		client.send(RawData.outbound(new byte[]{0x03}, server.getAddress(), null, false));
+		RawData raw = received.poll(2, TimeUnit.SECONDS);
+		assertNotNull(raw);
+		assertArrayEquals(new byte[]{0x03}, raw.getBytes());
+		raw.release();
+	}
+
+	/**
+	 * Verifies that a connector in batch mode hands over all received
+	 * datagrams to a batch aware receiver.
+	 */
+	@Test
+	public void testBatchModeDeliversAllDatagrams() throws Exception {
+
+		final BlockingQueue<RawData> batched = new LinkedBlockingQueue<>();
+		UDPChannelConnector batching = new UDPChannelConnector(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+		batching.setBatchSize(8);
+		batching.setRawDataReceiver(new BatchRawDataChannel() {
+
+			@Override
+			public void receiveData(RawData raw) {
+				fail("batch aware receiver must receive batches");
+			}
+
+			@Override
+			public void receiveBatch(List<RawData> batch) {
+				assertTrue(batch.size() <= 8);
+				batched.addAll(batch);
+			}
+		});
+		UDPChannelConnector sender = new UDPChannelConnector(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+		sender.setBatchSize(8);
+		try {
+			batching.start();
+			sender.start();
+			for (int i = 0; i < 20; i++) {
+				sender.send(RawData.outbound(new byte[]{(byte) i}, batching.getAddress(), null, false));
+			}
+			for (int i = 0; i < 20; i++) {
+				RawData raw = batched.poll(2, TimeUnit.SECONDS);
+				assertNotNull(raw);
+				assertEquals(1, raw.getSize());
+				raw.release();
+			}
+		} finally {
+			sender.destroy();
+			batching.destroy();
+		}
+	}
+
+	/**
+	 * Verifies that a connector using multiple sockets bound to the same port
+	 * receives datagrams from several clients.
+	 */
+	@Test
+	public void testMultipleSocketsReceiveOnSamePort() throws Exception {
+
+		UDPChannelConnector multi = new UDPChannelConnector(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+		multi.setSocketCount(4);
+		multi.setRawDataReceiver(new RawDataChannel() {
+
+			@Override
+			public void receiveData(RawData raw) {
+				received.add(raw);
+			}
+		});
+		List<UDPChannelConnector> clients = new ArrayList<>();
+		try {
+			multi.start();
+			assertTrue(multi.getBoundSocketCount() >= 1);
+			assertNotEquals(0, multi.getAddress().getPort());
+
+			for (int i = 0; i < 8; i++) {
+				UDPChannelConnector sender = new UDPChannelConnector(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+				clients.add(sender);
+				sender.start();
+				sender.send(RawData.outbound(new byte[]{(byte) i}, multi.getAddress(), null, false));
+			}
+			for (int i = 0; i < 8; i++) {
+				RawData raw = received.poll(2, TimeUnit.SECONDS);
+				assertNotNull(raw);
+				raw.release();
+			}
+		} finally {
+			for (UDPChannelConnector sender : clients) {
+				sender.destroy();
+			}
+			multi.destroy();
+		}
+	}
+}
@@ -0,0 +1,117 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Bosch Software Innovations GmbH and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *    Bosch Software Innovations GmbH - initial creation
+ ******************************************************************************/
+package org.eclipse.californium.elements.util;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ExecutorTimeoutSchedulerTest {
+
+	private ScheduledExecutorService executor;
+	private ExecutorTimeoutScheduler timer;
+
+	@Before
+	public void setUp() {
+		executor = Executors.newSingleThreadScheduledExecutor();
+		timer = new ExecutorTimeoutScheduler(executor);
+	}
+
+	@After
+	public void tearDown() {
+		executor.shutdownNow();
+	}
+
+	/**
+	 * Verifies that shutting down the scheduler does not shut down the
+	 * shared executor.
+	 */
+	@Test
+	public void testShutdownKeepsExecutorRunning() throws Exception {
+
+		final CountDownLatch latch = new CountDownLatch(1);
+		executor.schedule(new Runnable() {
+
+			@Override
+			public void run() {
+				latch.countDown();
+			}
+		}, 100, TimeUnit.MILLISECONDS);
+
+		timer.shutdown();
+
+		assertTrue(timer.isShutdown());
+		assertFalse(executor.isShutdown());
+		assertTrue(latch.await(2, TimeUnit.SECONDS));
+	}
+
+	/**
+	 * Verifies that tasks are rejected after the scheduler has been shut down.
+	 */
+	@Test(expected = RejectedExecutionException.class)
+	public void testScheduleAfterShutdownIsRejected() {
+
+		timer.shutdown();
+		timer.schedule(new Runnable() {
+
+			@Override
+			public void run() {
+			}
+		}, 1, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Verifies that expired tasks are handed to the executor, if provided.
+	 */
+	@Test
+	public void testExpiredTaskIsRunByExecutor() throws Exception {
+
+		final ScheduledExecutorService worker = Executors.newSingleThreadScheduledExecutor();
+		try {
+			final Thread[] thread = new Thread[2];
+			worker.submit(new Runnable() {
+
+				@Override
+				public void run() {
+					thread[0] = Thread.currentThread();
+				}
+			}).get();
+			final CountDownLatch latch = new CountDownLatch(1);
+			timer = new ExecutorTimeoutScheduler(executor, worker);
+			timer.schedule(new Runnable() {
+
+				@Override
+				public void run() {
+					thread[1] = Thread.currentThread();
+					latch.countDown();
+				}
+			}, 10, TimeUnit.MILLISECONDS);
+
+			assertTrue(latch.await(2, TimeUnit.SECONDS));
+			assertSame(thread[0], thread[1]);
+		} finally {
+			worker.shutdownNow();
+		}
+	}
+}
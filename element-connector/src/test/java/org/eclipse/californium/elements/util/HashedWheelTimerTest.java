@@ -0,0 +1,135 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Bosch Software Innovations GmbH and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *    Bosch Software Innovations GmbH - initial creation
+ ******************************************************************************/
+package org.eclipse.californium.elements.util;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class HashedWheelTimerTest {
+
+	private HashedWheelTimer timer;
+
+	@Before
+	public void setUp() {
+		// a small wheel so that timeouts span several rounds
+		timer = new HashedWheelTimer("test-timer", 10, TimeUnit.MILLISECONDS, 8, null);
+	}
+
+	@After
+	public void tearDown() {
+		timer.shutdown();
+	}
+
+	/**
+	 * Verifies that a task is run not before its delay has passed.
+	 */
+	@Test
+	public void testTaskRunsAfterDelay() throws Exception {
+
+		final CountDownLatch latch = new CountDownLatch(1);
+		long start = System.nanoTime();
+		ScheduledFuture<?> future = timer.schedule(new Runnable() {
+
+			@Override
+			public void run() {
+				latch.countDown();
+			}
+		}, 150, TimeUnit.MILLISECONDS);
+
+		assertTrue(latch.await(2, TimeUnit.SECONDS));
+		assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 150);
+		future.get(1, TimeUnit.SECONDS);
+		assertTrue(future.isDone());
+		assertFalse(future.isCancelled());
+	}
+
+	/**
+	 * Verifies that cancelled tasks are not run.
+	 */
+	@Test
+	public void testCancelledTaskIsNotRun() throws Exception {
+
+		final AtomicInteger runs = new AtomicInteger();
+		final CountDownLatch latch = new CountDownLatch(1);
+		Runnable counting = new Runnable() {
+
+			@Override
+			public void run() {
+				runs.incrementAndGet();
+			}
+		};
+		for (int i = 0; i < 1000; i++) {
+			assertTrue(timer.schedule(counting, 50, TimeUnit.MILLISECONDS).cancel(false));
+		}
+		timer.schedule(new Runnable() {
+
+			@Override
+			public void run() {
+				latch.countDown();
+			}
+		}, 100, TimeUnit.MILLISECONDS);
+
+		assertTrue(latch.await(2, TimeUnit.SECONDS));
+		assertEquals(0, runs.get());
+	}
+
+	/**
+	 * Verifies that all tasks are run, including those scheduled more than one
+	 * round of the wheel ahead.
+	 */
+	@Test
+	public void testAllTasksAreRun() throws Exception {
+
+		int count = 200;
+		final CountDownLatch latch = new CountDownLatch(count);
+		for (int i = 0; i < count; i++) {
+			timer.schedule(new Runnable() {
+
+				@Override
+				public void run() {
+					latch.countDown();
+				}
+			}, i % 250, TimeUnit.MILLISECONDS);
+		}
+		assertTrue(latch.await(2, TimeUnit.SECONDS));
+		assertEquals(0, timer.getPendingCount());
+	}
+
+	/**
+	 * Verifies that a shut down timer rejects new tasks.
+	 */
+	@Test(expected = RejectedExecutionException.class)
+	public void testShutdownTimerRejectsTasks() {
+
+		timer.shutdown();
+		assertTrue(timer.isShutdown());
+		timer.schedule(new Runnable() {
+
+			@Override
+			public void run() {
+			}
+		}, 10, TimeUnit.MILLISECONDS);
+	}
+}
@@ -0,0 +1,254 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Bosch Software Innovations GmbH and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *    Bosch Software Innovations GmbH - initial creation
+ ******************************************************************************/
+package org.eclipse.californium.elements.util;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import eu.javaspecialists.tjsn.concurrency.stripedexecutor.StripedCallable;
+import eu.javaspecialists.tjsn.concurrency.stripedexecutor.StripedRunnable;
+
+public class StripedLaneExecutorServiceTest {
+
+	private static final int STRIPES = 10;
+	private static final int TASKS_PER_STRIPE = 1000;
+
+	private StripedLaneExecutorService executor;
+
+	@Before
+	public void setUp() {
+		executor = new StripedLaneExecutorService(4);
+	}
+
+	@After
+	public void tearDown() {
+		executor.shutdownNow();
+	}
+
+	/**
+	 * Verifies that the tasks of a stripe are executed in the order they have
+	 * been submitted, even if they are submitted by several threads.
+	 */
+	@Test
+	public void testTasksOfStripeAreExecutedInOrder() throws Exception {
+
+		final int[] lastExecuted = new int[STRIPES];
+		final AtomicInteger outOfOrder = new AtomicInteger();
+		final CountDownLatch latch = new CountDownLatch(STRIPES * TASKS_PER_STRIPE);
+
+		Thread[] producers = new Thread[STRIPES];
+		for (int s = 0; s < STRIPES; s++) {
+			final int stripe = s;
+			lastExecuted[stripe] = -1;
+			producers[s] = new Thread(new Runnable() {
+
+				@Override
+				public void run() {
+					for (int i = 0; i < TASKS_PER_STRIPE; i++) {
+						final int index = i;
+						executor.execute(new StripedRunnable() {
+
+							@Override
+							public Object getStripe() {
+								return "stripe-" + stripe;
+							}
+
+							@Override
+							public void run() {
+								// lanes are single threaded, no synchronization needed
+								if (lastExecuted[stripe] != index - 1) {
+									outOfOrder.incrementAndGet();
+								}
+								lastExecuted[stripe] = index;
+								latch.countDown();
+							}
+						});
+					}
+				}
+			});
+		}
+		for (Thread producer : producers) {
+			producer.start();
+		}
+
+		assertTrue(latch.await(5, TimeUnit.SECONDS));
+		assertEquals(0, outOfOrder.get());
+	}
+
+	/**
+	 * Verifies that submitting a striped callable returns its result.
+	 */
+	@Test
+	public void testSubmitStripedCallable() throws Exception {
+
+		Future<String> result = executor.submit(new StripedCallable<String>() {
+
+			@Override
+			public Object getStripe() {
+				return "stripe";
+			}
+
+			@Override
+			public String call() {
+				return "done";
+			}
+		});
+
+		assertEquals("done", result.get(1, TimeUnit.SECONDS));
+	}
+
+	/**
+	 * Verifies that a failing task does not stop its lane.
+	 */
+	@Test
+	public void testLaneSurvivesFailingTask() throws Exception {
+
+		final CountDownLatch latch = new CountDownLatch(1);
+		for (int i = 0; i < executor.getLaneCount(); i++) {
+			executor.execute(new Runnable() {
+
+				@Override
+				public void run() {
+					throw new IllegalStateException("expected");
+				}
+			});
+		}
+		executor.execute(new Runnable() {
+
+			@Override
+			public void run() {
+				latch.countDown();
+			}
+		});
+
+		assertTrue(latch.await(1, TimeUnit.SECONDS));
+	}
+
+	/**
+	 * Verifies that already submitted tasks are executed after shut down and
+	 * new tasks are rejected.
+	 */
+	@Test
+	public void testShutdownExecutesPendingTasks() throws Exception {
+
+		final CountDownLatch block = new CountDownLatch(1);
+		final AtomicInteger executed = new AtomicInteger();
+		executor.execute(new StripedRunnable() {
+
+			@Override
+			public Object getStripe() {
+				return "stripe";
+			}
+
+			@Override
+			public void run() {
+				try {
+					block.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				executed.incrementAndGet();
+			}
+		});
+		executor.execute(new StripedRunnable() {
+
+			@Override
+			public Object getStripe() {
+				return "stripe";
+			}
+
+			@Override
+			public void run() {
+				executed.incrementAndGet();
+			}
+		});
+
+		executor.shutdown();
+		block.countDown();
+
+		assertTrue(executor.awaitTermination(1, TimeUnit.SECONDS));
+		assertTrue(executor.isTerminated());
+		assertEquals(2, executed.get());
+		try {
+			executor.execute(new Runnable() {
+
+				@Override
+				public void run() {
+				}
+			});
+			fail("executor should have rejected task");
+		} catch (RejectedExecutionException e) {
+			// expected
+		}
+	}
+
+	/**
+	 * Verifies that shutting down immediately returns the pending tasks.
+	 */
+	@Test
+	public void testShutdownNowReturnsPendingTasks() throws Exception {
+
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch block = new CountDownLatch(1);
+		StripedRunnable blocking = new StripedRunnable() {
+
+			@Override
+			public Object getStripe() {
+				return "stripe";
+			}
+
+			@Override
+			public void run() {
+				started.countDown();
+				try {
+					block.await();
+				} catch (InterruptedException e) {
+					// expected
+				}
+			}
+		};
+		StripedRunnable pending = new StripedRunnable() {
+
+			@Override
+			public Object getStripe() {
+				return "stripe";
+			}
+
+			@Override
+			public void run() {
+			}
+		};
+		executor.execute(blocking);
+		assertTrue(started.await(1, TimeUnit.SECONDS));
+		executor.execute(pending);
+
+		List<Runnable> notExecuted = executor.shutdownNow();
+
+		assertEquals(1, notExecuted.size());
+		assertSame(pending, notExecuted.get(0));
+		assertTrue(executor.awaitTermination(1, TimeUnit.SECONDS));
+	}
+}
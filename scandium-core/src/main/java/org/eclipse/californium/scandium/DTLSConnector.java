@@ -53,6 +53,10 @@
  *                                                    if bindAddress determines a port
  *    Achim Kraus (Bosch Software Innovations GmbH) - change receiver thread to
  *                                                    daemon
+ *    Bosch Software Innovations GmbH - use timeout scheduler for retransmissions
+ *    Bosch Software Innovations GmbH - use lock-free striped executor
+ *    Bosch Software Innovations GmbH - process expired retransmissions on the
+ *                                      executor
  ******************************************************************************/
 package org.eclipse.californium.scandium;
 
@@ -67,6 +71,7 @@ import java.security.SecureRandom;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
@@ -87,7 +92,11 @@ import org.eclipse.californium.elements.DtlsCorrelationContext;
 import org.eclipse.californium.elements.RawData;
 import org.eclipse.californium.elements.RawDataChannel;
 import org.eclipse.californium.elements.util.DaemonThreadFactory;
+import org.eclipse.californium.elements.util.ExecutorTimeoutScheduler;
+import org.eclipse.californium.elements.util.HashedWheelTimer;
 import org.eclipse.californium.elements.util.NamedThreadFactory;
+import org.eclipse.californium.elements.util.StripedLaneExecutorService;
+import org.eclipse.californium.elements.util.TimeoutScheduler;
 import org.eclipse.californium.scandium.config.DtlsConnectorConfig;
 import org.eclipse.californium.scandium.dtls.AlertMessage;
 import org.eclipse.californium.scandium.dtls.AlertMessage.AlertDescription;
@@ -149,7 +158,7 @@ public class DTLSConnector implements Connector {
 			+ 13 // DTLS record headers
 			+ MAX_CIPHERTEXT_EXPANSION;
 	/**
-	 * The default size of the striped executor's thread pool which is used for processing records.
+	 * The default number of the striped executor's lanes which are used for processing records.
 	 * <p>
 	 * The value of this property is 6 * <em>#(CPU cores)</em>.
 	 */
@@ -175,8 +184,9 @@ public class DTLSConnector implements Connector {
 	private DatagramSocket socket;
 
 	/** The timer daemon to schedule retransmissions. */
-	//private Timer timer;
-	private ScheduledExecutorService timer;
+	private TimeoutScheduler timer;
+	/** The scheduled executor of the timer, if no retransmission timer tick is set. */
+	private ScheduledExecutorService retransmitScheduler;
 
 	/** The thread that receives messages */
 	private Worker receiver;
@@ -187,7 +197,7 @@ public class DTLSConnector implements Connector {
 	private RawDataChannel messageHandler;
 	private ErrorHandler errorHandler;
 	private SessionListener sessionCacheSynchronization;
-	private StripedExecutorService executor;
+	private ExecutorService executor;
 	private boolean hasInternalExecutor;
 
 	/**
@@ -246,11 +256,15 @@ public class DTLSConnector implements Connector {
 	 * Sets the executor to use for processing records.
 	 * <p>
 	 * If this property is not set before invoking the {@linkplain #start() start method},
-	 * a new {@link StripedExecutorService} is created with a thread pool of
-	 * {@linkplain #DEFAULT_EXECUTOR_THREAD_POOL_SIZE default size}.
-	 * 
-	 * This helps with performing multiple handshakes in parallel, in particular if the key exchange
-	 * requires a look up of identities, e.g. in a database or using a web service.
+	 * a new {@link StripedLaneExecutorService} is created with the
+	 * {@linkplain #DEFAULT_EXECUTOR_THREAD_POOL_SIZE default number} of lanes.
+	 * <p>
+	 * The lanes are shared by all peers assigned to them. A record, which
+	 * blocks while being processed, e.g. because the key exchange requires a
+	 * look up of identities in a database or using a web service, therefore
+	 * delays the records of all other peers of its lane. If the key exchange
+	 * blocks, use this method to set a {@link StripedExecutorService} instead,
+	 * which executes the records of different peers in parallel.
 	 * <p>
 	 * If this method is used to set an executor, the executor will <em>not</em> be shut down
 	 * by the {@linkplain #stop() stop method}.
@@ -259,7 +273,32 @@ public class DTLSConnector implements Connector {
 	 * @throws IllegalStateException if his connector is already running.
 	 */
 	public final synchronized void setExecutor(StripedExecutorService executor) {
+		setStripedExecutor(executor);
+	}
 
+	/**
+	 * Sets the executor to use for processing records.
+	 * <p>
+	 * The records of a peer are submitted as {@link StripedRunnable}s using the
+	 * peer's address as stripe. The executor must process all tasks of a stripe
+	 * consecutively, therefore only a {@link StripedExecutorService} or a
+	 * {@link StripedLaneExecutorService} is accepted.
+	 * 
+	 * @param executor The executor.
+	 * @throws IllegalArgumentException if the executor does not process the tasks
+	 *             of a stripe consecutively.
+	 * @throws IllegalStateException if his connector is already running.
+	 * @see #setExecutor(StripedExecutorService)
+	 */
+	public final synchronized void setExecutor(ExecutorService executor) {
+		if (executor != null && !(executor instanceof StripedExecutorService)
+				&& !(executor instanceof StripedLaneExecutorService)) {
+			throw new IllegalArgumentException("executor must process the tasks of a stripe consecutively");
+		}
+		setStripedExecutor(executor);
+	}
+
+	private void setStripedExecutor(final ExecutorService executor) {
 		if (running.get()) {
 			throw new IllegalStateException("cannot set executor while connector is running");
 		} else {
@@ -317,14 +356,22 @@ public class DTLSConnector implements Connector {
 
 		pendingOutboundMessages.set(config.getOutboundMessageBufferSize());
 
-		timer = Executors.newSingleThreadScheduledExecutor(
-				new DaemonThreadFactory("DTLS RetransmitTask-", NamedThreadFactory.SCANDIUM_THREAD_GROUP));
-
 		if (executor == null) {
-			// use a decently sized thread pool
-			executor = new StripedExecutorService(DEFAULT_EXECUTOR_THREAD_POOL_SIZE);
+			// use a decent number of lanes
+			executor = new StripedLaneExecutorService(DEFAULT_EXECUTOR_THREAD_POOL_SIZE,
+					new NamedThreadFactory("DTLS-Worker-", NamedThreadFactory.SCANDIUM_THREAD_GROUP));
 			this.hasInternalExecutor = true;
 		}
+
+		// expired retransmissions are processed by the executor on the peer's stripe
+		if (config.getRetransmissionTimerTick() > 0) {
+			timer = new HashedWheelTimer("DTLS RetransmitTask", config.getRetransmissionTimerTick(),
+					TimeUnit.MILLISECONDS, HashedWheelTimer.DEFAULT_TICKS_PER_WHEEL, executor);
+		} else {
+			retransmitScheduler = Executors.newSingleThreadScheduledExecutor(
+					new DaemonThreadFactory("DTLS RetransmitTask-", NamedThreadFactory.SCANDIUM_THREAD_GROUP));
+			timer = new ExecutorTimeoutScheduler(retransmitScheduler, executor);
+		}
 		socket = new DatagramSocket(null);
 		if (bindAddress.getPort() != 0 && config.isAddressReuseEnabled()) {
 			// make it easier to stop/start a server consecutively without delays
@@ -431,7 +478,11 @@ public class DTLSConnector implements Connector {
 	public final synchronized void stop() {
 		if (running.get()) {
 			LOGGER.log(Level.INFO, "Stopping DTLS connector on [{0}]", lastBindAddress);
-			timer.shutdownNow();
+			timer.shutdown();
+			if (retransmitScheduler != null) {
+				retransmitScheduler.shutdownNow();
+				retransmitScheduler = null;
+			}
 			if (hasInternalExecutor) {
 				executor.shutdownNow();
 				executor = null;
@@ -1625,7 +1676,7 @@ public class DTLSConnector implements Connector {
 		};
 	}
 
-	private class RetransmitTask implements Runnable {
+	private class RetransmitTask implements StripedRunnable {
 
 		private DTLSFlight flight;
 
@@ -1634,21 +1685,15 @@ public class DTLSConnector implements Connector {
 		}
 
 		@Override
-		public void run() {
-			executor.execute(new StripedRunnable() {
-
-				@Override
-				public Object getStripe() {
-					return flight.getPeerAddress();
-				}
+		public Object getStripe() {
+			return flight.getPeerAddress();
+		}
 
-				@Override
-				public void run() {
-					if (!flight.isRetransmissionCancelled()) {
-						handleTimeout(flight);
-					}
-				}
-			});
+		@Override
+		public void run() {
+			if (!flight.isRetransmissionCancelled()) {
+				handleTimeout(flight);
+			}
 		}
 	}
 
@@ -19,6 +19,7 @@
  *    Kai Hudalla (Bosch Software Innovations GmbH) - fix bug 483559
  *    Achim Kraus (Bosch Software Innovations GmbH) - add enable address reuse
  *    Ludwig Seitz (RISE SICS) - Added support for raw public key validation
+ *    Bosch Software Innovations GmbH - add retransmission timer tick
  *******************************************************************************/
 
 package org.eclipse.californium.scandium.config;
@@ -87,6 +88,12 @@ public final class DtlsConnectorConfig {
 	 */
 	private int maxRetransmissions = 4;
 
+	/**
+	 * Duration of a tick of the hashed wheel timer used for scheduling
+	 * retransmissions, 0 to use a scheduled executor
+	 */
+	private int retransmissionTimerTick = 0;
+
 	/** does the server require the client to authenticate */
 	private boolean clientAuthenticationRequired = true;
 
@@ -163,6 +170,17 @@ public final class DtlsConnectorConfig {
 		return maxRetransmissions;
 	}
 
+	/**
+	 * Gets the duration of a tick of the timer used for scheduling
+	 * retransmissions.
+	 * 
+	 * @return the duration in milliseconds, or 0, if retransmissions are
+	 *         scheduled on a scheduled executor instead of a hashed wheel timer
+	 */
+	public int getRetransmissionTimerTick() {
+		return retransmissionTimerTick;
+	}
+
 	/**
 	 * Gets the number of outbound messages that can be buffered in memory before
 	 * messages are dropped.
@@ -358,6 +376,7 @@ public final class DtlsConnectorConfig {
 		 * <li><em>maxPayloadSize</em>: 4096 + 25 bytes (max fragment size + 25 bytes for headers)</li>
 		 * <li><em>maxRetransmissions</em>: 4</li>
 		 * <li><em>retransmissionTimeout</em>: 1000ms</li>
+		 * <li><em>retransmissionTimerTick</em>: 0 (use scheduled executor)</li>
 		 * <li><em>clientAuthenticationRequired</em>: <code>true</code></li>
 		 * <li><em>outboundMessageBufferSize</em>: 100.000</li>
 		 * <li><em>trustStore</em>: empty array</li>
@@ -483,6 +502,26 @@ public final class DtlsConnectorConfig {
 			}
 		}
 
+		/**
+		 * Sets the duration of a tick of the timer used for scheduling
+		 * retransmissions.
+		 * <p>
+		 * If set to a value &gt; 0, retransmissions are scheduled on a hashed
+		 * wheel timer with this precision, which scales better with large
+		 * numbers of concurrent handshakes than a scheduled executor.
+		 * 
+		 * @param tick the duration in milliseconds, 0 to use a scheduled executor
+		 * @return this builder for command chaining
+		 */
+		public Builder setRetransmissionTimerTick(int tick) {
+			if (tick < 0) {
+				throw new IllegalArgumentException("Retransmission timer tick must not be negative");
+			} else {
+				config.retransmissionTimerTick = tick;
+				return this;
+			}
+		}
+
 		/**
 		 * Sets whether the connector requires DTLS clients to authenticate during
 		 * the handshake.
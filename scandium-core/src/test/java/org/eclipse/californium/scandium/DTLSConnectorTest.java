@@ -50,6 +50,8 @@ import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -1050,6 +1052,16 @@ public class DTLSConnectorTest {
 		assertClientIdentity(RawPublicKeyIdentity.class);
 	}
 
+	@Test(expected = IllegalArgumentException.class)
+	public void testSetExecutorRejectsNonStripedExecutor() throws Exception {
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			client.setExecutor(executor);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
 	@Test
 	public void testStartStopWithSameAddressAndInternalExecutor() throws Exception {
 		// use internal executor